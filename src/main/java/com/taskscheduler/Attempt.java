@@ -0,0 +1,51 @@
+package com.taskscheduler;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * One run of a task's command: when it finished, how long it took and how it
+ * ended. A task keeps its most recent attempts, see {@link Task#recordAttempt}.
+ */
+public class Attempt {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final LocalDateTime finishedAt;
+    private final long durationMillis;
+    private final int exitCode;
+    private final boolean timedOut;
+
+    public Attempt(LocalDateTime finishedAt, long durationMillis, int exitCode, boolean timedOut) {
+        this.finishedAt = finishedAt;
+        this.durationMillis = durationMillis;
+        this.exitCode = exitCode;
+        this.timedOut = timedOut;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    // -1 when the command could not be started
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public boolean isSuccess() {
+        return exitCode == 0 && !timedOut;
+    }
+
+    @Override
+    public String toString() {
+        String outcome = timedOut ? "timed out" : exitCode == 0 ? "ok" : "exit " + exitCode;
+        return String.format("%s %s (%.1f s)", finishedAt.format(TIME_FORMAT), outcome, durationMillis / 1000.0);
+    }
+}
@@ -1,153 +1,268 @@
 package com.taskscheduler;
 
 import java.io.File;
+import java.io.IOException;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-// handles execution of tasks in background mode
+import com.taskscheduler.exec.CatchUpEngine;
+import com.taskscheduler.exec.DependencyTracker;
+import com.taskscheduler.exec.ExecutionService;
+import com.taskscheduler.store.ScanWatermark;
+import com.taskscheduler.store.TaskStore;
+
+// handles execution of tasks in background mode. Each check runs the tasks that came
+// due since the one before, read from the due-date and retry indexes in (watermark, now],
+// and those saved with a due time the watermark had already passed; see ScanWatermark
 public class BackgroundTaskRunner {
     private static final Logger LOGGER = Logger.getLogger(BackgroundTaskRunner.class.getName());
+    // a run more than this late was missed and goes by its catch-up policy
+    private static final int LATE_MINUTES = 30;
     private final TaskManager taskManager;
-    private final QuartzScheduler scheduler;
-    private static final String OUTPUT_DIR = "task_outputs";
+    private final File watermarkFile;
     
     public BackgroundTaskRunner() {
         this.taskManager = TaskManager.getInstance();
-        this.scheduler = QuartzScheduler.getInstance(); // Fixed: Use getInstance() instead of constructor
+        this.watermarkFile = new File(ScanWatermark.FILE_NAME);
     }
     
+    // peeks at the store on disk so a check with nothing to run can skip loading
+    // the task table; any doubt means a full check
+    public static boolean hasDueTasks() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        try {
+            ScanWatermark state = ScanWatermark.read(new File(ScanWatermark.FILE_NAME));
+            if (state.hasOrphanedClaims() || state.hasBehind()) {
+                return true;
+            }
+            // due times are stored to the second
+            LocalDateTime from = state.getWatermark() != null ? state.getWatermark().plusSeconds(1) : LocalDateTime.MIN;
+            return TaskStore.hasOpenTasksDueBetween(TaskManager.FILE_NAME, from, now);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning("BackgroundTaskRunner: Could not probe the task store: " + e.getMessage());
+            return true;
+        }
+    }
+
     // checks for due tasks and executes them
     public int checkAndExecuteTasks() {
-        List<Task> tasks = taskManager.getTasks();
         int executedTasks = 0;
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime late = now.minusMinutes(LATE_MINUTES);
         LOGGER.info("BackgroundTaskRunner: Checking for due tasks at " + now);
-        LOGGER.info("BackgroundTaskRunner: Found " + tasks.size() + " total tasks in the system");        for (Task task : tasks) {
-            if (!task.isCompleted() && task.getDueDate() != null) {
-                // Check if task is due - we want to be more precise with execution timing
-                // Only execute tasks that are:
-                // 1. Due right now (or within 1 minute in the past)
-                // 2. Overdue but not executed yet (within reasonable bounds)
-                LocalDateTime dueTime = task.getDueDate();
-                LocalDateTime oneMinuteAgo = now.minusMinutes(1);
-                LocalDateTime thirtyMinutesAgo = now.minusMinutes(30);
-                
-                LOGGER.info("BackgroundTaskRunner: Checking task " + task.getId() + ": " + task.getTitle());
-                LOGGER.info("BackgroundTaskRunner: Task due time: " + dueTime);
-                LOGGER.info("BackgroundTaskRunner: Current time: " + now);
-                LOGGER.info("BackgroundTaskRunner: Time window: Current time (± 1 minute) or overdue");
-                LOGGER.info("BackgroundTaskRunner: Task completed: " + task.isCompleted());
-                LOGGER.info("BackgroundTaskRunner: Task has email: " + (task.getEmail() != null ? task.getEmail() : "NO EMAIL"));
-                
-                // Only execute if:
-                // - Task is due right now (within 1 minute precision)
-                // - OR task is overdue (within last 30 minutes) but not executed yet
-                boolean isDueNow = (dueTime.isAfter(oneMinuteAgo) && dueTime.isBefore(now.plusMinutes(1))) || dueTime.equals(now);
-                boolean isRecentlyOverdue = dueTime.isAfter(thirtyMinutesAgo) && dueTime.isBefore(now);
-                
-                if (isDueNow || isRecentlyOverdue) {
-                    LOGGER.info("BackgroundTaskRunner: *** EXECUTING TASK: " + task.getTitle() + " ***");
-                    
-                    // Execute the task directly without using TaskJob.execute()
-                    executeTask(task);
-                    executedTasks++;
-                      // Handle recurring tasks
-                    if (task.isRecurring()) {
-                        // Fixed: Use scheduleTask instead of scheduleRecurringTask
-                        scheduler.scheduleTask(task);
-                    } else {
-                        // Mark non-recurring tasks as completed
-                        task.setCompleted(true);
-                        taskManager.saveTasks();
-                    }
-                } else {
-                    LOGGER.info("BackgroundTaskRunner: Task " + task.getId() + " not in due window - skipping");
-                }
+
+        List<Task> tasks;
+        try {
+            tasks = ScanWatermark.update(watermarkFile, state -> claimDue(state, now));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "BackgroundTaskRunner: Could not update " + watermarkFile, e);
+            return 0;
+        }
+        // highest priority first, earliest due first within a level (the sort is stable)
+        tasks.sort(Comparator.comparingInt((Task t) -> -t.getPriority().getLevel()));
+        LOGGER.info("BackgroundTaskRunner: Found " + tasks.size() + " tasks due since the last check");
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        for (Task task : tasks) {
+            LOGGER.info("BackgroundTaskRunner: Checking task " + task.getId() + ": " + task.getTitle());
+            LOGGER.info("BackgroundTaskRunner: Task due time: " + runAt(task));
+            LOGGER.info("BackgroundTaskRunner: Task has email: " + (task.getEmail() != null ? task.getEmail() : "NO EMAIL"));
+            
+            if (task.hasDependencies() && !DependencyTracker.isReady(task)) {
+                // DependencyTracker starts it once its predecessors succeed
+                LOGGER.info("BackgroundTaskRunner: Task " + task.getId() + " is waiting for " + task.getDependsOn());
+                continue;
+            }
+            // runs missed by more than the late window are replayed by their catch-up policy
+            // first; a one-time task that policy skipped is not run
+            CompletableFuture<Void> replay = CatchUpEngine.getInstance().recover(task, late, this::executeTask);
+            if (replay == null) {
+                LOGGER.info("BackgroundTaskRunner: *** EXECUTING TASK: " + task.getTitle() + " ***");
+                running.add(runOccurrences(task, now));
             } else {
-                if (task.isCompleted()) {
-                    LOGGER.info("BackgroundTaskRunner: Task " + task.getId() + " is completed - skipping");
-                }
-                if (task.getDueDate() == null) {
-                    LOGGER.info("BackgroundTaskRunner: Task " + task.getId() + " has no due date - skipping");
-                }
+                running.add(replay.thenCompose(v -> isDue(task, now) && !runAt(task).isBefore(late)
+                        ? runOccurrences(task, now) : CompletableFuture.completedFuture(null)));
             }
+            executedTasks++;
+        }
+
+        // the process exits after the check, so wait for the commands and their follow-up
+        CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).join();
+        try {
+            ScanWatermark.update(watermarkFile, state -> {
+                tasks.forEach(task -> state.release(task.getId()));
+                return null;
+            });
+        } catch (IOException e) {
+            // the next check takes them again if they are still open and due
+            LOGGER.log(Level.WARNING, "BackgroundTaskRunner: Could not release the tasks of this check", e);
         }
-        
         return executedTasks;
     }
-    
-    // executes a task directly
-    private void executeTask(Task task) {
-        try {
-            // Create output directory if it doesn't exist
-            File outputDir = new File(OUTPUT_DIR);
-            if (!outputDir.exists()) {
-                outputDir.mkdirs();
+
+    // takes the open tasks that came due since the last check, at their retry time if a
+    // retry is pending, those marked behind the watermark and those a check that died
+    // left behind; then moves the watermark to now. Tasks another running check has
+    // taken are left to it
+    private List<Task> claimDue(ScanWatermark state, LocalDateTime now) {
+        // a task marked behind was saved by another process after this one loaded the table
+        if (state.hasBehind()) {
+            taskManager.refresh();
+        }
+        Map<Integer, Task> due = new LinkedHashMap<>();
+        for (Task task : taskManager.getTasksDueAfter(state.getWatermark(), now)) {
+            if (task.getRetryAt() == null) {
+                due.put(task.getId(), task);
             }
+        }
+        for (Task task : taskManager.getRetriesDueAfter(state.getWatermark(), now)) {
+            due.put(task.getId(), task);
+        }
+        for (int id : state.takeBehind()) {
+            Task task = taskManager.getTaskById(id);
+            if (task != null && isDue(task, now)) {
+                LOGGER.info("BackgroundTaskRunner: Task " + id + " was given a due time before the last check");
+                due.putIfAbsent(id, task);
+            }
+        }
+        for (int id : state.takeOrphanedClaims()) {
+            Task task = taskManager.getTaskById(id);
+            if (task != null && isDue(task, now)) {
+                LOGGER.info("BackgroundTaskRunner: Task " + id + " was left by a check that did not finish");
+                due.putIfAbsent(id, task);
+            }
+        }
+        due.keySet().removeIf(state::isClaimed);
+        due.keySet().forEach(state::claim);
+        state.advanceTo(now);
+        return new ArrayList<>(due.values());
+    }
 
-            // Generate output filename with timestamp
-            String timestamp = LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            String outputFile = String.format("%s/task_%d_%s.txt", OUTPUT_DIR, task.getId(), timestamp);
-              // Execute the command
-            ProcessBuilder builder = new ProcessBuilder();
-            String command = task.getCommand();
-              if (command == null || command.trim().isEmpty()) {
-                LOGGER.warning("No command specified for task: " + task.getTitle());
+    // runs the task, and for a series each further occurrence that has come due by now,
+    // one after the other; anything else runs once
+    private CompletableFuture<Void> runOccurrences(Task task, LocalDateTime now) {
+        if (!isDue(task, now)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        LocalDateTime ranAt = runAt(task);
+        return executeTask(task).thenCompose(v -> task.isRecurring() && runAt(task) != null && runAt(task).isAfter(ranAt)
+                ? runOccurrences(task, now)
+                : CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Marks the open tasks that were saved with a due or retry time at or before the
+     * watermark, so the next check takes them although its range starts after it.
+     * Nothing is marked before the first check, whose range is unbounded.
+     */
+    public static void noteDueBeforeWatermark(Collection<Task> tasks) {
+        File file = new File(ScanWatermark.FILE_NAME);
+        try {
+            LocalDateTime watermark = ScanWatermark.read(file).getWatermark();
+            if (watermark == null || tasks.stream().noneMatch(task -> isDue(task, watermark))) {
                 return;
-            }            // Fix path formatting issues - replace missing backslashes in Windows paths
-            // This helps with commands like "echo text > d:pathtofile" where backslashes get lost
-            if (System.getProperty("os.name").toLowerCase().contains("windows")) {
-                // Look for Windows drive letters without proper path separators
-                command = command.replaceAll("([A-Za-z]:)([^\\\\/ ])", "$1\\\\$2");
-                  // Fix paths where backslashes are entirely missing (e.g., d:tascSavedTaskSchedular-mainfile.txt)
-                command = command.replaceAll("([A-Za-z]:\\\\?)(tascSaved)(TaskSchedular-main)", "$1tascSaved\\\\TaskSchedular-main");
-                
-                // Add backslashes between key path components based on known patterns
-                command = command.replaceAll("([A-Za-z]:\\\\)tascSaved\\\\TaskSchedular-main([^\\\\])", "$1tascSaved\\\\TaskSchedular-main\\\\$2");
-                
-                LOGGER.info("Executing Windows command with fixed paths: " + command);
-                builder.command("cmd.exe", "/c", command);
-            } else {
-                builder.command("sh", "-c", command);
             }
+            ScanWatermark.update(file, state -> {
+                for (Task task : tasks) {
+                    if (state.getWatermark() != null && isDue(task, state.getWatermark())) {
+                        state.markBehind(task.getId());
+                    }
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "BackgroundTaskRunner: Could not mark tasks due before the last check", e);
+        }
+    }
+
+    private static boolean isDue(Task task, LocalDateTime now) {
+        return !task.isCompleted() && runAt(task) != null && !runAt(task).isAfter(now);
+    }
+
+    // a task waiting for a retry runs at its retry time
+    private static LocalDateTime runAt(Task task) {
+        return task.getRetryAt() != null ? task.getRetryAt() : task.getDueDate();
+    }
+    
+    // starts a task's command; notification and completion follow when it exits, then
+    // the --after dependents it unblocked run the same way before the future completes
+    private CompletableFuture<Void> executeTask(Task task) {
+        String command = task.getCommand();
+        if (command == null || command.trim().isEmpty()) {
+            LOGGER.warning("No command specified for task: " + task.getTitle());
+            return CompletableFuture.completedFuture(null);
+        }
+        // Fix path formatting issues - replace missing backslashes in Windows paths
+        // This helps with commands like "echo text > d:pathtofile" where backslashes get lost
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            // Look for Windows drive letters without proper path separators
+            command = command.replaceAll("([A-Za-z]:)([^\\\\/ ])", "$1\\\\$2");
+            // Fix paths where backslashes are entirely missing (e.g., d:tascSavedTaskSchedular-mainfile.txt)
+            command = command.replaceAll("([A-Za-z]:\\\\?)(tascSaved)(TaskSchedular-main)", "$1tascSaved\\\\TaskSchedular-main");
             
-            // Set working directory to current directory
-            builder.directory(new File(System.getProperty("user.dir")));
-            
-            // Redirect output to file
-            builder.redirectOutput(new File(outputFile));
-            builder.redirectErrorStream(true);
-            
-            LOGGER.info("Executing command: " + command);
-            Process process = builder.start();
-            int exitCode = process.waitFor();
-            
-            if (exitCode == 0) {
-                LOGGER.info("Task executed successfully. Output saved to: " + outputFile);
-            } else {
-                LOGGER.warning("Task execution completed with exit code: " + exitCode);
-            }            // Handle email notification if configured
-            String taskEmail = task.getEmail();
-            String userEmail = ConfigManager.getEmail();
-            String emailToUse = taskEmail != null ? taskEmail : userEmail;
+            // Add backslashes between key path components based on known patterns
+            command = command.replaceAll("([A-Za-z]:\\\\)tascSaved\\\\TaskSchedular-main([^\\\\])", "$1tascSaved\\\\TaskSchedular-main\\\\$2");
             
-            if (emailToUse != null && !emailToUse.trim().isEmpty()) {
-                try {
-                    System.out.println("Sending email notification for task: " + task.getTitle());
-                    EmailNotifier.sendTaskReminder(emailToUse, task, Duration.ofMinutes(0));
-                    System.out.println("Email notification sent successfully to: " + emailToUse);
-                } catch (Exception e) {
-                    System.out.println("Failed to send email notification: " + e.getMessage());
-                }
-            } else {
-                System.out.println("No email configured for notifications.");
+            LOGGER.info("Executing Windows command with fixed paths: " + command);
+        }
+
+        // a dependent without a due date was meant to start now
+        long scheduledAt = task.getDueDate() != null
+                ? task.getDueDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : System.currentTimeMillis();
+        int occurrence = task.getOccurrencesGenerated();
+        return ExecutionService.getInstance().execute(task, command, scheduledAt)
+                .handle((result, error) -> {
+                    if (error != null) {
+                        LOGGER.log(Level.SEVERE, "Error executing task: " + task.getTitle(), error);
+                    } else if (result.isCancelled()) {
+                        LOGGER.info("BackgroundTaskRunner: Task " + task.getId() + " was cancelled, leaving it open");
+                        return null;
+                    }
+                    // a recurring task moves on to its next occurrence, which a later check
+                    // runs; a one-time task is marked completed
+                    Task saved = taskManager.updateTask(task.getId(),
+                            current -> TaskJob.finishRun(current, result, error, occurrence));
+                    if (saved == null || saved.getRetryAt() != null) {
+                        // deleted while it ran, or left open for a later check to run once the retry time comes
+                        return null;
+                    }
+                    if (error == null) {
+                        notifyByEmail(saved);
+                    }
+                    return saved;
+                })
+                .thenCompose(saved -> saved != null
+                        ? DependencyTracker.onFinished(saved, this::executeTask)
+                        : CompletableFuture.completedFuture(null));
+    }
+
+    private void notifyByEmail(Task task) {
+        // Handle email notification if configured
+        String taskEmail = task.getEmail();
+        String userEmail = ConfigManager.getEmail();
+        String emailToUse = taskEmail != null ? taskEmail : userEmail;
+        
+        if (emailToUse != null && !emailToUse.trim().isEmpty()) {
+            try {
+                System.out.println("Sending email notification for task: " + task.getTitle());
+                EmailNotifier.sendTaskReminder(emailToUse, task, Duration.ofMinutes(0));
+                System.out.println("Email notification sent successfully to: " + emailToUse);
+            } catch (Exception e) {
+                System.out.println("Failed to send email notification: " + e.getMessage());
             }
-            
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error executing task: " + task.getTitle(), e);
+        } else {
+            System.out.println("No email configured for notifications.");
         }
     }
 }
@@ -17,11 +17,12 @@ public class CommandCompleter implements Completer {
         "add", "list", "delete", "complete", "due", "tag", "untag", 
         "reminder", "email-notification", "help", "exit", "clear", 
         "refresh", "cls", "menu", "suggestions", "settings", "debug",
-        "unicode-info"
+        "unicode-info", "pool", "limit", "run", "cancel", "after", "history", "stats", "tail",
+        "occurrences", "skip"
     );
     
     private final List<String> listCommands = Arrays.asList(
-        "upcoming", "overdue", "today", "--tag", "--priority"
+        "upcoming", "overdue", "today", "--tag", "--priority", "where", "order"
     );
     
     private final List<String> recurrenceTypes = Arrays.asList(
@@ -75,7 +76,11 @@ public class CommandCompleter implements Completer {
                 }
             } else if (words[0].equals("delete") || words[0].equals("complete") || 
                       words[0].equals("due") || words[0].equals("tag") || 
-                      words[0].equals("untag") || words[0].equals("reminder")) {
+                      words[0].equals("untag") || words[0].equals("reminder") ||
+                      words[0].equals("run") || words[0].equals("cancel") ||
+                      words[0].equals("after") ||
+                      words[0].equals("history") || words[0].equals("tail") ||
+                      words[0].equals("occurrences") || words[0].equals("skip")) {
                 // Complete task IDs for these commands
                 for (Task task : taskManager.getTasks()) {
                     String id = String.valueOf(task.getId());
@@ -95,7 +100,8 @@ public class CommandCompleter implements Completer {
             } else if (words[0].equals("add")) {
                 // For add command, suggest some common flags/parameters
                 List<String> addParams = Arrays.asList(
-                    "--priority", "--due", "--tag", "--recur", "--notify-email", "--command"
+                    "--priority", "--due", "--tag", "--recur", "--notify-email", "--command", "--timeout",
+                    "--retry", "--backoff", "--jitter", "--after", "--catch-up"
                 );
                 for (String param : addParams) {
                     if (param.startsWith(words[1])) {
@@ -5,14 +5,22 @@ import java.time.*;
 import java.time.format.*;
 import java.time.temporal.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.*;
 import java.util.stream.*;
 
 import org.jline.reader.*;
 import org.jline.terminal.*;
 
+import com.taskscheduler.exec.AdmissionController;
+import com.taskscheduler.exec.DependencyTracker;
+import com.taskscheduler.daemon.TaskDaemon;
+import com.taskscheduler.exec.ExecutionService;
+import com.taskscheduler.exec.OutputBuffer;
 import com.taskscheduler.nlp.NLPProcessor;
 import com.taskscheduler.nlp.NLPProcessor.ProcessedCommand;
+import com.taskscheduler.query.TaskQuery;
+import com.taskscheduler.store.RunHistory;
 
 public class CommandHandler {
     private static final Logger logger = Logger.getLogger(CommandHandler.class.getName());
@@ -21,29 +29,9 @@ public class CommandHandler {
     private final CommandLogger commandLogger;
     private final CommandPatternAnalyzer patternAnalyzer;
     private final LineReader reader;
+    private final Terminal terminal;
     private final NLPProcessor nlpProcessor;    
     
-    private static final DateTimeFormatter[] DATE_FORMATTERS = {
-        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"),
-        DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm"),
-        DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm"),
-        DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"),
-        new DateTimeFormatterBuilder()
-            .appendPattern("HH:mm")
-            .parseDefaulting(ChronoField.YEAR, LocalDateTime.now().getYear())
-            .parseDefaulting(ChronoField.MONTH_OF_YEAR, LocalDateTime.now().getMonthValue())
-            .parseDefaulting(ChronoField.DAY_OF_MONTH, LocalDateTime.now().getDayOfMonth())
-            .toFormatter(),
-        new DateTimeFormatterBuilder()
-            .appendPattern("yyyy-MM-dd")
-            .optionalStart()
-            .appendPattern(" HH:mm")
-            .optionalEnd()
-            .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
-            .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
-            .toFormatter()
-    };
-
     public CommandHandler(TaskManager taskManager) {
         this.taskManager = taskManager;
         this.reminderManager = new ReminderManager(taskManager);
@@ -52,7 +40,7 @@ public class CommandHandler {
         this.nlpProcessor = new NLPProcessor();
         
         try {
-            Terminal terminal = TerminalBuilder.builder()
+            this.terminal = TerminalBuilder.builder()
                 .system(true)
                 .jansi(true)
                 .build();
@@ -118,6 +106,9 @@ public class CommandHandler {
             reminderManager.shutdown();
             return;
         }
+
+        // another process may have changed the store since the last command
+        QuartzScheduler.getInstance().syncWithStore();
         
         // Add new menu command to launch the interactive UI
         if (command.trim().equalsIgnoreCase("menu")) {
@@ -199,15 +190,31 @@ public class CommandHandler {
                 // Display debug information including Unicode support
                 System.out.println("\n" + com.taskscheduler.ui.Colors.CYAN + "Debug Information:" + com.taskscheduler.ui.Colors.RESET);
                 System.out.println(com.taskscheduler.ui.Icons.getUnicodeInfo());
-            } else if (command.startsWith("add ")) {
-                String taskPart = command.substring(4).trim();
-                String[] parts = taskPart.split(" --");
-                String[] modifiedParts = new String[parts.length];
-                modifiedParts[0] = parts[0];
-                for (int i = 1; i < parts.length; i++) {
-                    modifiedParts[i] = "--" + parts[i];
+                System.out.println("Task store (" + taskManager.getCommitPolicy() + "): " + taskManager.getCommitStats());
+            } else if (command.equalsIgnoreCase("pool")) {
+                System.out.println("Task execution: " + ExecutionService.getInstance().getAdmission().getStats());
+                System.out.println("Start lag by priority: " + ExecutionService.getInstance().getLag());
+                for (ExecutionService.Execution execution : ExecutionService.getInstance().getExecutions()) {
+                    System.out.println("  " + execution);
                 }
-                handleAddTask(modifiedParts[0], modifiedParts);            } else if (command.equalsIgnoreCase("list")) {
+            } else if (command.toLowerCase().startsWith("tail ")) {
+                handleTail(Integer.parseInt(command.substring(5).trim()));
+            } else if (command.toLowerCase().startsWith("history ")) {
+                handleHistory(command.substring(8).trim());
+            } else if (command.toLowerCase().startsWith("occurrences ")) {
+                handleOccurrences(command.substring(12).trim());
+            } else if (command.toLowerCase().startsWith("skip ")) {
+                handleSkip(command.substring(5).trim());
+            } else if (command.equalsIgnoreCase("stats") || command.toLowerCase().startsWith("stats ")) {
+                handleStats(command.substring(5).trim());
+            } else if (command.toLowerCase().startsWith("run ")) {
+                handleRun(Integer.parseInt(command.substring(4).trim()));
+            } else if (command.toLowerCase().startsWith("cancel ")) {
+                handleCancel(Integer.parseInt(command.substring(7).trim()));
+            } else if (command.toLowerCase().startsWith("limit ")) {
+                handleLimit(command.substring(6).trim());
+            } else if (command.startsWith("add ")) {
+                handleAddTask(command.substring(4).trim());            } else if (command.equalsIgnoreCase("list")) {
                 com.taskscheduler.ui.UIManager.displayTasksTable(taskManager.getTasks());
             } else if (command.equalsIgnoreCase("list upcoming")) {
                 listUpcomingTasks();
@@ -215,7 +222,12 @@ public class CommandHandler {
                 listOverdueTasks();
             } else if (command.startsWith("list --tag ")) {
                 String tag = command.substring(11).toLowerCase();
-                listTasksByTag(tag);            } else if (command.startsWith("view ")) {
+                listTasksByTag(tag);
+            } else if (command.toLowerCase().matches("list\\s+(where|order\\s+by|limit)\\b.*")) {
+                listTasksByQuery(command.substring(4).trim());            } else if (command.matches("view\\s+\\d+\\s+output(\\s+\\d+)?")) {
+                String[] parts = command.split("\\s+");
+                handleViewOutput(Integer.parseInt(parts[1]), parts.length > 3 ? Integer.parseInt(parts[3]) : 1);
+            } else if (command.startsWith("view ")) {
                 int taskId = Integer.parseInt(command.substring(5));
                 Task task = taskManager.getTaskById(taskId);
                 if (task != null) {
@@ -226,21 +238,21 @@ public class CommandHandler {
             } else if (command.startsWith("delete ")) {
                 int taskId = Integer.parseInt(command.substring(7));
                 Task task = taskManager.getTaskById(taskId);
-                if (task != null) {
-                    taskManager.deleteTask(taskId);
-                    com.taskscheduler.ui.UIManager.displaySuccess("Task deleted: \"" + task.getTitle() + "\"");
-                } else {
+                if (task == null) {
                     com.taskscheduler.ui.UIManager.displayError("Task not found with ID: " + taskId);
+                } else if (taskManager.deleteTask(taskId)) {
+                    com.taskscheduler.ui.UIManager.displaySuccess("Task deleted: \"" + task.getTitle() + "\"");
                 }
             } else if (command.startsWith("complete ")) {
                 int taskId = Integer.parseInt(command.substring(9));
                 Task task = taskManager.getTaskById(taskId);
-                if (task != null) {
-                    completeTask(taskId);
-                    com.taskscheduler.ui.UIManager.displaySuccess("Task completed: \"" + task.getTitle() + "\"");
-                } else {
+                if (task == null) {
                     com.taskscheduler.ui.UIManager.displayError("Task not found with ID: " + taskId);
+                } else if (completeTask(taskId)) {
+                    com.taskscheduler.ui.UIManager.displaySuccess("Task completed: \"" + task.getTitle() + "\"");
                 }
+            } else if (command.startsWith("after ")) {
+                handleAfter(command.substring(6).trim());
             } else if (command.startsWith("due ")) {
                 String[] parts = command.split(" ", 3);
                 if (parts.length < 3) {
@@ -298,87 +310,152 @@ public class CommandHandler {
         }
     }    private void listUpcomingTasks() {
         LocalDateTime now = LocalDateTime.now();
-        List<Task> upcomingTasks = taskManager.getTasks().stream()
-            .filter(task -> !task.isCompleted() && task.getDueDate() != null && 
-                (task.getDueDate().isAfter(now) || 
-                 task.getDueDate().toLocalDate().equals(now.toLocalDate())))
-            .sorted((t1, t2) -> t1.getDueDate().compareTo(t2.getDueDate()))
-            .collect(Collectors.toList());
+        // includes tasks due earlier today, as before
+        List<Task> upcomingTasks = taskManager.getUpcomingTasks(now.toLocalDate().atStartOfDay());
 
         System.out.println(com.taskscheduler.ui.Banner.createSubHeader("Upcoming Tasks", com.taskscheduler.ui.Icons.UPCOMING));
         com.taskscheduler.ui.UIManager.displayTasksTable(upcomingTasks);
     }
 
     private void listOverdueTasks() {
-        LocalDateTime now = LocalDateTime.now();
-        List<Task> overdueTasks = taskManager.getTasks().stream()
-            .filter(task -> !task.isCompleted() && task.getDueDate() != null && task.getDueDate().isBefore(now))
-            .sorted((t1, t2) -> t1.getDueDate().compareTo(t2.getDueDate()))
-            .collect(Collectors.toList());
+        List<Task> overdueTasks = taskManager.getOverdueTasks(LocalDateTime.now());
 
         System.out.println(com.taskscheduler.ui.Banner.createSubHeader("Overdue Tasks", com.taskscheduler.ui.Icons.OVERDUE));
         com.taskscheduler.ui.UIManager.displayTasksTable(overdueTasks);
     }
 
     private void listTasksByTag(String tag) {
-        List<Task> taggedTasks = taskManager.getTasks().stream()
-            .filter(task -> task.hasTag(tag))
-            .collect(Collectors.toList());
+        List<Task> taggedTasks = taskManager.getTasksByTag(tag);
             
         System.out.println(com.taskscheduler.ui.Banner.createSubHeader("Tasks with tag: " + tag, com.taskscheduler.ui.Icons.TAG));
         com.taskscheduler.ui.UIManager.displayTasksTable(taggedTasks);
     }
 
+    private void listTasksByQuery(String queryText) {
+        TaskQuery query = TaskQuery.parse(queryText);
+        List<Task> matches = taskManager.query(query);
+
+        System.out.println(com.taskscheduler.ui.Banner.createSubHeader("Tasks: " + queryText, com.taskscheduler.ui.Icons.SEARCH));
+        com.taskscheduler.ui.UIManager.displayTasksTable(matches);
+    }
+
     private void addTagsToTask(int taskId, String[] tags) {
-        for (Task task : taskManager.getTasks()) {
-            if (task.getId() == taskId) {
-                for (String tag : tags) {
-                    task.addTag(tag);
-                }
-                taskManager.saveTasks();
-                System.out.println("Tags added to task " + taskId + ": " + String.join(", ", tags));
-                return;
-            }
+        Task task = taskManager.getTaskById(taskId);
+        if (task == null) {
+            System.out.println("Task not found.");
+            return;
         }
-        System.out.println("Task not found.");
+        for (String tag : tags) {
+            task.addTag(tag);
+        }
+        if (!taskManager.saveTask(task)) {
+            return;
+        }
+        System.out.println("Tags added to task " + taskId + ": " + String.join(", ", tags));
     }
 
     private void removeTagsFromTask(int taskId, String[] tags) {
-        for (Task task : taskManager.getTasks()) {
-            if (task.getId() == taskId) {
-                for (String tag : tags) {
-                    task.removeTag(tag);
-                }
-                taskManager.saveTasks();
-                System.out.println("Tags removed from task " + taskId + ": " + String.join(", ", tags));
-                return;
+        Task task = taskManager.getTaskById(taskId);
+        if (task == null) {
+            System.out.println("Task not found.");
+            return;
+        }
+        for (String tag : tags) {
+            task.removeTag(tag);
+        }
+        if (!taskManager.saveTask(task)) {
+            return;
+        }
+        System.out.println("Tags removed from task " + taskId + ": " + String.join(", ", tags));
+    }
+
+
+
+    // false if the task is gone or the change was not saved
+    private boolean completeTask(int taskId) {
+        if (!taskManager.completeTask(taskId)) {
+            return false;
+        }
+        Task task = taskManager.getTaskById(taskId);
+        if (task != null) {
+            if (!task.isCompleted()) {
+                // a series is now due at its next occurrence
+                QuartzScheduler.getInstance().scheduleTask(task);
             }
+            TaskJob.runDependents(task);
         }
-        System.out.println("Task not found.");
+        return true;
     }
 
+    // occurrences <id> [n]: the next n occurrences of a recurring task and the latest done ones
+    private void handleOccurrences(String args) {
+        String[] parts = args.split("\\s+");
+        int id = Integer.parseInt(parts[0]);
+        int limit = parts.length > 1 ? Integer.parseInt(parts[1]) : 10;
+        Task task = taskManager.getTaskById(id);
+        if (task == null || !task.isRecurring()) {
+            com.taskscheduler.ui.UIManager.displayError("No recurring task with ID: " + id);
+            return;
+        }
+        com.taskscheduler.ui.UIManager.displayOccurrences(task, task.upcomingOccurrences(limit));
+    }
 
+    // skip <id> [n]: skips the n-th upcoming occurrence, default the pending one
+    private void handleSkip(String args) {
+        String[] parts = args.split("\\s+");
+        int id = Integer.parseInt(parts[0]);
+        int n = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+        Task task = taskManager.getTaskById(id);
+        if (task == null || !task.isRecurring()) {
+            com.taskscheduler.ui.UIManager.displayError("No recurring task with ID: " + id);
+            return;
+        }
+        if (!taskManager.skipOccurrence(id, n)) {
+            com.taskscheduler.ui.UIManager.displayError("Occurrence " + n + " of task " + id + " was not skipped.");
+            return;
+        }
+        task = taskManager.getTaskById(id);
+        if (task.isCompleted()) {
+            com.taskscheduler.ui.UIManager.displaySuccess("Skipped the last occurrence of task " + id);
+            return;
+        }
+        QuartzScheduler.getInstance().scheduleTask(task);
+        com.taskscheduler.ui.UIManager.displaySuccess("Skipped occurrence " + n + " of task " + id + ", next due "
+                + task.getDueDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
+    }
 
-    private void completeTask(int taskId) {
-        taskManager.completeTask(taskId);
+    // after <id> <id>[,<id>...] | after <id> none
+    private void handleAfter(String args) {
+        String[] parts = args.split("\\s+", 2);
+        if (parts.length < 2) {
+            System.out.println("Invalid command. Usage: after <id> <id>[,<id>...] | after <id> none");
+            return;
+        }
+        int taskId = Integer.parseInt(parts[0]);
+        Set<Integer> after = parts[1].trim().equalsIgnoreCase("none")
+                ? new HashSet<>() : TaskCommandParser.parseIds(parts[1]);
+        if (!taskManager.setDependencies(taskId, after)) {
+            return;
+        }
+        Task task = taskManager.getTaskById(taskId);
+        QuartzScheduler.getInstance().startIfReady(task);
+        com.taskscheduler.ui.UIManager.displaySuccess(after.isEmpty()
+                ? "Task " + taskId + " no longer waits for other tasks"
+                : "Task " + taskId + " runs after task(s) " + task.getDependsOn());
     }
 
     private void setDueDate(int taskId, String dueDateStr) {
         LocalDateTime dueDate = null;
 
-        // Try each formatter until one works
-        for (DateTimeFormatter formatter : DATE_FORMATTERS) {
-            try {
-                dueDate = LocalDateTime.parse(dueDateStr, formatter);
-                // Validate the date components
-                validateDate(dueDate);
-                break;
-            } catch (DateTimeParseException e) {
-                // Continue with next formatter
-            } catch (DateTimeException e) {
-                System.out.println("Invalid date: " + e.getMessage());
-                return;
-            }
+        try {
+            dueDate = TaskCommandParser.parseDate(dueDateStr);
+            // Validate the date components
+            TaskCommandParser.validateDate(dueDate);
+        } catch (DateTimeParseException e) {
+            dueDate = null;
+        } catch (DateTimeException e) {
+            System.out.println("Invalid date: " + e.getMessage());
+            return;
         }
 
         if (dueDate == null) {
@@ -391,89 +468,49 @@ public class CommandHandler {
             return;
         }
 
-        for (Task task : taskManager.getTasks()) {
-            if (task.getId() == taskId) {
-                task.setDueDate(dueDate);
-                taskManager.saveTasks();
-                System.out.println("Due date set for task " + taskId + ": " + 
-                    dueDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
-                return;
-            }
-        }
-        System.out.println("Task not found.");
-    }
-
-    private void validateDate(LocalDateTime date) {
-        // Check if the date is in the past
-        if (date.isBefore(LocalDateTime.now())) {
-            throw new DateTimeException("Cannot set due date in the past");
-        }
-
-        // Check if the year is reasonable (e.g., not too far in the future)
-        int currentYear = LocalDateTime.now().getYear();
-        if (date.getYear() > currentYear + 10) {
-            throw new DateTimeException("Due date cannot be more than 10 years in the future");
+        Task task = taskManager.getTaskById(taskId);
+        if (task == null) {
+            System.out.println("Task not found.");
+            return;
         }
-
-        // Validate month (1-12)
-        if (date.getMonthValue() < 1 || date.getMonthValue() > 12) {
-            throw new DateTimeException("Invalid month: " + date.getMonthValue());
+        if (task.isRecurring()) {
+            // moves this occurrence only; the rest of the series keeps its times
+            task.moveOccurrence(dueDate);
+        } else {
+            task.setDueDate(dueDate);
         }
-
-        // Validate day of month
-        int maxDays = date.getMonth().length(date.toLocalDate().isLeapYear());
-        if (date.getDayOfMonth() < 1 || date.getDayOfMonth() > maxDays) {
-            throw new DateTimeException("Invalid day of month: " + date.getDayOfMonth() + 
-                " for month " + date.getMonth());
+        if (!taskManager.saveTask(task)) {
+            return;
         }
-
-        // Validate hour (0-23)
-        if (date.getHour() < 0 || date.getHour() > 23) {
-            throw new DateTimeException("Invalid hour: " + date.getHour());
-        }
-
-        // Validate minute (0-59)
-        if (date.getMinute() < 0 || date.getMinute() > 59) {
-            throw new DateTimeException("Invalid minute: " + date.getMinute());
+        if (!task.isCompleted()) {
+            QuartzScheduler.getInstance().scheduleTask(task);
         }
+        System.out.println("Due date set for task " + taskId + ": " + 
+            dueDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
     }
 
     private void setReminderTime(int taskId, String timeStr) {
-        Duration reminderTime = parseReminderTime(timeStr);
+        Duration reminderTime = TaskCommandParser.parseReminderTime(timeStr);
         if (reminderTime == null) {
             System.out.println("Invalid reminder time format. Use format like '30m' for 30 minutes or '2h' for 2 hours.");
             return;
         }
 
-        for (Task task : taskManager.getTasks()) {
-            if (task.getId() == taskId) {
-                if (task.getDueDate() == null) {
-                    System.out.println("Cannot set reminder for task without due date.");
-                    return;
-                }
-                task.setReminderTime(reminderTime);
-                reminderManager.scheduleReminder(task, reminderTime);
-                taskManager.saveTasks();
-                System.out.println("Reminder set for task " + taskId + ": " + formatDuration(reminderTime) + " before due time");
-                return;
-            }
+        Task task = taskManager.getTaskById(taskId);
+        if (task == null) {
+            System.out.println("Task not found.");
+            return;
         }
-        System.out.println("Task not found.");
-    }
-
-    private Duration parseReminderTime(String timeStr) {
-        try {
-            if (timeStr.endsWith("h")) {
-                int hours = Integer.parseInt(timeStr.substring(0, timeStr.length() - 1));
-                return Duration.ofHours(hours);
-            } else if (timeStr.endsWith("m")) {
-                int minutes = Integer.parseInt(timeStr.substring(0, timeStr.length() - 1));
-                return Duration.ofMinutes(minutes);
-            }
-        } catch (NumberFormatException e) {
-            return null;
+        if (task.getDueDate() == null) {
+            System.out.println("Cannot set reminder for task without due date.");
+            return;
+        }
+        task.setReminderTime(reminderTime);
+        if (!taskManager.saveTask(task)) {
+            return;
         }
-        return null;
+        reminderManager.scheduleReminder(task, reminderTime);
+        System.out.println("Reminder set for task " + taskId + ": " + formatDuration(reminderTime) + " before due time");
     }
 
     private String formatDuration(Duration duration) {
@@ -488,7 +525,7 @@ public class CommandHandler {
     }
 
     private void handleEmailNotification(String email) {
-        if (!isValidEmail(email)) {
+        if (!TaskCommandParser.isValidEmail(email)) {
             System.out.println("Invalid email format. Please provide a valid email address.");
             return;
         }
@@ -501,149 +538,167 @@ public class CommandHandler {
         }
     }
 
-    private boolean isValidEmail(String email) {
-        return email.matches("^[\\w.-]+@[\\w.-]+\\.[a-zA-Z]{2,}$");
+    // runs the task's command now, the same way a scheduled run would, and waits for it
+    private void handleRun(int id) {
+        Task task = taskManager.getTaskById(id);
+        if (task == null) {
+            System.out.println("Task " + id + " not found.");
+            return;
+        }
+        if (task.getCommand() == null || task.getCommand().trim().isEmpty()) {
+            System.out.println("Task " + id + " has no command to run.");
+            return;
+        }
+        // TaskJob.run would return without running it
+        if (task.hasDependencies() && !DependencyTracker.isReady(task)) {
+            if (task.getBlockedBy() != 0) {
+                System.out.println("Task " + id + " is blocked, task " + task.getBlockedBy() + " failed.");
+            } else {
+                System.out.println("Task " + id + " is waiting for " + task.getDependsOn() + " to succeed.");
+            }
+            return;
+        }
+        com.taskscheduler.ui.UIManager.displayInfo("Running the command of task " + id);
+        task.execute();
+        com.taskscheduler.ui.UIManager.displaySuccess("Task " + id + " has finished, see history " + id);
     }
 
-    private boolean isValidRecurrenceType(String type) {
-        return type != null && (type.equalsIgnoreCase("daily") || 
-                              type.equalsIgnoreCase("weekly") || 
-                              type.equalsIgnoreCase("monthly"));
-    }    private LocalDateTime parseDate(String dateStr) {
-        for (DateTimeFormatter formatter : DATE_FORMATTERS) {
-            try {
-                LocalDateTime result = LocalDateTime.parse(dateStr.trim(), formatter);
-                
-                // Special handling for time-only format (HH:mm)
-                // If the parsed time is in the past, assume it's for tomorrow
-                if (dateStr.trim().matches("\\d{1,2}:\\d{2}") && result.isBefore(LocalDateTime.now())) {
-                    result = result.plusDays(1);
-                }
-                
-                return result;
-            } catch (DateTimeParseException e) {
-                // Try next formatter
-            }
+    // stops the task's queued or running command, including everything it started
+    private void handleCancel(int id) {
+        if (taskManager.getTaskById(id) == null) {
+            System.out.println("Task " + id + " not found.");
+            return;
         }
-        throw new DateTimeParseException("Invalid date format", dateStr, 0);
+        if (ExecutionService.getInstance().cancel(id) == 0) {
+            System.out.println("Task " + id + " is not running.");
+            return;
+        }
+        com.taskscheduler.ui.UIManager.displaySuccess("Cancelled the command of task " + id);
     }
 
-    private void handleAddTask(String taskTitle, String[] parts) {
+    // prints the running command's output as it is written, until it exits or Ctrl+C
+    private void handleTail(int id) {
+        OutputBuffer output = ExecutionService.getInstance().tail(id);
+        if (output == null) {
+            System.out.println("Task " + id + " is not running.");
+            return;
+        }
+        com.taskscheduler.ui.UIManager.displayInfo("Following the output of task " + id + ", Ctrl+C to stop");
+        AtomicBoolean stopped = new AtomicBoolean();
+        Terminal.SignalHandler previous = terminal.handle(Terminal.Signal.INT, signal -> stopped.set(true));
         try {
-            // Extract title and time/date
-            String title;
-            String timeOrDate;
-            
-            // Check if this is a "due" format or "at" format
-            if (taskTitle.contains(" due ")) {
-                String[] dueParts = taskTitle.split(" due ", 2);
-                if (dueParts.length != 2) {
-                    System.out.println("Invalid format. Use: add \"Task Title\" due yyyy-MM-dd HH:mm [options]");
-                    return;
-                }
-                title = dueParts[0];
-                timeOrDate = dueParts[1];
-            } else if (taskTitle.contains(" at ")) {
-                String[] atParts = taskTitle.split(" at ", 2);
-                if (atParts.length != 2) {
-                    System.out.println("Invalid format. Use: add \"Task Title\" at HH:mm [options]");
-                    return;
-                }
-                title = atParts[0];
-                timeOrDate = atParts[1];
-            } else {
-                System.out.println("Invalid format. Use: add \"Task Title\" at HH:mm [options]");
+            output.follow(TaskDaemon.TAIL_LINES, (data, length) -> {
+                System.out.write(data, 0, length);
+                System.out.flush();
+            }, stopped::get);
+        } catch (IOException e) {
+            com.taskscheduler.ui.UIManager.displayError("Output interrupted: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            terminal.handle(Terminal.Signal.INT, previous);
+        }
+        System.out.println();
+        if (output.isClosed()) {
+            com.taskscheduler.ui.UIManager.displayInfo("Task " + id + " finished");
+        }
+    }
+
+    // history <id> [n]
+    private void handleHistory(String args) {
+        String[] parts = args.split("\\s+");
+        int id = Integer.parseInt(parts[0]);
+        int limit = parts.length > 1 ? Integer.parseInt(parts[1]) : 20;
+        Task task = taskManager.getTaskById(id);
+        try {
+            List<RunHistory.Run> runs = ExecutionService.getInstance().getHistory().recent(id, limit);
+            com.taskscheduler.ui.UIManager.displayRunHistory(id, task != null ? task.getTitle() : null, runs);
+        } catch (IOException e) {
+            com.taskscheduler.ui.UIManager.displayError("Could not read the run history: " + e.getMessage());
+        }
+    }
+
+    // view <id> output [n]: the output of the task's n-th latest run, as numbered by history
+    private void handleViewOutput(int id, int n) {
+        try {
+            List<RunHistory.Run> runs = ExecutionService.getInstance().getHistory().recent(id, n);
+            if (runs.size() < n || n < 1) {
+                System.out.println("Task " + id + " has " + runs.size() + " recorded run(s).");
                 return;
             }
-
-            if (title.startsWith("\"") && title.endsWith("\"")) {
-                title = title.substring(1, title.length() - 1);
+            RunHistory.Run run = runs.get(n - 1);
+            if (run.getOutput() == null) {
+                System.out.println("No output was stored for that run.");
+                return;
+            }
+            byte[] output = ExecutionService.getInstance().getOutputs().read(id, run.getOutput());
+            System.out.println(com.taskscheduler.ui.Banner.createSubHeader("Output of task " + id + ", run of "
+                    + RunHistory.formatTime(run.getStartedAt()) + " (" + run.getOutcome() + ")", com.taskscheduler.ui.Icons.COMMAND));
+            System.out.print(new String(output));
+            if (output.length > 0 && output[output.length - 1] != '\n') {
+                System.out.println();
             }
+        } catch (IOException e) {
+            com.taskscheduler.ui.UIManager.displayError("Could not read the output: " + e.getMessage());
+        }
+    }
 
-            LocalDateTime dueDate;
-            try {
-                dueDate = parseDate(timeOrDate);
-            } catch (DateTimeParseException e) {
-                // If timeOrDate is just a time (HH:mm), add today's date
-                if (timeOrDate.matches("\\d{1,2}:\\d{2}")) {
-                    String today = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-                    dueDate = parseDate(today + " " + timeOrDate);
-                } else {
-                    throw e;
-                }
+    // stats [window], e.g. stats 24h
+    private void handleStats(String window) {
+        long since = 0;
+        if (!window.isEmpty()) {
+            Duration duration = TaskCommandParser.parseDuration(window);
+            if (duration == null) {
+                System.out.println("Invalid window: " + window + ". Use e.g. 30m, 24h or 7d");
+                return;
             }
-            validateDate(dueDate);
-
-            Task task = new Task(0, title, false, dueDate);
-
-            // Process additional parameters
-            for (int i = 1; i < parts.length; i++) {
-                String part = parts[i].trim();
-                if (part.startsWith("--command ")) {
-                    String command = part.substring("--command ".length()).trim();
-                    // Remove quotes if present
-                    if (command.startsWith("\"") && command.endsWith("\"")) {
-                        command = command.substring(1, command.length() - 1);
-                    }
-                    System.out.println("Setting command: " + command); // Debug log
-                    task.setCommand(command);
-                } else if (part.startsWith("--recurring ")) {
-                    String type = part.substring("--recurring ".length()).trim();
-                    if (isValidRecurrenceType(type)) {
-                        task.setRecurring(true);
-                        task.setRecurrenceType(type);
-                    }
-                } else if (part.startsWith("--count ")) {
-                    int count = Integer.parseInt(part.substring("--count ".length()).trim());
-                    task.setRecurrenceCount(count);
-                } else if (part.startsWith("--end ")) {
-                    String endDate = part.substring("--end ".length()).trim();
-                    task.setRecurrenceEnd(parseDate(endDate));
-                } else if (part.startsWith("--reminder ")) {
-                    String reminderTime = part.substring("--reminder ".length()).trim();
-                    task.setReminderTime(parseReminderTime(reminderTime));
-                } else if (part.startsWith("--tag ")) {
-                    String[] tags = part.substring("--tag ".length()).trim().split("\\s+");
-                    for (String tag : tags) {
-                        task.addTag(tag);
-                    }                } else if (part.startsWith("--email ")) {
-                    String email = part.substring("--email ".length()).trim();
-                    if (isValidEmail(email)) {
-                        task.setEmail(email);
-                    }
-                } else if (part.equals("--notify-email")) {
-                    // Get the default email from config and set it for this task
-                    String defaultEmail = ConfigManager.getEmail();
-                    if (defaultEmail != null && !defaultEmail.isEmpty()) {
-                        task.setEmail(defaultEmail);
-                        System.out.println("Email notification will be sent to: " + defaultEmail);
-                    } else {
-                        System.out.println("Warning: Email notification requested but no default email is set.");
-                        System.out.println("Use 'email-notification <your-email>' to set a default email address.");
-                    }                } else if (part.startsWith("--priority ")) {
-                    String priorityStr = part.substring("--priority ".length()).trim();
-                    try {
-                        Priority priority = Priority.valueOf(priorityStr.toUpperCase());
-                        task.setPriority(priority);
-                        System.out.println("Setting priority: " + priority.getDisplayName());
-                    } catch (IllegalArgumentException e) {
-                        System.out.println("Invalid priority: " + priorityStr + ". Valid values: low, medium, high, urgent, critical");
-                    }
-                } else if (part.startsWith("--") && !part.contains(" ")) {
-                    // Handle standalone tags like --work, --personal, --urgent, etc.
-                    String tag = part.substring(2); // Remove the --
-                    if (!tag.isEmpty() && !isKnownParameter(tag)) {
-                        task.addTag(tag);
-                        System.out.println("Adding tag: " + tag);
-                    }
-                }
+            since = System.currentTimeMillis() - duration.toMillis();
+        }
+        try {
+            List<RunHistory.Summary> summaries = ExecutionService.getInstance().getHistory().summarize(since);
+            com.taskscheduler.ui.UIManager.displayRunStats(window.isEmpty() ? "Runs per task" : "Runs per task, last " + window,
+                    summaries, id -> {
+                        Task task = taskManager.getTaskById(id);
+                        return task != null ? task.getTitle() : "(deleted)";
+                    });
+        } catch (IOException e) {
+            com.taskscheduler.ui.UIManager.displayError("Could not read the run history: " + e.getMessage());
+        }
+    }
+
+    // limit <n> | limit tag <tag> <n|off>
+    private void handleLimit(String args) {
+        AdmissionController admission = ExecutionService.getInstance().getAdmission();
+        String[] parts = args.split("\\s+");
+        if (parts.length == 1) {
+            int limit = Integer.parseInt(parts[0]);
+            if (limit < 1) {
+                System.out.println("The limit must be at least 1.");
+                return;
             }
+            ConfigManager.setMaxConcurrentTasks(limit);
+            admission.setGlobalLimit(limit);
+            com.taskscheduler.ui.UIManager.displaySuccess("At most " + limit + " task commands will run at once");
+        } else if (parts.length == 3 && parts[0].equalsIgnoreCase("tag")) {
+            String tag = parts[1].toLowerCase();
+            int limit = parts[2].equalsIgnoreCase("off") ? 0 : Integer.parseInt(parts[2]);
+            ConfigManager.setTagLimit(tag, limit);
+            admission.setTagLimit(tag, limit);
+            com.taskscheduler.ui.UIManager.displaySuccess(limit > 0
+                    ? "At most " + limit + " tasks tagged '" + tag + "' will run at once"
+                    : "Removed the limit for tag '" + tag + "'");
+        } else {
+            System.out.println("Invalid command. Usage: limit <n> | limit tag <tag> <n|off>");
+        }
+    }
 
-            // Verify command was set
-            if (task.getCommand() == null || task.getCommand().trim().isEmpty()) {
-                System.out.println("Warning: No command specified for task: " + title);
-            }            taskManager.addTask(task);
-            com.taskscheduler.ui.UIManager.displaySuccess("Added task: \"" + title + "\"");
+    private void handleAddTask(String taskText) {
+        try {
+            List<String> messages = new ArrayList<>();
+            Task task = TaskCommandParser.parseAdd(taskText, messages);
+            messages.forEach(System.out::println);
+            taskManager.addTask(task);
+            com.taskscheduler.ui.UIManager.displaySuccess("Added task: \"" + task.getTitle() + "\"");
         } catch (DateTimeParseException e) {
             System.out.println("Invalid date/time format. Use: yyyy-MM-dd HH:mm or HH:mm");
         } catch (DateTimeException e) {
@@ -664,7 +719,9 @@ public class CommandHandler {
         String trimmed = input.trim().toLowerCase();        // Commands that start with these keywords are likely structured commands
         String[] commandPrefixes = {
             "add \"", "list", "complete ", "delete ", "help", "exit", 
-            "due ", "recurring ", "email-notification ", "suggestions", "clear", "refresh", "cls"
+            "due ", "recurring ", "email-notification ", "suggestions", "clear", "refresh", "cls",
+            "pool", "limit ", "run ", "cancel ", "after ", "history ", "stats", "view ", "tail ",
+            "occurrences ", "skip "
         };
         
         for (String prefix : commandPrefixes) {
@@ -695,11 +752,20 @@ public class CommandHandler {
         help.append("  list upcoming                   - List upcoming tasks\n");
         help.append("  list overdue                    - List overdue tasks\n");
         help.append("  list --tag <tag>                - List tasks with specific tag\n");
+        help.append("  list where <query> [order by <field> [desc]] [limit N]\n");
+        help.append("    Example: list where priority>=high and tag:work and due<3d order by due limit 50\n");
         help.append("  delete <id>                     - Delete a task\n");
         help.append("  complete <id>                   - Mark a task as completed\n");
-        help.append("  due <id> <date>                 - Set due date for a task\n");
+        help.append("  due <id> <date>                 - Set due date for a task (for a recurring task, this occurrence only)\n");
+        help.append("  occurrences <id> [n]            - Next occurrences of a recurring task\n");
+        help.append("  skip <id> [n]                   - Skip the next (or n-th next) occurrence of a recurring task\n");
+        help.append("  after <id> <ids|none>           - Run a task once the given tasks have succeeded\n");
         help.append("  tag <id> <tag1> [tag2 tag3 ...] - Add tags to a task\n");
         help.append("  untag <id> <tag1> [tag2 tag3 ...] - Remove tags from a task\n");        help.append("  reminder <id> <time>            - Set reminder for a task (e.g., 30m or 2h)\n");
+        help.append("  pool                            - Show running and queued task commands\n");
+        help.append("  cancel <id>                     - Kill a task's running command and its child processes\n");
+        help.append("  limit <n>                       - Run at most n task commands at once\n");
+        help.append("  limit tag <tag> <n|off>         - Run at most n tasks with this tag at once\n");
         help.append("  email-notification <email>      - Set email for task reminders\n");
         help.append("  suggestions                     - Toggle smart command suggestions\n");
         help.append("  clear/refresh/cls               - Clear the screen and refresh display\n");
@@ -708,21 +774,6 @@ public class CommandHandler {
         System.out.println(help.toString());
     }
     
-    /**
-     * Checks if a parameter name is a known system parameter (not a tag)
-     */
-    private boolean isKnownParameter(String param) {
-        String[] knownParams = {
-            "notify-email", "repeat", "end", "reminder", "email", "priority", "tag"
-        };
-        
-        for (String known : knownParams) {
-            if (param.equals(known)) {
-                return true;
-            }
-        }        return false;
-    }
-    
     /**
      * Clears the terminal screen
      */
@@ -55,4 +55,144 @@ public class ConfigManager {
     public static String getEmail() {
         return (String) config.get("email");
     }
+
+    // task store durability: "sync", "batched(ms)" or "async"
+    public static String getPersistenceMode() {
+        return (String) config.getOrDefault("persistence", "batched(10)");
+    }
+
+    // snapshot written on compaction: "json" (tasks.json) or "binary" (tasks.snap)
+    public static boolean isBinarySnapshot() {
+        return "binary".equalsIgnoreCase((String) config.getOrDefault("snapshotFormat", "json"));
+    }
+
+    // "quartz" (a Quartz job per task) or "wheel" (in-memory hierarchical timing wheel)
+    public static String getSchedulerEngine() {
+        return (String) config.getOrDefault("schedulerEngine", "quartz");
+    }
+
+    // task commands allowed to run at the same time
+    public static int getMaxConcurrentTasks() {
+        Object value = config.get("maxConcurrentTasks");
+        return value instanceof Number ? ((Number) value).intValue() : Math.max(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static void setMaxConcurrentTasks(int limit) {
+        config.put("maxConcurrentTasks", limit);
+        saveConfig();
+    }
+
+    // due tasks that may wait for a free slot before new ones are turned away
+    public static int getMaxQueuedTasks() {
+        Object value = config.get("maxQueuedTasks");
+        return value instanceof Number ? ((Number) value).intValue() : 10000;
+    }
+
+    // seconds a queued task waits to gain one priority level, so low priorities never starve
+    public static int getPriorityAgingSeconds() {
+        Object value = config.get("priorityAgingSeconds");
+        return value instanceof Number ? ((Number) value).intValue() : 60;
+    }
+
+    // time limit for task commands that do not set their own; 0 means no limit
+    public static int getDefaultTimeoutMinutes() {
+        Object value = config.get("defaultTimeoutMinutes");
+        return value instanceof Number ? ((Number) value).intValue() : 60;
+    }
+
+    // size at which the active output segment under task_outputs rolls over
+    public static int getOutputSegmentMB() {
+        Object value = config.get("outputSegmentMB");
+        return value instanceof Number ? ((Number) value).intValue() : 64;
+    }
+
+    // output a single run may save; the rest is dropped, 0 for no limit
+    public static int getMaxOutputMB() {
+        Object value = config.get("maxOutputMB");
+        return value instanceof Number ? ((Number) value).intValue() : 100;
+    }
+
+    // gzip run outputs before appending them to a segment
+    public static boolean isCompressOutput() {
+        return (boolean) config.getOrDefault("compressOutput", true);
+    }
+
+    // output segments older than this are deleted; 0 keeps them
+    public static int getOutputRetentionDays() {
+        Object value = config.get("outputRetentionDays");
+        return value instanceof Number ? ((Number) value).intValue() : 30;
+    }
+
+    // the oldest output segments are deleted while all of them take more than this; 0 for no limit
+    public static int getOutputRetentionMB() {
+        Object value = config.get("outputRetentionMB");
+        return value instanceof Number ? ((Number) value).intValue() : 1024;
+    }
+
+    // per-tag concurrency limits, e.g. {"backup": 1}
+    @SuppressWarnings("unchecked")
+    public static Map<String, Integer> getTagLimits() {
+        Map<String, Integer> limits = new HashMap<>();
+        Object value = config.get("tagLimits");
+        if (value instanceof Map) {
+            ((Map<String, Object>) value).forEach((tag, limit) -> {
+                if (limit instanceof Number) {
+                    limits.put(tag, ((Number) limit).intValue());
+                }
+            });
+        }
+        return limits;
+    }
+
+    // a limit of 0 or less removes the tag's limit
+    public static void setTagLimit(String tag, int limit) {
+        Map<String, Integer> limits = getTagLimits();
+        if (limit > 0) {
+            limits.put(tag, limit);
+        } else {
+            limits.remove(tag);
+        }
+        config.put("tagLimits", limits);
+        saveConfig();
+    }
+
+    // what to do with runs missed while nothing was running, for tasks that do not
+    // set their own: "fire-once", "fire-all" or "skip"
+    public static String getCatchUpPolicy() {
+        return (String) config.getOrDefault("catchUpPolicy", "fire-once");
+    }
+
+    // missed runs replayed per minute, across all tasks
+    public static int getCatchUpRunsPerMinute() {
+        Object value = config.get("catchUpRunsPerMinute");
+        return value instanceof Number ? ((Number) value).intValue() : 60;
+    }
+
+    // most missed runs one task replays under fire-all; older ones are skipped
+    public static int getCatchUpMaxRuns() {
+        Object value = config.get("catchUpMaxRuns");
+        return value instanceof Number ? ((Number) value).intValue() : 100;
+    }
+
+    // seconds a run may be late before it counts as missed
+    public static int getMisfireThresholdSeconds() {
+        Object value = config.get("misfireThresholdSeconds");
+        return value instanceof Number ? ((Number) value).intValue() : 60;
+    }
+
+    // seconds between looks for changes other processes made to the task store; 0 turns it off
+    public static int getStorePollSeconds() {
+        Object value = config.get("storePollSeconds");
+        return value instanceof Number ? ((Number) value).intValue() : 2;
+    }
+
+    // unix domain socket the daemon listens on for control commands
+    public static String getControlSocket() {
+        return (String) config.getOrDefault("controlSocket", "taskscheduler.sock");
+    }
+
+    // indented tasks.json for hand editing; compact by default
+    public static boolean isPrettyTaskFile() {
+        return (boolean) config.getOrDefault("prettyTaskFile", false);
+    }
 } 
\ No newline at end of file
@@ -1,46 +1,45 @@
 package com.taskscheduler;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZoneId;
 
+import com.taskscheduler.engine.CronSchedule;
+
+// Quartz cron expressions: "second minute hour dayOfMonth month dayOfWeek", with ?
+// in whichever day field is not used
 public class CronExpressionGenerator {
     
-    // Creates daily cron expression (format: "0 minute hour * * *")
+    // Creates daily cron expression (format: "0 minute hour * * ?")
     public static String generateDailyCronExpression(LocalTime time) {
-        return String.format("0 %d %d * * *", time.getMinute(), time.getHour());
+        return String.format("0 %d %d * * ?", time.getMinute(), time.getHour());
     }
 
-    // Creates weekly cron expression (format: "0 minute hour * * dayOfWeek")
+    // Creates weekly cron expression (format: "0 minute hour ? * dayOfWeek"), dayOfWeek 1 = Sunday to 7 = Saturday
     public static String generateWeeklyCronExpression(LocalTime time, int dayOfWeek) {
-        return String.format("0 %d %d * * %d", time.getMinute(), time.getHour(), dayOfWeek);
+        return String.format("0 %d %d ? * %d", time.getMinute(), time.getHour(), dayOfWeek);
     }
 
-    // Creates monthly cron expression (format: "0 minute hour dayOfMonth * *")
+    // Creates monthly cron expression (format: "0 minute hour dayOfMonth * ?")
     public static String generateMonthlyCronExpression(LocalTime time, int dayOfMonth) {
-        return String.format("0 %d %d %d * *", time.getMinute(), time.getHour(), dayOfMonth);
+        return String.format("0 %d %d %d * ?", time.getMinute(), time.getHour(), dayOfMonth);
     }
 
     /**
      * Parses a cron expression to get the next execution time
      * @param cronExpression The cron expression to parse
-     * @return The next execution time based on the cron expression
+     * @return The next execution time based on the cron expression, or null if it never fires again
      */
     public static LocalDateTime getNextExecutionTime(String cronExpression) {
-        String[] parts = cronExpression.split("\\s+");
-        if (parts.length != 6) {
-            throw new IllegalArgumentException("Invalid cron expression format");
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        int minute = Integer.parseInt(parts[1]);
-        int hour = Integer.parseInt(parts[2]);
-        LocalDateTime next = now.withHour(hour).withMinute(minute).withSecond(0).withNano(0);
-
-        if (next.isBefore(now)) {
-            next = next.plusDays(1);
-        }
+        return getNextExecutionTime(cronExpression, LocalDateTime.now());
+    }
 
-        return next;
+    // first fire time strictly after the given time, or null if it never fires again
+    public static LocalDateTime getNextExecutionTime(String cronExpression, LocalDateTime after) {
+        ZoneId zone = ZoneId.systemDefault();
+        long next = CronSchedule.of(cronExpression).nextAfter(after.atZone(zone).toInstant().toEpochMilli());
+        return next < 0 ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(next), zone);
     }
 
     /**
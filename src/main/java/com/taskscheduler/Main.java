@@ -4,6 +4,11 @@ import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+
+import com.taskscheduler.daemon.CliClient;
+import com.taskscheduler.daemon.ControlClient;
+import com.taskscheduler.daemon.TaskDaemon;
+
 public class Main {
     private static final Logger logger = Logger.getLogger(Main.class.getName());
     
@@ -94,6 +99,16 @@ public class Main {
                     runInBackgroundMode();
                     return;
                 }
+
+                if (firstArg.equals("--daemon")) {
+                    runInDaemonMode();
+                    return;
+                }
+
+                if (firstArg.equals("--control")) {
+                    sendControlCommand(args.length > 1 ? args[1] : "status");
+                    return;
+                }
             }
             
             boolean isDebugMode = System.getProperty("debug") != null;
@@ -101,6 +116,11 @@ public class Main {
             if (!isDebugMode) {
                 suppressConsoleLogging();
             }
+
+            // one-shot commands, e.g. add "Backup" at 02:00 --command "..."
+            if (args.length > 0 && CliClient.handles(args[0])) {
+                System.exit(CliClient.run(args));
+            }
             
             runInInteractiveMode();
             
@@ -115,11 +135,8 @@ public class Main {
         QuartzScheduler scheduler = QuartzScheduler.getInstance();
         
         // schedule existing tasks
-        for (Task task : taskManager.getTasks()) {
-            if (task.getDueDate() != null && !task.isCompleted()) {
-                scheduler.scheduleTask(task);
-            }
-        }
+        scheduler.scheduleOpenTasks(taskManager.getTasks());
+        scheduler.watchStore();
         
         org.fusesource.jansi.AnsiConsole.systemInstall();
         CommandHandler commandHandler = new CommandHandler(taskManager);
@@ -128,6 +145,7 @@ public class Main {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             logger.info("Shutting down scheduler...");
             scheduler.shutdown();
+            taskManager.close();
             org.fusesource.jansi.AnsiConsole.systemUninstall();
         }));
         
@@ -141,11 +159,31 @@ public class Main {
         commandHandler.start();
     }
     
+    private static void runInDaemonMode() throws java.io.IOException {
+        new TaskDaemon().run();
+        System.exit(0);
+    }
+
+    // talks to a running daemon, e.g. --control status
+    private static void sendControlCommand(String command) {
+        try {
+            System.out.println(ControlClient.send(TaskDaemon.socketPath(), command));
+        } catch (java.io.IOException e) {
+            System.out.println("No daemon is running (" + e.getMessage() + ")");
+            System.exit(1);
+        }
+    }
+
     private static void runInBackgroundMode() {
         System.out.println("Checking for due tasks...");
+        if (!BackgroundTaskRunner.hasDueTasks()) {
+            System.out.println("Background check completed. No tasks due");
+            System.exit(0);
+        }
         BackgroundTaskRunner runner = new BackgroundTaskRunner();
         int executedTasks = runner.checkAndExecuteTasks();
         System.out.println("Background check completed. Executed " + executedTasks + " tasks");
+        TaskManager.getInstance().close();
         
         System.exit(0);
     }
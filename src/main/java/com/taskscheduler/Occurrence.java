@@ -0,0 +1,70 @@
+package com.taskscheduler;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * One occurrence of a recurring task. The occurrences of a series are computed
+ * from its rule when they are needed; only the ones that differ from the rule, or
+ * have happened, are stored with the task: completed, skipped, or moved to another
+ * time. See {@link Task#advanceOccurrence}.
+ */
+public class Occurrence {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final int index;
+    private final LocalDateTime scheduled;
+    private final LocalDateTime due;
+    private final LocalDateTime completedAt;
+    private final boolean skipped;
+
+    public Occurrence(int index, LocalDateTime scheduled, LocalDateTime due, LocalDateTime completedAt, boolean skipped) {
+        this.index = index;
+        this.scheduled = scheduled;
+        this.due = due != null ? due : scheduled;
+        this.completedAt = completedAt;
+        this.skipped = skipped;
+    }
+
+    // 0 for the first occurrence of the series
+    public int getIndex() {
+        return index;
+    }
+
+    // the time the series rule gives it
+    public LocalDateTime getScheduled() {
+        return scheduled;
+    }
+
+    // the time it is due, which differs from the scheduled time once it was moved
+    public LocalDateTime getDue() {
+        return due;
+    }
+
+    public boolean isMoved() {
+        return !due.equals(scheduled);
+    }
+
+    // null while it is still to come
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public String toString() {
+        String text = "#" + (index + 1) + " " + due.format(TIME_FORMAT);
+        if (isMoved()) {
+            text += " (moved from " + scheduled.format(TIME_FORMAT) + ")";
+        }
+        if (skipped) {
+            text += " skipped";
+        } else if (completedAt != null) {
+            text += " done " + completedAt.format(TIME_FORMAT);
+        }
+        return text;
+    }
+}
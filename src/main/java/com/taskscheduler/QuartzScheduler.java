@@ -1,24 +1,38 @@
 package com.taskscheduler;
 
-import org.quartz.*;
-import org.quartz.impl.StdSchedulerFactory;
-import java.util.logging.Logger;
-import java.util.logging.Level;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.Date;
+import java.util.logging.Logger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import com.taskscheduler.engine.QuartzEngine;
+import com.taskscheduler.engine.SchedulerEngine;
+import com.taskscheduler.engine.TimingWheelEngine;
+import com.taskscheduler.exec.CatchUpEngine;
+import com.taskscheduler.exec.DependencyTracker;
+
+// entry point for scheduling tasks; the work is done by the engine chosen with "schedulerEngine"
 public class QuartzScheduler {
     private static final Logger logger = Logger.getLogger(QuartzScheduler.class.getName());
-    private static Scheduler scheduler;
+    // same as org.quartz.threadPool.threadCount in quartz.properties
+    private static final int WORKER_THREADS = 10;
     private static QuartzScheduler instance;
 
+    private final SchedulerEngine engine;
+    private ScheduledExecutorService storeWatch;
+
     private QuartzScheduler() {
-        try {
-            scheduler = StdSchedulerFactory.getDefaultScheduler();
-            scheduler.start();
-        } catch (SchedulerException e) {
-            logger.log(Level.SEVERE, "Failed to initialize Quartz scheduler", e);
+        if ("wheel".equalsIgnoreCase(ConfigManager.getSchedulerEngine())) {
+            engine = new TimingWheelEngine(WORKER_THREADS);
+        } else {
+            engine = new QuartzEngine();
         }
     }
 
@@ -29,61 +43,127 @@ public class QuartzScheduler {
         return instance;
     }
 
+    public String getEngineName() {
+        return engine.getName();
+    }
+
     public void scheduleTask(Task task) {
-        try {
-            if (task.getDueDate() == null) {
-                logger.warning("Cannot schedule task without due date: " + task.getTitle());
-                return;
+        if (task.getDueDate() == null) {
+            logger.warning("Cannot schedule task without due date: " + task.getTitle());
+            return;
+        }
+        engine.schedule(task);
+    }
+
+    // schedules every open task that has a due date, and the retries that were pending;
+    // dependents whose predecessors finished while nothing was running start now.
+    // Runs missed by more than misfireThresholdSeconds go to the CatchUpEngine, and
+    // the task is scheduled once its replays are done
+    public void scheduleOpenTasks(Collection<Task> tasks) {
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(ConfigManager.getMisfireThresholdSeconds());
+        for (Task task : tasks) {
+            CompletableFuture<Void> replay = task.isCompleted() ? null
+                    : CatchUpEngine.getInstance().recover(task, cutoff,
+                            missed -> TaskJob.run(missed.getId(), epochMillis(missed.getDueDate())));
+            if (replay != null) {
+                replay.thenRun(() -> {
+                    if (!task.isCompleted() && task.getRetryAt() == null && !task.getDueDate().isBefore(cutoff)) {
+                        scheduleTask(task);
+                    }
+                });
+            } else if (task.getDueDate() != null && !task.isCompleted()) {
+                scheduleTask(task);
+                if (task.getRetryAt() != null) {
+                    scheduleRetry(task);
+                }
+            } else if (!task.isCompleted() && task.hasDependencies()) {
+                startIfReady(task);
             }
+        }
+    }
 
-            JobDetail jobDetail = JobBuilder.newJob(TaskJob.class)
-                    .withIdentity(String.valueOf(task.getId()))
-                    .usingJobData("taskId", task.getId())
-                    .build();
-
-            Trigger trigger;
-            
-            if (task.isRecurring() && task.getCronExpression() != null) {
-                // Use CronTrigger for recurring tasks
-                trigger = TriggerBuilder.newTrigger()
-                        .withIdentity(String.valueOf(task.getId()) + "_trigger")
-                        .withSchedule(CronScheduleBuilder.cronSchedule(task.getCronExpression()))
-                        .build();
-            } else {
-                // Use SimpleTrigger for one-time tasks
-                Date startTime = Date.from(task.getDueDate()
-                        .atZone(ZoneId.systemDefault())
-                        .toInstant());
-                
-                trigger = TriggerBuilder.newTrigger()
-                        .withIdentity(String.valueOf(task.getId()) + "_trigger")
-                        .startAt(startTime)
-                        .build();
+    // merges what other processes changed in the task store and schedules the tasks
+    // they touched again, so a task added, moved or deleted elsewhere is run as it is now
+    public void syncWithStore() {
+        TaskManager taskManager = TaskManager.getInstance();
+        Set<Integer> changed = taskManager.refresh();
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<Task> current = new ArrayList<>();
+        for (int id : changed) {
+            engine.cancel(id);
+            Task task = taskManager.getTaskById(id);
+            if (task != null) {
+                current.add(task);
             }
+        }
+        logger.info("Picked up " + changed.size() + " task changes from another process");
+        scheduleOpenTasks(current);
+    }
 
-            scheduler.scheduleJob(jobDetail, trigger);
-            logger.info("Scheduled task: " + task.getTitle() + " for " + task.getDueDate());
-        } catch (SchedulerException e) {
-            logger.log(Level.SEVERE, "Failed to schedule task: " + task.getTitle(), e);
+    // looks for changes from other processes every storePollSeconds while this one runs
+    public synchronized void watchStore() {
+        int seconds = ConfigManager.getStorePollSeconds();
+        if (storeWatch != null || seconds <= 0) {
+            return;
         }
+        storeWatch = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "store-watch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        storeWatch.scheduleWithFixedDelay(() -> {
+            try {
+                syncWithStore();
+            } catch (RuntimeException e) {
+                logger.warning("Could not look for task store changes: " + e.getMessage());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
     }
 
-    public void unscheduleTask(Task task) {
-        try {
-            scheduler.deleteJob(JobKey.jobKey(String.valueOf(task.getId())));
-            logger.info("Unscheduled task: " + task.getTitle());
-        } catch (SchedulerException e) {
-            logger.log(Level.SEVERE, "Failed to unschedule task: " + task.getTitle(), e);
+    // runs a task that has --after dependencies and no due date right away if they
+    // have all succeeded; otherwise DependencyTracker starts it when they do
+    public void startIfReady(Task task) {
+        if (task.getDueDate() == null && !task.isCompleted() && DependencyTracker.isReady(task)) {
+            TaskJob.run(task.getId(), System.currentTimeMillis());
         }
     }
 
+    // one extra run at the task's retry time, next to its regular schedule
+    public void scheduleRetry(Task task) {
+        engine.scheduleRetry(task, epochMillis(task.getRetryAt()));
+        logger.info("Scheduled retry " + task.getFailedAttempts() + " of task: " + task.getTitle() + " at " + task.getRetryAt());
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public void unscheduleAll() {
+        engine.clear();
+    }
+
+    public boolean isScheduled(Task task) {
+        return engine.isScheduled(task.getId());
+    }
+
+    public int getScheduledCount() {
+        return engine.size();
+    }
+
+    public void unscheduleTask(Task task) {
+        engine.cancel(task.getId());
+        logger.info("Unscheduled task: " + task.getTitle());
+    }
+
     public void shutdown() {
-        try {
-            if (scheduler != null && !scheduler.isShutdown()) {
-                scheduler.shutdown();
+        synchronized (this) {
+            if (storeWatch != null) {
+                storeWatch.shutdownNow();
+                storeWatch = null;
             }
-        } catch (SchedulerException e) {
-            logger.log(Level.SEVERE, "Failed to shutdown scheduler", e);
         }
+        engine.shutdown();
     }
-} 
\ No newline at end of file
+}
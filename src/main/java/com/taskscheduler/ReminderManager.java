@@ -12,11 +12,9 @@ public class ReminderManager {
 
     public ReminderManager(TaskManager taskManager) {
         this.taskManager = taskManager;
+        // recurring tasks need no hourly sweep: a series moves to its next occurrence
+        // when the pending one is completed
         this.scheduler = Executors.newScheduledThreadPool(1);
-        
-        scheduler.scheduleAtFixedRate(() -> {
-            taskManager.checkRecurringTasks();
-        }, 0, 1, TimeUnit.HOURS);
     }
 
     public void scheduleReminder(Task task, Duration reminderTime) {
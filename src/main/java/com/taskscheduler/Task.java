@@ -1,22 +1,24 @@
 package com.taskscheduler;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.logging.Level;
+import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import com.google.gson.annotations.Expose;
 
 public class Task {
     private static final Logger logger = Logger.getLogger(Task.class.getName());
+    // attempts kept per task, oldest dropped first
+    public static final int MAX_ATTEMPTS = 20;
+    // past occurrences kept per recurring task, oldest dropped first
+    public static final int MAX_OCCURRENCES = 20;
     
     @Expose
     private int id;
@@ -52,18 +54,56 @@ public class Task {
     private LocalDateTime recurrenceEnd; // End date (optional)
     
     @Expose
-    private int occurrencesGenerated; // To keep track
+    private int occurrencesGenerated; // Index of the pending occurrence of a series
+
+    @Expose
+    private List<Occurrence> occurrences; // Completed, skipped and moved occurrences, by index
     
     @Expose
     private String cronExpression; // Store cron expression for recurring tasks
     
     @Expose
-    private String command; // Added command field    @Expose
+    private String command; // Added command field
+    
+    @Expose
     private String email; // Added email field
     
     @Expose
     private Priority priority; // Task priority
 
+    @Expose
+    private int timeoutSeconds; // Command time limit, 0 = the configured default
+
+    @Expose
+    private int maxRetries; // Retries after a failed run, 0 = none
+
+    @Expose
+    private String backoff; // Delay between retries, e.g. "exp:10s..10m" or "30s"
+
+    @Expose
+    private boolean retryJitter; // Randomize retry delays
+
+    @Expose
+    private String catchUp; // Runs missed while nothing was running: "fire-once", "fire-all" or "skip", null = the configured policy
+
+    @Expose
+    private int failedAttempts; // Consecutive failures of the current run
+
+    @Expose
+    private long revision; // Stamp of the last saved change, so processes sharing the store spot conflicting edits; 0 = never saved
+
+    @Expose
+    private LocalDateTime retryAt; // When the pending retry fires, null if none
+
+    @Expose
+    private List<Attempt> attempts; // Most recent runs, oldest first
+
+    @Expose
+    private Set<Integer> dependsOn; // Ids that must succeed before this task runs (--after)
+
+    @Expose
+    private int blockedBy; // Id of the failed upstream task that keeps this one from running, 0 if none
+
     public Task(int id, String title, boolean completed, LocalDateTime dueDate) {
         this.id = id;
         this.title = title;
@@ -208,14 +248,6 @@ public class Task {
         this.recurrenceEnd = recurrenceEnd;
     }
 
-    public int getOccurrencesGenerated() {
-        return occurrencesGenerated;
-    }
-
-    public void setOccurrencesGenerated(int occurrencesGenerated) {
-        this.occurrencesGenerated = occurrencesGenerated;
-    }
-
     public String getCronExpression() {
         return cronExpression;
     }
@@ -232,61 +264,206 @@ public class Task {
         this.command = command;
     }
 
-    public Task generateNextOccurrence() {
-        if (!isRecurring || recurrenceType == null) {
-            return null;
+    /**
+     * Index of the pending occurrence of a series, 0 for the first. A recurring task
+     * is one record for its whole series: its due date is the pending occurrence's,
+     * and it moves on to the next one in {@link #advanceOccurrence}.
+     */
+    public int getOccurrencesGenerated() {
+        return occurrencesGenerated;
+    }
+
+    public void setOccurrencesGenerated(int occurrencesGenerated) {
+        this.occurrencesGenerated = occurrencesGenerated;
+    }
+
+    // completed, skipped and moved occurrences, by index
+    public List<Occurrence> getOccurrences() {
+        return occurrences != null ? Collections.unmodifiableList(occurrences) : Collections.emptyList();
+    }
+
+    public void setOccurrences(List<Occurrence> occurrences) {
+        this.occurrences = occurrences.isEmpty() ? null : new ArrayList<>(occurrences);
+    }
+
+    /**
+     * Records the pending occurrence as completed (or skipped) and moves the series
+     * on to its next occurrence that is not skipped. Returns false, with the task
+     * completed, once the series has no occurrences left.
+     */
+    public boolean advanceOccurrence(LocalDateTime now, boolean skip) {
+        if (!isRecurring || completed) {
+            completed = true;
+            return false;
+        }
+        LocalDateTime scheduled = getScheduledDue();
+        putOccurrence(new Occurrence(occurrencesGenerated, scheduled, dueDate, skip ? null : now, skip));
+        int index = occurrencesGenerated;
+        while (true) {
+            scheduled = ruleTimeAfter(scheduled);
+            index++;
+            if (!inSeries(index, scheduled)) {
+                completed = true;
+                trimOccurrences();
+                return false;
+            }
+            Occurrence exception = getOccurrence(index);
+            if (exception == null || !exception.isSkipped()) {
+                occurrencesGenerated = index;
+                dueDate = exception != null ? exception.getDue() : scheduled;
+                notified = false;
+                retryAt = null;
+                failedAttempts = 0;
+                trimOccurrences();
+                return true;
+            }
         }
+    }
 
-        // Check if we've reached the maximum number of occurrences
-        if (recurrenceCount > 0) {
-            int remaining = recurrenceCount - occurrencesGenerated;
-            // Don't generate next occurrence if this is the last one
-            if (remaining <= 1) {
-                return null;
+    // moves only the pending occurrence; the ones after it keep their rule times
+    public void moveOccurrence(LocalDateTime due) {
+        putOccurrence(new Occurrence(occurrencesGenerated, getScheduledDue(), due, null, false));
+        dueDate = due;
+    }
+
+    /**
+     * Skips the n-th upcoming occurrence, 1 being the pending one. Returns false if
+     * the series has fewer occurrences left.
+     */
+    public boolean skipOccurrence(int n, LocalDateTime now) {
+        List<Occurrence> upcoming = upcomingOccurrences(n);
+        if (n < 1 || upcoming.size() < n) {
+            return false;
+        }
+        if (n == 1) {
+            advanceOccurrence(now, true);
+        } else {
+            Occurrence target = upcoming.get(n - 1);
+            putOccurrence(new Occurrence(target.getIndex(), target.getScheduled(), target.getDue(), null, true));
+        }
+        return true;
+    }
+
+    // the next occurrences from the pending one on, computed from the rule and the
+    // stored exceptions; skipped ones are left out
+    public List<Occurrence> upcomingOccurrences(int limit) {
+        List<Occurrence> upcoming = new ArrayList<>();
+        if (!isRecurring || completed || dueDate == null) {
+            return upcoming;
+        }
+        upcoming.add(new Occurrence(occurrencesGenerated, getScheduledDue(), dueDate, null, false));
+        LocalDateTime scheduled = getScheduledDue();
+        for (int index = occurrencesGenerated + 1; upcoming.size() < limit; index++) {
+            scheduled = ruleTimeAfter(scheduled);
+            if (!inSeries(index, scheduled)) {
+                break;
+            }
+            Occurrence exception = getOccurrence(index);
+            if (exception == null) {
+                upcoming.add(new Occurrence(index, scheduled, null, null, false));
+            } else if (!exception.isSkipped()) {
+                upcoming.add(exception);
             }
         }
+        return upcoming;
+    }
 
-        // Check if we've reached the end date
-        if (recurrenceEnd != null && dueDate.isAfter(recurrenceEnd)) {
-            return null;
+    // how many occurrences from the pending one on are due before the given time,
+    // skipped ones left out; one pass over the rule, nothing is stored
+    public int countOccurrencesBefore(LocalDateTime time) {
+        if (!isRecurring || completed || dueDate == null || !dueDate.isBefore(time)) {
+            return 0;
+        }
+        int count = 1;
+        LocalDateTime scheduled = getScheduledDue();
+        for (int index = occurrencesGenerated + 1; ; index++) {
+            scheduled = ruleTimeAfter(scheduled);
+            if (!inSeries(index, scheduled)) {
+                return count;
+            }
+            Occurrence exception = getOccurrence(index);
+            LocalDateTime due = exception != null ? exception.getDue() : scheduled;
+            if (exception != null && exception.isSkipped()) {
+                continue;
+            }
+            if (!due.isBefore(time)) {
+                // a moved occurrence may come before a later one; the rule times only grow
+                if (!scheduled.isBefore(time)) {
+                    return count;
+                }
+                continue;
+            }
+            count++;
         }
+    }
 
-        LocalDateTime nextDue;
+    // the rule's time for the pending occurrence, which differs from the due date once it was moved
+    private LocalDateTime getScheduledDue() {
+        Occurrence exception = getOccurrence(occurrencesGenerated);
+        return exception != null ? exception.getScheduled() : dueDate;
+    }
+
+    private LocalDateTime ruleTimeAfter(LocalDateTime scheduled) {
+        if (scheduled == null) {
+            return null;
+        }
         if (cronExpression != null) {
-            nextDue = CronExpressionGenerator.getNextExecutionTime(cronExpression);
-        } else {
-            switch (recurrenceType.toLowerCase()) {
-                case "daily":
-                    nextDue = this.dueDate.plusDays(1);
-                    break;
-                case "weekly":
-                    nextDue = this.dueDate.plusWeeks(1);
-                    break;
-                case "monthly":
-                    nextDue = this.dueDate.plusMonths(1);
-                    break;
-                default:
-                    return null;
+            return CronExpressionGenerator.getNextExecutionTime(cronExpression, scheduled);
+        }
+        switch (recurrenceType == null ? "" : recurrenceType.toLowerCase()) {
+            case "daily":
+                return scheduled.plusDays(1);
+            case "weekly":
+                return scheduled.plusWeeks(1);
+            case "monthly":
+                return scheduled.plusMonths(1);
+            default:
+                return null;
+        }
+    }
+
+    private boolean inSeries(int index, LocalDateTime scheduled) {
+        return scheduled != null
+                && (recurrenceCount <= 0 || index < recurrenceCount)
+                && (recurrenceEnd == null || !scheduled.isAfter(recurrenceEnd));
+    }
+
+    private Occurrence getOccurrence(int index) {
+        if (occurrences != null) {
+            for (Occurrence occurrence : occurrences) {
+                if (occurrence.getIndex() == index) {
+                    return occurrence;
+                }
             }
         }
+        return null;
+    }
 
-        // Check if the next occurrence would be after the end date
-        if (recurrenceEnd != null && nextDue.isAfter(recurrenceEnd)) {
-            return null;
-        }        // Create the next occurrence
-        Task next = new Task(0, this.title, false, nextDue); // ID will be set by TaskManager
-        next.setRecurring(true);
-        next.setRecurrenceType(this.recurrenceType);
-        next.setOccurrencesGenerated(this.occurrencesGenerated + 1);
-        next.setRecurrenceCount(this.recurrenceCount);
-        next.setRecurrenceEnd(this.recurrenceEnd);
-        next.setTags(new HashSet<>(this.tags));
-        next.setReminderTime(this.reminderTime);
-        next.setCronExpression(this.cronExpression);
-        next.setPriority(this.priority); // Copy priority
-        next.setCommand(this.command); // Copy command
-        next.setEmail(this.email); // Copy email
-        return next;
+    // replaces any earlier record of the same occurrence, keeping the list in index order
+    private void putOccurrence(Occurrence occurrence) {
+        if (occurrences == null) {
+            occurrences = new ArrayList<>();
+        }
+        occurrences.removeIf(o -> o.getIndex() == occurrence.getIndex());
+        int at = 0;
+        while (at < occurrences.size() && occurrences.get(at).getIndex() < occurrence.getIndex()) {
+            at++;
+        }
+        occurrences.add(at, occurrence);
+    }
+
+    // keeps the exceptions still ahead and the last MAX_OCCURRENCES past ones, so the
+    // record stays the same size however long the series runs
+    private void trimOccurrences() {
+        int past = 0;
+        for (Occurrence occurrence : occurrences) {
+            if (occurrence.getIndex() < occurrencesGenerated || completed) {
+                past++;
+            }
+        }
+        while (past-- > MAX_OCCURRENCES) {
+            occurrences.remove(0);
+        }
     }
 
     public String getEmail() {
@@ -303,108 +480,131 @@ public class Task {
         this.priority = priority != null ? priority : Priority.MEDIUM;
     }
 
-    public void execute() {
-        try {
-            logger.info("Executing task: " + title);
-            
-            if (command != null && !command.isEmpty()) {
-                String workingDir = System.getProperty("user.dir");
-                logger.info("Working directory: " + workingDir);
-                
-                // Create a batch file to execute the command
-                File batchFile = new File(workingDir, "execute_command.bat");
-                try (FileWriter writer = new FileWriter(batchFile)) {
-                    writer.write("@echo off\n");
-                    writer.write("cd /d \"" + workingDir + "\"\n");
-                    writer.write(command + "\n");
-                    writer.write("if %ERRORLEVEL% NEQ 0 (\n");
-                    writer.write("  echo Command failed with error code %ERRORLEVEL%\n");
-                    writer.write("  exit /b %ERRORLEVEL%\n");
-                    writer.write(")\n");
-                }
-                
-                logger.info("Created batch file at: " + batchFile.getAbsolutePath());
-                
-                // Execute the batch file
-                ProcessBuilder processBuilder = new ProcessBuilder();
-                if (EnvironmentDetector.isRunningInDocker()) {
-                    // In Docker, we'll create and run a shell script instead
-                    File shellScript = new File(workingDir, "execute_command.sh");
-                    try (FileWriter shellWriter = new FileWriter(shellScript)) {
-                        shellWriter.write("#!/bin/bash\n");
-                        shellWriter.write("cd \"" + workingDir + "\"\n");
-                        shellWriter.write(command + "\n");
-                        shellWriter.write("exit $?\n");
-                    }
-                    shellScript.setExecutable(true);
-                    
-                    logger.info("Created shell script at: " + shellScript.getAbsolutePath());
-                    processBuilder.command("/bin/bash", shellScript.getAbsolutePath());
-                } else {
-                    // Windows environment - use the batch file
-                    processBuilder.command("cmd.exe", "/c", batchFile.getAbsolutePath());
-                }
-                processBuilder.directory(new File(workingDir));
-                processBuilder.redirectErrorStream(true);
-                
-                logger.info("Executing batch file...");
-                Process process = processBuilder.start();
-                
-                // Read the output
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        logger.info("Command output: " + line);
-                    }
-                }
-                
-                int exitCode = process.waitFor();
-                logger.info("Command execution completed with exit code: " + exitCode);
-                
-                // Clean up the batch/shell files
-                if (EnvironmentDetector.isRunningInDocker()) {
-                    File shellScript = new File(workingDir, "execute_command.sh");
-                    if (shellScript.exists()) {
-                        shellScript.delete();
-                        logger.info("Cleaned up shell script");
-                    }
-                } else {
-                    if (batchFile.exists()) {
-                        batchFile.delete();
-                        logger.info("Cleaned up batch file");
-                    }
-                }
-                
-                if (exitCode == 0) {
-                    logger.info("Command executed successfully for task: " + title);
-                    // Verify if file was created
-                    String filename = command.substring(command.indexOf(">") + 1).trim();
-                    File outputFile = new File(workingDir, filename);
-                    if (outputFile.exists()) {
-                        logger.info("Output file created successfully at: " + outputFile.getAbsolutePath());
-                        logger.info("File size: " + outputFile.length() + " bytes");
-                    } else {
-                        logger.warning("Output file was not created at: " + outputFile.getAbsolutePath());
-                    }
-                } else {
-                    logger.warning("Command execution failed with exit code: " + exitCode + " for task: " + title);
-                }
-            }
-            
-            // Mark as completed after execution
-            this.completed = true;
-            
-            // If it's a recurring task, generate the next occurrence
-            if (isRecurring) {
-                Task nextTask = generateNextOccurrence();
-                if (nextTask != null) {
-                    TaskManager.getInstance().addTask(nextTask);
-                }
-            }
-        } catch (IOException | InterruptedException e) {
-            logger.log(Level.SEVERE, "Error executing task: " + title, e);
-            throw new RuntimeException("Failed to execute task: " + title, e);
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public void setTimeoutSeconds(int timeoutSeconds) {
+        this.timeoutSeconds = Math.max(0, timeoutSeconds);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    public String getBackoff() {
+        return backoff;
+    }
+
+    public void setBackoff(String backoff) {
+        this.backoff = backoff;
+    }
+
+    public boolean isRetryJitter() {
+        return retryJitter;
+    }
+
+    public void setRetryJitter(boolean retryJitter) {
+        this.retryJitter = retryJitter;
+    }
+
+    public String getCatchUp() {
+        return catchUp;
+    }
+
+    public void setCatchUp(String catchUp) {
+        this.catchUp = catchUp;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    public int getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    public void setFailedAttempts(int failedAttempts) {
+        this.failedAttempts = failedAttempts;
+    }
+
+    public LocalDateTime getRetryAt() {
+        return retryAt;
+    }
+
+    public void setRetryAt(LocalDateTime retryAt) {
+        this.retryAt = retryAt;
+    }
+
+    public List<Attempt> getAttempts() {
+        return attempts != null ? Collections.unmodifiableList(attempts) : Collections.emptyList();
+    }
+
+    public void setAttempts(List<Attempt> attempts) {
+        this.attempts = attempts.isEmpty() ? null : new ArrayList<>(attempts);
+    }
+
+    public Set<Integer> getDependsOn() {
+        return dependsOn != null ? Collections.unmodifiableSet(dependsOn) : Collections.emptySet();
+    }
+
+    public void setDependsOn(Set<Integer> dependsOn) {
+        this.dependsOn = dependsOn.isEmpty() ? null : new TreeSet<>(dependsOn);
+    }
+
+    public void addDependency(int id) {
+        if (dependsOn == null) {
+            dependsOn = new TreeSet<>();
+        }
+        dependsOn.add(id);
+    }
+
+    public boolean hasDependencies() {
+        return dependsOn != null && !dependsOn.isEmpty();
+    }
+
+    public int getBlockedBy() {
+        return blockedBy;
+    }
+
+    public void setBlockedBy(int blockedBy) {
+        this.blockedBy = blockedBy;
+    }
+
+    // its last run succeeded; a task that never ran succeeded once it is completed
+    public boolean isSucceeded() {
+        if (attempts == null || attempts.isEmpty()) {
+            return completed;
         }
+        return attempts.get(attempts.size() - 1).isSuccess();
+    }
+
+    // appends to the history and counts consecutive failures; a success resets the count
+    public void recordAttempt(Attempt attempt) {
+        if (attempts == null) {
+            attempts = new ArrayList<>();
+        }
+        if (attempts.size() >= MAX_ATTEMPTS) {
+            attempts.remove(0);
+        }
+        attempts.add(attempt);
+        failedAttempts = attempt.isSuccess() ? 0 : failedAttempts + 1;
+        retryAt = null;
+    }
+
+    // runs the command now through the same path as scheduled runs (a per-run
+    // process and spool file, nothing shared on disk) and waits until it has finished
+    public void execute() {
+        logger.info("Executing task: " + title);
+        TaskJob.run(id, System.currentTimeMillis()).join();
     }
 
     @Override    public String toString() {
@@ -442,6 +642,13 @@ public class Task {
             sb.append(" Tags: ").append(String.join(", ", tags));
         }
 
+        if (hasDependencies()) {
+            sb.append(" After: ").append(dependsOn);
+            if (blockedBy != 0) {
+                sb.append(" (blocked, task ").append(blockedBy).append(" failed)");
+            }
+        }
+
         return sb.toString();
     }
 }
@@ -0,0 +1,314 @@
+package com.taskscheduler;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.taskscheduler.exec.CatchUpEngine;
+import com.taskscheduler.exec.RetryPolicy;
+
+/**
+ * Parsing for the structured {@code add} command and its date, reminder and
+ * e-mail arguments. Shared by the interactive shell and the daemon's control
+ * protocol, so it builds a {@link Task} without printing anything; messages meant
+ * for the user are collected into a list instead.
+ */
+public class TaskCommandParser {
+    private static final DateTimeFormatter[] DATE_FORMATTERS = {
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"),
+        DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm"),
+        DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm"),
+        DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"),
+        new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd")
+            .optionalStart()
+            .appendPattern(" HH:mm")
+            .optionalEnd()
+            .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+            .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+            .toFormatter()
+    };
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("H:mm");
+
+    private TaskCommandParser() {
+    }
+
+    /**
+     * Builds a task from the text after {@code add}, e.g.
+     * {@code "Backup" due 2025-07-01 02:00 --command "tar ..." --tag ops}.
+     * With {@code --after <id>[,<id>...]} the time may be left out; the task then
+     * runs as soon as those tasks have succeeded.
+     */
+    public static Task parseAdd(String text, List<String> messages) {
+        String[] parts = text.trim().split(" --");
+        for (int i = 1; i < parts.length; i++) {
+            parts[i] = "--" + parts[i];
+        }
+        String taskTitle = parts[0];
+
+        // Extract title and time/date
+        String title;
+        String timeOrDate;
+
+        // Check if this is a "due" format or "at" format
+        if (taskTitle.contains(" due ")) {
+            String[] dueParts = taskTitle.split(" due ", 2);
+            title = dueParts[0];
+            timeOrDate = dueParts[1];
+        } else if (taskTitle.contains(" at ")) {
+            String[] atParts = taskTitle.split(" at ", 2);
+            title = atParts[0];
+            timeOrDate = atParts[1];
+        } else if (text.contains(" --after ")) {
+            title = taskTitle.trim();
+            timeOrDate = null;
+        } else {
+            throw new IllegalArgumentException("Invalid format. Use: add \"Task Title\" at HH:mm [options]");
+        }
+
+        if (title.startsWith("\"") && title.endsWith("\"")) {
+            title = title.substring(1, title.length() - 1);
+        }
+
+        LocalDateTime dueDate = null;
+        if (timeOrDate != null) {
+            dueDate = parseDate(timeOrDate);
+            validateDate(dueDate);
+        }
+
+        Task task = new Task(0, title, false, dueDate);
+
+        // Process additional parameters
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (part.startsWith("--command ")) {
+                String command = part.substring("--command ".length()).trim();
+                // Remove quotes if present
+                if (command.startsWith("\"") && command.endsWith("\"")) {
+                    command = command.substring(1, command.length() - 1);
+                }
+                messages.add("Setting command: " + command);
+                task.setCommand(command);
+            } else if (part.startsWith("--recurring ")) {
+                String type = part.substring("--recurring ".length()).trim();
+                if (isValidRecurrenceType(type)) {
+                    task.setRecurring(true);
+                    task.setRecurrenceType(type);
+                }
+            } else if (part.startsWith("--count ")) {
+                int count = Integer.parseInt(part.substring("--count ".length()).trim());
+                task.setRecurrenceCount(count);
+            } else if (part.startsWith("--end ")) {
+                String endDate = part.substring("--end ".length()).trim();
+                task.setRecurrenceEnd(parseDate(endDate));
+            } else if (part.startsWith("--reminder ")) {
+                String reminderTime = part.substring("--reminder ".length()).trim();
+                task.setReminderTime(parseReminderTime(reminderTime));
+            } else if (part.startsWith("--tag ")) {
+                String[] tags = part.substring("--tag ".length()).trim().split("\\s+");
+                for (String tag : tags) {
+                    task.addTag(tag);
+                }
+            } else if (part.startsWith("--email ")) {
+                String email = part.substring("--email ".length()).trim();
+                if (isValidEmail(email)) {
+                    task.setEmail(email);
+                }
+            } else if (part.equals("--notify-email")) {
+                // Get the default email from config and set it for this task
+                String defaultEmail = ConfigManager.getEmail();
+                if (defaultEmail != null && !defaultEmail.isEmpty()) {
+                    task.setEmail(defaultEmail);
+                    messages.add("Email notification will be sent to: " + defaultEmail);
+                } else {
+                    messages.add("Warning: Email notification requested but no default email is set.");
+                    messages.add("Use 'email-notification <your-email>' to set a default email address.");
+                }
+            } else if (part.startsWith("--priority ")) {
+                String priorityStr = part.substring("--priority ".length()).trim();
+                try {
+                    Priority priority = Priority.valueOf(priorityStr.toUpperCase());
+                    task.setPriority(priority);
+                    messages.add("Setting priority: " + priority.getDisplayName());
+                } catch (IllegalArgumentException e) {
+                    messages.add("Invalid priority: " + priorityStr + ". Valid values: low, medium, high, urgent, critical");
+                }
+            } else if (part.startsWith("--timeout ")) {
+                String timeoutStr = part.substring("--timeout ".length()).trim();
+                Duration timeout = parseDuration(timeoutStr);
+                if (timeout != null && timeout.getSeconds() > 0) {
+                    task.setTimeoutSeconds((int) Math.min(Integer.MAX_VALUE, timeout.getSeconds()));
+                    messages.add("Setting timeout: " + timeoutStr);
+                } else {
+                    messages.add("Invalid timeout: " + timeoutStr + ". Use e.g. 30s, 10m or 2h");
+                }
+            } else if (part.startsWith("--retry ")) {
+                int retries = Integer.parseInt(part.substring("--retry ".length()).trim());
+                task.setMaxRetries(retries);
+                messages.add("Retrying up to " + task.getMaxRetries() + " times on failure");
+            } else if (part.startsWith("--backoff ")) {
+                String backoff = part.substring("--backoff ".length()).trim();
+                try {
+                    RetryPolicy.parse(1, backoff, false);
+                    task.setBackoff(backoff);
+                } catch (IllegalArgumentException e) {
+                    messages.add(e.getMessage());
+                }
+            } else if (part.equals("--jitter")) {
+                task.setRetryJitter(true);
+            } else if (part.startsWith("--catch-up ")) {
+                String policy = part.substring("--catch-up ".length()).trim();
+                try {
+                    task.setCatchUp(CatchUpEngine.Policy.parse(policy).getName());
+                } catch (IllegalArgumentException e) {
+                    messages.add(e.getMessage());
+                }
+            } else if (part.startsWith("--after ")) {
+                task.setDependsOn(parseIds(part.substring("--after ".length())));
+                messages.add("Runs after task(s) " + task.getDependsOn());
+            } else if (part.startsWith("--") && !part.contains(" ")) {
+                // Handle standalone tags like --work, --personal, --urgent, etc.
+                String tag = part.substring(2); // Remove the --
+                if (!tag.isEmpty() && !isKnownParameter(tag)) {
+                    task.addTag(tag);
+                    messages.add("Adding tag: " + tag);
+                }
+            }
+        }
+
+        if (task.getBackoff() != null && task.getMaxRetries() == 0) {
+            messages.add("Note: --backoff has no effect without --retry <n>");
+        }
+
+        // Verify command was set
+        if (task.getCommand() == null || task.getCommand().trim().isEmpty()) {
+            messages.add("Warning: No command specified for task: " + title);
+        }
+        return task;
+    }
+
+    // a bare HH:mm means today, or tomorrow once that time has passed
+    public static LocalDateTime parseDate(String dateStr) {
+        String trimmed = dateStr.trim();
+        if (trimmed.matches("\\d{1,2}:\\d{2}")) {
+            LocalDateTime result = LocalDate.now().atTime(LocalTime.parse(trimmed, TIME_FORMATTER));
+            return result.isBefore(LocalDateTime.now()) ? result.plusDays(1) : result;
+        }
+        for (DateTimeFormatter formatter : DATE_FORMATTERS) {
+            try {
+                return LocalDateTime.parse(trimmed, formatter);
+            } catch (DateTimeParseException e) {
+                // Try next formatter
+            }
+        }
+        throw new DateTimeParseException("Invalid date format", dateStr, 0);
+    }
+
+    public static void validateDate(LocalDateTime date) {
+        // Check if the date is in the past
+        if (date.isBefore(LocalDateTime.now())) {
+            throw new DateTimeException("Cannot set due date in the past");
+        }
+
+        // Check if the year is reasonable (e.g., not too far in the future)
+        int currentYear = LocalDateTime.now().getYear();
+        if (date.getYear() > currentYear + 10) {
+            throw new DateTimeException("Due date cannot be more than 10 years in the future");
+        }
+
+        // Validate month (1-12)
+        if (date.getMonthValue() < 1 || date.getMonthValue() > 12) {
+            throw new DateTimeException("Invalid month: " + date.getMonthValue());
+        }
+
+        // Validate day of month
+        int maxDays = date.getMonth().length(date.toLocalDate().isLeapYear());
+        if (date.getDayOfMonth() < 1 || date.getDayOfMonth() > maxDays) {
+            throw new DateTimeException("Invalid day of month: " + date.getDayOfMonth() +
+                " for month " + date.getMonth());
+        }
+
+        // Validate hour (0-23)
+        if (date.getHour() < 0 || date.getHour() > 23) {
+            throw new DateTimeException("Invalid hour: " + date.getHour());
+        }
+
+        // Validate minute (0-59)
+        if (date.getMinute() < 0 || date.getMinute() > 59) {
+            throw new DateTimeException("Invalid minute: " + date.getMinute());
+        }
+    }
+
+    public static Duration parseReminderTime(String timeStr) {
+        try {
+            if (timeStr.endsWith("h")) {
+                int hours = Integer.parseInt(timeStr.substring(0, timeStr.length() - 1));
+                return Duration.ofHours(hours);
+            } else if (timeStr.endsWith("m")) {
+                int minutes = Integer.parseInt(timeStr.substring(0, timeStr.length() - 1));
+                return Duration.ofMinutes(minutes);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
+    }
+
+    // "3", "3,4" or "3 4"; throws NumberFormatException for anything else
+    public static Set<Integer> parseIds(String ids) {
+        Set<Integer> result = new TreeSet<>();
+        for (String id : ids.trim().split("[,\\s]+")) {
+            result.add(Integer.parseInt(id));
+        }
+        return result;
+    }
+
+    // "30s", "10m", "2h" or "7d"; null if it is none of those
+    public static Duration parseDuration(String timeStr) {
+        if (timeStr.endsWith("s") || timeStr.endsWith("d")) {
+            try {
+                long amount = Integer.parseInt(timeStr.substring(0, timeStr.length() - 1));
+                return timeStr.endsWith("s") ? Duration.ofSeconds(amount) : Duration.ofDays(amount);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return parseReminderTime(timeStr);
+    }
+
+    public static boolean isValidEmail(String email) {
+        return email.matches("^[\\w.-]+@[\\w.-]+\\.[a-zA-Z]{2,}$");
+    }
+
+    public static boolean isValidRecurrenceType(String type) {
+        return type != null && (type.equalsIgnoreCase("daily") ||
+                              type.equalsIgnoreCase("weekly") ||
+                              type.equalsIgnoreCase("monthly"));
+    }
+
+    /**
+     * Checks if a parameter name is a known system parameter (not a tag)
+     */
+    public static boolean isKnownParameter(String param) {
+        String[] knownParams = {
+            "notify-email", "repeat", "end", "reminder", "email", "priority", "tag", "timeout",
+            "retry", "backoff", "jitter", "after", "catch-up"
+        };
+
+        for (String known : knownParams) {
+            if (param.equals(known)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
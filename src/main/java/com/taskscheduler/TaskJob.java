@@ -1,78 +1,125 @@
 package com.taskscheduler;
 
 import org.quartz.*;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.*;
-import java.io.*;
-import java.time.*;
-import java.time.format.*;
-import java.util.*;
+
+import com.taskscheduler.exec.CatchUpEngine;
+import com.taskscheduler.exec.DependencyTracker;
+import com.taskscheduler.exec.ExecutionService;
+import com.taskscheduler.exec.RetryPolicy;
 
 public class TaskJob implements Job {
     private static final Logger logger = Logger.getLogger(TaskJob.class.getName());
     private static TaskManager taskManager = TaskManager.getInstance();
-    private static final String OUTPUT_DIR = "task_outputs";
 
     @Override
     public void execute(JobExecutionContext context) throws JobExecutionException {
         try {
-            int taskId = context.getJobDetail().getJobDataMap().getInt("taskId");
-            Task task = taskManager.getTaskById(taskId);
-            
-            if (task != null) {
-                logger.info("Executing scheduled task: " + task.getTitle());
-                
-                // Create output directory if it doesn't exist
-                File outputDir = new File(OUTPUT_DIR);
-                if (!outputDir.exists()) {
-                    outputDir.mkdirs();
-                }
-
-                // Generate output filename with timestamp
-                String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-                String outputFile = String.format("%s/task_%d_%s.txt", OUTPUT_DIR, taskId, timestamp);
-                
-                // Execute the command
-                ProcessBuilder builder = new ProcessBuilder();
-                String command = task.getCommand();
-                
-                if (command == null || command.trim().isEmpty()) {
-                    logger.warning("No command specified for task: " + task.getTitle());
-                    return;
-                }
-
-                if (System.getProperty("os.name").toLowerCase().contains("windows")) {
-                    builder.command("cmd.exe", "/c", command);
-                } else {
-                    builder.command("sh", "-c", command);
-                }
-                
-                // Set working directory to current directory
-                builder.directory(new File(System.getProperty("user.dir")));
-                
-                // Redirect output to file
-                builder.redirectOutput(new File(outputFile));
-                builder.redirectErrorStream(true);
-                
-                logger.info("Executing command: " + command);
-                Process process = builder.start();
-                int exitCode = process.waitFor();
-                
-                if (exitCode == 0) {
-                    logger.info("Task executed successfully. Output saved to: " + outputFile);
-                } else {
-                    logger.warning("Task execution completed with exit code: " + exitCode);
-                }
-                
-                // Mark task as completed
-                task.setCompleted(true);
-                taskManager.updateTask(task);
-                
-            } else {
-                logger.warning("Task not found for ID: " + taskId);
-            }
+            run(context.getJobDetail().getJobDataMap().getInt("taskId"), context.getScheduledFireTime().getTime());
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error executing scheduled task", e);
             throw new JobExecutionException(e);
         }
     }
-} 
\ No newline at end of file
+
+    // starts the task's command and returns at once; the task is marked completed
+    // when the process exits, on an ExecutionService completion thread, unless the
+    // command failed and a retry is scheduled instead. The future completes once the
+    // task and the dependents it started have finished.
+    // scheduledAt is the trigger's fire time in epoch millis
+    public static CompletableFuture<Void> run(int taskId, long scheduledAt) {
+        Task task = taskManager.getTaskById(taskId);
+        if (task == null) {
+            logger.warning("Task not found for ID: " + taskId);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (task.hasDependencies() && !DependencyTracker.isReady(task)) {
+            // started by DependencyTracker once its predecessors succeed
+            logger.info("Task " + taskId + " is waiting for " + task.getDependsOn());
+            return CompletableFuture.completedFuture(null);
+        }
+        logger.info("Executing scheduled task: " + task.getTitle());
+
+        String command = task.getCommand();
+        if (command == null || command.trim().isEmpty()) {
+            logger.warning("No command specified for task: " + task.getTitle());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        int occurrence = task.getOccurrencesGenerated();
+        return ExecutionService.getInstance().execute(task, command, scheduledAt)
+                .handle((result, error) -> {
+                    if (error != null) {
+                        logger.log(Level.SEVERE, "Error executing scheduled task: " + task.getTitle(), error);
+                    } else if (result.isCancelled()) {
+                        // stopped with cancel <id>; the task stays open
+                        return null;
+                    }
+                    Task saved = taskManager.updateTask(taskId, current -> finishRun(current, result, error, occurrence));
+                    if (saved == null) {
+                        // deleted while it ran
+                        return null;
+                    }
+                    if (saved.getRetryAt() != null) {
+                        QuartzScheduler.getInstance().scheduleRetry(saved);
+                        return null;
+                    }
+                    // a catch-up replay schedules the series itself once it has caught up
+                    if (saved.isRecurring() && !saved.isCompleted()
+                            && !CatchUpEngine.getInstance().isReplaying(taskId)) {
+                        QuartzScheduler.getInstance().scheduleTask(saved);
+                    }
+                    return saved;
+                })
+                .thenCompose(saved -> saved != null ? runDependents(saved) : CompletableFuture.completedFuture(null));
+    }
+
+    // applies a finished run to the task: its attempt, then unless it failed the next
+    // occurrence of a series or completion. TaskManager applies it again to the task as
+    // stored if another process saved the task meanwhile, so a series only moves on if
+    // it is still at the occurrence that ran
+    static void finishRun(Task task, ExecutionService.Result result, Throwable error, int occurrence) {
+        if (recordAttempt(task, result) || error != null) {
+            return;
+        }
+        if (!task.isRecurring()) {
+            task.setCompleted(true);
+        } else if (task.getOccurrencesGenerated() == occurrence) {
+            task.advanceOccurrence(LocalDateTime.now(), false);
+        }
+    }
+
+    // starts the --after dependents of a task that has finished for good, or blocks
+    // them if it failed; also called when a task is completed by hand
+    public static CompletableFuture<Void> runDependents(Task task) {
+        return DependencyTracker.onFinished(task, dependent -> run(dependent.getId(), System.currentTimeMillis()));
+    }
+
+    // adds the run to the task's attempt history (result is null if the command never
+    // started). When it failed and the task has retries left, sets the retry time and
+    // returns true; the caller then leaves the task open and has it run again
+    static boolean recordAttempt(Task task, ExecutionService.Result result) {
+        LocalDateTime now = LocalDateTime.now();
+        Attempt attempt = result == null
+                ? new Attempt(now, 0, -1, false)
+                : new Attempt(now, result.getDurationMillis(), result.getExitCode(), result.isTimedOut());
+        task.recordAttempt(attempt);
+        RetryPolicy policy = RetryPolicy.of(task);
+        if (attempt.isSuccess() || policy == null) {
+            task.setFailedAttempts(0);
+            return false;
+        }
+        LocalDateTime retryAt = policy.nextRetry(task, now);
+        if (retryAt == null) {
+            logger.warning("Task " + task.getId() + " failed " + task.getFailedAttempts() + " times, giving up");
+            task.setFailedAttempts(0);
+            return false;
+        }
+        task.setRetryAt(retryAt);
+        logger.warning("Task " + task.getId() + " failed (" + attempt + "), retry " + task.getFailedAttempts()
+                + " of " + policy.getMaxRetries() + " at " + retryAt);
+        return true;
+    }
+}
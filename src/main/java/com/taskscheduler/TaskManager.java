@@ -1,39 +1,79 @@
 package com.taskscheduler;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Reader;
-import java.io.Writer;
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.TypeAdapter;
-import com.google.gson.reflect.TypeToken;
-import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonWriter;
+import com.taskscheduler.query.QueryPlanner;
+import com.taskscheduler.query.TaskQuery;
+import com.taskscheduler.store.CommitPolicy;
+import com.taskscheduler.store.CommitStats;
+import com.taskscheduler.store.StoreConflictException;
+import com.taskscheduler.store.TaskIndexes;
+import com.taskscheduler.store.TaskStore;
+import com.taskscheduler.store.TaskTable;
+import com.taskscheduler.store.TaskTypeAdapter;
 
 public class TaskManager {
+    private static final Logger logger = Logger.getLogger(TaskManager.class.getName());
     private static TaskManager instance;
-    private List<Task> tasks;
-    private final String FILE_NAME = "tasks.json";
+    // times a scheduler change is applied again while other processes keep saving the task first
+    private static final int MERGE_ATTEMPTS = 5;
+    private final TaskTable tasks = new TaskTable();
+    private final TaskIndexes indexes = new TaskIndexes();
+    private int nextId;
+    // saved tasks already due, which background checks may have passed; see noteDueTasks()
+    private final List<Task> dueInPast = new ArrayList<>();
+    // changes from updateTask not yet known to be in the store, oldest first per task
+    private final Map<Integer, List<Outcome>> outcomes = new HashMap<>();
+    static final String FILE_NAME = "tasks.json";
     private final Gson gson;
+    private final TaskStore store;
 
     private TaskManager() {
-        gson = new GsonBuilder()
-            .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
-            .registerTypeAdapter(Duration.class, new DurationAdapter())
-            .excludeFieldsWithoutExposeAnnotation()
-            .setPrettyPrinting()
-            .create();
+        GsonBuilder builder = new GsonBuilder()
+            .registerTypeAdapter(Task.class, new TaskTypeAdapter());
+        if (ConfigManager.isPrettyTaskFile()) {
+            builder.setPrettyPrinting();
+        }
+        gson = builder.create();
+        store = new TaskStore(FILE_NAME, gson, CommitPolicy.fromConfig(ConfigManager.getPersistenceMode()),
+                ConfigManager.isBinarySnapshot());
             
-        tasks = loadTasks();
+        for (Task task : loadTasks()) {
+            tasks.put(task);
+            indexes.update(task);
+        }
+        nextId = store.getNextId();
+    }
+
+    // a change updateTask saved, and the commit that should bring it to the store
+    private static class Outcome {
+        final Consumer<Task> change;
+        CompletableFuture<Void> commit;
+        int attempts = 1;
+
+        Outcome(Consumer<Task> change) {
+            this.change = change;
+        }
     }
 
     public static synchronized TaskManager getInstance() {
@@ -43,200 +83,529 @@ public class TaskManager {
         return instance;
     }
 
-    public Task getTaskById(int id) {
-        for (Task task : tasks) {
-            if (task.getId() == id) {
-                return task;
-            }
-        }
-        return null;
+    public synchronized Task getTaskById(int id) {
+        return tasks.get(id);
     }
 
+    // writes a full snapshot of all tasks and clears the mutation log
     public void saveTasks() {
-        try (Writer writer = new FileWriter(FILE_NAME)) {
-            gson.toJson(tasks, writer);
+        CompletableFuture<Void> commit;
+        synchronized (this) {
+            commit = store.compact(tasks.toList(), nextId);
+        }
+        commit(commit);
+    }
+
+    // persists a single changed task as one log record; false if it was not saved
+    public boolean saveTask(Task task) {
+        CompletableFuture<Void> commit;
+        synchronized (this) {
+            commit = persist(task);
+        }
+        return confirm(commit);
+    }
+
+    // flushes pending changes to disk, called on shutdown
+    public void close() {
+        try {
+            store.close();
         } catch (IOException e) {
             System.out.println("Error saving tasks: " + e.getMessage());
         }
     }
 
-    public List<Task> loadTasks() {
-        File file = new File(FILE_NAME);
-        if (!file.exists()) {
-            return new ArrayList<>();
+    public CommitStats getCommitStats() {
+        return store.getCommitStats();
+    }
+
+    public CommitPolicy getCommitPolicy() {
+        return store.getPolicy();
+    }
+
+    // drops the in-memory table and re-reads the store, picking up changes made by
+    // another process; own pending writes are flushed first so none are lost
+    public synchronized void reload() {
+        try {
+            store.flush();
+        } catch (IOException e) {
+            System.out.println("Error saving tasks: " + e.getMessage());
         }
+        List<Task> loaded = loadTasks();
+        tasks.clear();
+        indexes.clear();
+        for (Task task : loaded) {
+            tasks.put(task);
+            indexes.update(task);
+        }
+        nextId = Math.max(nextId, store.getNextId());
+    }
 
-        try (Reader reader = new FileReader(file)) {
-            List<Task> loadedTasks = gson.fromJson(reader, new TypeToken<List<Task>>() {}.getType());
-            return loadedTasks != null ? loadedTasks : new ArrayList<>();
-        } catch (Exception e) {
+    /**
+     * Merges the changes other processes have made to the store since the last
+     * look, and returns the ids of the tasks they added, changed or deleted. Costs
+     * one read of the store version when nothing changed.
+     */
+    public synchronized Set<Integer> refresh() {
+        Set<Integer> changed = new HashSet<>();
+        try {
+            if (!outcomes.isEmpty()) {
+                // settles every pending outcome, so none is taken for saved while it is still queued
+                store.flush();
+            }
+            store.refresh(new TaskStore.Listener() {
+                @Override
+                public void reset() {
+                    for (Task task : tasks.toList()) {
+                        changed.add(task.getId());
+                    }
+                    tasks.clear();
+                    indexes.clear();
+                }
+
+                @Override
+                public void put(Task task) {
+                    tasks.put(task);
+                    indexes.update(task);
+                    changed.add(task.getId());
+                }
+
+                @Override
+                public void delete(int id) {
+                    if (tasks.remove(id) != null) {
+                        indexes.remove(id);
+                    }
+                    changed.add(id);
+                }
+            });
+        } catch (IOException e) {
             System.out.println("Error loading tasks: " + e.getMessage());
-            file.delete();
-            return new ArrayList<>();
         }
+        nextId = Math.max(nextId, store.getNextId());
+        mergeOutcomes(changed);
+        return changed;
     }
 
-    private int getNextAvailableId() {
-        int maxId = 0;
-        for (Task task : tasks) {
-            if (task.getId() > maxId) {
-                maxId = task.getId();
+    // applies the updateTask changes the store rejected again, to the tasks as they are
+    // stored now; the caller reschedules them with the rest of the changed ids
+    private void mergeOutcomes(Set<Integer> changed) {
+        Iterator<Map.Entry<Integer, List<Outcome>>> entries = outcomes.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, List<Outcome>> entry = entries.next();
+            int id = entry.getKey();
+            Task task = tasks.get(id);
+            Iterator<Outcome> pending = entry.getValue().iterator();
+            while (pending.hasNext()) {
+                Outcome outcome = pending.next();
+                if (!outcome.commit.isDone()) {
+                    // queued behind a change applied again just now
+                    continue;
+                }
+                if (!isRejected(outcome.commit)) {
+                    // saved, or lost to a write error the committer has reported
+                    pending.remove();
+                    continue;
+                }
+                if (task == null) {
+                    // deleted by another process, nothing to apply it to
+                    pending.remove();
+                    continue;
+                }
+                if (outcome.attempts >= MERGE_ATTEMPTS) {
+                    logger.warning("Gave up saving a change to task " + id + " after " + outcome.attempts + " conflicts");
+                    System.out.println("Error saving tasks: task " + id + " kept changing in another process, a change to it was not saved");
+                    pending.remove();
+                    continue;
+                }
+                outcome.attempts++;
+                outcome.change.accept(task);
+                outcome.commit = persist(task);
+                watch(outcome.commit);
+                changed.add(id);
+            }
+            if (entry.getValue().isEmpty()) {
+                entries.remove();
             }
         }
-        return maxId + 1;
     }
 
-    public void addTask(Task task) {
-        task.setId(getNextAvailableId());
-        tasks.add(task);
-        saveTasks();
-        System.out.println("Added: " + task);
-        
-        if (task.getDueDate() != null && !task.isCompleted()) {
-            QuartzScheduler.getInstance().scheduleTask(task);
+    // once a commit of an updateTask change has been rejected, takes the task from the
+    // store and applies the change again, off the committer thread, which must not wait on itself
+    private void watch(CompletableFuture<Void> commit) {
+        commit.whenCompleteAsync((ignored, error) -> {
+            if (isRejected(commit)) {
+                QuartzScheduler.getInstance().syncWithStore();
+            } else {
+                synchronized (this) {
+                    forgetSettled();
+                }
+            }
+        });
+    }
+
+    // true if the commit is done and was rejected because another process saved the task first
+    private static boolean isRejected(CompletableFuture<Void> commit) {
+        try {
+            commit.getNow(null);
+            return false;
+        } catch (CompletionException e) {
+            return e.getCause() instanceof StoreConflictException;
         }
     }
 
-    public List<Task> getTasks() {
-        return tasks;
+    // drops the outcomes whose commits are done and will not be applied again
+    private void forgetSettled() {
+        Iterator<List<Outcome>> lists = outcomes.values().iterator();
+        while (lists.hasNext()) {
+            List<Outcome> list = lists.next();
+            list.removeIf(outcome -> outcome.commit.isDone() && !isRejected(outcome.commit));
+            if (list.isEmpty()) {
+                lists.remove();
+            }
+        }
     }
 
-    public void deleteTask(int id) {
-        boolean removed = tasks.removeIf(task -> task.getId() == id);
-        if (removed) {
-            System.out.println("Task " + id + " has been deleted.");
-            saveTasks();
-        } else {
-            System.out.println("Task " + id + " not found.");
+    // the task files are left as they are when they cannot be read, lock and log
+    // errors included, so a transient failure stops the scheduler instead of losing tasks
+    public List<Task> loadTasks() {
+        try {
+            return store.load();
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Failed to load tasks", e);
+            System.out.println("Error loading tasks: " + e.getMessage());
+            throw new IllegalStateException("Could not load tasks from " + FILE_NAME, e);
         }
     }
 
-    public void listTasks() {
-        if (tasks.isEmpty()) {
-            System.out.println("No tasks found.");
-        } else {
-            tasks.forEach(System.out::println);
+    // re-indexes the task and queues its record while holding the lock;
+    // callers wait for durability after releasing it
+    private CompletableFuture<Void> persist(Task task) {
+        LocalDateTime runAt = task.getRetryAt() != null ? task.getRetryAt() : task.getDueDate();
+        if (!task.isCompleted() && runAt != null && !runAt.isAfter(LocalDateTime.now())) {
+            dueInPast.add(task);
         }
+        indexes.update(task);
+        CompletableFuture<Void> commit = store.put(task);
+        compactIfNeeded();
+        return commit;
     }
 
-    public void completeTask(int id) {
-        for (Task task : tasks) {
-            if (task.getId() == id) {
-                task.setCompleted(true);
-                // Handle recurring task
-                if (task.isRecurring()) {
-                    // Check if we should generate next occurrence
-                    if (task.getRecurrenceCount() > 0) {
-                        int remaining = task.getRecurrenceCount() - task.getOccurrencesGenerated();
-                        if (remaining > 0 && (task.getRecurrenceEnd() == null || task.getDueDate().isBefore(task.getRecurrenceEnd()))) {
-                            Task nextOccurrence = task.generateNextOccurrence();
-                            if (nextOccurrence != null) {
-                                // Set a new unique ID for the next occurrence
-                                nextOccurrence.setId(getNextAvailableId());
-                                tasks.add(nextOccurrence);
-                                System.out.println("Completed: [" + task.getId() + "] \"" + task.getTitle() + "\"");
-                                System.out.println("Generated next occurrence: [" + nextOccurrence.getId() + "] \"" + 
-                                                 nextOccurrence.getTitle() + "\" Due: " + 
-                                                 nextOccurrence.getDueDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
-                            }
-                        }
-                    } else if (task.getRecurrenceEnd() == null || task.getDueDate().isBefore(task.getRecurrenceEnd())) {
-                        // Handle infinite recurrence (no count specified)
-                        Task nextOccurrence = task.generateNextOccurrence();
-                        if (nextOccurrence != null) {
-                            nextOccurrence.setId(getNextAvailableId());
-                            tasks.add(nextOccurrence);
-                            System.out.println("Completed: [" + task.getId() + "] \"" + task.getTitle() + "\"");
-                            System.out.println("Generated next occurrence: [" + nextOccurrence.getId() + "] \"" + 
-                                             nextOccurrence.getTitle() + "\" Due: " + 
-                                             nextOccurrence.getDueDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
-                        }
-                    }
-                }
-                saveTasks();
-                if (!task.isRecurring()) {
-                    System.out.println("Task " + id + " marked as completed.");
-                }
+    // waits for the change as the commit policy asks; for changes that cannot conflict
+    private void commit(CompletableFuture<Void> commit) {
+        try {
+            store.await(commit);
+        } catch (IOException e) {
+            System.out.println("Error saving tasks: " + e.getMessage());
+        }
+        noteDueTasks();
+    }
+
+    // an edit of an existing task the caller reports to the user, so it waits until the
+    // store has taken or rejected it whatever the policy; false if it was not saved. A change
+    // rejected because another process saved the task first is dropped, and the task is
+    // taken from the store as the other process left it
+    private boolean confirm(CompletableFuture<Void> commit) {
+        boolean saved = true;
+        try {
+            store.awaitWritten(commit);
+        } catch (StoreConflictException e) {
+            System.out.println("Error saving tasks: " + e.getMessage());
+            QuartzScheduler.getInstance().syncWithStore();
+            saved = false;
+        } catch (IOException e) {
+            System.out.println("Error saving tasks: " + e.getMessage());
+            saved = false;
+        }
+        noteDueTasks();
+        return saved;
+    }
+
+    // Tasks saved already due are written out and then handed to background checks,
+    // outside the table lock, as a check holds the watermark lock while reading the table
+    private void noteDueTasks() {
+        List<Task> due;
+        synchronized (this) {
+            if (dueInPast.isEmpty()) {
                 return;
             }
+            due = new ArrayList<>(dueInPast);
+            dueInPast.clear();
+        }
+        try {
+            store.flush();
+        } catch (IOException e) {
+            System.out.println("Error saving tasks: " + e.getMessage());
         }
-        System.out.println("Task not found.");
+        BackgroundTaskRunner.noteDueBeforeWatermark(due);
     }
 
-    // Check for overdue recurring tasks and generate next occurrences
-    public void checkRecurringTasks() {
-        LocalDateTime now = LocalDateTime.now();
-        List<Task> tasksToAdd = new ArrayList<>();
-        
-        for (Task task : tasks) {
-            if (task.isRecurring() && task.getDueDate() != null) {
-                // Check if task is overdue or completed
-                if ((!task.isCompleted() && task.getDueDate().isBefore(now)) || 
-                    (task.isCompleted() && task.getOccurrencesGenerated() < task.getRecurrenceCount())) {
-                    Task nextOccurrence = task.generateNextOccurrence();
-                    if (nextOccurrence != null) {
-                        tasksToAdd.add(nextOccurrence);
-                        System.out.println("Generated next occurrence for recurring task: " + nextOccurrence);
-                    }
+    private void compactIfNeeded() {
+        if (store.needsCompaction(tasks.size())) {
+            store.compact(tasks.toList(), nextId);
+        }
+    }
+
+    // ids come from a persisted sequence shared with other processes, so they are
+    // never reused; if the lock file cannot be used the local sequence goes on
+    private int getNextAvailableId() {
+        try {
+            int id = store.allocateId();
+            nextId = Math.max(nextId, id + 1);
+            return id;
+        } catch (IOException e) {
+            System.out.println("Error reading task ids: " + e.getMessage());
+            return nextId++;
+        }
+    }
+
+    // throws IllegalArgumentException if the task depends on a task that does not exist
+    public void addTask(Task task) {
+        CompletableFuture<Void> commit;
+        synchronized (this) {
+            for (int id : task.getDependsOn()) {
+                if (!tasks.contains(id)) {
+                    throw new IllegalArgumentException("Task " + id + " not found (--after " + id + ")");
                 }
             }
+            task.setId(getNextAvailableId());
+            tasks.put(task);
+            commit = persist(task);
         }
+        commit(commit);
+        System.out.println("Added: " + task);
         
-        if (!tasksToAdd.isEmpty()) {
-            tasks.addAll(tasksToAdd);
-            saveTasks();
+        if (task.getDueDate() != null && !task.isCompleted()) {
+            QuartzScheduler.getInstance().scheduleTask(task);
+        } else if (task.hasDependencies()) {
+            QuartzScheduler.getInstance().startIfReady(task);
         }
     }
 
-    public void updateTask(Task updatedTask) {
-        for (int i = 0; i < tasks.size(); i++) {
-            if (tasks.get(i).getId() == updatedTask.getId()) {
-                tasks.set(i, updatedTask);
-                saveTasks();
-                return;
+    // replaces the task's --after list; throws IllegalArgumentException if a task is
+    // missing or the change would close a cycle. False if it was not saved
+    public boolean setDependencies(int id, Set<Integer> after) {
+        CompletableFuture<Void> commit;
+        synchronized (this) {
+            Task task = tasks.get(id);
+            if (task == null) {
+                throw new IllegalArgumentException("Task " + id + " not found.");
             }
+            for (int predecessor : after) {
+                if (!tasks.contains(predecessor)) {
+                    throw new IllegalArgumentException("Task " + predecessor + " not found.");
+                }
+            }
+            List<Integer> cycle = findCycle(id, after);
+            if (cycle != null) {
+                throw new IllegalArgumentException("Dependency cycle: " + cycle.stream()
+                        .map(String::valueOf).collect(Collectors.joining(" -> ")));
+            }
+            task.setDependsOn(after);
+            task.setBlockedBy(0);
+            commit = persist(task);
         }
+        return confirm(commit);
     }
 
-    private static class DurationAdapter extends TypeAdapter<Duration> {
-        @Override
-        public void write(JsonWriter out, Duration value) throws IOException {
-            if (value == null) {
-                out.nullValue();
-                return;
+    // a path id -> ... -> id if the task ran after the given ones, depth first over --after
+    private List<Integer> findCycle(int id, Set<Integer> after) {
+        Deque<List<Integer>> paths = new ArrayDeque<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int predecessor : after) {
+            paths.push(List.of(id, predecessor));
+        }
+        while (!paths.isEmpty()) {
+            List<Integer> path = paths.pop();
+            int last = path.get(path.size() - 1);
+            if (last == id) {
+                return path;
+            }
+            Task task = tasks.get(last);
+            if (task == null || !seen.add(last)) {
+                continue;
+            }
+            for (int next : task.getDependsOn()) {
+                List<Integer> longer = new ArrayList<>(path);
+                longer.add(next);
+                paths.push(longer);
             }
-            out.value(value.toMinutes());
         }
+        return null;
+    }
 
-        @Override
-        public Duration read(JsonReader in) throws IOException {
-            if (in.peek() == null) {
-                return null;
+    // tasks that name this one in --after
+    public synchronized List<Task> getDependents(int id) {
+        return resolveIds(indexes.idsDependingOn(id));
+    }
+
+    // copy of all tasks in id order
+    public synchronized List<Task> getTasks() {
+        return tasks.toList();
+    }
+
+    // false if there is no such task or the delete was not saved
+    public boolean deleteTask(int id) {
+        CompletableFuture<Void> commit = null;
+        synchronized (this) {
+            Task removed = tasks.remove(id);
+            if (removed != null) {
+                indexes.remove(id);
+                commit = store.delete(id, removed.getRevision());
+                compactIfNeeded();
             }
-            long minutes = in.nextLong();
-            return Duration.ofMinutes(minutes);
         }
+        if (commit == null) {
+            System.out.println("Task " + id + " not found.");
+            return false;
+        }
+        if (!confirm(commit)) {
+            return false;
+        }
+        System.out.println("Task " + id + " has been deleted.");
+        return true;
     }
 
-    private static class LocalDateTimeAdapter extends TypeAdapter<LocalDateTime> {
-        private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    // open tasks due before the given time, earliest first
+    public synchronized List<Task> getOverdueTasks(LocalDateTime now) {
+        return resolveDue(indexes.openDueBetween(null, false, now, false));
+    }
 
-        @Override
-        public void write(JsonWriter out, LocalDateTime value) throws IOException {
-            if (value == null) {
-                out.nullValue();
-                return;
+    // open tasks due at or after the given time, earliest first
+    public synchronized List<Task> getUpcomingTasks(LocalDateTime from) {
+        return resolveDue(indexes.openDueBetween(from, true, null, false));
+    }
+
+    // open tasks due within [from, to], earliest first
+    public synchronized List<Task> getTasksDueBetween(LocalDateTime from, LocalDateTime to) {
+        return resolveDue(indexes.openDueBetween(from, true, to, true));
+    }
+
+    // open tasks due within (after, until], earliest first; no lower bound if after is null
+    public synchronized List<Task> getTasksDueAfter(LocalDateTime after, LocalDateTime until) {
+        return resolveDue(indexes.openDueBetween(after, false, until, true));
+    }
+
+    // open tasks whose pending retry falls within (after, until], earliest first
+    public synchronized List<Task> getRetriesDueAfter(LocalDateTime after, LocalDateTime until) {
+        return resolveDue(indexes.openRetriesBetween(after, false, until, true));
+    }
+
+    public synchronized List<Task> getTasksByTag(String tag) {
+        return resolveIds(indexes.idsWithTag(tag));
+    }
+
+    public synchronized List<Task> getTasksByPriority(Priority priority) {
+        return resolveIds(indexes.idsWithPriority(priority));
+    }
+
+    public synchronized List<Task> getTasksByStatus(boolean completed) {
+        return resolveIds(completed ? indexes.completedIds() : indexes.openIds());
+    }
+
+    // runs a parsed list query against the indexes, see QueryPlanner
+    public synchronized List<Task> query(TaskQuery query) {
+        return new QueryPlanner(tasks, indexes).plan(query).execute();
+    }
+
+    private List<Task> resolveDue(Collection<TaskIndexes.DueKey> keys) {
+        List<Task> result = new ArrayList<>(keys.size());
+        for (TaskIndexes.DueKey key : keys) {
+            result.add(tasks.get(key.getId()));
+        }
+        return result;
+    }
+
+    private List<Task> resolveIds(Collection<Integer> ids) {
+        List<Task> result = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            result.add(tasks.get(id));
+        }
+        return result;
+    }
+
+    public synchronized void listTasks() {
+        if (tasks.isEmpty()) {
+            System.out.println("No tasks found.");
+        } else {
+            tasks.forEach(System.out::println);
+        }
+    }
+
+    // a recurring task completes only its pending occurrence and stays open for the
+    // next one, unless that was the last. False if there is no such task or the change
+    // was not saved
+    public boolean completeTask(int id) {
+        CompletableFuture<Void> commit;
+        String message;
+        synchronized (this) {
+            Task task = tasks.get(id);
+            if (task == null) {
+                System.out.println("Task not found.");
+                return false;
+            }
+            if (task.isRecurring()) {
+                int done = task.getOccurrencesGenerated();
+                if (task.advanceOccurrence(LocalDateTime.now(), false)) {
+                    message = "Completed occurrence " + (done + 1) + " of [" + id + "] \"" + task.getTitle()
+                            + "\", next due " + task.getDueDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+                } else {
+                    message = "Completed the last occurrence of [" + id + "] \"" + task.getTitle() + "\"";
+                }
+            } else {
+                task.setCompleted(true);
+                message = "Task " + id + " marked as completed.";
             }
-            out.value(value.format(formatter));
+            commit = persist(task);
         }
+        if (!confirm(commit)) {
+            return false;
+        }
+        System.out.println(message);
+        return true;
+    }
 
-        @Override
-        public LocalDateTime read(JsonReader in) throws IOException {
-            if (in.peek() == null) {
+    // skips the n-th upcoming occurrence of a recurring task, 1 being the pending one
+    public boolean skipOccurrence(int id, int n) {
+        CompletableFuture<Void> commit;
+        synchronized (this) {
+            Task task = tasks.get(id);
+            if (task == null || !task.isRecurring() || !task.skipOccurrence(n, LocalDateTime.now())) {
+                return false;
+            }
+            commit = persist(task);
+        }
+        return confirm(commit);
+    }
+
+    /**
+     * Applies a change made by the scheduler itself, such as the outcome of a run, to
+     * the task and saves it; returns the changed task, or null if there is none. The
+     * change is applied again to the task as stored if another process saved the task
+     * first, so it should set the fields it is about from what it finds, not copy a
+     * whole task over.
+     */
+    public Task updateTask(int id, Consumer<Task> change) {
+        CompletableFuture<Void> commit;
+        Task task;
+        synchronized (this) {
+            task = tasks.get(id);
+            if (task == null) {
                 return null;
             }
-            String dateStr = in.nextString();
-            return LocalDateTime.parse(dateStr, formatter);
+            change.accept(task);
+            Outcome outcome = new Outcome(change);
+            commit = persist(task);
+            outcome.commit = commit;
+            outcomes.computeIfAbsent(id, key -> new ArrayList<>()).add(outcome);
+            watch(commit);
+        }
+        try {
+            store.await(commit);
+        } catch (StoreConflictException e) {
+            // merged by watch
+        } catch (IOException e) {
+            System.out.println("Error saving tasks: " + e.getMessage());
         }
+        noteDueTasks();
+        return task;
     }
 }
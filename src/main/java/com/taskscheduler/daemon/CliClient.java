@@ -0,0 +1,206 @@
+package com.taskscheduler.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.taskscheduler.Task;
+import com.taskscheduler.TaskCommandParser;
+import com.taskscheduler.TaskManager;
+import com.taskscheduler.daemon.ControlProtocol.Frame;
+import com.taskscheduler.query.TaskQuery;
+import com.taskscheduler.store.RunHistory;
+import com.taskscheduler.ui.UIManager;
+
+/**
+ * One-shot commands given on the command line, e.g. from a shell script:
+ * <pre>
+ *   add "Backup" at 02:00 --command "tar ..."
+ *   list [where ... | order by ... | limit N]
+ *   complete &lt;id&gt;
+ *   delete &lt;id&gt;
+ *   cancel &lt;id&gt;
+ *   tail &lt;id&gt;
+ *   history &lt;id&gt; [n]
+ *   stats [window]
+ * </pre>
+ * They are sent to the daemon when one is listening, so the call costs a socket
+ * round trip instead of a JVM warm-up, a store load and the NLP models. Without a
+ * daemon the command runs against the task store in this process; if the daemon
+ * drops the connection after the request is sent, the command fails instead.
+ * {@code history} and {@code stats} always read the run history file directly.
+ */
+public class CliClient {
+
+    private CliClient() {
+    }
+
+    public static boolean handles(String command) {
+        switch (command.toLowerCase()) {
+            case "add":
+            case "list":
+            case "complete":
+            case "delete":
+            case "cancel":
+            case "tail":
+            case "history":
+            case "stats":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // returns the process exit code
+    public static int run(String[] args) {
+        String command = args[0].toLowerCase();
+        String rest = String.join(" ", Arrays.copyOfRange(args, 1, args.length)).trim();
+        if (command.equals("history") || command.equals("stats")) {
+            return showHistory(command, rest);
+        }
+        byte op;
+        switch (command) {
+            case "add":
+                op = ControlProtocol.ADD;
+                break;
+            case "list":
+                op = rest.isEmpty() ? ControlProtocol.LIST : ControlProtocol.QUERY;
+                break;
+            case "complete":
+                op = ControlProtocol.COMPLETE;
+                break;
+            case "cancel":
+                op = ControlProtocol.CANCEL;
+                break;
+            case "tail":
+                op = ControlProtocol.TAIL;
+                break;
+            default:
+                op = ControlProtocol.DELETE;
+                break;
+        }
+
+        ControlClient client;
+        try {
+            client = ControlClient.connect(TaskDaemon.socketPath());
+        } catch (IOException e) {
+            // no daemon listening
+            client = null;
+        }
+        Frame reply;
+        if (client == null) {
+            reply = runLocally(op, rest);
+        } else {
+            // once the request is sent the daemon may have applied it, so a lost reply
+            // is reported instead of running the command a second time here
+            try (ControlClient connected = client) {
+                reply = op == ControlProtocol.TAIL
+                        ? connected.stream(op, rest, CliClient::printOutput)
+                        : connected.call(op, rest);
+            } catch (IOException e) {
+                UIManager.displayError("Lost the connection to the daemon (" + e.getMessage()
+                        + "), the command may or may not have been applied");
+                return 1;
+            }
+        }
+
+        if (!reply.isOk()) {
+            UIManager.displayError(reply.getPayload());
+            return 1;
+        }
+        if (op == ControlProtocol.LIST || op == ControlProtocol.QUERY) {
+            UIManager.displayTasksTable(ControlProtocol.decodeTasks(reply.getPayload()));
+        } else if (!reply.getPayload().isEmpty()) {
+            System.out.println(reply.getPayload());
+        }
+        return 0;
+    }
+
+    private static void printOutput(String payload) {
+        byte[] data = ControlProtocol.decodeBytes(payload);
+        System.out.write(data, 0, data.length);
+        System.out.flush();
+    }
+
+    // the file is shared with the daemon, so this needs neither it nor the task store;
+    // task titles are not shown
+    private static int showHistory(String command, String rest) {
+        RunHistory history = new RunHistory(new File(RunHistory.FILE_NAME));
+        try {
+            if (command.equals("history")) {
+                String[] parts = rest.split("\\s+");
+                int id = Integer.parseInt(parts[0]);
+                int limit = parts.length > 1 ? Integer.parseInt(parts[1]) : 20;
+                UIManager.displayRunHistory(id, null, history.recent(id, limit));
+                return 0;
+            }
+            long since = 0;
+            if (!rest.isEmpty()) {
+                Duration window = TaskCommandParser.parseDuration(rest);
+                if (window == null) {
+                    UIManager.displayError("Invalid window: " + rest + ". Use e.g. 30m, 24h or 7d");
+                    return 1;
+                }
+                since = System.currentTimeMillis() - window.toMillis();
+            }
+            UIManager.displayRunStats(rest.isEmpty() ? "Runs per task" : "Runs per task, last " + rest,
+                    history.summarize(since), null);
+            return 0;
+        } catch (NumberFormatException e) {
+            UIManager.displayError("Usage: history <id> [n]");
+            return 1;
+        } catch (IOException e) {
+            UIManager.displayError("Could not read the run history: " + e.getMessage());
+            return 1;
+        } finally {
+            try {
+                history.close();
+            } catch (IOException e) {
+                // read-only, nothing to lose
+            }
+        }
+    }
+
+    // same operations as TaskDaemon against the store in this process; TaskManager
+    // already reports adds, completions and deletes on the console
+    private static Frame runLocally(byte op, String rest) {
+        TaskManager taskManager = TaskManager.getInstance();
+        try {
+            switch (op) {
+                case ControlProtocol.ADD:
+                    List<String> messages = new ArrayList<>();
+                    Task task = TaskCommandParser.parseAdd(rest, messages);
+                    taskManager.addTask(task);
+                    return Frame.ok(String.join("\n", messages));
+                case ControlProtocol.LIST:
+                    return Frame.ok(ControlProtocol.encodeTasks(taskManager.getTasks()));
+                case ControlProtocol.QUERY:
+                    return Frame.ok(ControlProtocol.encodeTasks(taskManager.query(TaskQuery.parse(rest))));
+                default:
+                    int id = Integer.parseInt(rest);
+                    if (taskManager.getTaskById(id) == null) {
+                        return Frame.error("Task " + id + " not found.");
+                    }
+                    if (op == ControlProtocol.CANCEL || op == ControlProtocol.TAIL) {
+                        // commands only run inside the daemon or a background check
+                        return Frame.error("Task " + id + " is not running.");
+                    }
+                    boolean saved = op == ControlProtocol.COMPLETE
+                            ? taskManager.completeTask(id) : taskManager.deleteTask(id);
+                    return saved ? Frame.ok("") : Frame.error("Task " + id + " was not saved.");
+            }
+        } catch (DateTimeParseException e) {
+            return Frame.error("Invalid date/time format. Use: yyyy-MM-dd HH:mm or HH:mm");
+        } catch (NumberFormatException e) {
+            return Frame.error("Invalid task id: " + rest);
+        } catch (RuntimeException e) {
+            return Frame.error(e.getMessage());
+        } finally {
+            taskManager.close();
+        }
+    }
+}
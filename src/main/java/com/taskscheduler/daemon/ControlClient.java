@@ -0,0 +1,68 @@
+package com.taskscheduler.daemon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import com.taskscheduler.daemon.ControlProtocol.Frame;
+
+// connection to a running daemon; requests are answered in order on the same socket
+public class ControlClient implements Closeable {
+    private final SocketChannel channel;
+
+    private ControlClient(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    public static ControlClient connect(Path socketPath) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new ControlClient(channel);
+    }
+
+    public Frame call(byte op, String payload) throws IOException {
+        ControlProtocol.write(channel, new Frame(op, payload));
+        Frame reply = ControlProtocol.read(channel);
+        if (reply == null) {
+            throw new IOException("Daemon closed the connection");
+        }
+        return reply;
+    }
+
+    // sends a streamed request, handing each MORE payload to the consumer; returns the final reply
+    public Frame stream(byte op, String payload, Consumer<String> more) throws IOException {
+        ControlProtocol.write(channel, new Frame(op, payload));
+        while (true) {
+            Frame reply = ControlProtocol.read(channel);
+            if (reply == null) {
+                throw new IOException("Daemon closed the connection");
+            }
+            if (reply.getCode() != ControlProtocol.MORE) {
+                return reply;
+            }
+            more.accept(reply.getPayload());
+        }
+    }
+
+    // sends one of the --control text commands and returns the reply text
+    public static String send(Path socketPath, String command) throws IOException {
+        try (ControlClient client = connect(socketPath)) {
+            Frame reply = client.call(ControlProtocol.opFor(command), "");
+            return reply.isOk() ? reply.getPayload() : "error: " + reply.getPayload();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
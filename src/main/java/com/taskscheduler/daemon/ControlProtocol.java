@@ -0,0 +1,155 @@
+package com.taskscheduler.daemon;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.taskscheduler.Task;
+import com.taskscheduler.store.TaskTypeAdapter;
+
+/**
+ * Wire format of the control socket. Every request and response is one frame:
+ * <pre>
+ *   int  length   bytes that follow (code + payload)
+ *   byte code     an op code in requests, OK or ERROR in responses
+ *   byte[] payload UTF-8 text
+ * </pre>
+ * A connection carries any number of request/response pairs, so a client can
+ * keep it open for a batch of commands. Task lists travel as a JSON array in
+ * the task file format. A streamed request such as {@code TAIL} is answered with
+ * any number of {@code MORE} frames before its final OK or ERROR; command output
+ * in them is raw bytes carried one per char (ISO-8859-1), since a chunk may end
+ * in the middle of a UTF-8 sequence.
+ */
+public final class ControlProtocol {
+    public static final byte ADD = 1;       // payload: text after "add", as typed in the shell
+    public static final byte LIST = 2;      // payload: empty
+    public static final byte QUERY = 3;     // payload: query text, e.g. "where tag:work order by due"
+    public static final byte COMPLETE = 4;  // payload: task id
+    public static final byte DELETE = 5;    // payload: task id
+    public static final byte STATUS = 6;
+    public static final byte RELOAD = 7;
+    public static final byte STOP = 8;
+    public static final byte CANCEL = 9;    // payload: task id
+    public static final byte TAIL = 10;     // payload: task id; streamed
+
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+    public static final byte MORE = 2;      // part of a streamed reply, more frames follow
+
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+    private static final Gson GSON = new GsonBuilder().registerTypeAdapter(Task.class, new TaskTypeAdapter()).create();
+    private static final java.lang.reflect.Type TASK_LIST = new TypeToken<List<Task>>() { }.getType();
+
+    private ControlProtocol() {
+    }
+
+    public static final class Frame {
+        private final byte code;
+        private final String payload;
+
+        public Frame(byte code, String payload) {
+            this.code = code;
+            this.payload = payload;
+        }
+
+        public static Frame ok(String payload) {
+            return new Frame(OK, payload);
+        }
+
+        public static Frame error(String message) {
+            return new Frame(ERROR, message);
+        }
+
+        public byte getCode() {
+            return code;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        public boolean isOk() {
+            return code == OK;
+        }
+    }
+
+    // op code for the text commands accepted by --control
+    public static byte opFor(String command) {
+        switch (command.toLowerCase()) {
+            case "status":
+                return STATUS;
+            case "reload":
+                return RELOAD;
+            case "stop":
+                return STOP;
+            default:
+                throw new IllegalArgumentException("unknown command '" + command + "' (status, reload, stop)");
+        }
+    }
+
+    public static boolean isStreamed(byte op) {
+        return op == TAIL;
+    }
+
+    public static String encodeBytes(byte[] data, int length) {
+        return new String(data, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    public static byte[] decodeBytes(String payload) {
+        return payload.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    public static String encodeTasks(List<Task> tasks) {
+        return GSON.toJson(tasks, TASK_LIST);
+    }
+
+    public static List<Task> decodeTasks(String json) {
+        return GSON.fromJson(json, TASK_LIST);
+    }
+
+    public static void write(SocketChannel channel, Frame frame) throws IOException {
+        byte[] payload = frame.getPayload().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.putInt(payload.length + 1).put(frame.getCode()).flip();
+        ByteBuffer[] buffers = { header, ByteBuffer.wrap(payload) };
+        while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    // null when the peer closed the connection between frames
+    public static Frame read(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(5);
+        if (!fill(channel, header, true)) {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        if (length < 1 || length > MAX_FRAME) {
+            throw new IOException("Invalid control frame length: " + length);
+        }
+        byte code = header.get();
+        ByteBuffer payload = ByteBuffer.allocate(length - 1);
+        fill(channel, payload, false);
+        return new Frame(code, new String(payload.array(), StandardCharsets.UTF_8));
+    }
+
+    private static boolean fill(SocketChannel channel, ByteBuffer buffer, boolean eofAllowed) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (eofAllowed && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Control connection closed mid-frame");
+            }
+        }
+        return true;
+    }
+}
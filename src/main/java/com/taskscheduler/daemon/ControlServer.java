@@ -0,0 +1,131 @@
+package com.taskscheduler.daemon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.taskscheduler.daemon.ControlProtocol.Frame;
+
+/**
+ * Local control channel of the daemon: a Unix domain socket speaking
+ * {@link ControlProtocol}. Each connection gets its own thread and may send
+ * several requests; a streamed request holds its connection until it is answered
+ * in full. Only processes that can reach the socket file can talk to
+ * it, so there is no separate authentication.
+ */
+public class ControlServer implements Closeable {
+    private static final Logger logger = Logger.getLogger(ControlServer.class.getName());
+
+    private final Path socketPath;
+    private final Function<Frame, Frame> handler;
+    private final StreamHandler streamHandler;
+    private final AtomicInteger connections = new AtomicInteger();
+    private ServerSocketChannel server;
+    private Thread acceptor;
+
+    // answers a streamed request: passes MORE payloads to the sink, then returns the final reply
+    public interface StreamHandler {
+        Frame stream(Frame request, Sink sink) throws IOException;
+    }
+
+    public interface Sink {
+        void send(String payload) throws IOException;
+    }
+
+    public ControlServer(Path socketPath, Function<Frame, Frame> handler, StreamHandler streamHandler) {
+        this.socketPath = socketPath;
+        this.handler = handler;
+        this.streamHandler = streamHandler;
+    }
+
+    // fails if another daemon is already answering on the socket; a stale file is replaced
+    public void start() throws IOException {
+        if (Files.exists(socketPath)) {
+            if (isAnswering()) {
+                throw new IOException("A daemon is already listening on " + socketPath);
+            }
+            Files.delete(socketPath);
+        }
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+
+        acceptor = new Thread(this::acceptLoop, "daemon-control");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Control channel listening on " + socketPath);
+    }
+
+    public Path getSocketPath() {
+        return socketPath;
+    }
+
+    private boolean isAnswering() {
+        try {
+            try (ControlClient client = ControlClient.connect(socketPath)) {
+                client.call(ControlProtocol.STATUS, "");
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void acceptLoop() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel client = server.accept();
+                Thread worker = new Thread(() -> serve(client), "daemon-control-" + connections.incrementAndGet());
+                worker.setDaemon(true);
+                worker.start();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Control connection failed", e);
+            }
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        try (client) {
+            Frame request;
+            while ((request = ControlProtocol.read(client)) != null) {
+                Frame reply;
+                try {
+                    if (ControlProtocol.isStreamed(request.getCode())) {
+                        reply = streamHandler.stream(request,
+                                payload -> ControlProtocol.write(client, new Frame(ControlProtocol.MORE, payload)));
+                    } else {
+                        reply = handler.apply(request);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // a malformed request, e.g. a query that does not parse
+                    reply = Frame.error(e.getMessage());
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Control request " + request.getCode() + " failed", e);
+                    reply = Frame.error(String.valueOf(e.getMessage()));
+                }
+                ControlProtocol.write(client, reply);
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Control connection dropped", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (server != null) {
+            server.close();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.taskscheduler.daemon;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.taskscheduler.ConfigManager;
+import com.taskscheduler.QuartzScheduler;
+import com.taskscheduler.ReminderManager;
+import com.taskscheduler.Task;
+import com.taskscheduler.TaskCommandParser;
+import com.taskscheduler.TaskJob;
+import com.taskscheduler.TaskManager;
+import com.taskscheduler.daemon.ControlProtocol.Frame;
+import com.taskscheduler.exec.ExecutionService;
+import com.taskscheduler.exec.OutputBuffer;
+import com.taskscheduler.query.TaskQuery;
+
+/**
+ * Long-lived headless mode started with {@code --daemon}. The task table and the
+ * Quartz scheduler stay resident, so tasks fire at their exact due time instead of
+ * on the next poll of a fresh JVM. A {@link ControlServer} serves the
+ * {@link ControlProtocol} operations: add, list, query, complete and delete work
+ * on the resident task table, cancel kills a task's running command, tail streams
+ * its output as it is written, and
+ * <ul>
+ *   <li>{@code status} - uptime, task counts and store statistics</li>
+ *   <li>{@code reload} - re-read the task store and reschedule, after another process changed it</li>
+ *   <li>{@code stop}   - flush pending changes and exit</li>
+ * </ul>
+ */
+public class TaskDaemon {
+    private static final Logger logger = Logger.getLogger(TaskDaemon.class.getName());
+    // lines of earlier output shown when tail starts
+    public static final int TAIL_LINES = 10;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final TaskManager taskManager;
+    private final QuartzScheduler scheduler;
+    private final ReminderManager reminderManager;
+    private final ControlServer controlServer;
+    private final CountDownLatch stopRequested = new CountDownLatch(1);
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private boolean shutDown;
+
+    public TaskDaemon() {
+        this.taskManager = TaskManager.getInstance();
+        this.scheduler = QuartzScheduler.getInstance();
+        this.reminderManager = new ReminderManager(taskManager);
+        this.controlServer = new ControlServer(socketPath(), this::handle, this::tail);
+    }
+
+    public static Path socketPath() {
+        return Paths.get(ConfigManager.getControlSocket());
+    }
+
+    // blocks until a stop command arrives or the process is terminated
+    public void run() throws IOException {
+        scheduler.scheduleOpenTasks(taskManager.getTasks());
+        scheduler.watchStore();
+        controlServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "daemon-shutdown"));
+        System.out.println("Task scheduler daemon started, " + scheduler.getScheduledCount()
+                + " tasks scheduled, control socket " + controlServer.getSocketPath());
+
+        try {
+            stopRequested.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        shutdown();
+    }
+
+    Frame handle(Frame request) {
+        String payload = request.getPayload().trim();
+        switch (request.getCode()) {
+            case ControlProtocol.ADD:
+                return add(payload);
+            case ControlProtocol.LIST:
+                return Frame.ok(ControlProtocol.encodeTasks(taskManager.getTasks()));
+            case ControlProtocol.QUERY:
+                return Frame.ok(ControlProtocol.encodeTasks(taskManager.query(TaskQuery.parse(payload))));
+            case ControlProtocol.COMPLETE:
+                return complete(parseId(payload));
+            case ControlProtocol.DELETE:
+                return delete(parseId(payload));
+            case ControlProtocol.CANCEL:
+                return cancel(parseId(payload));
+            case ControlProtocol.STATUS:
+                return Frame.ok(status());
+            case ControlProtocol.RELOAD:
+                taskManager.reload();
+                scheduler.unscheduleAll();
+                scheduler.scheduleOpenTasks(taskManager.getTasks());
+                return Frame.ok("reloaded " + taskManager.getTasks().size() + " tasks, "
+                        + scheduler.getScheduledCount() + " scheduled");
+            case ControlProtocol.STOP:
+                stopRequested.countDown();
+                return Frame.ok("stopping");
+            default:
+                return Frame.error("unknown request " + request.getCode());
+        }
+    }
+
+    // replies with the parser's notes followed by the confirmation
+    private Frame add(String text) {
+        List<String> messages = new ArrayList<>();
+        Task task;
+        try {
+            task = TaskCommandParser.parseAdd(text, messages);
+            taskManager.addTask(task);
+        } catch (DateTimeParseException e) {
+            return Frame.error("Invalid date/time format. Use: yyyy-MM-dd HH:mm or HH:mm");
+        } catch (RuntimeException e) {
+            return Frame.error(e.getMessage());
+        }
+        messages.add("Added task " + task.getId() + ": \"" + task.getTitle() + "\"");
+        return Frame.ok(String.join("\n", messages));
+    }
+
+    private Frame complete(int id) {
+        Task task = taskManager.getTaskById(id);
+        if (task == null) {
+            return Frame.error("Task " + id + " not found.");
+        }
+        scheduler.unscheduleTask(task);
+        if (!taskManager.completeTask(id)) {
+            return notSaved(id);
+        }
+        if (!task.isCompleted()) {
+            // a series stays the same task, now due at its next occurrence
+            scheduler.scheduleTask(task);
+            TaskJob.runDependents(task);
+            return Frame.ok("Completed an occurrence of task " + id + ", next due "
+                    + task.getDueDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")) + ".");
+        }
+        TaskJob.runDependents(task);
+        return Frame.ok("Task " + id + " marked as completed.");
+    }
+
+    private Frame delete(int id) {
+        Task task = taskManager.getTaskById(id);
+        if (task == null) {
+            return Frame.error("Task " + id + " not found.");
+        }
+        scheduler.unscheduleTask(task);
+        if (!taskManager.deleteTask(id)) {
+            return notSaved(id);
+        }
+        return Frame.ok("Task " + id + " has been deleted.");
+    }
+
+    // the task stays as the store has it, scheduled again if it is still open
+    private Frame notSaved(int id) {
+        Task current = taskManager.getTaskById(id);
+        if (current != null && !current.isCompleted()) {
+            scheduler.scheduleTask(current);
+        }
+        return Frame.error("Task " + id + " was not saved, see the daemon's output.");
+    }
+
+    private Frame cancel(int id) {
+        if (taskManager.getTaskById(id) == null) {
+            return Frame.error("Task " + id + " not found.");
+        }
+        if (ExecutionService.getInstance().cancel(id) == 0) {
+            return Frame.error("Task " + id + " is not running.");
+        }
+        return Frame.ok("Cancelled the command of task " + id + ".");
+    }
+
+    // streams the output of the task's running command until it exits
+    private Frame tail(Frame request, ControlServer.Sink sink) throws IOException {
+        int id = parseId(request.getPayload().trim());
+        OutputBuffer output = ExecutionService.getInstance().tail(id);
+        if (output == null) {
+            return Frame.error("Task " + id + " is not running.");
+        }
+        try {
+            output.follow(TAIL_LINES, (data, length) -> sink.send(ControlProtocol.encodeBytes(data, length)), () -> false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Frame.error("interrupted");
+        }
+        return Frame.ok("");
+    }
+
+    private static int parseId(String payload) {
+        try {
+            return Integer.parseInt(payload);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid task id: " + payload);
+        }
+    }
+
+    private String status() {
+        Duration uptime = Duration.between(startedAt, LocalDateTime.now());
+        return String.format("running since %s (up %dh %02dm), %d tasks, %d open, %d scheduled (%s); store (%s): %s; execution: %s; start lag: %s",
+                startedAt.format(TIME_FORMAT), uptime.toHours(), uptime.toMinutesPart(),
+                taskManager.getTasks().size(), taskManager.getTasksByStatus(false).size(),
+                scheduler.getScheduledCount(), scheduler.getEngineName(),
+                taskManager.getCommitPolicy(), taskManager.getCommitStats(),
+                ExecutionService.getInstance().getAdmission().getStats(), ExecutionService.getInstance().getLag());
+    }
+
+    // runs once, from either the stop command or the shutdown hook
+    private synchronized void shutdown() {
+        if (shutDown) {
+            return;
+        }
+        shutDown = true;
+        logger.info("Shutting down daemon...");
+        try {
+            controlServer.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to close control channel", e);
+        }
+        reminderManager.shutdown();
+        scheduler.shutdown();
+        taskManager.close();
+    }
+}
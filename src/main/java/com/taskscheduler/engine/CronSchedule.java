@@ -0,0 +1,416 @@
+package com.taskscheduler.engine;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Quartz-style cron expression ({@code sec min hour day-of-month month
+ * day-of-week [year]}) compiled into one bitmask per field. Finding the next fire
+ * time walks the fields from the year down: a month, day or hour that cannot
+ * match is skipped whole with a single bit scan, so a call costs a few dozen
+ * operations however far away the next fire is.
+ * <p>
+ * Supported per field: {@code *}, values, names ({@code JAN}, {@code MON}),
+ * ranges {@code a-b}, steps {@code a/n} and {@code a-b/n}, and lists. The
+ * day-of-month also accepts {@code L} (last day). Day-of-week runs 1 (SUN) to 7
+ * (SAT) as in Quartz. {@code ?} means "any" in either day field; if both day
+ * fields are restricted the expression is rejected, as Quartz does.
+ * <p>
+ * Compiled schedules are immutable and cached by expression. In a zone with a
+ * fixed offset {@link #nextAfter} allocates nothing; elsewhere it only makes the
+ * short-lived objects {@link ZoneRules} needs for the offset lookup. A local time
+ * skipped by a daylight-saving change fires as much later as the gap is long
+ * (02:30 becomes 03:30), as in java.time, and a repeated one fires once, at the
+ * earlier offset.
+ */
+public final class CronSchedule {
+    // Quartz accepts years up to this
+    private static final int MAX_YEAR = 2199;
+    private static final int CACHE_LIMIT = 10_000;
+    private static final ConcurrentHashMap<String, CronSchedule> cache = new ConcurrentHashMap<>();
+    private static final String[] MONTHS = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN",
+            "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+    private static final String[] DAYS = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+    private final String expression;
+    private final long seconds;
+    private final long minutes;
+    private final long hours;
+    // bit n is day n of the month
+    private final long daysOfMonth;
+    private final boolean lastDayOfMonth;
+    // bit 1 is Sunday
+    private final long daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+    private final long months;
+    // null for any year
+    private final BitSet years;
+    private final ZoneRules rules;
+    // offset of a fixed-offset zone in seconds, else Integer.MIN_VALUE
+    private final int fixedOffset;
+
+    private CronSchedule(String expression, ZoneId zone) {
+        this.expression = expression;
+        String[] fields = expression.trim().toUpperCase(Locale.ROOT).split("\\s+");
+        if (fields.length != 6 && fields.length != 7) {
+            throw new IllegalArgumentException("Invalid cron expression \"" + expression
+                    + "\": expected 6 or 7 fields (sec min hour day-of-month month day-of-week [year])");
+        }
+        this.seconds = parse(fields[0], 0, 59, null, "second");
+        this.minutes = parse(fields[1], 0, 59, null, "minute");
+        this.hours = parse(fields[2], 0, 23, null, "hour");
+        String dom = fields[3];
+        this.lastDayOfMonth = dom.equals("L");
+        this.anyDayOfMonth = dom.equals("*") || dom.equals("?");
+        this.daysOfMonth = anyDayOfMonth || lastDayOfMonth ? 0 : parse(dom, 1, 31, null, "day-of-month");
+        this.months = parse(fields[4], 1, 12, MONTHS, "month");
+        String dow = fields[5];
+        this.anyDayOfWeek = dow.equals("*") || dow.equals("?");
+        this.daysOfWeek = anyDayOfWeek ? 0 : parse(dow, 1, 7, DAYS, "day-of-week");
+        if (!anyDayOfMonth && !anyDayOfWeek) {
+            throw new IllegalArgumentException("Invalid cron expression \"" + expression
+                    + "\": use ? in either the day-of-month or the day-of-week field");
+        }
+        if (fields.length == 7 && !fields[6].equals("*")) {
+            this.years = new BitSet(MAX_YEAR + 1);
+            for (String part : fields[6].split(",")) {
+                int[] range = range(part, 1970, MAX_YEAR, null, "year");
+                for (int year = range[0]; year <= range[1]; year += range[2]) {
+                    years.set(year);
+                }
+            }
+        } else {
+            this.years = null;
+        }
+        this.rules = zone.getRules();
+        this.fixedOffset = rules.isFixedOffset() ? rules.getOffset(Instant.EPOCH).getTotalSeconds() : Integer.MIN_VALUE;
+    }
+
+    // the compiled schedule in the system time zone, from the cache when possible;
+    // throws IllegalArgumentException for an invalid expression
+    public static CronSchedule of(String expression) {
+        CronSchedule schedule = cache.get(expression);
+        if (schedule != null) {
+            return schedule;
+        }
+        schedule = new CronSchedule(expression, ZoneId.systemDefault());
+        if (cache.size() >= CACHE_LIMIT) {
+            cache.clear();
+        }
+        cache.put(expression, schedule);
+        return schedule;
+    }
+
+    public static CronSchedule of(String expression, ZoneId zone) {
+        return new CronSchedule(expression, zone);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * The first fire time strictly after the given epoch millis, in epoch millis,
+     * or -1 if the expression never fires again.
+     */
+    public long nextAfter(long afterMillis) {
+        long after = Math.floorDiv(afterMillis, 1000);
+        long local = nextLocal(after + 1 + offsetAt(after + 1));
+        while (local >= 0) {
+            long fire = toEpochSecond(local);
+            // a wall time repeated by a DST change maps to its earlier instant, which may be past
+            if (fire > after) {
+                return fire * 1000;
+            }
+            local = nextLocal(local + 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Fills {@code times} with the next fire times after the given epoch millis, in
+     * order, and returns how many there were (fewer than the array holds only if the
+     * expression stops firing).
+     */
+    public int nextN(long afterMillis, long[] times) {
+        long after = afterMillis;
+        for (int i = 0; i < times.length; i++) {
+            long next = nextAfter(after);
+            if (next < 0) {
+                return i;
+            }
+            times[i] = next;
+            after = next;
+        }
+        return times.length;
+    }
+
+    // first matching local time (seconds since the epoch in local wall-clock terms)
+    // at or after the given one, or -1
+    private long nextLocal(long local) {
+        long epochDay = Math.floorDiv(local, 86_400);
+        int secondOfDay = Math.floorMod(local, 86_400);
+        // civil date from the day count, as in java.time.LocalDate.ofEpochDay
+        long zeroDay = epochDay + 719_468;
+        long era = Math.floorDiv(zeroDay, 146_097);
+        long dayOfEra = zeroDay - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shifted = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shifted + 2) / 5 + 1);
+        int month = (int) (shifted < 10 ? shifted + 3 : shifted - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        int hour = secondOfDay / 3600;
+        int minute = secondOfDay / 60 % 60;
+        int second = secondOfDay % 60;
+
+        while (year <= MAX_YEAR) {
+            if (years != null && !years.get(year)) {
+                year = years.nextSetBit(year);
+                if (year < 0) {
+                    return -1;
+                }
+                month = 1;
+                day = 1;
+                hour = minute = second = 0;
+            }
+            int nextMonth = next(months, month);
+            if (nextMonth < 0) {
+                year++;
+                month = 1;
+                day = 1;
+                hour = minute = second = 0;
+                continue;
+            }
+            if (nextMonth != month) {
+                month = nextMonth;
+                day = 1;
+                hour = minute = second = 0;
+            }
+            int nextDay = nextDay(year, month, day);
+            if (nextDay < 0) {
+                month++;
+                day = 1;
+                hour = minute = second = 0;
+                if (month > 12) {
+                    year++;
+                    month = 1;
+                }
+                continue;
+            }
+            if (nextDay != day) {
+                day = nextDay;
+                hour = minute = second = 0;
+            }
+            int nextHour = next(hours, hour);
+            if (nextHour < 0) {
+                day++;
+                hour = minute = second = 0;
+                if (day > lengthOfMonth(year, month)) {
+                    day = 1;
+                    if (++month > 12) {
+                        year++;
+                        month = 1;
+                    }
+                }
+                continue;
+            }
+            if (nextHour != hour) {
+                hour = nextHour;
+                minute = second = 0;
+            }
+            int nextMinute = next(minutes, minute);
+            if (nextMinute < 0) {
+                hour++;
+                minute = second = 0;
+                if (hour > 23) {
+                    hour = 0;
+                    day++;
+                    if (day > lengthOfMonth(year, month)) {
+                        day = 1;
+                        if (++month > 12) {
+                            year++;
+                            month = 1;
+                        }
+                    }
+                }
+                continue;
+            }
+            if (nextMinute != minute) {
+                minute = nextMinute;
+                second = 0;
+            }
+            int nextSecond = next(seconds, second);
+            if (nextSecond < 0) {
+                // next minute: carry it by redoing the search from there
+                return nextLocal(toLocal(year, month, day, hour, minute, 0) + 60);
+            }
+            return toLocal(year, month, day, hour, minute, nextSecond);
+        }
+        return -1;
+    }
+
+    // first day of the month from the given one that both day fields allow, or -1
+    private int nextDay(int year, int month, int from) {
+        int length = lengthOfMonth(year, month);
+        if (anyDayOfWeek) {
+            if (lastDayOfMonth) {
+                return length;
+            }
+            if (anyDayOfMonth) {
+                return from <= length ? from : -1;
+            }
+            int day = next(daysOfMonth, from);
+            return day <= length ? day : -1;
+        }
+        // day-of-week of the first candidate, 1 = Sunday; 1970-01-01 was a Thursday
+        int dayOfWeek = Math.floorMod(epochDay(year, month, from) + 4, 7) + 1;
+        for (int day = from; day <= length; day++) {
+            if ((daysOfWeek & (1L << dayOfWeek)) != 0) {
+                return day;
+            }
+            dayOfWeek = dayOfWeek == 7 ? 1 : dayOfWeek + 1;
+        }
+        return -1;
+    }
+
+    // lowest set bit at or above from, or -1
+    private static int next(long mask, int from) {
+        if (from > 63) {
+            return -1;
+        }
+        long rest = mask & (-1L << from);
+        return rest == 0 ? -1 : Long.numberOfTrailingZeros(rest);
+    }
+
+    private int offsetAt(long epochSecond) {
+        if (fixedOffset != Integer.MIN_VALUE) {
+            return fixedOffset;
+        }
+        return rules.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+    }
+
+    // a wall time in a DST gap moves forward by the gap; one in an overlap takes the earlier offset
+    private long toEpochSecond(long local) {
+        if (fixedOffset != Integer.MIN_VALUE) {
+            return local - fixedOffset;
+        }
+        LocalDateTime dateTime = LocalDateTime.ofEpochSecond(local, 0, ZoneOffset.UTC);
+        ZoneOffsetTransition transition = rules.getTransition(dateTime);
+        ZoneOffset offset = transition != null ? transition.getOffsetBefore() : rules.getOffset(dateTime);
+        return local - offset.getTotalSeconds();
+    }
+
+    private static long toLocal(int year, int month, int day, int hour, int minute, int second) {
+        return epochDay(year, month, day) * 86_400 + hour * 3600 + minute * 60 + second;
+    }
+
+    // as in java.time.LocalDate.toEpochDay
+    private static long epochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - 719_528;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // bit n set for every value n the field allows
+    private static long parse(String field, int min, int max, String[] names, String name) {
+        long mask = 0;
+        for (String part : field.split(",")) {
+            int[] range = range(part, min, max, names, name);
+            for (int value = range[0]; value <= range[1]; value += range[2]) {
+                mask |= 1L << value;
+            }
+        }
+        return mask;
+    }
+
+    // {first, last, step} of one list element
+    private static int[] range(String part, int min, int max, String[] names, String name) {
+        int step = 1;
+        int slash = part.indexOf('/');
+        if (slash >= 0) {
+            step = value(part.substring(slash + 1), 1, max, null, name + " step");
+            part = part.substring(0, slash);
+        }
+        int first;
+        int last;
+        if (part.equals("*")) {
+            first = min;
+            last = max;
+        } else {
+            int dash = part.indexOf('-');
+            if (dash > 0) {
+                first = value(part.substring(0, dash), min, max, names, name);
+                last = value(part.substring(dash + 1), min, max, names, name);
+                if (last < first) {
+                    throw new IllegalArgumentException("Invalid " + name + " range: " + part);
+                }
+            } else {
+                first = value(part, min, max, names, name);
+                // "5/15" runs from 5 to the end of the field
+                last = slash >= 0 ? max : first;
+            }
+        }
+        return new int[] {first, last, step};
+    }
+
+    private static int value(String text, int min, int max, String[] names, String name) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(text)) {
+                    return i + 1;
+                }
+            }
+        }
+        int value;
+        try {
+            value = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + text);
+        }
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + text + " (must be " + min + "-" + max + ")");
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,143 @@
+package com.taskscheduler.engine;
+
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.matchers.GroupMatcher;
+
+import com.taskscheduler.Task;
+import com.taskscheduler.TaskJob;
+
+// one JobDetail and Trigger per task in Quartz's RAMJobStore, configured by quartz.properties;
+// the trigger priority is the task's priority level, so Quartz fires higher levels first
+// when several triggers are due together. A pending retry is a second job in the "retry" group
+public class QuartzEngine implements SchedulerEngine {
+    private static final Logger logger = Logger.getLogger(QuartzEngine.class.getName());
+
+    private static final String RETRY_GROUP = "retry";
+
+    private Scheduler scheduler;
+
+    public QuartzEngine() {
+        try {
+            scheduler = StdSchedulerFactory.getDefaultScheduler();
+            scheduler.start();
+        } catch (SchedulerException e) {
+            logger.log(Level.SEVERE, "Failed to initialize Quartz scheduler", e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "quartz";
+    }
+
+    @Override
+    public void schedule(Task task) {
+        try {
+            // replaces the regular trigger; a pending retry stays
+            scheduler.deleteJob(JobKey.jobKey(String.valueOf(task.getId())));
+            JobDetail jobDetail = JobBuilder.newJob(TaskJob.class)
+                    .withIdentity(String.valueOf(task.getId()))
+                    .usingJobData("taskId", task.getId())
+                    .build();
+
+            // one SimpleTrigger per occurrence, cron series included; TaskJob schedules
+            // the next occurrence of a series once it has moved on
+            Date startTime = Date.from(task.getDueDate()
+                    .atZone(ZoneId.systemDefault())
+                    .toInstant());
+            Trigger trigger = TriggerBuilder.newTrigger()
+                    .withIdentity(String.valueOf(task.getId()) + "_trigger")
+                    .withPriority(task.getPriority().getLevel())
+                    .startAt(startTime)
+                    .build();
+
+            scheduler.scheduleJob(jobDetail, trigger);
+            logger.info("Scheduled task: " + task.getTitle() + " for " + task.getDueDate());
+        } catch (SchedulerException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Failed to schedule task: " + task.getTitle(), e);
+        }
+    }
+
+    @Override
+    public void scheduleRetry(Task task, long at) {
+        try {
+            JobKey key = JobKey.jobKey(String.valueOf(task.getId()), RETRY_GROUP);
+            scheduler.deleteJob(key);
+            JobDetail jobDetail = JobBuilder.newJob(TaskJob.class)
+                    .withIdentity(key)
+                    .usingJobData("taskId", task.getId())
+                    .build();
+            Trigger trigger = TriggerBuilder.newTrigger()
+                    .withIdentity(task.getId() + "_retry", RETRY_GROUP)
+                    .withPriority(task.getPriority().getLevel())
+                    .startAt(new Date(at))
+                    .build();
+            scheduler.scheduleJob(jobDetail, trigger);
+        } catch (SchedulerException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Failed to schedule a retry of task: " + task.getTitle(), e);
+        }
+    }
+
+    @Override
+    public void cancel(int taskId) {
+        try {
+            scheduler.deleteJob(JobKey.jobKey(String.valueOf(taskId)));
+            scheduler.deleteJob(JobKey.jobKey(String.valueOf(taskId), RETRY_GROUP));
+        } catch (SchedulerException e) {
+            logger.log(Level.SEVERE, "Failed to unschedule task " + taskId, e);
+        }
+    }
+
+    @Override
+    public boolean isScheduled(int taskId) {
+        try {
+            return scheduler.checkExists(JobKey.jobKey(String.valueOf(taskId)))
+                    || scheduler.checkExists(JobKey.jobKey(String.valueOf(taskId), RETRY_GROUP));
+        } catch (SchedulerException e) {
+            logger.log(Level.SEVERE, "Failed to look up task " + taskId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public int size() {
+        try {
+            return scheduler.getJobKeys(GroupMatcher.anyJobGroup()).size();
+        } catch (SchedulerException e) {
+            logger.log(Level.SEVERE, "Failed to count scheduled tasks", e);
+            return 0;
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            scheduler.clear();
+        } catch (SchedulerException e) {
+            logger.log(Level.SEVERE, "Failed to clear scheduled tasks", e);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            if (scheduler != null && !scheduler.isShutdown()) {
+                scheduler.shutdown();
+            }
+        } catch (SchedulerException e) {
+            logger.log(Level.SEVERE, "Failed to shutdown scheduler", e);
+        }
+    }
+}
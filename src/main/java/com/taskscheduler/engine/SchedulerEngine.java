@@ -0,0 +1,34 @@
+package com.taskscheduler.engine;
+
+import com.taskscheduler.Task;
+
+/**
+ * Backend that fires tasks at their due time by handing them to
+ * {@link com.taskscheduler.TaskJob#run(int)}. A series is armed for its current
+ * occurrence only, cron series included; TaskJob arms the next one once the series
+ * has moved on, so skipped and moved occurrences fire when the task says. Selected with
+ * {@code "schedulerEngine"} in config.json, see {@link com.taskscheduler.QuartzScheduler}.
+ * Scheduling a task that is already scheduled replaces its previous trigger.
+ * A retry is a one-off run next to the task's regular schedule; cancelling the
+ * task drops both.
+ */
+public interface SchedulerEngine {
+
+    String getName();
+
+    void schedule(Task task);
+
+    // runs the task once more at the given epoch millis, replacing a pending retry
+    void scheduleRetry(Task task, long at);
+
+    void cancel(int taskId);
+
+    boolean isScheduled(int taskId);
+
+    int size();
+
+    // cancels everything, the engine stays usable
+    void clear();
+
+    void shutdown();
+}
@@ -0,0 +1,294 @@
+package com.taskscheduler.engine;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.taskscheduler.Task;
+import com.taskscheduler.TaskJob;
+import com.taskscheduler.util.IntHashMap;
+
+/**
+ * Hierarchical timing wheel. The finest wheel has 64 one-millisecond slots; each
+ * further wheel is created on demand and has 64 slots as wide as the whole wheel
+ * below it (64 ms, 4 s, 4.5 min, 4.7 h, 12 days, ...). A task sits in one slot
+ * of the coarsest wheel it does not fit below, and moves down a level each time
+ * that slot comes due, until it fires from the finest wheel at its exact millisecond.
+ * <p>
+ * Schedule and cancel are O(1) linked-list operations on a slot plus an id lookup.
+ * A task costs one small entry object, or two while a retry is pending. Only slots
+ * that hold tasks are put in a {@link DelayQueue}, so the ticker thread sleeps
+ * until the next non-empty slot instead of waking every millisecond.
+ */
+public class TimingWheelEngine implements SchedulerEngine {
+    private static final Logger logger = Logger.getLogger(TimingWheelEngine.class.getName());
+    private static final int WHEEL_SIZE = 64;
+    private static final long TICK_MS = 1;
+
+    private final DelayQueue<Bucket> queue = new DelayQueue<>();
+    private final IntHashMap<Entry> entries = new IntHashMap<>();
+    private final IntHashMap<Entry> retries = new IntHashMap<>();
+    private final Wheel wheel = new Wheel(TICK_MS, System.currentTimeMillis());
+    private final ExecutorService workers;
+    private final Launcher launcher;
+    private final Thread ticker;
+    private volatile boolean running = true;
+
+    // starts a task whose time has come; TaskJob.run outside tests
+    interface Launcher {
+        void launch(int taskId, long scheduledAt);
+    }
+
+    public TimingWheelEngine(int threads) {
+        this(threads, TaskJob::run);
+    }
+
+    TimingWheelEngine(int threads, Launcher launcher) {
+        this.launcher = launcher;
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, "task-runner-" + workerCount.incrementAndGet()));
+        this.ticker = new Thread(this::tickLoop, "timing-wheel");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public String getName() {
+        return "wheel";
+    }
+
+    @Override
+    public void schedule(Task task) {
+        long deadline = task.getDueDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        synchronized (this) {
+            remove(entries, task.getId());
+            add(new Entry(task.getId(), deadline, task.getPriority().getLevel(), false));
+        }
+        logger.info("Scheduled task: " + task.getTitle() + " for " + task.getDueDate());
+    }
+
+    @Override
+    public synchronized void scheduleRetry(Task task, long at) {
+        remove(retries, task.getId());
+        add(new Entry(task.getId(), at, task.getPriority().getLevel(), true));
+    }
+
+    @Override
+    public synchronized void cancel(int taskId) {
+        remove(entries, taskId);
+        remove(retries, taskId);
+    }
+
+    private static void remove(IntHashMap<Entry> map, int taskId) {
+        Entry entry = map.remove(taskId);
+        if (entry != null && entry.bucket != null) {
+            entry.bucket.remove(entry);
+        }
+    }
+
+    @Override
+    public synchronized boolean isScheduled(int taskId) {
+        return entries.containsKey(taskId) || retries.containsKey(taskId);
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size() + retries.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.forEachValue(entry -> entry.bucket.remove(entry));
+        entries.clear();
+        retries.forEachValue(entry -> entry.bucket.remove(entry));
+        retries.clear();
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        ticker.interrupt();
+        workers.shutdown();
+    }
+
+    private void add(Entry entry) {
+        (entry.retry ? retries : entries).put(entry.taskId, entry);
+        if (!wheel.add(entry, queue)) {
+            fire(entry);
+        }
+    }
+
+    private static final Comparator<Entry> BY_PRIORITY = Comparator
+            .comparingInt((Entry e) -> -e.priority)
+            .thenComparingLong(e -> e.deadline);
+
+    private void tickLoop() {
+        while (running) {
+            Bucket bucket;
+            try {
+                bucket = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (this) {
+                // drain every slot that is due, cascading entries down to finer wheels;
+                // what is due together is dispatched highest priority first
+                List<Entry> due = new ArrayList<>();
+                while (bucket != null) {
+                    wheel.advanceClock(bucket.expiration);
+                    for (Entry entry = bucket.takeAll(); entry != null; ) {
+                        Entry next = entry.next;
+                        entry.next = null;
+                        entry.prev = null;
+                        if (!wheel.add(entry, queue)) {
+                            due.add(entry);
+                        }
+                        entry = next;
+                    }
+                    bucket = queue.poll();
+                }
+                due.sort(BY_PRIORITY);
+                due.forEach(this::fire);
+            }
+        }
+    }
+
+    // called with the lock held
+    private void fire(Entry entry) {
+        (entry.retry ? retries : entries).remove(entry.taskId);
+        int taskId = entry.taskId;
+        long scheduledAt = entry.deadline;
+        workers.execute(() -> launcher.launch(taskId, scheduledAt));
+    }
+
+    private static final class Entry {
+        final int taskId;
+        final long deadline;
+        final int priority;
+        final boolean retry;
+        Entry prev;
+        Entry next;
+        Bucket bucket;
+
+        Entry(int taskId, long deadline, int priority, boolean retry) {
+            this.taskId = taskId;
+            this.deadline = deadline;
+            this.priority = priority;
+            this.retry = retry;
+        }
+    }
+
+    // one slot: a doubly linked list of entries, queued by the start of its time range
+    private static final class Bucket implements Delayed {
+        private final Entry head = new Entry(-1, 0, 0, false);
+        volatile long expiration = -1;
+
+        Bucket() {
+            head.next = head;
+            head.prev = head;
+        }
+
+        void add(Entry entry) {
+            entry.bucket = this;
+            entry.prev = head.prev;
+            entry.next = head;
+            head.prev.next = entry;
+            head.prev = entry;
+        }
+
+        void remove(Entry entry) {
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+            entry.prev = null;
+            entry.next = null;
+            entry.bucket = null;
+        }
+
+        // true if the slot now covers a different time range and must be queued again
+        boolean setExpiration(long time) {
+            if (expiration == time) {
+                return false;
+            }
+            expiration = time;
+            return true;
+        }
+
+        // empties the slot and returns its entries as a null-terminated chain
+        Entry takeAll() {
+            Entry first = head.next == head ? null : head.next;
+            head.prev.next = null;
+            for (Entry e = first; e != null; e = e.next) {
+                e.bucket = null;
+            }
+            head.next = head;
+            head.prev = head;
+            expiration = -1;
+            return first;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiration - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration, ((Bucket) other).expiration);
+        }
+    }
+
+    private static final class Wheel {
+        private final long tickMs;
+        private final long interval;
+        private final Bucket[] buckets = new Bucket[WHEEL_SIZE];
+        private long currentTime;
+        private Wheel overflow;
+
+        Wheel(long tickMs, long startMs) {
+            this.tickMs = tickMs;
+            this.interval = tickMs * WHEEL_SIZE;
+            this.currentTime = startMs - startMs % tickMs;
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                buckets[i] = new Bucket();
+            }
+        }
+
+        // false if the entry is already due
+        boolean add(Entry entry, DelayQueue<Bucket> queue) {
+            if (entry.deadline < currentTime + tickMs) {
+                return false;
+            }
+            if (entry.deadline < currentTime + interval) {
+                long slot = entry.deadline / tickMs;
+                Bucket bucket = buckets[(int) (slot % WHEEL_SIZE)];
+                bucket.add(entry);
+                if (bucket.setExpiration(slot * tickMs)) {
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Wheel(interval, currentTime);
+            }
+            return overflow.add(entry, queue);
+        }
+
+        void advanceClock(long time) {
+            if (time >= currentTime + tickMs) {
+                currentTime = time - time % tickMs;
+                if (overflow != null) {
+                    overflow.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.taskscheduler.exec;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.taskscheduler.Task;
+
+/**
+ * Decides when a due task may start its process. At most {@code globalLimit}
+ * commands run at once, and a tag with a limit (say {@code backup} = 1) never has
+ * more running tasks than that. Tasks that cannot start wait in a bounded queue,
+ * highest priority first; a task blocked only by its tag limit does not hold up
+ * others behind it. When the queue is full, new tasks are rejected instead of queued.
+ * <p>
+ * Waiting tasks age: every {@code agingMillis} in the queue counts as one priority
+ * level, so a LOW task that has waited four aging periods ranks with a fresh
+ * CRITICAL one and nothing starves. Since all tickets age at the same rate this
+ * is a fixed rank per ticket, {@code queuedAt - level * agingMillis}, and the
+ * queue stays a plain sorted set.
+ */
+public class AdmissionController {
+    private static final Comparator<Ticket> ORDER = Comparator
+            .comparingLong((Ticket t) -> t.rank)
+            .thenComparingLong(t -> t.sequence);
+
+    private final TreeSet<Ticket> waiting = new TreeSet<>(ORDER);
+    private final Map<String, Integer> runningByTag = new HashMap<>();
+    private final Map<String, Integer> tagLimits = new TreeMap<>();
+    private final int queueCapacity;
+    private final long agingMillis;
+    private int globalLimit;
+    private int running;
+    private long sequence;
+
+    private long admitted;
+    private long rejected;
+    private long queuedTotal;
+    private long waitNanosTotal;
+    private long waitNanosMax;
+
+    public AdmissionController(int globalLimit, Map<String, Integer> tagLimits, int queueCapacity, long agingMillis) {
+        this.globalLimit = globalLimit;
+        this.tagLimits.putAll(tagLimits);
+        this.queueCapacity = queueCapacity;
+        this.agingMillis = agingMillis;
+    }
+
+    // held while a task's process runs; release exactly once
+    public final class Permit {
+        private final List<String> tags;
+        private boolean released;
+
+        private Permit(List<String> tags) {
+            this.tags = tags;
+        }
+
+        public void release() {
+            List<Ticket> ready;
+            synchronized (AdmissionController.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                running--;
+                for (String tag : tags) {
+                    runningByTag.merge(tag, -1, Integer::sum);
+                }
+                ready = admitWaiting();
+            }
+            start(ready);
+        }
+    }
+
+    private static final class Ticket {
+        final List<String> tags;
+        final long rank;
+        final long sequence;
+        final long queuedAt = System.nanoTime();
+        final CompletableFuture<Permit> future = new CompletableFuture<>();
+        Permit permit;
+
+        Ticket(List<String> tags, long rank, long sequence) {
+            this.tags = tags;
+            this.rank = rank;
+            this.sequence = sequence;
+        }
+    }
+
+    // completes once the task may start, right away if there is room
+    public CompletableFuture<Permit> acquire(Task task) {
+        List<String> tags = new ArrayList<>(task.getTags());
+        synchronized (this) {
+            if (fits(tags)) {
+                admitted++;
+                return CompletableFuture.completedFuture(take(tags));
+            }
+            if (waiting.size() >= queueCapacity) {
+                rejected++;
+                return CompletableFuture.failedFuture(new RejectedExecutionException(
+                        "Execution queue is full (" + waiting.size() + " waiting), task " + task.getId() + " not started"));
+            }
+            long rank = System.currentTimeMillis() - task.getPriority().getLevel() * agingMillis;
+            Ticket ticket = new Ticket(tags, rank, sequence++);
+            waiting.add(ticket);
+            queuedTotal++;
+            return ticket.future;
+        }
+    }
+
+    // takes a still-queued task out of the queue and cancels its future;
+    // false if it was already admitted (or never queued)
+    public boolean withdraw(CompletableFuture<Permit> future) {
+        synchronized (this) {
+            if (!waiting.removeIf(ticket -> ticket.future == future)) {
+                return false;
+            }
+            queuedTotal--;
+        }
+        future.cancel(false);
+        return true;
+    }
+
+    public void setGlobalLimit(int limit) {
+        List<Ticket> ready;
+        synchronized (this) {
+            globalLimit = limit;
+            ready = admitWaiting();
+        }
+        start(ready);
+    }
+
+    // a limit of 0 or less removes the tag's limit
+    public void setTagLimit(String tag, int limit) {
+        List<Ticket> ready;
+        synchronized (this) {
+            if (limit > 0) {
+                tagLimits.put(tag, limit);
+            } else {
+                tagLimits.remove(tag);
+            }
+            ready = admitWaiting();
+        }
+        start(ready);
+    }
+
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    // e.g. "running 3/8, queued 12/10000 (oldest 4.1 s), waited avg 0.8 s / max 5.2 s, admitted 240, rejected 0; tags backup 1/1"
+    public synchronized String getStats() {
+        StringBuilder stats = new StringBuilder();
+        stats.append(String.format("running %d/%d, queued %d/%d", running, globalLimit, waiting.size(), queueCapacity));
+        if (!waiting.isEmpty()) {
+            long oldest = Long.MAX_VALUE;
+            for (Ticket ticket : waiting) {
+                oldest = Math.min(oldest, ticket.queuedAt);
+            }
+            stats.append(String.format(" (oldest %.1f s)", (System.nanoTime() - oldest) / 1e9));
+        }
+        long waited = queuedTotal - waiting.size();
+        stats.append(String.format(", waited avg %.1f s / max %.1f s, admitted %d, rejected %d",
+                waited == 0 ? 0.0 : waitNanosTotal / 1e9 / waited, waitNanosMax / 1e9, admitted, rejected));
+        if (!tagLimits.isEmpty()) {
+            stats.append("; tags");
+            tagLimits.forEach((tag, limit) ->
+                    stats.append(' ').append(tag).append(' ').append(runningByTag.getOrDefault(tag, 0)).append('/').append(limit));
+        }
+        return stats.toString();
+    }
+
+    private boolean fits(List<String> tags) {
+        if (running >= globalLimit) {
+            return false;
+        }
+        for (String tag : tags) {
+            Integer limit = tagLimits.get(tag);
+            if (limit != null && runningByTag.getOrDefault(tag, 0) >= limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Permit take(List<String> tags) {
+        running++;
+        for (String tag : tags) {
+            runningByTag.merge(tag, 1, Integer::sum);
+        }
+        return new Permit(tags);
+    }
+
+    // called with the lock held; takes permits for the tasks that fit now, their
+    // futures are completed by start() once the lock is released
+    private List<Ticket> admitWaiting() {
+        List<Ticket> ready = new ArrayList<>();
+        Iterator<Ticket> it = waiting.iterator();
+        while (running < globalLimit && it.hasNext()) {
+            Ticket ticket = it.next();
+            if (fits(ticket.tags)) {
+                it.remove();
+                long waited = System.nanoTime() - ticket.queuedAt;
+                waitNanosTotal += waited;
+                waitNanosMax = Math.max(waitNanosMax, waited);
+                admitted++;
+                ticket.permit = take(ticket.tags);
+                ready.add(ticket);
+            }
+        }
+        return ready;
+    }
+
+    // completing a future runs the task's start-up continuation on this thread
+    private void start(List<Ticket> ready) {
+        for (Ticket ticket : ready) {
+            if (!ticket.future.complete(ticket.permit)) {
+                ticket.permit.release();
+            }
+        }
+    }
+}
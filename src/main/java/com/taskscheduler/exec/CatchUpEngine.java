@@ -0,0 +1,210 @@
+package com.taskscheduler.exec;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.taskscheduler.ConfigManager;
+import com.taskscheduler.Task;
+import com.taskscheduler.TaskManager;
+
+/**
+ * Replays the runs a task missed while nothing was running to start them (the
+ * daemon was down, or no background check came), by the task's {@code --catch-up}
+ * policy or else {@code catchUpPolicy}:
+ * <ul>
+ * <li>{@code fire-once} runs the latest missed occurrence once and skips the ones before it</li>
+ * <li>{@code fire-all} runs every missed occurrence, oldest first, up to
+ * {@code catchUpMaxRuns}; the older ones beyond that are skipped</li>
+ * <li>{@code skip} runs nothing: a series skips to its next occurrence to come, a
+ * one-time task stays open for a new due date or a run by hand</li>
+ * </ul>
+ * The missed occurrences of a series are counted from its rule in one pass
+ * ({@link Task#countOccurrencesBefore}) and the skipped ones recorded like any other.
+ * Replays are started through the caller's launcher, so they go through the
+ * {@link ExecutionService} and its admission limits, but no faster than
+ * {@code catchUpRunsPerMinute} across all tasks: a long downtime is worked off at
+ * a steady rate instead of starting every overdue command in the same second.
+ */
+public class CatchUpEngine {
+    private static final Logger logger = Logger.getLogger(CatchUpEngine.class.getName());
+    private static CatchUpEngine instance;
+
+    public enum Policy {
+        FIRE_ONCE("fire-once"),
+        FIRE_ALL("fire-all"),
+        SKIP("skip");
+
+        private final String name;
+
+        Policy(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // throws IllegalArgumentException for an unknown policy
+        public static Policy parse(String name) {
+            for (Policy policy : values()) {
+                if (policy.name.equalsIgnoreCase(name.trim())) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Invalid catch-up policy: " + name + ". Use fire-once, fire-all or skip");
+        }
+    }
+
+    private final ScheduledExecutorService pacer;
+    // tasks being replayed, by id; they are not scheduled again until they are done
+    private final Map<Integer, CompletableFuture<Void>> replaying = new ConcurrentHashMap<>();
+    // epoch millis at which the next replay may start
+    private long nextSlot;
+
+    private CatchUpEngine() {
+        this.pacer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "catch-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized CatchUpEngine getInstance() {
+        if (instance == null) {
+            instance = new CatchUpEngine();
+        }
+        return instance;
+    }
+
+    // the task's own policy, else the configured one
+    public static Policy policyOf(Task task) {
+        String name = task.getCatchUp() != null ? task.getCatchUp() : ConfigManager.getCatchUpPolicy();
+        try {
+            return Policy.parse(name);
+        } catch (IllegalArgumentException e) {
+            logger.warning(e.getMessage() + ", using fire-once");
+            return Policy.FIRE_ONCE;
+        }
+    }
+
+    // true if the task has a command whose run came before the cutoff and never
+    // started; a pending retry is not a missed run, it fires on its own
+    public static boolean isMissed(Task task, LocalDateTime cutoff) {
+        return !task.isCompleted() && task.getDueDate() != null && task.getDueDate().isBefore(cutoff)
+                && task.getRetryAt() == null
+                && task.getCommand() != null && !task.getCommand().trim().isEmpty()
+                && DependencyTracker.isReady(task);
+    }
+
+    // true while the task's missed runs are being replayed; whoever finishes one
+    // of them leaves the next to the replay instead of scheduling it
+    public boolean isReplaying(int taskId) {
+        return replaying.containsKey(taskId);
+    }
+
+    /**
+     * Applies the task's policy to its runs due before the cutoff and starts the
+     * replays it calls for. Returns null if the task missed nothing, otherwise a
+     * future that completes when its replays are done (at once if there are none);
+     * the task is then either finished, or due at or after the cutoff, or a
+     * one-time task that was skipped. A task already being replayed returns the
+     * future of that replay.
+     */
+    public CompletableFuture<Void> recover(Task task, LocalDateTime cutoff,
+                                           Function<Task, CompletableFuture<Void>> launcher) {
+        CompletableFuture<Void> pending = replaying.get(task.getId());
+        if (pending != null) {
+            return pending;
+        }
+        if (!isMissed(task, cutoff)) {
+            return null;
+        }
+        Policy policy = policyOf(task);
+        int missed = task.isRecurring() ? task.countOccurrencesBefore(cutoff) : 1;
+        int runs;
+        switch (policy) {
+            case SKIP:
+                runs = 0;
+                break;
+            case FIRE_ALL:
+                runs = Math.min(missed, Math.max(1, ConfigManager.getCatchUpMaxRuns()));
+                break;
+            default:
+                runs = 1;
+        }
+        if (task.isRecurring() && runs < missed) {
+            // the oldest go first; the ones left are the latest before the cutoff
+            LocalDateTime now = LocalDateTime.now();
+            int from = task.getOccurrencesGenerated();
+            int skips = missed - runs;
+            task = TaskManager.getInstance().updateTask(task.getId(), current -> {
+                // not again if another process has moved the series on meanwhile
+                if (current.getOccurrencesGenerated() != from) {
+                    return;
+                }
+                for (int i = 0; i < skips && !current.isCompleted(); i++) {
+                    current.advanceOccurrence(now, true);
+                }
+            });
+            if (task == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        logger.info("Task " + task.getId() + " missed " + missed + (missed == 1 ? " run" : " runs")
+                + ", catch-up " + policy.getName() + " replays " + runs);
+        if (runs == 0 || task.isCompleted()) {
+            if (!task.isRecurring()) {
+                logger.warning("Task " + task.getId() + " missed its run at " + task.getDueDate()
+                        + " and is left open; give it a new due date to run it");
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        replaying.put(task.getId(), done);
+        replay(task, runs, cutoff, launcher, done);
+        return done;
+    }
+
+    // starts one replay in the next free slot; once it has finished the next one
+    // takes a slot of its own, so the replays of several tasks interleave
+    private void replay(Task task, int runsLeft, LocalDateTime cutoff,
+                        Function<Task, CompletableFuture<Void>> launcher, CompletableFuture<Void> done) {
+        pacer.schedule(() -> {
+            CompletableFuture<Void> run;
+            try {
+                run = launcher.apply(task);
+            } catch (RuntimeException e) {
+                run = CompletableFuture.failedFuture(e);
+            }
+            run.whenComplete((result, error) -> {
+                if (error != null) {
+                    logger.log(Level.SEVERE, "Catch-up run of task " + task.getId() + " failed", error);
+                }
+                // a failure that will be retried, or a series that has caught up, ends the replay
+                if (runsLeft > 1 && error == null && isMissed(task, cutoff)) {
+                    replay(task, runsLeft - 1, cutoff, launcher, done);
+                } else {
+                    replaying.remove(task.getId());
+                    done.complete(null);
+                }
+            });
+        }, nextDelay(), TimeUnit.MILLISECONDS);
+    }
+
+    // reserves the next replay slot and returns the wait for it
+    private synchronized long nextDelay() {
+        long now = System.currentTimeMillis();
+        long interval = 60_000L / Math.max(1, ConfigManager.getCatchUpRunsPerMinute());
+        long slot = Math.max(nextSlot, now);
+        nextSlot = slot + interval;
+        return slot - now;
+    }
+}
@@ -0,0 +1,115 @@
+package com.taskscheduler.exec;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import com.taskscheduler.Task;
+import com.taskscheduler.TaskManager;
+
+/**
+ * Runs tasks declared with {@code --after} as soon as everything they depend on
+ * has succeeded, instead of at a guessed time offset. When a task finishes only
+ * its direct dependents are looked at, through the reverse index kept by
+ * {@link TaskManager#getDependents}; each one whose predecessors have all
+ * succeeded is started through the given launcher, so independent branches run in
+ * parallel under the usual admission limits.
+ * <p>
+ * A task that fails for good (no retries left) blocks everything downstream of it:
+ * the dependents stay open with {@link Task#getBlockedBy()} set and are not run.
+ * They are released when the failed task succeeds on a later run, or when their
+ * {@code --after} list is changed. A task without a command succeeds when it is
+ * completed by hand, which makes it a manual gate. A dependency on a task that has
+ * been deleted counts as met.
+ */
+public class DependencyTracker {
+    private static final Logger logger = Logger.getLogger(DependencyTracker.class.getName());
+    // dependents started and not finished yet; two predecessors finishing at once start a task only once
+    private static final Set<Integer> launched = ConcurrentHashMap.newKeySet();
+
+    private DependencyTracker() {
+    }
+
+    // true if the task may run now: not blocked, every predecessor succeeded
+    public static boolean isReady(Task task) {
+        if (task.getBlockedBy() != 0) {
+            return false;
+        }
+        TaskManager taskManager = TaskManager.getInstance();
+        for (int id : task.getDependsOn()) {
+            Task predecessor = taskManager.getTaskById(id);
+            if (predecessor != null && !predecessor.isSucceeded()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called once a task has finished for good, successfully or not. Starts the
+     * dependents that became ready, or blocks the ones downstream of a failure, and
+     * returns a future that completes when the started dependents (and, through the
+     * launcher, their own dependents) have finished.
+     */
+    public static CompletableFuture<Void> onFinished(Task task, Function<Task, CompletableFuture<Void>> launcher) {
+        if (!task.isSucceeded()) {
+            block(task);
+            return CompletableFuture.completedFuture(null);
+        }
+        TaskManager taskManager = TaskManager.getInstance();
+        LocalDateTime now = LocalDateTime.now();
+        List<CompletableFuture<Void>> started = new ArrayList<>();
+        for (Task dependent : taskManager.getDependents(task.getId())) {
+            if (dependent.isCompleted()) {
+                continue;
+            }
+            int blockedBy = dependent.getBlockedBy();
+            Task blocker = blockedBy != 0 ? taskManager.getTaskById(blockedBy) : null;
+            if (blockedBy != 0 && (blocker == null || blocker.isSucceeded())) {
+                dependent = taskManager.updateTask(dependent.getId(), current -> {
+                    if (current.getBlockedBy() == blockedBy) {
+                        current.setBlockedBy(0);
+                    }
+                });
+                if (dependent == null) {
+                    continue;
+                }
+            }
+            // a due date in the future is a "not before"; its own trigger runs it then
+            boolean due = dependent.getDueDate() == null || !dependent.getDueDate().isAfter(now);
+            if (due && isReady(dependent) && launched.add(dependent.getId())) {
+                logger.info("Task " + task.getId() + " succeeded, starting dependent task " + dependent.getId());
+                int id = dependent.getId();
+                started.add(launcher.apply(dependent).whenComplete((result, error) -> launched.remove(id)));
+            }
+        }
+        return CompletableFuture.allOf(started.toArray(new CompletableFuture<?>[0]));
+    }
+
+    // marks every open task downstream of the failed one as blocked by it
+    private static void block(Task failed) {
+        TaskManager taskManager = TaskManager.getInstance();
+        Deque<Task> pending = new ArrayDeque<>(taskManager.getDependents(failed.getId()));
+        while (!pending.isEmpty()) {
+            Task dependent = pending.poll();
+            if (dependent.isCompleted() || dependent.getBlockedBy() == failed.getId()) {
+                continue;
+            }
+            int failedId = failed.getId();
+            taskManager.updateTask(dependent.getId(), current -> {
+                if (!current.isCompleted()) {
+                    current.setBlockedBy(failedId);
+                }
+            });
+            logger.warning("Task " + dependent.getId() + " is blocked: task " + failed.getId() + " failed");
+            pending.addAll(taskManager.getDependents(dependent.getId()));
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package com.taskscheduler.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.logging.Logger;
+
+import com.taskscheduler.ConfigManager;
+import com.taskscheduler.Priority;
+import com.taskscheduler.Task;
+import com.taskscheduler.store.OutputStore;
+import com.taskscheduler.store.RunHistory;
+
+/**
+ * Runs task commands without holding a thread while they run. {@link #execute}
+ * asks the {@link AdmissionController} for a slot, starts the process once it gets
+ * one and returns at once; the returned future completes from {@link Process#onExit()},
+ * and its dependents run on a small pool of completion threads. Scheduler threads
+ * therefore only dispatch, however long a command takes or however many are waiting.
+ * <p>
+ * Every run is tracked in a registry from the moment it is queued until its process
+ * exits. A command that outlives its time limit (the task's own, else
+ * {@code defaultTimeoutMinutes}) is killed together with the processes it started,
+ * and {@link #cancel} does the same on demand, so a hung command gives its slot
+ * back instead of holding it forever.
+ * <p>
+ * A command's output is read from its pipe by the {@link OutputPump}, which keeps
+ * the latest of it in an {@link OutputBuffer} for {@link #tail} and saves it, up
+ * to {@code maxOutputMB}, to a spool file that is moved into the
+ * {@link OutputStore} when the command exits. Each run whose process started is then appended
+ * to the {@link RunHistory}, with its scheduled and actual start, end, exit code and
+ * where its output was stored.
+ */
+public class ExecutionService {
+    private static final Logger logger = Logger.getLogger(ExecutionService.class.getName());
+    private static final int COMPLETION_THREADS = 2;
+    // how long a killed command gets to exit after SIGTERM before it is killed outright
+    private static final long KILL_GRACE_SECONDS = 5;
+    // recent output kept per running command for tail
+    private static final int TAIL_BUFFER_BYTES = 64 * 1024;
+    private static ExecutionService instance;
+
+    private final Executor completions;
+    private final AdmissionController admission;
+    private final LagStats lag = new LagStats();
+    private final ScheduledExecutorService timeouts;
+    private final Map<Long, Execution> executions = new ConcurrentHashMap<>();
+    private final OutputPump pump = new OutputPump();
+    private final AtomicLong runCount = new AtomicLong();
+    private final RunHistory history = new RunHistory(new File(RunHistory.FILE_NAME));
+    private final OutputStore outputs = new OutputStore(new File(OutputStore.DIRECTORY),
+            ConfigManager.getOutputSegmentMB() * 1024L * 1024L, ConfigManager.isCompressOutput(),
+            ConfigManager.getOutputRetentionDays() * 86_400_000L, ConfigManager.getOutputRetentionMB() * 1024L * 1024L);
+
+    private ExecutionService() {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.completions = Executors.newFixedThreadPool(COMPLETION_THREADS, r -> {
+            Thread thread = new Thread(r, "task-completion-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeouts = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "task-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.admission = new AdmissionController(ConfigManager.getMaxConcurrentTasks(),
+                ConfigManager.getTagLimits(), ConfigManager.getMaxQueuedTasks(),
+                ConfigManager.getPriorityAgingSeconds() * 1000L);
+    }
+
+    public static synchronized ExecutionService getInstance() {
+        if (instance == null) {
+            instance = new ExecutionService();
+        }
+        return instance;
+    }
+
+    public static final class Result {
+        private final int exitCode;
+        private final OutputStore.Location output;
+        private final boolean timedOut;
+        private final boolean cancelled;
+        private final long durationMillis;
+
+        Result(int exitCode, OutputStore.Location output, boolean timedOut, boolean cancelled, long durationMillis) {
+            this.exitCode = exitCode;
+            this.output = output;
+            this.timedOut = timedOut;
+            this.cancelled = cancelled;
+            this.durationMillis = durationMillis;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        // null if the command never started or its output could not be stored
+        public OutputStore.Location getOutput() {
+            return output;
+        }
+
+        // from process start to exit
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        // cancelled with cancel <id>, either while queued (no output file) or while running
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isSuccess() {
+            return exitCode == 0 && !timedOut && !cancelled;
+        }
+    }
+
+    // one run of a task's command, from the admission queue until its process exits
+    public static final class Execution {
+        private final long run;
+        private final int taskId;
+        private final String title;
+        private final long timeoutMillis;
+        private final long scheduledAt;
+        private final int attempt;
+        private final long queuedAt = System.currentTimeMillis();
+        private CompletableFuture<AdmissionController.Permit> admission;
+        private Process process;
+        private OutputPump.Capture capture;
+        private long startedAt;
+        private ScheduledFuture<?> deadline;
+        private boolean timedOut;
+        private boolean cancelled;
+
+        private Execution(long run, Task task, long timeoutMillis, long scheduledAt) {
+            this.run = run;
+            this.taskId = task.getId();
+            this.title = task.getTitle();
+            this.timeoutMillis = timeoutMillis;
+            this.scheduledAt = scheduledAt;
+            // a retry runs while the failures before it are still counted
+            this.attempt = task.getFailedAttempts();
+        }
+
+        public int getTaskId() {
+            return taskId;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public synchronized boolean isRunning() {
+            return process != null;
+        }
+
+        // null until the command has started
+        public synchronized OutputBuffer getOutput() {
+            return capture != null ? capture.getBuffer() : null;
+        }
+
+        // e.g. "#12 Backup: running 3m 05s of 1h 00m" or "#7 Report: queued 12s"
+        @Override
+        public synchronized String toString() {
+            StringBuilder text = new StringBuilder("#").append(taskId).append(' ').append(title).append(": ");
+            if (process == null) {
+                return text.append("queued ").append(formatMillis(System.currentTimeMillis() - queuedAt)).toString();
+            }
+            text.append("running ").append(formatMillis(System.currentTimeMillis() - startedAt));
+            if (timeoutMillis > 0) {
+                text.append(" of ").append(formatMillis(timeoutMillis));
+            }
+            if (cancelled || timedOut) {
+                text.append(" (being killed)");
+            }
+            return text.toString();
+        }
+    }
+
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    public LagStats getLag() {
+        return lag;
+    }
+
+    public RunHistory getHistory() {
+        return history;
+    }
+
+    public OutputStore getOutputs() {
+        return outputs;
+    }
+
+    // queued and running commands, oldest first
+    public List<Execution> getExecutions() {
+        return executions.values().stream()
+                .sorted(Comparator.comparingLong(e -> e.run))
+                .collect(Collectors.toList());
+    }
+
+    // runs the command in a shell with its output kept in the output store once the task
+    // is admitted; fails the future instead of throwing if it is rejected or cannot start.
+    // scheduledAt (epoch millis) is when the task was meant to start, for the lag statistics
+    public CompletableFuture<Result> execute(Task task, String command, long scheduledAt) {
+        Priority priority = task.getPriority();
+        Execution execution = new Execution(runCount.incrementAndGet(), task, timeoutMillis(task), scheduledAt);
+        execution.admission = admission.acquire(task);
+        executions.put(execution.run, execution);
+        return execution.admission.thenCompose(permit -> {
+            lag.record(priority, System.currentTimeMillis() - scheduledAt);
+            return start(execution, command, permit);
+        }).handle((result, error) -> {
+            executions.remove(execution.run);
+            if (error == null) {
+                return result;
+            }
+            if (error instanceof CancellationException || error.getCause() instanceof CancellationException) {
+                return new Result(-1, null, false, true, 0);
+            }
+            throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+        });
+    }
+
+    /**
+     * Stops every run of the task: a queued run leaves the queue, a running one is
+     * killed with all of its descendants. Returns how many runs were stopped.
+     */
+    public int cancel(int taskId) {
+        int stopped = 0;
+        for (Execution execution : executions.values()) {
+            if (execution.taskId != taskId) {
+                continue;
+            }
+            Process process;
+            synchronized (execution) {
+                if (execution.cancelled) {
+                    continue;
+                }
+                execution.cancelled = true;
+                process = execution.process;
+            }
+            stopped++;
+            if (process != null) {
+                logger.info("Cancelling task " + taskId + ", killing process " + process.pid());
+                killTree(process);
+            } else if (!admission.withdraw(execution.admission)) {
+                // admitted but not started yet; start() sees the flag and gives the slot back
+                logger.info("Cancelled task " + taskId + " before its command started");
+            }
+        }
+        return stopped;
+    }
+
+    // output of the task's most recently started command that is still running, or null
+    public OutputBuffer tail(int taskId) {
+        OutputBuffer latest = null;
+        for (Execution execution : getExecutions()) {
+            OutputBuffer output = execution.taskId == taskId ? execution.getOutput() : null;
+            if (output != null && !output.isClosed()) {
+                latest = output;
+            }
+        }
+        return latest;
+    }
+
+    // the task's own limit, else the configured default; 0 means none
+    private static long timeoutMillis(Task task) {
+        if (task.getTimeoutSeconds() > 0) {
+            return task.getTimeoutSeconds() * 1000L;
+        }
+        return Math.max(0, ConfigManager.getDefaultTimeoutMinutes()) * 60_000L;
+    }
+
+    private CompletableFuture<Result> start(Execution execution, String command, AdmissionController.Permit permit) {
+        int taskId = execution.taskId;
+        File spool = outputs.spoolFile(taskId, execution.run);
+
+        ProcessBuilder builder = new ProcessBuilder();
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            builder.command("cmd.exe", "/c", command);
+        } else {
+            builder.command("sh", "-c", command);
+        }
+        builder.directory(new File(System.getProperty("user.dir")));
+        builder.redirectErrorStream(true);
+
+        Process process;
+        // held while starting so cancel() either stops the run first or sees its process
+        synchronized (execution) {
+            if (execution.cancelled) {
+                permit.release();
+                return CompletableFuture.completedFuture(new Result(-1, null, false, true, 0));
+            }
+            logger.info("Executing command: " + command);
+            OutputPump.Capture capture;
+            try {
+                capture = new OutputPump.Capture(spool, TAIL_BUFFER_BYTES,
+                        Math.max(0, ConfigManager.getMaxOutputMB()) * 1024L * 1024L);
+            } catch (IOException e) {
+                permit.release();
+                return CompletableFuture.failedFuture(e);
+            }
+            try {
+                process = builder.start();
+            } catch (IOException e) {
+                permit.release();
+                capture.abandon();
+                return CompletableFuture.failedFuture(e);
+            }
+            pump.start(capture, process);
+            execution.capture = capture;
+            execution.process = process;
+            execution.startedAt = System.currentTimeMillis();
+            if (execution.timeoutMillis > 0) {
+                execution.deadline = timeouts.schedule(() -> timeOut(execution),
+                        execution.timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        // the output is complete only once the pump has drained the pipe
+        CompletableFuture<Process> exit = execution.capture.finished()
+                .thenCombine(process.onExit(), (drained, exited) -> exited);
+        return exit.thenApplyAsync(exited -> {
+            permit.release();
+            boolean timedOut;
+            boolean cancelled;
+            synchronized (execution) {
+                if (execution.deadline != null) {
+                    execution.deadline.cancel(false);
+                }
+                timedOut = execution.timedOut;
+                cancelled = execution.cancelled;
+            }
+            int exitCode = exited.exitValue();
+            long endedAt = System.currentTimeMillis();
+            long outputBytes = spool.length();
+            OutputStore.Location output = storeOutput(taskId, spool);
+            record(execution, endedAt, exitCode, outputBytes, output, timedOut, cancelled);
+            if (timedOut) {
+                logger.warning("Task " + taskId + " timed out after " + formatMillis(execution.timeoutMillis)
+                        + " and was killed. Output stored at: " + output);
+            } else if (cancelled) {
+                logger.warning("Task " + taskId + " was cancelled. Output stored at: " + output);
+            } else if (exitCode == 0) {
+                logger.info("Task executed successfully. Output stored at: " + output);
+            } else {
+                logger.warning("Task execution completed with exit code: " + exitCode);
+            }
+            return new Result(exitCode, output, timedOut, cancelled, endedAt - execution.startedAt);
+        }, completions);
+    }
+
+    // moves the spool file into a segment; if that fails the spool file is left in place
+    private OutputStore.Location storeOutput(int taskId, File spool) {
+        try {
+            return outputs.append(taskId, spool);
+        } catch (IOException e) {
+            logger.warning("Could not store the output of task " + taskId + ", it stays in " + spool + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // a failed write costs the run its history record, never the run itself
+    private void record(Execution execution, long endedAt, int exitCode, long outputBytes,
+                        OutputStore.Location output, boolean timedOut, boolean cancelled) {
+        int flags = (timedOut ? RunHistory.TIMED_OUT : 0) | (cancelled ? RunHistory.CANCELLED : 0);
+        try {
+            history.append(new RunHistory.Run(execution.taskId, execution.attempt, execution.scheduledAt,
+                    execution.startedAt, endedAt, exitCode, outputBytes, output, flags));
+        } catch (IOException e) {
+            logger.warning("Could not record the run of task " + execution.taskId + " in the run history: " + e.getMessage());
+        }
+    }
+
+    private void timeOut(Execution execution) {
+        Process process;
+        synchronized (execution) {
+            if (execution.cancelled || !execution.process.isAlive()) {
+                return;
+            }
+            execution.timedOut = true;
+            process = execution.process;
+        }
+        logger.warning("Task " + execution.taskId + " exceeded its time limit of "
+                + formatMillis(execution.timeoutMillis) + ", killing process " + process.pid());
+        killTree(process);
+    }
+
+    // the shell's children are looked up before it dies, since an orphan can no longer
+    // be found from it; whatever ignores SIGTERM is killed after the grace period
+    private void killTree(Process process) {
+        List<ProcessHandle> tree = new ArrayList<>();
+        tree.add(process.toHandle());
+        process.descendants().forEach(tree::add);
+        tree.forEach(ProcessHandle::destroy);
+        timeouts.schedule(() -> {
+            List<ProcessHandle> survivors = new ArrayList<>();
+            for (ProcessHandle handle : tree) {
+                if (handle.isAlive()) {
+                    survivors.add(handle);
+                    handle.descendants().forEach(survivors::add);
+                }
+            }
+            survivors.forEach(ProcessHandle::destroyForcibly);
+        }, KILL_GRACE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // e.g. "45s", "3m 05s", "1h 00m"
+    static String formatMillis(long millis) {
+        long seconds = millis / 1000;
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        if (seconds < 3600) {
+            return String.format("%dm %02ds", seconds / 60, seconds % 60);
+        }
+        return String.format("%dh %02dm", seconds / 3600, seconds / 60 % 60);
+    }
+}
@@ -0,0 +1,41 @@
+package com.taskscheduler.exec;
+
+import com.taskscheduler.Priority;
+
+// time from a task's scheduled moment to the start of its process, per priority level
+public class LagStats {
+    private final long[] count = new long[Priority.values().length];
+    private final long[] totalMillis = new long[Priority.values().length];
+    private final long[] maxMillis = new long[Priority.values().length];
+
+    public synchronized void record(Priority priority, long lagMillis) {
+        int i = priority.ordinal();
+        long lag = Math.max(0, lagMillis);
+        count[i]++;
+        totalMillis[i] += lag;
+        maxMillis[i] = Math.max(maxMillis[i], lag);
+    }
+
+    // e.g. "critical 4 avg 12 ms max 30 ms, low 120 avg 2.4 s max 9.1 s"
+    @Override
+    public synchronized String toString() {
+        StringBuilder stats = new StringBuilder();
+        Priority[] levels = Priority.values();
+        for (int i = levels.length - 1; i >= 0; i--) {
+            if (count[i] == 0) {
+                continue;
+            }
+            if (stats.length() > 0) {
+                stats.append(", ");
+            }
+            stats.append(levels[i].name().toLowerCase()).append(' ').append(count[i])
+                    .append(" avg ").append(format(totalMillis[i] / count[i]))
+                    .append(" max ").append(format(maxMillis[i]));
+        }
+        return stats.length() == 0 ? "no tasks started" : stats.toString();
+    }
+
+    private static String format(long millis) {
+        return millis < 1000 ? millis + " ms" : String.format("%.1f s", millis / 1000.0);
+    }
+}
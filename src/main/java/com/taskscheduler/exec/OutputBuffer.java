@@ -0,0 +1,111 @@
+package com.taskscheduler.exec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The most recent output of one running command, kept in a fixed ring of bytes
+ * for {@code tail}. Positions are absolute byte counts since the command started,
+ * so a reader that falls more than a ring behind knows how much it missed. Closed
+ * once the command has exited and its pipe is drained.
+ */
+public class OutputBuffer {
+    // how long a follower waits for output before checking whether it should stop
+    private static final long WAIT_MILLIS = 200;
+
+    private final byte[] ring;
+    private long written;
+    private boolean closed;
+
+    public OutputBuffer(int capacity) {
+        this.ring = new byte[capacity];
+    }
+
+    // receives output as it is followed; an IOException stops following
+    public interface Sink {
+        void write(byte[] data, int length) throws IOException;
+    }
+
+    public synchronized void write(byte[] data, int offset, int length) {
+        // only the last ring's worth of a large write can survive
+        int skip = Math.max(0, length - ring.length);
+        for (int i = offset + skip; i < offset + length; ) {
+            int at = (int) ((written + i - offset) % ring.length);
+            int count = Math.min(offset + length - i, ring.length - at);
+            System.arraycopy(data, i, ring, at, count);
+            i += count;
+        }
+        written += length;
+        notifyAll();
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Writes the last {@code lines} lines still in the ring to the sink, then
+     * everything that follows, until the command exits or {@code stopped} returns
+     * true.
+     */
+    public void follow(int lines, Sink sink, BooleanSupplier stopped) throws IOException, InterruptedException {
+        long position = lineStart(lines);
+        byte[] chunk = new byte[ring.length];
+        while (!stopped.getAsBoolean()) {
+            int length;
+            long skipped;
+            synchronized (this) {
+                if (position == written) {
+                    if (closed) {
+                        return;
+                    }
+                    wait(WAIT_MILLIS);
+                    continue;
+                }
+                long start = Math.max(position, written - ring.length);
+                skipped = start - position;
+                length = (int) (written - start);
+                for (int i = 0; i < length; ) {
+                    int at = (int) ((start + i) % ring.length);
+                    int count = Math.min(length - i, ring.length - at);
+                    System.arraycopy(ring, at, chunk, i, count);
+                    i += count;
+                }
+                position = written;
+            }
+            if (skipped > 0) {
+                byte[] note = ("\n[... " + skipped + " bytes skipped ...]\n").getBytes(StandardCharsets.UTF_8);
+                sink.write(note, note.length);
+            }
+            sink.write(chunk, length);
+        }
+    }
+
+    // position after the newline that precedes the last n lines held in the ring
+    private synchronized long lineStart(int lines) {
+        long oldest = Math.max(0, written - ring.length);
+        long position = written;
+        // a trailing newline ends the last line rather than starting a new one
+        if (position > oldest && ring[(int) ((position - 1) % ring.length)] == '\n') {
+            position--;
+        }
+        int found = 0;
+        while (position > oldest) {
+            if (ring[(int) ((position - 1) % ring.length)] == '\n' && ++found == lines) {
+                return position;
+            }
+            position--;
+        }
+        return oldest;
+    }
+}
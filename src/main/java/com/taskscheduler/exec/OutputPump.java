@@ -0,0 +1,178 @@
+package com.taskscheduler.exec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves the output of every running command from its pipe to its spool file and
+ * its {@link OutputBuffer}. Process pipes cannot be put in a selector, so a single
+ * thread polls them instead: it reads only what {@link InputStream#available()}
+ * says is there, never blocks on a quiet command, and sleeps when no command
+ * produced anything: 0.1 ms at first, doubling up to 10 ms while all stay quiet,
+ * so a chatty command is drained about as fast as its pipe fills. A command that
+ * writes more than its limit keeps running, and keeps feeding its buffer, but the
+ * rest of its output is not saved.
+ */
+public class OutputPump {
+    private static final Logger logger = Logger.getLogger(OutputPump.class.getName());
+    private static final long MIN_POLL_NANOS = 100_000;
+    private static final long MAX_POLL_NANOS = 10_000_000;
+    private static final int READ_BYTES = 64 * 1024;
+    // read from one pipe per round before moving on to the others
+    private static final int ROUND_BYTES = 1024 * 1024;
+
+    private final List<Capture> captures = new ArrayList<>();
+    private Thread thread;
+
+    // output of one command, from its pipe until the process has exited and the pipe is drained
+    public static final class Capture {
+        private final File spool;
+        private final OutputStream out;
+        private final OutputBuffer buffer;
+        private final long limit;
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private Process process;
+        private InputStream in;
+        private long saved;
+        private boolean truncated;
+
+        // opens the spool file; limit is in bytes, 0 for none
+        public Capture(File spool, int bufferBytes, long limit) throws IOException {
+            this.spool = spool;
+            this.out = new FileOutputStream(spool);
+            this.buffer = new OutputBuffer(bufferBytes);
+            this.limit = limit;
+        }
+
+        public OutputBuffer getBuffer() {
+            return buffer;
+        }
+
+        // completes once everything the command wrote is in the spool file
+        public CompletableFuture<Void> finished() {
+            return finished;
+        }
+
+        // true if output beyond the limit was dropped
+        public synchronized boolean isTruncated() {
+            return truncated;
+        }
+
+        // for a command that could not be started
+        public void abandon() {
+            close();
+            spool.delete();
+        }
+
+        private void accept(byte[] data, int length) throws IOException {
+            buffer.write(data, 0, length);
+            if (truncated) {
+                return;
+            }
+            int keep = limit > 0 ? (int) Math.min(length, limit - saved) : length;
+            out.write(data, 0, keep);
+            saved += keep;
+            if (keep < length) {
+                synchronized (this) {
+                    truncated = true;
+                }
+                out.write(("\n[output truncated after " + saved + " bytes]\n").getBytes(StandardCharsets.UTF_8));
+                logger.warning("Output of " + spool.getName() + " exceeded " + limit + " bytes, the rest is not saved");
+            }
+        }
+
+        private void close() {
+            try {
+                out.close();
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close " + spool, e);
+            }
+            buffer.close();
+        }
+    }
+
+    public synchronized void start(Capture capture, Process process) {
+        capture.process = process;
+        capture.in = process.getInputStream();
+        captures.add(capture);
+        if (thread == null) {
+            thread = new Thread(this::pumpLoop, "task-output");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    private void pumpLoop() {
+        byte[] data = new byte[READ_BYTES];
+        List<Capture> current = new ArrayList<>();
+        long pollNanos = MIN_POLL_NANOS;
+        while (true) {
+            synchronized (this) {
+                while (captures.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                current.clear();
+                current.addAll(captures);
+            }
+            boolean moved = false;
+            for (Capture capture : current) {
+                try {
+                    // checked first: once it is dead, whatever it wrote is already in the pipe
+                    boolean alive = capture.process.isAlive();
+                    int round = 0;
+                    int available;
+                    while (round < ROUND_BYTES && (available = capture.in.available()) > 0) {
+                        int read = capture.in.read(data, 0, Math.min(available, data.length));
+                        if (read <= 0) {
+                            break;
+                        }
+                        capture.accept(data, read);
+                        round += read;
+                    }
+                    if (round > 0) {
+                        moved = true;
+                    } else if (!alive) {
+                        finish(capture, null);
+                    }
+                } catch (IOException e) {
+                    finish(capture, e);
+                }
+            }
+            if (moved) {
+                pollNanos = MIN_POLL_NANOS;
+            } else {
+                LockSupport.parkNanos(pollNanos);
+                pollNanos = Math.min(MAX_POLL_NANOS, pollNanos * 2);
+            }
+        }
+    }
+
+    private void finish(Capture capture, IOException error) {
+        synchronized (this) {
+            captures.remove(capture);
+        }
+        capture.close();
+        if (error != null) {
+            logger.log(Level.WARNING, "Could not capture the output of " + capture.spool.getName(), error);
+        }
+        capture.finished.complete(null);
+    }
+}
@@ -0,0 +1,99 @@
+package com.taskscheduler.exec;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.taskscheduler.Task;
+import com.taskscheduler.TaskCommandParser;
+
+/**
+ * How often and how soon a failed command is run again, from the task's
+ * {@code --retry N --backoff SPEC [--jitter]}. The backoff is either
+ * {@code exp:10s..10m} (10 s after the first failure, doubling each time up to
+ * 10 min) or a fixed delay such as {@code 30s}. With jitter a delay is drawn
+ * uniformly from its upper half, so commands that failed together (say, while a
+ * database restarted) do not all come back in the same second.
+ */
+public class RetryPolicy {
+    public static final String DEFAULT_BACKOFF = "exp:10s..10m";
+
+    private final int maxRetries;
+    private final long initialMillis;
+    private final long maxMillis;
+    private final boolean jitter;
+
+    private RetryPolicy(int maxRetries, long initialMillis, long maxMillis, boolean jitter) {
+        this.maxRetries = maxRetries;
+        this.initialMillis = initialMillis;
+        this.maxMillis = maxMillis;
+        this.jitter = jitter;
+    }
+
+    // throws IllegalArgumentException for a malformed backoff; null means the default
+    public static RetryPolicy parse(int maxRetries, String backoff, boolean jitter) {
+        String spec = backoff != null ? backoff.trim().toLowerCase() : DEFAULT_BACKOFF;
+        if (spec.startsWith("exp:")) {
+            String[] range = spec.substring(4).split("\\.\\.");
+            if (range.length != 2) {
+                throw new IllegalArgumentException("Invalid backoff: " + backoff + ". Use e.g. exp:10s..10m or 30s");
+            }
+            long initial = millis(range[0], backoff);
+            long max = millis(range[1], backoff);
+            if (max < initial) {
+                throw new IllegalArgumentException("Invalid backoff: " + backoff + ", the maximum is below the first delay");
+            }
+            return new RetryPolicy(maxRetries, initial, max, jitter);
+        }
+        if (spec.startsWith("fixed:")) {
+            spec = spec.substring(6);
+        }
+        long delay = millis(spec, backoff);
+        return new RetryPolicy(maxRetries, delay, delay, jitter);
+    }
+
+    // null if the task does not retry
+    public static RetryPolicy of(Task task) {
+        if (task.getMaxRetries() <= 0) {
+            return null;
+        }
+        try {
+            return parse(task.getMaxRetries(), task.getBackoff(), task.isRetryJitter());
+        } catch (IllegalArgumentException e) {
+            return parse(task.getMaxRetries(), DEFAULT_BACKOFF, task.isRetryJitter());
+        }
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    // delay before retry number n, counting from 1
+    public Duration delay(int retry) {
+        long delay = initialMillis;
+        for (int i = 1; i < retry && delay < maxMillis; i++) {
+            delay = Math.min(maxMillis, delay * 2);
+        }
+        if (jitter && delay > 1) {
+            delay = ThreadLocalRandom.current().nextLong(delay / 2, delay + 1);
+        }
+        return Duration.ofMillis(delay);
+    }
+
+    // when the task's last failure should be retried, or null once the retries are used up
+    public LocalDateTime nextRetry(Task task, LocalDateTime failedAt) {
+        int failures = task.getFailedAttempts();
+        if (failures == 0 || failures > maxRetries) {
+            return null;
+        }
+        return failedAt.plus(delay(failures));
+    }
+
+    private static long millis(String value, String backoff) {
+        Duration duration = TaskCommandParser.parseDuration(value.trim());
+        if (duration == null || duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("Invalid backoff: " + backoff + ". Use e.g. exp:10s..10m or 30s");
+        }
+        return duration.toMillis();
+    }
+}
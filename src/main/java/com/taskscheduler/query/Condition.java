@@ -0,0 +1,281 @@
+package com.taskscheduler.query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.taskscheduler.Priority;
+import com.taskscheduler.Task;
+
+/**
+ * Node of a parsed query's predicate tree. Leaf conditions that an index can
+ * answer (tag, priority, due, status) are exposed as their own types so the
+ * planner can pick an access path from them.
+ */
+public abstract class Condition {
+
+    public abstract boolean matches(Task task);
+
+    public enum Comparison {
+        EQ("="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        private final String symbol;
+
+        Comparison(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public boolean test(int compared) {
+            switch (this) {
+                case EQ: return compared == 0;
+                case NE: return compared != 0;
+                case LT: return compared < 0;
+                case LE: return compared <= 0;
+                case GT: return compared > 0;
+                default: return compared >= 0;
+            }
+        }
+
+        public static Comparison fromSymbol(String symbol) {
+            for (Comparison comparison : values()) {
+                if (comparison.symbol.equals(symbol) || (symbol.equals(":") && comparison == EQ)) {
+                    return comparison;
+                }
+            }
+            throw new IllegalArgumentException("Unknown comparison: " + symbol);
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+
+    public static final class And extends Condition {
+        private final List<Condition> terms;
+
+        public And(List<Condition> terms) {
+            this.terms = terms;
+        }
+
+        public List<Condition> getTerms() {
+            return terms;
+        }
+
+        @Override
+        public boolean matches(Task task) {
+            for (Condition term : terms) {
+                if (!term.matches(task)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return join(" and ");
+        }
+
+        private String join(String separator) {
+            StringBuilder sb = new StringBuilder("(");
+            for (int i = 0; i < terms.size(); i++) {
+                sb.append(i > 0 ? separator : "").append(terms.get(i));
+            }
+            return sb.append(")").toString();
+        }
+    }
+
+    public static final class Or extends Condition {
+        private final List<Condition> terms;
+
+        public Or(List<Condition> terms) {
+            this.terms = terms;
+        }
+
+        @Override
+        public boolean matches(Task task) {
+            for (Condition term : terms) {
+                if (term.matches(task)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("(");
+            for (int i = 0; i < terms.size(); i++) {
+                sb.append(i > 0 ? " or " : "").append(terms.get(i));
+            }
+            return sb.append(")").toString();
+        }
+    }
+
+    public static final class Not extends Condition {
+        private final Condition term;
+
+        public Not(Condition term) {
+            this.term = term;
+        }
+
+        @Override
+        public boolean matches(Task task) {
+            return !term.matches(task);
+        }
+
+        @Override
+        public String toString() {
+            return "not " + term;
+        }
+    }
+
+    public static final class TagIs extends Condition {
+        private final String tag;
+
+        public TagIs(String tag) {
+            this.tag = tag.toLowerCase();
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        @Override
+        public boolean matches(Task task) {
+            return task.hasTag(tag);
+        }
+
+        @Override
+        public String toString() {
+            return "tag:" + tag;
+        }
+    }
+
+    public static final class PriorityIs extends Condition {
+        private final Comparison comparison;
+        private final Priority priority;
+
+        public PriorityIs(Comparison comparison, Priority priority) {
+            this.comparison = comparison;
+            this.priority = priority;
+        }
+
+        public boolean accepts(Priority candidate) {
+            return comparison.test(Integer.compare(candidate.getLevel(), priority.getLevel()));
+        }
+
+        @Override
+        public boolean matches(Task task) {
+            return accepts(task.getPriority());
+        }
+
+        @Override
+        public String toString() {
+            return "priority" + comparison + priority.name().toLowerCase();
+        }
+    }
+
+    // due filters only match open tasks, the same set the due-date index covers
+    public static final class DueIs extends Condition {
+        private final Comparison comparison;
+        private final LocalDateTime bound;
+
+        public DueIs(Comparison comparison, LocalDateTime bound) {
+            if (comparison == Comparison.NE) {
+                throw new IllegalArgumentException("due does not support !=");
+            }
+            this.comparison = comparison;
+            this.bound = bound;
+        }
+
+        public Comparison getComparison() {
+            return comparison;
+        }
+
+        public LocalDateTime getBound() {
+            return bound;
+        }
+
+        @Override
+        public boolean matches(Task task) {
+            return !task.isCompleted() && task.getDueDate() != null
+                    && comparison.test(task.getDueDate().compareTo(bound));
+        }
+
+        @Override
+        public String toString() {
+            return "due" + comparison + bound;
+        }
+    }
+
+    public static final class StatusIs extends Condition {
+        public enum Status { OPEN, DONE, OVERDUE }
+
+        private final Status status;
+        private final LocalDateTime now;
+
+        public StatusIs(Status status, LocalDateTime now) {
+            this.status = status;
+            this.now = now;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public LocalDateTime getNow() {
+            return now;
+        }
+
+        @Override
+        public boolean matches(Task task) {
+            switch (status) {
+                case OPEN: return !task.isCompleted();
+                case DONE: return task.isCompleted();
+                default: return !task.isCompleted() && task.getDueDate() != null && task.getDueDate().isBefore(now);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "status:" + status.name().toLowerCase();
+        }
+    }
+
+    public static final class TitleContains extends Condition {
+        private final String text;
+
+        public TitleContains(String text) {
+            this.text = text.toLowerCase();
+        }
+
+        @Override
+        public boolean matches(Task task) {
+            return task.getTitle() != null && task.getTitle().toLowerCase().contains(text);
+        }
+
+        @Override
+        public String toString() {
+            return "title~\"" + text + "\"";
+        }
+    }
+
+    public static final class IsRecurring extends Condition {
+        private final boolean recurring;
+
+        public IsRecurring(boolean recurring) {
+            this.recurring = recurring;
+        }
+
+        @Override
+        public boolean matches(Task task) {
+            return task.isRecurring() == recurring;
+        }
+
+        @Override
+        public String toString() {
+            return "recurring:" + recurring;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.taskscheduler.query;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.taskscheduler.Priority;
+
+/**
+ * Recursive-descent parser for the {@code list} query language:
+ *
+ * <pre>
+ * query     := [where expr] [order by (id|due|priority|title) [asc|desc]] [limit N]
+ * expr      := term (or term)*
+ * term      := factor (and factor)*
+ * factor    := not factor | ( expr ) | condition
+ * condition := tag:x | priority&lt;op&gt;level | due&lt;op&gt;time | status:open|done|overdue
+ *            | title~text | recurring[:true|false]
+ * time      := now | today | tomorrow | [-]N(m|h|d|w) | yyyy-MM-dd | "yyyy-MM-dd HH:mm"
+ * </pre>
+ */
+class QueryParser {
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final String OPERATORS = "<>=!:~";
+
+    private final String text;
+    private final LocalDateTime now;
+    private final List<String> tokens = new ArrayList<>();
+    private int pos;
+
+    QueryParser(String text, LocalDateTime now) {
+        this.text = text;
+        this.now = now;
+        tokenize();
+    }
+
+    TaskQuery parse() {
+        Condition where = null;
+        TaskQuery.SortField orderBy = TaskQuery.SortField.ID;
+        boolean descending = false;
+        int limit = -1;
+
+        if (acceptKeyword("where")) {
+            where = parseOr();
+        }
+        if (acceptKeyword("order")) {
+            expectKeyword("by");
+            String field = next("sort field");
+            try {
+                orderBy = TaskQuery.SortField.valueOf(field.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw error("Unknown sort field '" + field + "'");
+            }
+            if (acceptKeyword("desc")) {
+                descending = true;
+            } else {
+                acceptKeyword("asc");
+            }
+        }
+        if (acceptKeyword("limit")) {
+            String count = next("limit");
+            try {
+                limit = Integer.parseInt(count);
+            } catch (NumberFormatException e) {
+                throw error("Invalid limit '" + count + "'");
+            }
+            if (limit < 0) {
+                throw error("Invalid limit '" + count + "'");
+            }
+        }
+        if (pos < tokens.size()) {
+            throw error("Unexpected '" + tokens.get(pos) + "'");
+        }
+        return new TaskQuery(where, orderBy, descending, limit);
+    }
+
+    private Condition parseOr() {
+        List<Condition> terms = new ArrayList<>();
+        terms.add(parseAnd());
+        while (acceptKeyword("or")) {
+            terms.add(parseAnd());
+        }
+        return terms.size() == 1 ? terms.get(0) : new Condition.Or(terms);
+    }
+
+    // nested ands are flattened so the planner sees every conjunct at one level
+    private Condition parseAnd() {
+        List<Condition> terms = new ArrayList<>();
+        addConjunct(terms, parseFactor());
+        while (acceptKeyword("and")) {
+            addConjunct(terms, parseFactor());
+        }
+        return terms.size() == 1 ? terms.get(0) : new Condition.And(terms);
+    }
+
+    private void addConjunct(List<Condition> terms, Condition condition) {
+        if (condition instanceof Condition.And) {
+            terms.addAll(((Condition.And) condition).getTerms());
+        } else {
+            terms.add(condition);
+        }
+    }
+
+    private Condition parseFactor() {
+        if (acceptKeyword("not")) {
+            return new Condition.Not(parseFactor());
+        }
+        if (accept("(")) {
+            Condition inner = parseOr();
+            if (!accept(")")) {
+                throw error("Missing ')'");
+            }
+            return inner;
+        }
+        return parseCondition();
+    }
+
+    private Condition parseCondition() {
+        String field = next("condition").toLowerCase(Locale.ROOT);
+        if (field.equals("recurring")) {
+            if (peekOperator()) {
+                expectOperator(":", "=");
+                return new Condition.IsRecurring(parseBoolean(next("true or false")));
+            }
+            return new Condition.IsRecurring(true);
+        }
+
+        String op = next("operator after '" + field + "'");
+        String value = next("value for '" + field + "'");
+        switch (field) {
+            case "tag":
+                requireOperator(field, op, ":", "=");
+                return new Condition.TagIs(value);
+            case "priority":
+                return new Condition.PriorityIs(comparison(field, op), parsePriority(value));
+            case "due":
+                if (op.equals("!=")) {
+                    throw error("due does not support !=");
+                }
+                return new Condition.DueIs(comparison(field, op), parseTime(value));
+            case "status":
+                requireOperator(field, op, ":", "=");
+                return new Condition.StatusIs(parseStatus(value), now);
+            case "title":
+                requireOperator(field, op, "~", ":");
+                return new Condition.TitleContains(value);
+            default:
+                throw error("Unknown field '" + field + "'");
+        }
+    }
+
+    private Condition.Comparison comparison(String field, String op) {
+        if (op.equals("~")) {
+            throw error("'" + field + "' does not support ~");
+        }
+        return Condition.Comparison.fromSymbol(op);
+    }
+
+    private void requireOperator(String field, String op, String... allowed) {
+        for (String candidate : allowed) {
+            if (candidate.equals(op)) {
+                return;
+            }
+        }
+        throw error("'" + field + "' does not support " + op);
+    }
+
+    private Priority parsePriority(String value) {
+        String normalized = value.toLowerCase(Locale.ROOT);
+        for (Priority priority : Priority.values()) {
+            if (priority.name().equalsIgnoreCase(normalized) || String.valueOf(priority.getLevel()).equals(normalized)) {
+                return priority;
+            }
+        }
+        throw error("Unknown priority '" + value + "'");
+    }
+
+    private Condition.StatusIs.Status parseStatus(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "open":
+            case "pending":
+                return Condition.StatusIs.Status.OPEN;
+            case "done":
+            case "completed":
+                return Condition.StatusIs.Status.DONE;
+            case "overdue":
+                return Condition.StatusIs.Status.OVERDUE;
+            default:
+                throw error("Unknown status '" + value + "'");
+        }
+    }
+
+    private boolean parseBoolean(String value) {
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false") || value.equalsIgnoreCase("no")) {
+            return false;
+        }
+        throw error("Expected true or false but found '" + value + "'");
+    }
+
+    private LocalDateTime parseTime(String value) {
+        String normalized = value.toLowerCase(Locale.ROOT);
+        switch (normalized) {
+            case "now":
+                return now;
+            case "today":
+                return now.toLocalDate().atStartOfDay();
+            case "tomorrow":
+                return now.toLocalDate().plusDays(1).atStartOfDay();
+            default:
+                break;
+        }
+        if (normalized.matches("-?\\d+[mhdw]")) {
+            long amount = Long.parseLong(normalized.substring(0, normalized.length() - 1));
+            switch (normalized.charAt(normalized.length() - 1)) {
+                case 'm': return now.plusMinutes(amount);
+                case 'h': return now.plusHours(amount);
+                case 'd': return now.plusDays(amount);
+                default: return now.plusWeeks(amount);
+            }
+        }
+        try {
+            return value.length() > 10 ? LocalDateTime.parse(value, DATE_TIME) : LocalDate.parse(value).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            throw error("Invalid time '" + value + "'");
+        }
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (pos < tokens.size() && tokens.get(pos).equalsIgnoreCase(keyword)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw error("Expected '" + keyword + "'");
+        }
+    }
+
+    private boolean accept(String token) {
+        if (pos < tokens.size() && tokens.get(pos).equals(token)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean peekOperator() {
+        return pos < tokens.size() && OPERATORS.indexOf(tokens.get(pos).charAt(0)) >= 0;
+    }
+
+    private void expectOperator(String... allowed) {
+        String op = next("operator");
+        requireOperator("recurring", op, allowed);
+    }
+
+    private String next(String what) {
+        if (pos >= tokens.size()) {
+            throw error("Expected " + what);
+        }
+        return tokens.get(pos++);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " in query: " + text);
+    }
+
+    // words, quoted strings, parentheses and the operators < <= > >= = != : ~
+    private void tokenize() {
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"' || c == '\'') {
+                int end = text.indexOf(c, i + 1);
+                if (end < 0) {
+                    throw error("Unterminated string");
+                }
+                tokens.add(text.substring(i + 1, end));
+                i = end + 1;
+            } else if (OPERATORS.indexOf(c) >= 0) {
+                int end = i + 1;
+                if (end < text.length() && text.charAt(end) == '=' && "<>!".indexOf(c) >= 0) {
+                    end++;
+                } else if (c == '!') {
+                    throw error("Unexpected '!'");
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            } else {
+                int start = i;
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                        && "()\"'".indexOf(text.charAt(i)) < 0 && OPERATORS.indexOf(text.charAt(i)) < 0) {
+                    i++;
+                }
+                tokens.add(text.substring(start, i));
+            }
+        }
+    }
+}
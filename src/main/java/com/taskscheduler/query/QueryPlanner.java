@@ -0,0 +1,340 @@
+package com.taskscheduler.query;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.taskscheduler.Priority;
+import com.taskscheduler.Task;
+import com.taskscheduler.store.TaskIndexes;
+import com.taskscheduler.store.TaskTable;
+
+/**
+ * Turns a {@link TaskQuery} into a scan over the task table. Every top-level
+ * conjunct that an index can answer is costed, and the smallest candidate set
+ * drives the scan; the full predicate is then re-checked on each candidate.
+ * When the driving index already yields rows in the requested order, matches
+ * stream out lazily and the scan stops at the limit; otherwise matches are
+ * collected and sorted, keeping only the top {@code limit} rows.
+ *
+ * Plans read the live table and indexes, so they must be executed while the
+ * owner holds its lock.
+ */
+public class QueryPlanner {
+    private final TaskTable tasks;
+    private final TaskIndexes indexes;
+
+    public QueryPlanner(TaskTable tasks, TaskIndexes indexes) {
+        this.tasks = tasks;
+        this.indexes = indexes;
+    }
+
+    public Plan plan(TaskQuery query) {
+        AccessPath best = new AccessPath("full scan", tasks.size(), TaskQuery.SortField.ID) {
+            @Override
+            Iterator<Task> scan(boolean descending) {
+                return tasks.iterator(descending);
+            }
+        };
+        for (AccessPath candidate : candidates(query.getWhere(), best.estimate)) {
+            if (candidate.estimate < best.estimate
+                    || (candidate.estimate == best.estimate && candidate.order == query.getOrderBy())) {
+                best = candidate;
+            }
+        }
+        return new Plan(query, best);
+    }
+
+    public static final class Plan {
+        private final TaskQuery query;
+        private final AccessPath access;
+
+        private Plan(TaskQuery query, AccessPath access) {
+            this.query = query;
+            this.access = access;
+        }
+
+        public boolean isStreaming() {
+            return access.order == query.getOrderBy();
+        }
+
+        // matching tasks in query order, at most limit of them
+        public Iterator<Task> iterator() {
+            Condition where = query.getWhere();
+            int limit = query.getLimit();
+            if (isStreaming()) {
+                return new MatchIterator(access.scan(query.isDescending()), where, limit);
+            }
+            return sorted(new MatchIterator(access.scan(false), where, -1));
+        }
+
+        public List<Task> execute() {
+            List<Task> result = new ArrayList<>();
+            iterator().forEachRemaining(result::add);
+            return result;
+        }
+
+        private Iterator<Task> sorted(Iterator<Task> matches) {
+            Comparator<Task> order = query.getOrderBy().comparator(query.isDescending());
+            int limit = query.getLimit();
+            List<Task> result = new ArrayList<>();
+            if (limit < 0) {
+                matches.forEachRemaining(result::add);
+                result.sort(order);
+                return result.iterator();
+            }
+            if (limit == 0) {
+                return Collections.emptyIterator();
+            }
+            // bounded heap whose head is the worst row kept so far
+            PriorityQueue<Task> top = new PriorityQueue<>(limit, order.reversed());
+            while (matches.hasNext()) {
+                Task task = matches.next();
+                if (top.size() < limit) {
+                    top.add(task);
+                } else if (order.compare(task, top.peek()) < 0) {
+                    top.poll();
+                    top.add(task);
+                }
+            }
+            result.addAll(top);
+            result.sort(order);
+            return result.iterator();
+        }
+
+        @Override
+        public String toString() {
+            return access.description + " (~" + access.estimate + " rows, "
+                    + (isStreaming() ? "streamed" : "sorted") + ")";
+        }
+    }
+
+    // a way to enumerate candidate rows, with its estimated size and natural order
+    private abstract static class AccessPath {
+        final String description;
+        final int estimate;
+        final TaskQuery.SortField order;
+
+        AccessPath(String description, int estimate, TaskQuery.SortField order) {
+            this.description = description;
+            this.estimate = estimate;
+            this.order = order;
+        }
+
+        abstract Iterator<Task> scan(boolean descending);
+    }
+
+    private List<AccessPath> candidates(Condition where, int bestEstimate) {
+        List<AccessPath> paths = new ArrayList<>();
+        if (where == null) {
+            return paths;
+        }
+        List<Condition> conjuncts = where instanceof Condition.And
+                ? ((Condition.And) where).getTerms()
+                : Collections.singletonList(where);
+
+        // every due conjunct narrows one range of the due-date index
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        boolean fromInclusive = true;
+        boolean toInclusive = true;
+        boolean hasDueRange = false;
+
+        for (Condition conjunct : conjuncts) {
+            if (conjunct instanceof Condition.TagIs) {
+                String tag = ((Condition.TagIs) conjunct).getTag();
+                paths.add(idPath("tag index '" + tag + "'", indexes.idsWithTag(tag)));
+            } else if (conjunct instanceof Condition.PriorityIs) {
+                paths.add(priorityPath((Condition.PriorityIs) conjunct));
+            } else if (conjunct instanceof Condition.StatusIs) {
+                Condition.StatusIs status = (Condition.StatusIs) conjunct;
+                if (status.getStatus() == Condition.StatusIs.Status.OVERDUE) {
+                    hasDueRange = true;
+                    if (to == null || !status.getNow().isAfter(to)) {
+                        to = status.getNow();
+                        toInclusive = false;
+                    }
+                } else {
+                    boolean open = status.getStatus() == Condition.StatusIs.Status.OPEN;
+                    paths.add(idPath(open ? "open tasks" : "completed tasks",
+                            open ? indexes.openIds() : indexes.completedIds()));
+                }
+            } else if (conjunct instanceof Condition.DueIs) {
+                Condition.DueIs due = (Condition.DueIs) conjunct;
+                Condition.Comparison comparison = due.getComparison();
+                LocalDateTime bound = due.getBound();
+                hasDueRange = true;
+                if (comparison == Condition.Comparison.GT || comparison == Condition.Comparison.GE
+                        || comparison == Condition.Comparison.EQ) {
+                    boolean inclusive = comparison != Condition.Comparison.GT;
+                    if (from == null || bound.isAfter(from) || (bound.isEqual(from) && !inclusive)) {
+                        from = bound;
+                        fromInclusive = inclusive;
+                    }
+                }
+                if (comparison == Condition.Comparison.LT || comparison == Condition.Comparison.LE
+                        || comparison == Condition.Comparison.EQ) {
+                    boolean inclusive = comparison != Condition.Comparison.LT;
+                    if (to == null || bound.isBefore(to) || (bound.isEqual(to) && !inclusive)) {
+                        to = bound;
+                        toInclusive = inclusive;
+                    }
+                }
+            }
+        }
+
+        if (hasDueRange) {
+            for (AccessPath path : paths) {
+                bestEstimate = Math.min(bestEstimate, path.estimate);
+            }
+            paths.add(duePath(from, fromInclusive, to, toInclusive, bestEstimate));
+        }
+        return paths;
+    }
+
+    private AccessPath idPath(String description, NavigableSet<Integer> ids) {
+        return new AccessPath(description, ids.size(), TaskQuery.SortField.ID) {
+            @Override
+            Iterator<Task> scan(boolean descending) {
+                return resolve(descending ? ids.descendingIterator() : ids.iterator());
+            }
+        };
+    }
+
+    // one bucket is id-ordered; a union of buckets is read bucket by bucket
+    private AccessPath priorityPath(Condition.PriorityIs condition) {
+        List<NavigableSet<Integer>> buckets = new ArrayList<>();
+        StringBuilder description = new StringBuilder("priority index");
+        int estimate = 0;
+        for (Priority priority : Priority.values()) {
+            if (condition.accepts(priority)) {
+                NavigableSet<Integer> bucket = indexes.idsWithPriority(priority);
+                buckets.add(bucket);
+                estimate += bucket.size();
+                description.append(' ').append(priority.name().toLowerCase());
+            }
+        }
+        if (buckets.size() == 1) {
+            return idPath(description.toString(), buckets.get(0));
+        }
+        return new AccessPath(description.toString(), estimate, null) {
+            @Override
+            Iterator<Task> scan(boolean descending) {
+                List<Iterator<Integer>> parts = new ArrayList<>();
+                for (NavigableSet<Integer> bucket : buckets) {
+                    parts.add(bucket.iterator());
+                }
+                return resolve(concat(parts));
+            }
+        };
+    }
+
+    // sizing a tree range is linear, so counting stops once it cannot win
+    private AccessPath duePath(LocalDateTime from, boolean fromInclusive,
+                               LocalDateTime to, boolean toInclusive, int bestEstimate) {
+        NavigableSet<TaskIndexes.DueKey> range = from != null && to != null && from.isAfter(to)
+                ? Collections.emptyNavigableSet()
+                : indexes.openDueBetween(from, fromInclusive, to, toInclusive);
+        int estimate = 0;
+        for (Iterator<TaskIndexes.DueKey> it = range.iterator(); it.hasNext() && estimate <= bestEstimate; it.next()) {
+            estimate++;
+        }
+        String description = "due index " + (from != null ? (fromInclusive ? "[" : "(") + from : "(-inf")
+                + ", " + (to != null ? to + (toInclusive ? "]" : ")") : "+inf)");
+        return new AccessPath(description, estimate, TaskQuery.SortField.DUE) {
+            @Override
+            Iterator<Task> scan(boolean descending) {
+                Iterator<TaskIndexes.DueKey> keys = descending ? range.descendingIterator() : range.iterator();
+                return new Iterator<Task>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Task next() {
+                        return tasks.get(keys.next().getId());
+                    }
+                };
+            }
+        };
+    }
+
+    private Iterator<Task> resolve(Iterator<Integer> ids) {
+        return new Iterator<Task>() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Task next() {
+                return tasks.get(ids.next());
+            }
+        };
+    }
+
+    private static Iterator<Integer> concat(List<Iterator<Integer>> parts) {
+        return new Iterator<Integer>() {
+            private int current;
+
+            @Override
+            public boolean hasNext() {
+                while (current < parts.size() && !parts.get(current).hasNext()) {
+                    current++;
+                }
+                return current < parts.size();
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return parts.get(current).next();
+            }
+        };
+    }
+
+    // filters candidates through the predicate and stops after limit matches
+    private static final class MatchIterator implements Iterator<Task> {
+        private final Iterator<Task> candidates;
+        private final Condition where;
+        private int remaining;
+        private Task next;
+
+        MatchIterator(Iterator<Task> candidates, Condition where, int limit) {
+            this.candidates = candidates;
+            this.where = where;
+            this.remaining = limit < 0 ? Integer.MAX_VALUE : limit;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && remaining > 0 && candidates.hasNext()) {
+                Task candidate = candidates.next();
+                if (candidate != null && (where == null || where.matches(candidate))) {
+                    next = candidate;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Task next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Task result = next;
+            next = null;
+            remaining--;
+            return result;
+        }
+    }
+}
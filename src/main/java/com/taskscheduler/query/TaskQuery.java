@@ -0,0 +1,81 @@
+package com.taskscheduler.query;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+import com.taskscheduler.Task;
+
+/**
+ * A parsed {@code list} query: an optional predicate tree, an ordering and a
+ * row limit. Relative times such as {@code due<3d} are resolved once, when the
+ * query is parsed.
+ *
+ * <pre>
+ * list where priority&gt;=high and tag:work and due&lt;3d order by due limit 50
+ * </pre>
+ */
+public class TaskQuery {
+    public enum SortField {
+        ID(Comparator.comparingInt(Task::getId)),
+        DUE(Comparator.comparing(Task::getDueDate, Comparator.nullsLast(Comparator.naturalOrder()))),
+        PRIORITY(Comparator.comparingInt((Task t) -> t.getPriority().getLevel())),
+        TITLE(Comparator.comparing(Task::getTitle, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)));
+
+        private final Comparator<Task> comparator;
+
+        SortField(Comparator<Task> comparator) {
+            this.comparator = comparator;
+        }
+
+        // ties are broken by id so results are stable between runs
+        public Comparator<Task> comparator(boolean descending) {
+            Comparator<Task> order = this == ID ? comparator : comparator.thenComparingInt(Task::getId);
+            return descending ? order.reversed() : order;
+        }
+    }
+
+    private final Condition where;
+    private final SortField orderBy;
+    private final boolean descending;
+    private final int limit;
+
+    TaskQuery(Condition where, SortField orderBy, boolean descending, int limit) {
+        this.where = where;
+        this.orderBy = orderBy;
+        this.descending = descending;
+        this.limit = limit;
+    }
+
+    public static TaskQuery parse(String text) {
+        return parse(text, LocalDateTime.now());
+    }
+
+    public static TaskQuery parse(String text, LocalDateTime now) {
+        return new QueryParser(text, now).parse();
+    }
+
+    // null when every task matches
+    public Condition getWhere() {
+        return where;
+    }
+
+    public SortField getOrderBy() {
+        return orderBy;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    // -1 when unlimited
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return (where != null ? "where " + where + " " : "")
+                + "order by " + orderBy.name().toLowerCase() + (descending ? " desc" : "")
+                + (limit >= 0 ? " limit " + limit : "");
+    }
+}
@@ -0,0 +1,539 @@
+package com.taskscheduler.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import com.taskscheduler.Attempt;
+import com.taskscheduler.Occurrence;
+import com.taskscheduler.Priority;
+import com.taskscheduler.Task;
+
+/**
+ * Binary snapshot of the task table, laid out column by column so a reader can
+ * look at one attribute of every task without decoding the rest. The file is
+ * memory-mapped; {@link #forEachOpenDueBetween} touches only the due and flags
+ * columns and never builds a {@link Task}.
+ *
+ * <pre>
+ * header    magic, version, nextId, count, stringCount, tagRefCount   (6 x int)
+ * columns   id int, due long, flags byte, priority byte, title int,
+ *           reminder long, recurrenceType int, recurrenceCount int,
+ *           recurrenceEnd long, occurrencesGenerated int, cron int,
+ *           command int, email int, timeoutSeconds int (version 2),
+ *           maxRetries int, backoff int, failedAttempts int,
+ *           retryAt long (version 3), blockedBy int (version 4),
+ *           catchUp int (version 6), revision long (version 7),
+ *           tagStart int[count + 1]
+ * tags      int[tagRefCount]
+ * attempts  attemptStart int[count + 1], then for every attempt: finishedAt long,
+ *           duration long, exitCode int, timedOut byte   (version 3)
+ * after     afterStart int[count + 1], then the ids    (version 4)
+ * series    occurrenceStart int[count + 1], then for every stored occurrence:
+ *           index int, scheduled long, due long, completedAt long,
+ *           skipped byte   (version 5)
+ * strings   offsets int[stringCount + 1], then the UTF-8 bytes
+ * </pre>
+ *
+ * Strings columns hold indexes into the deduplicated string dictionary, -1 for
+ * null. Date-times are epoch seconds of the wall-clock value, as in the JSON form.
+ * Files written by older versions, without the later columns, are still read.
+ */
+public class ColumnarSnapshot {
+    private static final int MAGIC = 0x54534B43; // "TSKC"
+    private static final int VERSION = 7;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final int COMPLETED = 1;
+    private static final int NOTIFIED = 1 << 1;
+    private static final int RECURRING = 1 << 2;
+    private static final int RETRY_JITTER = 1 << 3;
+
+    private final ByteBuffer data;
+    private final int nextId;
+    private final int count;
+    private final int stringCount;
+    private final String[] strings;
+
+    // column start positions
+    private final int ids;
+    private final int dues;
+    private final int flags;
+    private final int priorities;
+    private final int titles;
+    private final int reminders;
+    private final int recurrenceTypes;
+    private final int recurrenceCounts;
+    private final int recurrenceEnds;
+    private final int occurrences;
+    private final int crons;
+    private final int commands;
+    private final int emails;
+    // -1 for columns the file's version does not have
+    private final int timeouts;
+    private final int maxRetries;
+    private final int backoffs;
+    private final int failedAttempts;
+    private final int retryAts;
+    private final int blockedBys;
+    private final int catchUps;
+    private final int revisions;
+    private final int tagStarts;
+    private final int tagRefs;
+    private final int attemptStarts;
+    private final int attemptEnds;
+    private final int attemptDurations;
+    private final int attemptExits;
+    private final int attemptFlags;
+    private final int afterStarts;
+    private final int afterIds;
+    private final int occurrenceStarts;
+    private final int occurrenceIndexes;
+    private final int occurrenceScheduled;
+    private final int occurrenceDues;
+    private final int occurrenceDone;
+    private final int occurrenceFlags;
+    private final int stringOffsets;
+    private final int stringBytes;
+
+    private ColumnarSnapshot(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a task snapshot");
+        }
+        int version = data.getInt(4);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported task snapshot version " + version);
+        }
+        nextId = data.getInt(8);
+        count = data.getInt(12);
+        stringCount = data.getInt(16);
+        int tagRefCount = data.getInt(20);
+        strings = new String[stringCount];
+
+        int pos = HEADER_BYTES;
+        ids = pos;              pos += count * Integer.BYTES;
+        dues = pos;             pos += count * Long.BYTES;
+        flags = pos;            pos += count;
+        priorities = pos;       pos += count;
+        titles = pos;           pos += count * Integer.BYTES;
+        reminders = pos;        pos += count * Long.BYTES;
+        recurrenceTypes = pos;  pos += count * Integer.BYTES;
+        recurrenceCounts = pos; pos += count * Integer.BYTES;
+        recurrenceEnds = pos;   pos += count * Long.BYTES;
+        occurrences = pos;      pos += count * Integer.BYTES;
+        crons = pos;            pos += count * Integer.BYTES;
+        commands = pos;         pos += count * Integer.BYTES;
+        emails = pos;           pos += count * Integer.BYTES;
+        timeouts = version >= 2 ? pos : -1;
+        if (version >= 2) {
+            pos += count * Integer.BYTES;
+        }
+        if (version >= 3) {
+            maxRetries = pos;       pos += count * Integer.BYTES;
+            backoffs = pos;         pos += count * Integer.BYTES;
+            failedAttempts = pos;   pos += count * Integer.BYTES;
+            retryAts = pos;         pos += count * Long.BYTES;
+        } else {
+            maxRetries = backoffs = failedAttempts = retryAts = -1;
+        }
+        blockedBys = version >= 4 ? pos : -1;
+        if (version >= 4) {
+            pos += count * Integer.BYTES;
+        }
+        catchUps = version >= 6 ? pos : -1;
+        if (version >= 6) {
+            pos += count * Integer.BYTES;
+        }
+        revisions = version >= 7 ? pos : -1;
+        if (version >= 7) {
+            pos += count * Long.BYTES;
+        }
+        tagStarts = pos;        pos += (count + 1) * Integer.BYTES;
+        tagRefs = pos;          pos += tagRefCount * Integer.BYTES;
+        if (version >= 3) {
+            attemptStarts = pos;    pos += (count + 1) * Integer.BYTES;
+            int attemptCount = pos <= data.capacity() ? data.getInt(pos - Integer.BYTES) : 0;
+            attemptEnds = pos;      pos += attemptCount * Long.BYTES;
+            attemptDurations = pos; pos += attemptCount * Long.BYTES;
+            attemptExits = pos;     pos += attemptCount * Integer.BYTES;
+            attemptFlags = pos;     pos += attemptCount;
+        } else {
+            attemptStarts = attemptEnds = attemptDurations = attemptExits = attemptFlags = -1;
+        }
+        if (version >= 4) {
+            afterStarts = pos;      pos += (count + 1) * Integer.BYTES;
+            int afterCount = pos <= data.capacity() ? data.getInt(pos - Integer.BYTES) : 0;
+            afterIds = pos;         pos += afterCount * Integer.BYTES;
+        } else {
+            afterStarts = afterIds = -1;
+        }
+        if (version >= 5) {
+            occurrenceStarts = pos;     pos += (count + 1) * Integer.BYTES;
+            int occurrenceCount = pos <= data.capacity() ? data.getInt(pos - Integer.BYTES) : 0;
+            occurrenceIndexes = pos;    pos += occurrenceCount * Integer.BYTES;
+            occurrenceScheduled = pos;  pos += occurrenceCount * Long.BYTES;
+            occurrenceDues = pos;       pos += occurrenceCount * Long.BYTES;
+            occurrenceDone = pos;       pos += occurrenceCount * Long.BYTES;
+            occurrenceFlags = pos;      pos += occurrenceCount;
+        } else {
+            occurrenceStarts = occurrenceIndexes = occurrenceScheduled = occurrenceDues = occurrenceDone = occurrenceFlags = -1;
+        }
+        stringOffsets = pos;    pos += (stringCount + 1) * Integer.BYTES;
+        stringBytes = pos;
+        if (stringBytes > data.capacity()) {
+            throw new IOException("Truncated task snapshot");
+        }
+    }
+
+    // maps the file read-only; the mapping stays valid after the channel is closed
+    public static ColumnarSnapshot open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ColumnarSnapshot(data);
+        }
+    }
+
+    public int getNextId() {
+        return nextId;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // ids of open tasks due within [from, to], read from the due, retry and flags columns only;
+    // a task waiting for a retry is due at its retry time
+    public void forEachOpenDueBetween(LocalDateTime from, LocalDateTime to, IntConsumer action) {
+        long lo = from.toEpochSecond(ZoneOffset.UTC);
+        long hi = to.toEpochSecond(ZoneOffset.UTC);
+        for (int i = 0; i < count; i++) {
+            long due = retryAts >= 0 && longAt(retryAts, i) != NO_TIME ? longAt(retryAts, i) : longAt(dues, i);
+            if (due != NO_TIME && due >= lo && due <= hi && (data.get(flags + i) & COMPLETED) == 0) {
+                action.accept(data.getInt(ids + i * Integer.BYTES));
+            }
+        }
+    }
+
+    public List<Task> readTasks() {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(readTask(i));
+        }
+        return tasks;
+    }
+
+    private Task readTask(int i) {
+        int taskFlags = data.get(flags + i);
+        Task task = new Task(intAt(ids, i), string(intAt(titles, i)), (taskFlags & COMPLETED) != 0, time(longAt(dues, i)));
+        task.setNotified((taskFlags & NOTIFIED) != 0);
+        long reminder = longAt(reminders, i);
+        task.setReminderTime(reminder >= 0 ? Duration.ofMinutes(reminder) : null);
+        task.setPriority(Priority.values()[data.get(priorities + i)]);
+
+        int tagStart = intAt(tagStarts, i);
+        int tagEnd = intAt(tagStarts, i + 1);
+        Set<String> tags = new HashSet<>();
+        for (int t = tagStart; t < tagEnd; t++) {
+            tags.add(string(intAt(tagRefs, t)));
+        }
+        task.setTags(tags);
+
+        String recurrenceType = string(intAt(recurrenceTypes, i));
+        if (recurrenceType != null) {
+            task.setRecurrenceType(recurrenceType);
+        }
+        if (intAt(recurrenceCounts, i) > 0) {
+            task.setRecurrenceCount(intAt(recurrenceCounts, i));
+        }
+        task.setRecurrenceEnd(time(longAt(recurrenceEnds, i)));
+        task.setOccurrencesGenerated(intAt(occurrences, i));
+        task.setCronExpression(string(intAt(crons, i)));
+        task.setCommand(string(intAt(commands, i)));
+        task.setEmail(string(intAt(emails, i)));
+        if (timeouts >= 0) {
+            task.setTimeoutSeconds(intAt(timeouts, i));
+        }
+        if (maxRetries >= 0) {
+            task.setMaxRetries(intAt(maxRetries, i));
+            task.setBackoff(string(intAt(backoffs, i)));
+            task.setRetryJitter((taskFlags & RETRY_JITTER) != 0);
+            task.setFailedAttempts(intAt(failedAttempts, i));
+            task.setRetryAt(time(longAt(retryAts, i)));
+            List<Attempt> attempts = new ArrayList<>();
+            for (int a = intAt(attemptStarts, i); a < intAt(attemptStarts, i + 1); a++) {
+                attempts.add(new Attempt(time(longAt(attemptEnds, a)), longAt(attemptDurations, a),
+                        intAt(attemptExits, a), data.get(attemptFlags + a) != 0));
+            }
+            task.setAttempts(attempts);
+        }
+        if (afterStarts >= 0) {
+            for (int d = intAt(afterStarts, i); d < intAt(afterStarts, i + 1); d++) {
+                task.addDependency(intAt(afterIds, d));
+            }
+            task.setBlockedBy(intAt(blockedBys, i));
+        }
+        if (catchUps >= 0) {
+            task.setCatchUp(string(intAt(catchUps, i)));
+        }
+        if (revisions >= 0) {
+            task.setRevision(longAt(revisions, i));
+        }
+        if (occurrenceStarts >= 0) {
+            List<Occurrence> stored = new ArrayList<>();
+            for (int o = intAt(occurrenceStarts, i); o < intAt(occurrenceStarts, i + 1); o++) {
+                stored.add(new Occurrence(intAt(occurrenceIndexes, o), time(longAt(occurrenceScheduled, o)),
+                        time(longAt(occurrenceDues, o)), time(longAt(occurrenceDone, o)), data.get(occurrenceFlags + o) != 0));
+            }
+            task.setOccurrences(stored);
+        }
+        if ((taskFlags & RECURRING) != 0 && task.getDueDate() != null) {
+            task.setRecurring(true);
+        }
+        return task;
+    }
+
+    private int intAt(int column, int i) {
+        return data.getInt(column + i * Integer.BYTES);
+    }
+
+    private long longAt(int column, int i) {
+        return data.getLong(column + i * Long.BYTES);
+    }
+
+    // decoded once per dictionary entry, so repeated tags share one String
+    private String string(int ref) {
+        if (ref < 0) {
+            return null;
+        }
+        String value = strings[ref];
+        if (value == null) {
+            int start = intAt(stringOffsets, ref);
+            int end = intAt(stringOffsets, ref + 1);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = data.duplicate();
+            view.position(stringBytes + start);
+            view.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings[ref] = value;
+        }
+        return value;
+    }
+
+    private static LocalDateTime time(long epochSeconds) {
+        return epochSeconds == NO_TIME ? null : LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC);
+    }
+
+    private static long epoch(LocalDateTime time) {
+        return time == null ? NO_TIME : time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public static byte[] serialize(Collection<Task> tasks, int nextId) {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int count = tasks.size();
+        int tagRefCount = 0;
+        int attemptCount = 0;
+        int afterCount = 0;
+        int occurrenceCount = 0;
+        for (Task task : tasks) {
+            tagRefCount += task.getTags().size();
+            attemptCount += task.getAttempts().size();
+            afterCount += task.getDependsOn().size();
+            occurrenceCount += task.getOccurrences().size();
+        }
+
+        int[] id = new int[count];
+        long[] due = new long[count];
+        byte[] flag = new byte[count];
+        byte[] priority = new byte[count];
+        int[] title = new int[count];
+        long[] reminder = new long[count];
+        int[] recurrenceType = new int[count];
+        int[] recurrenceCount = new int[count];
+        long[] recurrenceEnd = new long[count];
+        int[] occurrence = new int[count];
+        int[] cron = new int[count];
+        int[] command = new int[count];
+        int[] email = new int[count];
+        int[] timeout = new int[count];
+        int[] maxRetry = new int[count];
+        int[] backoff = new int[count];
+        int[] failedAttempt = new int[count];
+        long[] retryAt = new long[count];
+        int[] attemptStart = new int[count + 1];
+        long[] attemptEnd = new long[attemptCount];
+        long[] attemptDuration = new long[attemptCount];
+        int[] attemptExit = new int[attemptCount];
+        byte[] attemptFlag = new byte[attemptCount];
+        int[] blockedBy = new int[count];
+        int[] catchUp = new int[count];
+        long[] revision = new long[count];
+        int[] afterStart = new int[count + 1];
+        int[] afterId = new int[afterCount];
+        int[] occurrenceStart = new int[count + 1];
+        int[] occurrenceIndex = new int[occurrenceCount];
+        long[] occurrenceScheduledAt = new long[occurrenceCount];
+        long[] occurrenceDue = new long[occurrenceCount];
+        long[] occurrenceDoneAt = new long[occurrenceCount];
+        byte[] occurrenceFlag = new byte[occurrenceCount];
+        int[] tagStart = new int[count + 1];
+        int[] tagRef = new int[tagRefCount];
+
+        int i = 0;
+        int t = 0;
+        int a = 0;
+        int d = 0;
+        int o = 0;
+        for (Task task : tasks) {
+            id[i] = task.getId();
+            due[i] = epoch(task.getDueDate());
+            flag[i] = (byte) ((task.isCompleted() ? COMPLETED : 0) | (task.isNotified() ? NOTIFIED : 0)
+                    | (task.isRecurring() ? RECURRING : 0) | (task.isRetryJitter() ? RETRY_JITTER : 0));
+            priority[i] = (byte) task.getPriority().ordinal();
+            title[i] = ref(dictionary, task.getTitle());
+            reminder[i] = task.getReminderTime() != null ? task.getReminderTime().toMinutes() : -1;
+            recurrenceType[i] = ref(dictionary, task.getRecurrenceType());
+            recurrenceCount[i] = task.getRecurrenceCount();
+            recurrenceEnd[i] = epoch(task.getRecurrenceEnd());
+            occurrence[i] = task.getOccurrencesGenerated();
+            cron[i] = ref(dictionary, task.getCronExpression());
+            command[i] = ref(dictionary, task.getCommand());
+            email[i] = ref(dictionary, task.getEmail());
+            timeout[i] = task.getTimeoutSeconds();
+            maxRetry[i] = task.getMaxRetries();
+            backoff[i] = ref(dictionary, task.getBackoff());
+            failedAttempt[i] = task.getFailedAttempts();
+            retryAt[i] = epoch(task.getRetryAt());
+            blockedBy[i] = task.getBlockedBy();
+            catchUp[i] = ref(dictionary, task.getCatchUp());
+            revision[i] = task.getRevision();
+            afterStart[i] = d;
+            for (int predecessor : task.getDependsOn()) {
+                afterId[d++] = predecessor;
+            }
+            occurrenceStart[i] = o;
+            for (Occurrence stored : task.getOccurrences()) {
+                occurrenceIndex[o] = stored.getIndex();
+                occurrenceScheduledAt[o] = epoch(stored.getScheduled());
+                occurrenceDue[o] = epoch(stored.getDue());
+                occurrenceDoneAt[o] = epoch(stored.getCompletedAt());
+                occurrenceFlag[o] = (byte) (stored.isSkipped() ? 1 : 0);
+                o++;
+            }
+            attemptStart[i] = a;
+            for (Attempt attempt : task.getAttempts()) {
+                attemptEnd[a] = epoch(attempt.getFinishedAt());
+                attemptDuration[a] = attempt.getDurationMillis();
+                attemptExit[a] = attempt.getExitCode();
+                attemptFlag[a] = (byte) (attempt.isTimedOut() ? 1 : 0);
+                a++;
+            }
+            tagStart[i] = t;
+            for (String tag : task.getTags()) {
+                tagRef[t++] = ref(dictionary, tag);
+            }
+            i++;
+        }
+        tagStart[count] = t;
+        attemptStart[count] = a;
+        afterStart[count] = d;
+        occurrenceStart[count] = o;
+
+        List<byte[]> encoded = new ArrayList<>(dictionary.size());
+        int blobBytes = 0;
+        for (String value : dictionary.keySet()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            blobBytes += bytes.length;
+        }
+
+        int size = HEADER_BYTES
+                + count * (Integer.BYTES * 14 + Long.BYTES * 5 + 2)
+                + (count + 1) * Integer.BYTES
+                + tagRefCount * Integer.BYTES
+                + (count + 1) * Integer.BYTES
+                + attemptCount * (Long.BYTES * 2 + Integer.BYTES + 1)
+                + (count + 1 + afterCount) * Integer.BYTES
+                + (count + 1) * Integer.BYTES + occurrenceCount * (Integer.BYTES + Long.BYTES * 3 + 1)
+                + (encoded.size() + 1) * Integer.BYTES
+                + blobBytes;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(VERSION).putInt(nextId).putInt(count).putInt(encoded.size()).putInt(tagRefCount);
+        putInts(out, id);
+        putLongs(out, due);
+        out.put(flag);
+        out.put(priority);
+        putInts(out, title);
+        putLongs(out, reminder);
+        putInts(out, recurrenceType);
+        putInts(out, recurrenceCount);
+        putLongs(out, recurrenceEnd);
+        putInts(out, occurrence);
+        putInts(out, cron);
+        putInts(out, command);
+        putInts(out, email);
+        putInts(out, timeout);
+        putInts(out, maxRetry);
+        putInts(out, backoff);
+        putInts(out, failedAttempt);
+        putLongs(out, retryAt);
+        putInts(out, blockedBy);
+        putInts(out, catchUp);
+        putLongs(out, revision);
+        putInts(out, tagStart);
+        putInts(out, tagRef);
+        putInts(out, attemptStart);
+        putLongs(out, attemptEnd);
+        putLongs(out, attemptDuration);
+        putInts(out, attemptExit);
+        out.put(attemptFlag);
+        putInts(out, afterStart);
+        putInts(out, afterId);
+        putInts(out, occurrenceStart);
+        putInts(out, occurrenceIndex);
+        putLongs(out, occurrenceScheduledAt);
+        putLongs(out, occurrenceDue);
+        putLongs(out, occurrenceDoneAt);
+        out.put(occurrenceFlag);
+        int offset = 0;
+        for (byte[] bytes : encoded) {
+            out.putInt(offset);
+            offset += bytes.length;
+        }
+        out.putInt(offset);
+        for (byte[] bytes : encoded) {
+            out.put(bytes);
+        }
+        return out.array();
+    }
+
+    private static int ref(Map<String, Integer> dictionary, String value) {
+        return value == null ? -1 : dictionary.computeIfAbsent(value, v -> dictionary.size());
+    }
+
+    private static void putInts(ByteBuffer out, int[] values) {
+        out.asIntBuffer().put(values);
+        out.position(out.position() + values.length * Integer.BYTES);
+    }
+
+    private static void putLongs(ByteBuffer out, long[] values) {
+        out.asLongBuffer().put(values);
+        out.position(out.position() + values.length * Long.BYTES);
+    }
+}
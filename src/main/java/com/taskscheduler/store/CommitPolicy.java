@@ -0,0 +1,85 @@
+package com.taskscheduler.store;
+
+import java.util.logging.Logger;
+
+// How task store writes are made durable: "sync", "batched(ms)" or "async"
+public class CommitPolicy {
+    private static final Logger logger = Logger.getLogger(CommitPolicy.class.getName());
+
+    public enum Mode {
+        SYNC,    // caller waits until its change is fsynced, concurrent callers share one fsync
+        BATCHED, // caller returns at once, changes within the window are written and fsynced together
+        ASYNC    // caller returns at once, changes are written in the background without fsync
+    }
+
+    private static final long DEFAULT_WINDOW_MILLIS = 10;
+
+    private final Mode mode;
+    private final long windowMillis;
+
+    public CommitPolicy(Mode mode, long windowMillis) {
+        this.mode = mode;
+        this.windowMillis = windowMillis;
+    }
+
+    // the configured mode; one that cannot be parsed falls back to batched with a warning
+    public static CommitPolicy fromConfig(String spec) {
+        try {
+            return parse(spec);
+        } catch (IllegalArgumentException e) {
+            logger.warning(e.getMessage() + ", using batched");
+            return new CommitPolicy(Mode.BATCHED, DEFAULT_WINDOW_MILLIS);
+        }
+    }
+
+    // throws IllegalArgumentException for an unknown mode or a bad window
+    public static CommitPolicy parse(String spec) {
+        if (spec == null) {
+            return new CommitPolicy(Mode.BATCHED, DEFAULT_WINDOW_MILLIS);
+        }
+        String normalized = spec.trim().toLowerCase();
+        if (normalized.equals("sync")) {
+            return new CommitPolicy(Mode.SYNC, 0);
+        }
+        if (normalized.equals("async")) {
+            return new CommitPolicy(Mode.ASYNC, 0);
+        }
+        if (normalized.equals("batched")) {
+            return new CommitPolicy(Mode.BATCHED, DEFAULT_WINDOW_MILLIS);
+        }
+        if (normalized.startsWith("batched(") && normalized.endsWith(")")) {
+            String window = normalized.substring("batched(".length(), normalized.length() - 1).replace("ms", "").trim();
+            long millis;
+            try {
+                millis = Long.parseLong(window);
+            } catch (NumberFormatException e) {
+                millis = -1;
+            }
+            if (millis >= 0) {
+                return new CommitPolicy(Mode.BATCHED, millis);
+            }
+        }
+        throw new IllegalArgumentException("Invalid persistence mode: " + spec + ". Use: sync, batched(ms) or async");
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public boolean waitsForCommit() {
+        return mode == Mode.SYNC;
+    }
+
+    public boolean fsyncs() {
+        return mode != Mode.ASYNC;
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.BATCHED ? "batched(" + windowMillis + ")" : mode.name().toLowerCase();
+    }
+}
@@ -0,0 +1,44 @@
+package com.taskscheduler.store;
+
+// Running totals for group commits: how many batches, how big, and how long changes waited to be durable
+public class CommitStats {
+    private long batches;
+    private long records;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    private long lastLatencyNanos;
+
+    synchronized void recordBatch(int batchRecords, long latencySumNanos, long latencyMaxNanos) {
+        batches++;
+        records += batchRecords;
+        totalLatencyNanos += latencySumNanos;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latencyMaxNanos);
+        lastLatencyNanos = latencyMaxNanos;
+    }
+
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    public synchronized double getAverageLatencyMillis() {
+        return records == 0 ? 0 : totalLatencyNanos / (double) records / 1_000_000.0;
+    }
+
+    public synchronized double getMaxLatencyMillis() {
+        return maxLatencyNanos / 1_000_000.0;
+    }
+
+    public synchronized double getLastLatencyMillis() {
+        return lastLatencyNanos / 1_000_000.0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d changes in %d commits, latency avg %.2f ms / max %.2f ms / last %.2f ms",
+                records, batches, getAverageLatencyMillis(), getMaxLatencyMillis(), getLastLatencyMillis());
+    }
+}
@@ -0,0 +1,200 @@
+package com.taskscheduler.store;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Single writer thread that turns every change queued within a window into one write and one fsync
+class GroupCommitter implements Runnable {
+    private static final Logger logger = Logger.getLogger(GroupCommitter.class.getName());
+
+    // work that has to happen on the writer thread in log order, e.g. writing a snapshot
+    interface Barrier {
+        void run() throws IOException;
+    }
+
+    // wraps the write of each batch, e.g. in a lock shared with other processes;
+    // records is the number of log records the batch writes
+    interface Guard {
+        void commit(int records, Barrier batch) throws IOException;
+    }
+
+    // runs on the writer thread, inside the guard, just before its record is written;
+    // a record whose check throws StoreConflictException is dropped, the rest of the batch goes on
+    interface Check {
+        void verify() throws IOException;
+    }
+
+    private static class Entry {
+        final String record;
+        final Check check;
+        final Barrier barrier;
+        final long enqueuedNanos = System.nanoTime();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        StoreConflictException rejected;
+
+        Entry(String record, Check check, Barrier barrier) {
+            this.record = record;
+            this.check = check;
+            this.barrier = barrier;
+        }
+    }
+
+    private final TaskLog log;
+    private final CommitPolicy policy;
+    private final Guard guard;
+    private final CommitStats stats = new CommitStats();
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private final Thread thread;
+    private boolean closed;
+
+    GroupCommitter(TaskLog log, CommitPolicy policy, Guard guard) {
+        this.log = log;
+        this.policy = policy;
+        this.guard = guard;
+        this.thread = new Thread(this, "task-store-committer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    CompletableFuture<Void> submit(String record) {
+        return submit(record, null);
+    }
+
+    CompletableFuture<Void> submit(String record, Check check) {
+        return enqueue(new Entry(record, check, null));
+    }
+
+    CompletableFuture<Void> submitBarrier(Barrier barrier) {
+        return enqueue(new Entry(null, null, barrier));
+    }
+
+    CommitStats getStats() {
+        return stats;
+    }
+
+    // commits everything still queued and stops the writer thread
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized CompletableFuture<Void> enqueue(Entry entry) {
+        if (closed) {
+            entry.done.completeExceptionally(new IOException("Task store is closed"));
+            return entry.done;
+        }
+        pending.add(entry);
+        notifyAll();
+        return entry.done;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            List<Entry> batch;
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        wait();
+                    }
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    if (policy.getMode() == CommitPolicy.Mode.BATCHED) {
+                        long deadline = pending.peek().enqueuedNanos + policy.getWindowMillis() * 1_000_000L;
+                        long remaining;
+                        while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+                            wait(Math.max(1, remaining / 1_000_000L));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+            commit(batch);
+        }
+    }
+
+    private boolean accept(Entry entry) throws IOException {
+        if (entry.check == null) {
+            return true;
+        }
+        try {
+            entry.check.verify();
+            return true;
+        } catch (StoreConflictException e) {
+            // the caller reports it, or merges its change into the task as stored
+            logger.warning(e.getMessage());
+            entry.rejected = e;
+            return false;
+        }
+    }
+
+    private void commit(List<Entry> batch) {
+        int recordCount = 0;
+        for (Entry entry : batch) {
+            if (entry.record != null) {
+                recordCount++;
+            }
+        }
+        try {
+            guard.commit(recordCount, () -> {
+                for (Entry entry : batch) {
+                    if (entry.barrier != null) {
+                        log.sync(policy.fsyncs());
+                        entry.barrier.run();
+                    } else if (accept(entry)) {
+                        log.write(entry.record);
+                    }
+                }
+                log.sync(policy.fsyncs());
+            });
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to commit task changes", e);
+            System.out.println("Error saving tasks: " + e.getMessage());
+            for (Entry entry : batch) {
+                entry.done.completeExceptionally(e);
+            }
+            return;
+        }
+
+        long now = System.nanoTime();
+        long latencySum = 0;
+        long latencyMax = 0;
+        int records = 0;
+        for (Entry entry : batch) {
+            if (entry.rejected != null) {
+                entry.done.completeExceptionally(entry.rejected);
+                continue;
+            }
+            entry.done.complete(null);
+            if (entry.record != null) {
+                long latency = now - entry.enqueuedNanos;
+                latencySum += latency;
+                latencyMax = Math.max(latencyMax, latency);
+                records++;
+            }
+        }
+        if (records > 0) {
+            stats.recordBatch(records, latencySum, latencyMax);
+            logger.fine("Committed " + records + " task changes in one batch");
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.taskscheduler.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the output of command runs in a few large segment files under
+ * {@code task_outputs} instead of one small file per run. A running command writes
+ * to a spool file; when it exits the output is appended, gzip-compressed if
+ * configured, to the active segment as one frame, and the spool file is removed.
+ * The returned {@link Location} is kept in the run's {@link RunHistory} record, so
+ * any run's output is one seek away.
+ * <p>
+ * The active segment rolls over once it reaches {@code segmentBytes}. On each roll
+ * the oldest segments are deleted while they are older than the retention period
+ * or the segments together exceed the size limit. Appends from several processes
+ * are serialized by a lock file.
+ */
+public class OutputStore {
+    private static final Logger logger = Logger.getLogger(OutputStore.class.getName());
+    public static final String DIRECTORY = "task_outputs";
+    private static final int FRAME_MAGIC = 0x4f555450; // "OUTP"
+    // magic, task id, stored length, flags
+    private static final int FRAME_HEADER = 16;
+    private static final int FLAG_COMPRESSED = 1;
+    // a run's output beyond this is dropped, the frame length is an int
+    private static final long MAX_RUN_OUTPUT = 1L << 30;
+
+    private final File directory;
+    private final File spoolDirectory;
+    private final long segmentBytes;
+    private final boolean compress;
+    private final long retentionMillis;
+    private final long retentionBytes;
+    private FileChannel lockChannel;
+    private FileChannel active;
+    private int activeSegment;
+
+    // retentionMillis and retentionBytes of 0 mean no limit
+    public OutputStore(File directory, long segmentBytes, boolean compress, long retentionMillis, long retentionBytes) {
+        this.directory = directory;
+        this.spoolDirectory = new File(directory, "spool");
+        this.segmentBytes = segmentBytes;
+        this.compress = compress;
+        this.retentionMillis = retentionMillis;
+        this.retentionBytes = retentionBytes;
+    }
+
+    // where a run's output is kept; segment 0 means nothing was stored
+    public static final class Location {
+        private final int segment;
+        private final long offset;
+        private final int length;
+        private final boolean compressed;
+
+        public Location(int segment, long offset, int length, boolean compressed) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.compressed = compressed;
+        }
+
+        public int getSegment() {
+            return segment;
+        }
+
+        // of the frame header
+        public long getOffset() {
+            return offset;
+        }
+
+        // stored bytes after the header
+        public int getLength() {
+            return length;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        @Override
+        public String toString() {
+            return segmentName(segment) + "@" + offset;
+        }
+    }
+
+    // file a running command writes its output to; unique across processes
+    public File spoolFile(int taskId, long run) {
+        spoolDirectory.mkdirs();
+        return new File(spoolDirectory, "task_" + taskId + "_" + ProcessHandle.current().pid() + "_" + run + ".out");
+    }
+
+    /**
+     * Moves a finished run's spool file into the active segment and deletes it.
+     * Returns where the output went.
+     */
+    public synchronized Location append(int taskId, File spool) throws IOException {
+        FileLock lock = lock();
+        try {
+            FileChannel segment = activeSegment();
+            long offset = segment.size();
+            segment.position(offset + FRAME_HEADER);
+            long raw = Math.min(spool.length(), MAX_RUN_OUTPUT);
+            if (raw < spool.length()) {
+                logger.warning("Output of task " + taskId + " exceeds " + (MAX_RUN_OUTPUT >> 20) + " MB, the rest is dropped");
+            }
+            try (InputStream in = new FileInputStream(spool)) {
+                OutputStream target = Channels.newOutputStream(segment);
+                if (compress) {
+                    // finished, not closed: closing would close the segment channel
+                    GZIPOutputStream gzip = new GZIPOutputStream(target, 64 * 1024);
+                    copy(in, gzip, raw);
+                    gzip.finish();
+                } else {
+                    copy(in, target, raw);
+                }
+            }
+            long stored = segment.position() - offset - FRAME_HEADER;
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER)
+                    .putInt(0, FRAME_MAGIC)
+                    .putInt(4, taskId)
+                    .putInt(8, (int) stored)
+                    .putInt(12, compress ? FLAG_COMPRESSED : 0);
+            while (header.hasRemaining()) {
+                segment.write(header, offset + header.position());
+            }
+            Location location = new Location(activeSegment, offset, (int) stored, compress);
+            if (!spool.delete()) {
+                logger.warning("Could not delete spool file " + spool);
+            }
+            return location;
+        } finally {
+            lock.release();
+        }
+    }
+
+    // the run's output as it was written; FileNotFoundException once retention removed it
+    public byte[] read(int taskId, Location location) throws IOException {
+        File file = segmentFile(location.segment);
+        if (!file.exists()) {
+            throw new FileNotFoundException("the output was removed by the retention limits");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER + location.length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, location.offset + buffer.position()) < 0) {
+                    throw new IOException(file.getName() + " is shorter than expected");
+                }
+            }
+            if (buffer.getInt(0) != FRAME_MAGIC || buffer.getInt(4) != taskId || buffer.getInt(8) != location.length) {
+                throw new IOException("no output of task " + taskId + " at " + location);
+            }
+            byte[] stored = Arrays.copyOfRange(buffer.array(), FRAME_HEADER, buffer.capacity());
+            if (!location.compressed) {
+                return stored;
+            }
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(stored))) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 4);
+                in.transferTo(out);
+                return out.toByteArray();
+            }
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.close();
+            active = null;
+        }
+        if (lockChannel != null) {
+            lockChannel.close();
+            lockChannel = null;
+        }
+    }
+
+    private FileLock lock() throws IOException {
+        if (lockChannel == null) {
+            directory.mkdirs();
+            lockChannel = FileChannel.open(new File(directory, "segments.lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return lockChannel.lock();
+    }
+
+    // called with the lock held; follows rolls made by other processes and rolls
+    // over a full segment
+    private FileChannel activeSegment() throws IOException {
+        if (active == null) {
+            activeSegment = Math.max(1, latestSegment());
+            active = open(activeSegment);
+        }
+        while (segmentFile(activeSegment + 1).exists()) {
+            active.close();
+            active = open(++activeSegment);
+        }
+        if (active.size() >= segmentBytes) {
+            active.close();
+            active = open(++activeSegment);
+            logger.info("Started output segment " + segmentName(activeSegment));
+            enforceRetention();
+        }
+        return active;
+    }
+
+    private FileChannel open(int segment) throws IOException {
+        return FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    // deletes the oldest segments, never the active one, while over either limit
+    private void enforceRetention() {
+        int[] segments = segments();
+        long total = 0;
+        for (int segment : segments) {
+            total += segmentFile(segment).length();
+        }
+        long cutoff = retentionMillis > 0 ? System.currentTimeMillis() - retentionMillis : Long.MIN_VALUE;
+        for (int segment : segments) {
+            if (segment >= activeSegment) {
+                break;
+            }
+            File file = segmentFile(segment);
+            boolean tooBig = retentionBytes > 0 && total > retentionBytes;
+            if (!tooBig && file.lastModified() >= cutoff) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                logger.info("Deleted output segment " + file.getName() + " (retention)");
+            }
+        }
+    }
+
+    private int latestSegment() {
+        int[] segments = segments();
+        return segments.length == 0 ? 0 : segments[segments.length - 1];
+    }
+
+    // numbers of the existing segments, oldest first
+    private int[] segments() {
+        String[] names = directory.list((dir, name) -> name.matches("output-\\d{8}\\.seg"));
+        if (names == null) {
+            return new int[0];
+        }
+        return Arrays.stream(names).mapToInt(name -> Integer.parseInt(name.substring(7, 15))).sorted().toArray();
+    }
+
+    private File segmentFile(int segment) {
+        return new File(directory, segmentName(segment));
+    }
+
+    static String segmentName(int segment) {
+        return String.format("output-%08d.seg", segment);
+    }
+
+    private static void copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = limit;
+        int read;
+        while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,585 @@
+package com.taskscheduler.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.taskscheduler.util.IntHashMap;
+
+/**
+ * Append-only record of every command run: one fixed 64-byte record per execution
+ * with the task id, retry attempt, scheduled time, start, end, exit code, bytes of
+ * output and where the output is kept in the {@link OutputStore}. Each record goes
+ * out in a single write to the file opened for appending, so the daemon and
+ * background checks can share it.
+ * <p>
+ * Readers keep an in-memory index over the records they have seen and catch up on
+ * the new tail before each query: per task the record numbers of its runs plus
+ * all-time totals, and the end time of every 1024th record. {@link #recent} reads
+ * only the task's own records, an all-time {@link #summarize} needs no I/O at all,
+ * and a windowed one scans just the records since the window start, which the
+ * sparse time index locates by binary search. Records are appended when a run
+ * ends, so their end times ascend apart from clock changes.
+ */
+public class RunHistory {
+    private static final Logger logger = Logger.getLogger(RunHistory.class.getName());
+    public static final String FILE_NAME = "run_history.dat";
+    private static final int MAGIC = 0x52554e48; // "RUNH"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 64;
+    // version 1 records lack the output location
+    private static final int V1_RECORD_SIZE = 48;
+    // one time-index entry per block of records
+    private static final int BLOCK_SHIFT = 10;
+    // records read per I/O call while scanning
+    private static final int SCAN_RECORDS = 4096;
+    // runs averaged for the "recent" column of the stats
+    private static final int RECENT_RUNS = 10;
+
+    public static final int TIMED_OUT = 1;
+    public static final int CANCELLED = 2;
+    private static final int OUTPUT_COMPRESSED = 4;
+
+    private final File file;
+    private FileChannel out;
+    private FileChannel in;
+    private int recordSize = RECORD_SIZE;
+    private long indexed;
+    private final IntHashMap<TaskRuns> byTask = new IntHashMap<>();
+    private long[] blockEnds = new long[64];
+
+    public RunHistory(File file) {
+        this.file = file;
+    }
+
+    public static final class Run {
+        private final int taskId;
+        private final int attempt;
+        private final int flags;
+        private final long scheduledAt;
+        private final long startedAt;
+        private final long endedAt;
+        private final int exitCode;
+        private final long outputBytes;
+        private final OutputStore.Location output;
+
+        // times in epoch millis; attempt is 0 for a regular run and n for the n-th retry;
+        // output is null if none was stored
+        public Run(int taskId, int attempt, long scheduledAt, long startedAt, long endedAt,
+                   int exitCode, long outputBytes, OutputStore.Location output, int flags) {
+            this.taskId = taskId;
+            this.attempt = attempt;
+            this.scheduledAt = scheduledAt;
+            this.startedAt = startedAt;
+            this.endedAt = endedAt;
+            this.exitCode = exitCode;
+            this.outputBytes = outputBytes;
+            this.output = output;
+            this.flags = flags & (TIMED_OUT | CANCELLED);
+        }
+
+        public int getTaskId() {
+            return taskId;
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        public long getScheduledAt() {
+            return scheduledAt;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public long getEndedAt() {
+            return endedAt;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public long getOutputBytes() {
+            return outputBytes;
+        }
+
+        public OutputStore.Location getOutput() {
+            return output;
+        }
+
+        public boolean isTimedOut() {
+            return (flags & TIMED_OUT) != 0;
+        }
+
+        public boolean isCancelled() {
+            return (flags & CANCELLED) != 0;
+        }
+
+        public boolean isSuccess() {
+            return exitCode == 0 && flags == 0;
+        }
+
+        public long getDurationMillis() {
+            return endedAt - startedAt;
+        }
+
+        // how late the process started
+        public long getLagMillis() {
+            return Math.max(0, startedAt - scheduledAt);
+        }
+
+        // "ok", "exit 2", "timed out" or "cancelled"
+        public String getOutcome() {
+            return isTimedOut() ? "timed out" : isCancelled() ? "cancelled" : exitCode == 0 ? "ok" : "exit " + exitCode;
+        }
+    }
+
+    // totals over the runs of one task
+    public static final class Summary {
+        private final int taskId;
+        private long runs;
+        private long failures;
+        private long timeouts;
+        private long totalDuration;
+        private long maxDuration;
+        private long totalLag;
+        private long maxLag;
+        private long totalOutput;
+        private long lastEnded;
+        private long recentAverage = -1;
+
+        Summary(int taskId) {
+            this.taskId = taskId;
+        }
+
+        void add(long duration, long lag, boolean success, boolean timedOut, long output, long endedAt) {
+            runs++;
+            if (!success) {
+                failures++;
+            }
+            if (timedOut) {
+                timeouts++;
+            }
+            totalDuration += duration;
+            maxDuration = Math.max(maxDuration, duration);
+            totalLag += lag;
+            maxLag = Math.max(maxLag, lag);
+            totalOutput += output;
+            lastEnded = Math.max(lastEnded, endedAt);
+        }
+
+        Summary copy() {
+            Summary copy = new Summary(taskId);
+            copy.runs = runs;
+            copy.failures = failures;
+            copy.timeouts = timeouts;
+            copy.totalDuration = totalDuration;
+            copy.maxDuration = maxDuration;
+            copy.totalLag = totalLag;
+            copy.maxLag = maxLag;
+            copy.totalOutput = totalOutput;
+            copy.lastEnded = lastEnded;
+            return copy;
+        }
+
+        public int getTaskId() {
+            return taskId;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getAverageDuration() {
+            return totalDuration / runs;
+        }
+
+        public long getMaxDuration() {
+            return maxDuration;
+        }
+
+        // average duration of the last few runs, to compare against the overall average
+        public long getRecentAverageDuration() {
+            return recentAverage;
+        }
+
+        public long getAverageLag() {
+            return totalLag / runs;
+        }
+
+        public long getMaxLag() {
+            return maxLag;
+        }
+
+        public long getAverageOutputBytes() {
+            return totalOutput / runs;
+        }
+
+        public long getLastEnded() {
+            return lastEnded;
+        }
+    }
+
+    // record numbers of one task's runs in append order, plus its all-time totals
+    private static final class TaskRuns {
+        int[] records = new int[4];
+        int size;
+        final Summary total;
+
+        TaskRuns(int taskId) {
+            total = new Summary(taskId);
+        }
+
+        void add(int record) {
+            if (size == records.length) {
+                records = Arrays.copyOf(records, size * 2);
+            }
+            records[size++] = record;
+        }
+
+        // position of the first run at or after the given record number
+        int firstAtOrAfter(long record) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (records[mid] < record) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    // layout: task id, attempt (short), flags (short), scheduled, started, ended,
+    // exit code, output bytes, output segment, offset and length, 4 spare bytes
+    public synchronized void append(Run run) throws IOException {
+        if (out == null) {
+            openForAppend();
+        }
+        OutputStore.Location output = run.output;
+        int flags = run.flags | (output != null && output.isCompressed() ? OUTPUT_COMPRESSED : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        buffer.putInt(run.taskId)
+                .putShort((short) Math.min(run.attempt, Short.MAX_VALUE))
+                .putShort((short) flags)
+                .putLong(run.scheduledAt)
+                .putLong(run.startedAt)
+                .putLong(run.endedAt)
+                .putInt(run.exitCode)
+                .putLong(run.outputBytes)
+                .putInt(output != null ? output.getSegment() : 0)
+                .putLong(output != null ? output.getOffset() : 0)
+                .putInt(output != null ? output.getLength() : 0)
+                .putInt(0);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    // the task's last runs, newest first
+    public synchronized List<Run> recent(int taskId, int limit) throws IOException {
+        refresh();
+        List<Run> runs = new ArrayList<>();
+        TaskRuns task = byTask.get(taskId);
+        if (task == null) {
+            return runs;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        for (int i = task.size - 1; i >= 0 && runs.size() < limit; i--) {
+            runs.add(read(task.records[i], buffer));
+        }
+        return runs;
+    }
+
+    /**
+     * Per-task totals for the runs that ended at or after {@code since} (epoch millis,
+     * 0 for all of them), slowest on average first.
+     */
+    public synchronized List<Summary> summarize(long since) throws IOException {
+        refresh();
+        List<Summary> summaries = new ArrayList<>();
+        long first = 0;
+        if (since <= 0) {
+            byTask.forEachValue(task -> summaries.add(task.total.copy()));
+        } else {
+            first = scanStart(since);
+            IntHashMap<Summary> window = new IntHashMap<>();
+            scan(first, (record, buffer, at) -> {
+                if (buffer.getLong(at + 24) < since) {
+                    return;
+                }
+                int taskId = buffer.getInt(at);
+                Summary summary = window.get(taskId);
+                if (summary == null) {
+                    summary = new Summary(taskId);
+                    window.put(taskId, summary);
+                }
+                addTo(summary, buffer, at);
+            });
+            window.forEachValue(summaries::add);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        for (Summary summary : summaries) {
+            TaskRuns task = byTask.get(summary.taskId);
+            int from = Math.max(task.firstAtOrAfter(first), task.size - RECENT_RUNS);
+            long total = 0;
+            int count = 0;
+            for (int i = from; i < task.size; i++) {
+                Run run = read(task.records[i], buffer);
+                if (run.endedAt >= since) {
+                    total += run.getDurationMillis();
+                    count++;
+                }
+            }
+            summary.recentAverage = count == 0 ? -1 : total / count;
+        }
+        summaries.sort(Comparator.comparingLong(Summary::getAverageDuration).reversed());
+        return summaries;
+    }
+
+    public synchronized long size() throws IOException {
+        refresh();
+        return indexed;
+    }
+
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+
+    // e.g. "2024-06-01 02:00:03"
+    public static String formatTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault())
+                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+    }
+
+    // writes the header of a new file, upgrades a version 1 file and cuts off a torn
+    // last record, under a file lock so two processes starting at once do not both do it
+    private void openForAppend() throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        boolean upgraded = false;
+        try {
+            FileLock lock = channel.lock();
+            try {
+                long size = channel.size();
+                if (size < HEADER_SIZE) {
+                    channel.truncate(0);
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC).putInt(4, VERSION);
+                    while (header.hasRemaining()) {
+                        channel.write(header);
+                    }
+                } else {
+                    try (FileChannel reader = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                        reader.read(header, 0);
+                        if (header.getInt(4) == 1) {
+                            upgrade(reader);
+                            upgraded = true;
+                        }
+                    }
+                    if (!upgraded && (size - HEADER_SIZE) % RECORD_SIZE != 0) {
+                        logger.warning("Dropping incomplete record at the end of " + file.getName());
+                        channel.truncate(size - (size - HEADER_SIZE) % RECORD_SIZE);
+                    }
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (upgraded) {
+            // the old file was replaced underneath this channel
+            channel.close();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        out = channel;
+    }
+
+    // rewrites a version 1 file with room for the output location, called with the
+    // file locked; the index of this reader starts over
+    private void upgrade(FileChannel source) throws IOException {
+        File upgraded = new File(file.getPath() + ".tmp");
+        long count = (source.size() - HEADER_SIZE) / V1_RECORD_SIZE;
+        try (FileChannel target = FileChannel.open(upgraded.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC).putInt(4, VERSION);
+            while (header.hasRemaining()) {
+                target.write(header);
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            for (long i = 0; i < count; i++) {
+                record.clear().limit(V1_RECORD_SIZE);
+                while (record.hasRemaining()) {
+                    source.read(record, HEADER_SIZE + i * V1_RECORD_SIZE + record.position());
+                }
+                record.limit(RECORD_SIZE);
+                while (record.hasRemaining()) {
+                    record.put((byte) 0);
+                }
+                record.flip();
+                while (record.hasRemaining()) {
+                    target.write(record);
+                }
+            }
+        }
+        Files.move(upgraded.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Upgraded " + file.getName() + " to version " + VERSION + " (" + count + " runs)");
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+        indexed = 0;
+        byTask.clear();
+    }
+
+    // indexes the records appended since the last call, by any process
+    private void refresh() throws IOException {
+        if (in == null) {
+            if (!file.exists()) {
+                return;
+            }
+            in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (in.read(header, 0) < HEADER_SIZE) {
+                in.close();
+                in = null;
+                return;
+            }
+            if (header.getInt(0) != MAGIC || header.getInt(4) > VERSION) {
+                in.close();
+                in = null;
+                throw new IOException(file.getName() + " is not a run history file of a known version");
+            }
+            recordSize = header.getInt(4) == 1 ? V1_RECORD_SIZE : RECORD_SIZE;
+        }
+        scan(indexed, (record, buffer, at) -> {
+            int taskId = buffer.getInt(at);
+            TaskRuns task = byTask.get(taskId);
+            if (task == null) {
+                task = new TaskRuns(taskId);
+                byTask.put(taskId, task);
+            }
+            task.add((int) record);
+            addTo(task.total, buffer, at);
+            if ((record & ((1 << BLOCK_SHIFT) - 1)) == 0) {
+                int block = (int) (record >> BLOCK_SHIFT);
+                if (block == blockEnds.length) {
+                    blockEnds = Arrays.copyOf(blockEnds, block * 2);
+                }
+                blockEnds[block] = buffer.getLong(at + 24);
+            }
+            indexed = record + 1;
+        });
+    }
+
+    private interface RecordVisitor {
+        // the record starts at the given offset of the buffer
+        void visit(long record, ByteBuffer buffer, int at);
+    }
+
+    // reads the complete records from the given one to the current end of the file
+    private void scan(long from, RecordVisitor visitor) throws IOException {
+        if (in == null) {
+            return;
+        }
+        long count = (in.size() - HEADER_SIZE) / recordSize;
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_RECORDS * recordSize);
+        for (long record = from; record < count; ) {
+            chunk.clear();
+            chunk.limit((int) Math.min(SCAN_RECORDS, count - record) * recordSize);
+            long position = HEADER_SIZE + record * recordSize;
+            while (chunk.hasRemaining()) {
+                if (in.read(chunk, position + chunk.position()) < 0) {
+                    throw new IOException(file.getName() + " shrank while being read");
+                }
+            }
+            for (int at = 0; at < chunk.limit(); at += recordSize) {
+                visitor.visit(record++, chunk, at);
+            }
+        }
+    }
+
+    private Run read(long record, ByteBuffer buffer) throws IOException {
+        buffer.clear().limit(recordSize);
+        long position = HEADER_SIZE + record * recordSize;
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(file.getName() + " shrank while being read");
+            }
+        }
+        int flags = buffer.getShort(6);
+        OutputStore.Location output = null;
+        if (recordSize == RECORD_SIZE && buffer.getInt(44) != 0) {
+            output = new OutputStore.Location(buffer.getInt(44), buffer.getLong(48), buffer.getInt(56),
+                    (flags & OUTPUT_COMPRESSED) != 0);
+        }
+        return new Run(buffer.getInt(0), buffer.getShort(4), buffer.getLong(8), buffer.getLong(16),
+                buffer.getLong(24), buffer.getInt(32), buffer.getLong(36), output, flags);
+    }
+
+    private static void addTo(Summary summary, ByteBuffer buffer, int at) {
+        int flags = buffer.getShort(at + 6) & (TIMED_OUT | CANCELLED);
+        long scheduledAt = buffer.getLong(at + 8);
+        long startedAt = buffer.getLong(at + 16);
+        long endedAt = buffer.getLong(at + 24);
+        int exitCode = buffer.getInt(at + 32);
+        summary.add(endedAt - startedAt, Math.max(0, startedAt - scheduledAt), exitCode == 0 && flags == 0,
+                (flags & TIMED_OUT) != 0, buffer.getLong(at + 36), endedAt);
+    }
+
+    // where a scan for runs that ended at or after the given time starts: the first
+    // record of the last block whose first run ended before it
+    private long scanStart(long since) {
+        int blocks = (int) ((indexed + (1 << BLOCK_SHIFT) - 1) >> BLOCK_SHIFT);
+        int lo = 0;
+        int hi = blocks;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blockEnds[mid] < since) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo == 0 ? 0 : (long) (lo - 1) << BLOCK_SHIFT;
+    }
+}
@@ -0,0 +1,187 @@
+package com.taskscheduler.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * How far background checks have got through the due-date order, kept in
+ * {@code scan_watermark.dat}: the instant up to which due tasks have been taken,
+ * and the tasks taken by a check that has not finished running them, each with
+ * the process id of that check. A check takes the tasks due in (watermark, now]
+ * and moves the watermark to now in one update, so it never looks at a task
+ * twice and checks that overlap never take the same one; it gives them back once
+ * they have run. Tasks taken by a check whose process is gone (it crashed or was
+ * killed) are taken again by the next one. A task saved with a due time at or
+ * before the watermark, added late or moved earlier, is outside every range still
+ * to come, so it is marked behind and the next check takes it as well.
+ * <p>
+ * Updates hold an exclusive lock on the file and rewrite it in place. It is a
+ * few lines of text:
+ * <pre>
+ * watermark 2026-10-17T09:30
+ * claim 12 4711
+ * behind 15
+ * </pre>
+ */
+public class ScanWatermark {
+    private static final Logger logger = Logger.getLogger(ScanWatermark.class.getName());
+    public static final String FILE_NAME = "scan_watermark.dat";
+
+    private static final long PID = ProcessHandle.current().pid();
+
+    private LocalDateTime watermark;
+    // task id -> process id of the check running it
+    private final Map<Integer, Long> claims = new TreeMap<>();
+    private final Set<Integer> behind = new TreeSet<>();
+
+    // what an update does while it holds the lock
+    public interface Change<T> {
+        T apply(ScanWatermark state);
+    }
+
+    private ScanWatermark() {
+    }
+
+    // reads the file without locking it, for a quick look; empty if there is none.
+    // A read that races a rewrite may see nothing, which only means a full check
+    public static ScanWatermark read(File file) throws IOException {
+        ScanWatermark state = new ScanWatermark();
+        if (file.exists()) {
+            state.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        }
+        return state;
+    }
+
+    // reads the state, applies the change and writes it back, all under the file lock;
+    // the JVM allows one lock per file, so threads of this process take turns first
+    public static synchronized <T> T update(File file, Change<T> change) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // reads the whole file
+                }
+                ScanWatermark state = new ScanWatermark();
+                state.parse(new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8));
+                T result = change.apply(state);
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(state.format().getBytes(StandardCharsets.UTF_8)), 0);
+                channel.force(false);
+                return result;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // null before the first check
+    public LocalDateTime getWatermark() {
+        return watermark;
+    }
+
+    // never moves back, so a clock set back does not make tasks come due twice
+    public void advanceTo(LocalDateTime time) {
+        if (watermark == null || time.isAfter(watermark)) {
+            watermark = time;
+        }
+    }
+
+    public void claim(int taskId) {
+        claims.put(taskId, PID);
+    }
+
+    // only this process's own claim is given back
+    public void release(int taskId) {
+        claims.remove(taskId, PID);
+    }
+
+    // true if another check that is still running has the task
+    public boolean isClaimed(int taskId) {
+        Long pid = claims.get(taskId);
+        return pid != null && pid != PID && isAlive(pid);
+    }
+
+    public boolean hasOrphanedClaims() {
+        return claims.values().stream().anyMatch(pid -> pid != PID && !isAlive(pid));
+    }
+
+    // removes and returns the tasks of checks whose process is gone
+    public List<Integer> takeOrphanedClaims() {
+        List<Integer> orphaned = new ArrayList<>();
+        for (Iterator<Map.Entry<Integer, Long>> it = claims.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Long> claim = it.next();
+            if (claim.getValue() != PID && !isAlive(claim.getValue())) {
+                orphaned.add(claim.getKey());
+                it.remove();
+            }
+        }
+        return orphaned;
+    }
+
+    // the task's due time is at or before the watermark, so no range scan will meet it
+    public void markBehind(int taskId) {
+        behind.add(taskId);
+    }
+
+    public boolean hasBehind() {
+        return !behind.isEmpty();
+    }
+
+    // removes and returns the tasks marked behind
+    public List<Integer> takeBehind() {
+        List<Integer> taken = new ArrayList<>(behind);
+        behind.clear();
+        return taken;
+    }
+
+    private static boolean isAlive(long pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    private void parse(String text) {
+        for (String line : text.split("\n")) {
+            String[] fields = line.trim().split(" ");
+            try {
+                if (fields.length == 2 && fields[0].equals("watermark")) {
+                    watermark = LocalDateTime.parse(fields[1]);
+                } else if (fields.length == 3 && fields[0].equals("claim")) {
+                    claims.put(Integer.parseInt(fields[1]), Long.parseLong(fields[2]));
+                } else if (fields.length == 2 && fields[0].equals("behind")) {
+                    behind.add(Integer.parseInt(fields[1]));
+                } else if (!line.trim().isEmpty()) {
+                    logger.warning("Ignoring scan watermark line: " + line);
+                }
+            } catch (DateTimeParseException | NumberFormatException e) {
+                logger.warning("Ignoring scan watermark line: " + line);
+            }
+        }
+    }
+
+    private String format() {
+        StringBuilder text = new StringBuilder();
+        if (watermark != null) {
+            text.append("watermark ").append(watermark).append('\n');
+        }
+        claims.forEach((taskId, pid) -> text.append("claim ").append(taskId).append(' ').append(pid).append('\n'));
+        behind.forEach(taskId -> text.append("behind ").append(taskId).append('\n'));
+        return text.toString();
+    }
+}
@@ -0,0 +1,19 @@
+package com.taskscheduler.store;
+
+import java.io.IOException;
+
+// A change to a task that another process changed or deleted first; the change is not saved
+public class StoreConflictException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int taskId;
+
+    public StoreConflictException(int taskId) {
+        super("Task " + taskId + " was changed by another process, this change was not saved");
+        this.taskId = taskId;
+    }
+
+    public int getTaskId() {
+        return taskId;
+    }
+}
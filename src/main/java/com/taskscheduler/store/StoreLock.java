@@ -0,0 +1,98 @@
+package com.taskscheduler.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The lock file next to the task store, e.g. {@code tasks.lock}. Every process
+ * that reads or writes the store holds an exclusive {@link FileChannel#lock} on
+ * it for the duration, and the file holds the header they share:
+ * <pre>
+ * magic int, version long, generation long, nextId int
+ * </pre>
+ * The version moves on with every commit by any process, so a process whose
+ * last seen version still matches knows nothing has changed. The generation moves
+ * on when the log is cut after a snapshot, which makes log positions from before
+ * it meaningless. nextId is the id sequence, handed out under the lock so two
+ * processes never give the same id to different tasks. A changed header is forced
+ * to disk before the lock is released, so neither goes back after a crash.
+ */
+final class StoreLock {
+    private static final int MAGIC = 0x54534B4C; // "TSKL"
+    private static final int SIZE = 4 + 8 + 8 + 4;
+
+    static final class Header {
+        long version;
+        long generation;
+        int nextId;
+    }
+
+    // work done while holding the lock; changes to the header are written back
+    interface Section<T> {
+        T run(Header header) throws IOException;
+    }
+
+    private final File file;
+    private FileChannel channel;
+
+    StoreLock(File file) {
+        this.file = file;
+    }
+
+    // the JVM allows one lock per file, so threads of this process take turns here first
+    synchronized <T> T locked(Section<T> section) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        FileLock lock = channel.lock();
+        try {
+            Header header = read();
+            long version = header.version;
+            long generation = header.generation;
+            int nextId = header.nextId;
+            T result = section.run(header);
+            if (header.version != version || header.generation != generation || header.nextId != nextId) {
+                write(header);
+                channel.force(false);
+            }
+            return result;
+        } finally {
+            lock.release();
+        }
+    }
+
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // a new or unreadable file starts from zero; the store supplies the id sequence on load
+    private Header read() throws IOException {
+        Header header = new Header();
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // reads the whole header
+        }
+        if (buffer.position() == SIZE && buffer.getInt(0) == MAGIC) {
+            header.version = buffer.getLong(4);
+            header.generation = buffer.getLong(12);
+            header.nextId = buffer.getInt(20);
+        }
+        return header;
+    }
+
+    private void write(Header header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        buffer.putInt(MAGIC).putLong(header.version).putLong(header.generation).putInt(header.nextId).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+}
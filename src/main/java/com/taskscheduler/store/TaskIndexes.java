@@ -0,0 +1,208 @@
+package com.taskscheduler.store;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import com.taskscheduler.Priority;
+import com.taskscheduler.Task;
+import com.taskscheduler.util.IntHashMap;
+
+/**
+ * Secondary indexes over the task table, updated incrementally on every change:
+ * due-date ordered trees of open tasks and of their pending retries, tag postings,
+ * priority and open/completed buckets, and the reverse of the {@code --after}
+ * dependencies. Range and tag queries take O(log n + k) and come back already
+ * ordered, so callers never sort.
+ *
+ * Tasks are edited in place, so the keys each task was indexed under are kept
+ * separately; re-indexing removes the old keys before adding the new ones.
+ */
+public class TaskIndexes {
+    // position of an open task in the due-date tree, ordered by due date then id
+    public static final class DueKey implements Comparable<DueKey> {
+        private final LocalDateTime due;
+        private final int id;
+
+        DueKey(LocalDateTime due, int id) {
+            this.due = due;
+            this.id = id;
+        }
+
+        public LocalDateTime getDue() {
+            return due;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public int compareTo(DueKey other) {
+            int byDue = due.compareTo(other.due);
+            return byDue != 0 ? byDue : Integer.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DueKey && compareTo((DueKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return due.hashCode() * 31 + id;
+        }
+    }
+
+    // the keys a task is currently indexed under
+    private static final class Indexed {
+        final DueKey dueKey;
+        final DueKey retryKey;
+        final boolean completed;
+        final Priority priority;
+        final String[] tags;
+        final int[] after;
+
+        Indexed(Task task) {
+            this.completed = task.isCompleted();
+            this.dueKey = !completed && task.getDueDate() != null ? new DueKey(task.getDueDate(), task.getId()) : null;
+            this.retryKey = !completed && task.getRetryAt() != null ? new DueKey(task.getRetryAt(), task.getId()) : null;
+            this.priority = task.getPriority();
+            this.tags = task.getTags().stream().map(String::toLowerCase).distinct().toArray(String[]::new);
+            this.after = task.getDependsOn().stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    private final IntHashMap<Indexed> indexed = new IntHashMap<>();
+    private final TreeSet<DueKey> openByDue = new TreeSet<>();
+    private final TreeSet<DueKey> openByRetry = new TreeSet<>();
+    private final Map<String, TreeSet<Integer>> byTag = new HashMap<>();
+    private final EnumMap<Priority, TreeSet<Integer>> byPriority = new EnumMap<>(Priority.class);
+    private final TreeSet<Integer> open = new TreeSet<>();
+    private final TreeSet<Integer> completed = new TreeSet<>();
+    private final Map<Integer, TreeSet<Integer>> dependents = new HashMap<>();
+
+    public TaskIndexes() {
+        for (Priority priority : Priority.values()) {
+            byPriority.put(priority, new TreeSet<>());
+        }
+    }
+
+    // adds the task or moves it to its current keys
+    public void update(Task task) {
+        remove(task.getId());
+        int id = task.getId();
+        Indexed keys = new Indexed(task);
+        indexed.put(id, keys);
+
+        if (keys.dueKey != null) {
+            openByDue.add(keys.dueKey);
+        }
+        if (keys.retryKey != null) {
+            openByRetry.add(keys.retryKey);
+        }
+        (keys.completed ? completed : open).add(id);
+        byPriority.get(keys.priority).add(id);
+        for (String tag : keys.tags) {
+            byTag.computeIfAbsent(tag, t -> new TreeSet<>()).add(id);
+        }
+        for (int predecessor : keys.after) {
+            dependents.computeIfAbsent(predecessor, p -> new TreeSet<>()).add(id);
+        }
+    }
+
+    public void remove(int id) {
+        Indexed keys = indexed.remove(id);
+        if (keys == null) {
+            return;
+        }
+        if (keys.dueKey != null) {
+            openByDue.remove(keys.dueKey);
+        }
+        if (keys.retryKey != null) {
+            openByRetry.remove(keys.retryKey);
+        }
+        (keys.completed ? completed : open).remove(id);
+        byPriority.get(keys.priority).remove(id);
+        for (String tag : keys.tags) {
+            TreeSet<Integer> postings = byTag.get(tag);
+            if (postings != null) {
+                postings.remove(id);
+                if (postings.isEmpty()) {
+                    byTag.remove(tag);
+                }
+            }
+        }
+        for (int predecessor : keys.after) {
+            TreeSet<Integer> ids = dependents.get(predecessor);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    dependents.remove(predecessor);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        indexed.clear();
+        openByDue.clear();
+        openByRetry.clear();
+        byTag.clear();
+        byPriority.values().forEach(TreeSet::clear);
+        open.clear();
+        completed.clear();
+        dependents.clear();
+    }
+
+    // open tasks due in [from, to], either bound may be null for an open range
+    public NavigableSet<DueKey> openDueBetween(LocalDateTime from, boolean fromInclusive,
+                                               LocalDateTime to, boolean toInclusive) {
+        return range(openByDue, from, fromInclusive, to, toInclusive);
+    }
+
+    // open tasks by the time of their pending retry
+    public NavigableSet<DueKey> openRetriesBetween(LocalDateTime from, boolean fromInclusive,
+                                                   LocalDateTime to, boolean toInclusive) {
+        return range(openByRetry, from, fromInclusive, to, toInclusive);
+    }
+
+    private static NavigableSet<DueKey> range(NavigableSet<DueKey> keys, LocalDateTime from, boolean fromInclusive,
+                                              LocalDateTime to, boolean toInclusive) {
+        NavigableSet<DueKey> range = keys;
+        if (from != null) {
+            range = range.tailSet(new DueKey(from, fromInclusive ? Integer.MIN_VALUE : Integer.MAX_VALUE), true);
+        }
+        if (to != null) {
+            range = range.headSet(new DueKey(to, toInclusive ? Integer.MAX_VALUE : Integer.MIN_VALUE), true);
+        }
+        return Collections.unmodifiableNavigableSet(range);
+    }
+
+    public NavigableSet<Integer> idsWithTag(String tag) {
+        TreeSet<Integer> postings = byTag.get(tag.toLowerCase());
+        return postings != null ? Collections.unmodifiableNavigableSet(postings) : Collections.emptyNavigableSet();
+    }
+
+    public NavigableSet<Integer> idsWithPriority(Priority priority) {
+        return Collections.unmodifiableNavigableSet(byPriority.get(priority));
+    }
+
+    // tasks that name this one in --after
+    public NavigableSet<Integer> idsDependingOn(int id) {
+        TreeSet<Integer> ids = dependents.get(id);
+        return ids != null ? Collections.unmodifiableNavigableSet(ids) : Collections.emptyNavigableSet();
+    }
+
+    public NavigableSet<Integer> openIds() {
+        return Collections.unmodifiableNavigableSet(open);
+    }
+
+    public NavigableSet<Integer> completedIds() {
+        return Collections.unmodifiableNavigableSet(completed);
+    }
+}
@@ -0,0 +1,153 @@
+package com.taskscheduler.store;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Append-only log of task mutations, one JSON record per line
+public class TaskLog {
+    private static final Logger logger = Logger.getLogger(TaskLog.class.getName());
+    private final File file;
+    private FileOutputStream out;
+    private Writer writer;
+    private int recordCount;
+
+    public TaskLog(File file) {
+        this.file = file;
+    }
+
+    // reads every complete record in order; a torn last line from a crash is dropped
+    public void replay(Consumer<String> consumer) throws IOException {
+        recordCount = 0;
+        if (!file.exists()) {
+            return;
+        }
+        repairTail();
+        scan(line -> {
+            consumer.accept(line);
+            recordCount++;
+        });
+    }
+
+    // read-only pass over the records, for other processes peeking at the store;
+    // unlike replay it never repairs the file
+    public void scan(Consumer<String> consumer) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    consumer.accept(line);
+                }
+            }
+        }
+    }
+
+    // reads the complete records from the byte offset on, e.g. those appended by other
+    // processes since this one last looked, and returns the offset after the last of them
+    public long scanFrom(long offset, Consumer<String> consumer) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (offset >= length) {
+                return length;
+            }
+            byte[] tail = new byte[(int) (length - offset)];
+            raf.seek(offset);
+            raf.readFully(tail);
+            int start = 0;
+            for (int i = 0; i < tail.length; i++) {
+                if (tail[i] == '\n') {
+                    if (i > start) {
+                        consumer.accept(new String(tail, start, i - start, StandardCharsets.UTF_8));
+                    }
+                    start = i + 1;
+                }
+            }
+            return offset + start;
+        }
+    }
+
+    public long length() {
+        return file.length();
+    }
+
+    // buffers a record; it only reaches the file on the next sync
+    public synchronized void write(String record) throws IOException {
+        if (writer == null) {
+            out = new FileOutputStream(file, true);
+            writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        }
+        writer.write(record);
+        writer.write('\n');
+        recordCount++;
+    }
+
+    // hands buffered records to the OS and optionally forces them to disk
+    public synchronized void sync(boolean fsync) throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.flush();
+        if (fsync) {
+            out.getChannel().force(false);
+        }
+    }
+
+    // drops all records, called once they are covered by a snapshot
+    public synchronized void truncate() throws IOException {
+        close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+        }
+        recordCount = 0;
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            out = null;
+        }
+    }
+
+    // cuts off a partially written last record so new appends start on a clean line
+    void repairTail() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            long end = length;
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < length) {
+                logger.warning("Dropping incomplete record at the end of " + file.getName());
+                raf.setLength(end);
+            }
+        }
+    }
+}
@@ -0,0 +1,659 @@
+package com.taskscheduler.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.taskscheduler.Task;
+
+/**
+ * Task persistence built from a full snapshot file plus an append-only mutation log.
+ * Each add/update/delete appends one small record; the snapshot is only rewritten
+ * when the log has grown to half the size of the task set, which keeps the write cost per
+ * mutation constant on average.
+ *
+ * Writes go through a {@link GroupCommitter}, so changes made close together share
+ * a single write and fsync according to the configured {@link CommitPolicy}.
+ *
+ * The snapshot also carries the id sequence, so ids stay monotonic and are never
+ * handed out twice, even after the highest task has been deleted. It is written
+ * either as JSON or as a memory-mapped {@link ColumnarSnapshot}; whichever file
+ * is newer is loaded, so switching formats needs no migration step.
+ *
+ * Several processes may use the store at once. Loads, commits and snapshots hold
+ * the {@link StoreLock}, whose header carries the store version, moved on by every
+ * commit, and the shared id sequence. Each record names the process that wrote it,
+ * so {@link #refresh} can merge just the changes other processes appended since
+ * this one last looked, and only look at all when the version has moved. A
+ * snapshot is written from this process's tasks only if it has seen every change;
+ * otherwise it is rebuilt from the files, so no process ever cuts records it has
+ * not read out of the log.
+ * <p>
+ * Every saved change gives the task a new random revision, and its record names
+ * the revision it was made from. Before a batch is written the store catches up
+ * on what other processes committed; a change made from a revision that is no
+ * longer the task's current one would overwrite theirs, so it is rejected with a
+ * {@link StoreConflictException} and the task is taken from the store on the next
+ * refresh. Callers that report a change wait for it with {@link #awaitWritten}
+ * whatever the policy; TaskManager applies the outcome of a run again on the
+ * refreshed task instead of losing it.
+ */
+public class TaskStore {
+    private static final Logger logger = Logger.getLogger(TaskStore.class.getName());
+    private static final int MIN_COMPACTION_RECORDS = 1000;
+
+    private final File snapshotFile;
+    private final File binarySnapshotFile;
+    private final boolean binarySnapshot;
+    private final TaskLog log;
+    private final Gson gson;
+    private final TypeAdapter<Task> taskAdapter;
+    private final CommitPolicy policy;
+    private final GroupCommitter committer;
+    private final StoreLock lock;
+    // tags this process's records, so refresh passes over them
+    private final String writer = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private int logRecords;
+    private int nextId = 1;
+    // what this process has seen: store version and generation, and how far it has read the log
+    private long knownVersion = -1;
+    private long knownGeneration = -1;
+    private long readOffset;
+    // another process committed changes this one has not merged yet
+    private boolean behind;
+    // refreshes that merged changes, to tell whether a queued snapshot still holds everything
+    private long merges;
+    // records queued and not yet written
+    private final AtomicInteger unwritten = new AtomicInteger();
+    // set on the committer thread while it holds the lock
+    private StoreLock.Header lockedHeader;
+    private boolean compacted;
+    private int accepted;
+    // a change was rejected, so this process holds tasks the store does not; the next refresh reads everything
+    private boolean conflicted;
+    // current revision of every task in the store as of revisionVersion, read up to revisionOffset
+    private final Map<Integer, Long> revisions = new HashMap<>();
+    private long revisionVersion = -1;
+    private long revisionGeneration = -1;
+    private long revisionOffset;
+
+    // takes the changes other processes made to the store, from refresh
+    public interface Listener {
+        // every task follows with put, after the log was cut by another process
+        void reset();
+
+        void put(Task task);
+
+        void delete(int id);
+    }
+
+    public TaskStore(String fileName, Gson gson, CommitPolicy policy, boolean binarySnapshot) {
+        this.snapshotFile = new File(fileName);
+        this.binarySnapshotFile = binarySnapshotFile(fileName);
+        this.binarySnapshot = binarySnapshot;
+        this.log = new TaskLog(logFile(fileName));
+        this.gson = gson;
+        this.taskAdapter = gson.getAdapter(Task.class);
+        this.policy = policy;
+        this.lock = new StoreLock(new File(fileName.replaceFirst("\\.json$", "") + ".lock"));
+        this.committer = new GroupCommitter(log, policy, this::commitBatch);
+    }
+
+    public List<Task> load() throws IOException {
+        return lock.locked(header -> {
+            synchronized (this) {
+                List<Task> tasks = read(header);
+                nextId = Math.max(nextId, header.nextId);
+                header.nextId = nextId;
+                knownVersion = header.version;
+                knownGeneration = header.generation;
+                readOffset = log.length();
+                behind = false;
+                return tasks;
+            }
+        });
+    }
+
+    // the snapshot plus the log; the caller holds the lock and this store's monitor
+    private List<Task> read(StoreLock.Header header) throws IOException {
+        Map<Integer, Task> tasks = new LinkedHashMap<>();
+        nextId = 1;
+
+        if (isBinaryNewer(snapshotFile, binarySnapshotFile)) {
+            ColumnarSnapshot snapshot = ColumnarSnapshot.open(binarySnapshotFile);
+            nextId = Math.max(nextId, snapshot.getNextId());
+            for (Task task : snapshot.readTasks()) {
+                tasks.put(task.getId(), task);
+                nextId = Math.max(nextId, task.getId() + 1);
+            }
+        } else if (snapshotFile.exists() && snapshotFile.length() > 0) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(snapshotFile), StandardCharsets.UTF_8)) {
+                readSnapshot(gson.newJsonReader(reader), tasks);
+            }
+        }
+
+        log.replay(line -> apply(tasks, line));
+        logRecords = log.getRecordCount();
+        if (logRecords > 0) {
+            logger.info("Replayed " + logRecords + " logged task changes");
+        }
+        revisions.clear();
+        for (Task task : tasks.values()) {
+            revisions.put(task.getId(), task.getRevision());
+        }
+        revisionVersion = header.version;
+        revisionGeneration = header.generation;
+        revisionOffset = log.length();
+        return new ArrayList<>(tasks.values());
+    }
+
+    // next id of the persisted sequence, valid after load()
+    public synchronized int getNextId() {
+        return nextId;
+    }
+
+    // takes the next id of the sequence shared by every process using the store
+    public int allocateId() throws IOException {
+        return lock.locked(header -> {
+            synchronized (this) {
+                int id = Math.max(nextId, header.nextId);
+                nextId = id + 1;
+                header.nextId = nextId;
+                return id;
+            }
+        });
+    }
+
+    // the version this process has seen, -1 before load()
+    public synchronized long getVersion() {
+        return knownVersion;
+    }
+
+    /**
+     * Merges the changes other processes have committed since this process last
+     * looked into the listener: the records they appended to the log, or every
+     * task after one of them cut it or a change of this process was rejected. Own
+     * queued changes are written first. Returns false, after only a look at the
+     * version, if nothing changed.
+     */
+    public boolean refresh(Listener listener) throws IOException {
+        if (unwritten.get() > 0) {
+            flush();
+        }
+        return lock.locked(header -> {
+            synchronized (this) {
+                if (header.version == knownVersion && !behind && !conflicted) {
+                    return false;
+                }
+                if (header.generation != knownGeneration || conflicted) {
+                    int ownNextId = nextId;
+                    listener.reset();
+                    for (Task task : read(header)) {
+                        listener.put(task);
+                    }
+                    nextId = Math.max(nextId, ownNextId);
+                    readOffset = log.length();
+                } else {
+                    readOffset = log.scanFrom(readOffset, line -> merge(listener, line));
+                    if (header.version != revisionVersion) {
+                        catchUpRevisions(header);
+                    }
+                }
+                nextId = Math.max(nextId, header.nextId);
+                knownVersion = header.version;
+                knownGeneration = header.generation;
+                behind = false;
+                conflicted = false;
+                merges++;
+                return true;
+            }
+        });
+    }
+
+    private void merge(Listener listener, String line) {
+        try {
+            LogRecord record = LogRecord.parse(line, taskAdapter);
+            if (writer.equals(record.writer)) {
+                return;
+            }
+            logRecords++;
+            if ("put".equals(record.op) && record.task != null) {
+                listener.put(record.task);
+                nextId = Math.max(nextId, record.task.getId() + 1);
+            } else if ("delete".equals(record.op)) {
+                listener.delete(record.id);
+            }
+        } catch (IOException | JsonParseException | IllegalStateException | IllegalArgumentException
+                 | DateTimeException e) {
+            logger.warning("Skipping unreadable task log record: " + e.getMessage());
+        }
+    }
+
+    // runs each batch of the committer under the store lock: repairs a record torn by
+    // a process that died while writing, catches up on the revisions other processes
+    // committed so the checks of the batch see them, and moves the version on if
+    // anything was written
+    private void commitBatch(int records, GroupCommitter.Barrier batch) throws IOException {
+        lock.locked(header -> {
+            synchronized (this) {
+                if (header.version != knownVersion) {
+                    behind = true;
+                }
+                if (header.version != revisionVersion) {
+                    catchUpRevisions(header);
+                }
+                lockedHeader = header;
+                compacted = false;
+                accepted = 0;
+            }
+            try {
+                log.repairTail();
+                batch.run();
+            } finally {
+                synchronized (this) {
+                    lockedHeader = null;
+                    unwritten.addAndGet(-records);
+                }
+            }
+            synchronized (this) {
+                if (accepted > 0 || compacted) {
+                    header.version++;
+                }
+                if (!behind) {
+                    knownVersion = header.version;
+                    readOffset = log.length();
+                }
+                revisionVersion = header.version;
+                revisionGeneration = header.generation;
+                revisionOffset = log.length();
+            }
+            return null;
+        });
+    }
+
+    // the revisions of the records appended since the last look, or of the whole store
+    // after another process cut the log; the tasks themselves reach this process on refresh
+    private void catchUpRevisions(StoreLock.Header header) throws IOException {
+        if (header.generation != revisionGeneration) {
+            int ownNextId = nextId;
+            int ownRecords = logRecords;
+            read(header);
+            nextId = Math.max(nextId, ownNextId);
+            logRecords = ownRecords;
+            return;
+        }
+        revisionOffset = log.scanFrom(revisionOffset, line -> {
+            try {
+                LogRecord record = LogRecord.parse(line, taskAdapter);
+                if ("put".equals(record.op) && record.task != null) {
+                    revisions.put(record.task.getId(), record.task.getRevision());
+                } else if ("delete".equals(record.op)) {
+                    revisions.remove(record.id);
+                }
+            } catch (IOException | JsonParseException | IllegalStateException | IllegalArgumentException
+                     | DateTimeException e) {
+                logger.warning("Skipping unreadable task log record: " + e.getMessage());
+            }
+        });
+        revisionVersion = header.version;
+    }
+
+    // the check of a record, run under the lock just before it is written: the task must
+    // still be at the revision the change was made from, 0 for one not in the store
+    private synchronized void claimRevision(int id, long base, long revision) throws StoreConflictException {
+        long current = revisions.getOrDefault(id, 0L);
+        if (current != base) {
+            conflicted = true;
+            throw new StoreConflictException(id);
+        }
+        if (revision == 0) {
+            revisions.remove(id);
+        } else {
+            revisions.put(id, revision);
+        }
+        accepted++;
+    }
+
+    private static long newRevision() {
+        long revision;
+        do {
+            revision = ThreadLocalRandom.current().nextLong();
+        } while (revision == 0);
+        return revision;
+    }
+
+    // the record is serialized here so later in-place edits of the task cannot leak into it.
+    // The task moves to a new revision; the commit fails with StoreConflictException if
+    // another process saved the task since this one last read it
+    public synchronized CompletableFuture<Void> put(Task task) {
+        int id = task.getId();
+        long base = task.getRevision();
+        long revision = newRevision();
+        task.setRevision(revision);
+        StringWriter record = new StringWriter();
+        try {
+            JsonWriter out = new JsonWriter(record);
+            out.beginObject();
+            out.name("op").value("put");
+            out.name("w").value(writer);
+            out.name("task");
+            taskAdapter.write(out, task);
+            out.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        logRecords++;
+        nextId = Math.max(nextId, task.getId() + 1);
+        unwritten.incrementAndGet();
+        return committer.submit(record.toString(), () -> claimRevision(id, base, revision));
+    }
+
+    // deletes the task at the given revision; fails like put if another process changed it
+    public synchronized CompletableFuture<Void> delete(int id, long revision) {
+        logRecords++;
+        unwritten.incrementAndGet();
+        return committer.submit("{\"op\":\"delete\",\"w\":\"" + writer + "\",\"id\":" + id + "}",
+                () -> claimRevision(id, revision, 0));
+    }
+
+    // compacting in proportion to the task count keeps snapshots amortized O(1) per change
+    public synchronized boolean needsCompaction(int liveTasks) {
+        return logRecords >= Math.max(MIN_COMPACTION_RECORDS, liveTasks / 2);
+    }
+
+    // queues a full snapshot behind the pending records; the log is cut once it is written
+    public synchronized CompletableFuture<Void> compact(Collection<Task> tasks, int nextId) {
+        this.nextId = Math.max(this.nextId, nextId);
+        byte[] data = serialize(tasks, this.nextId);
+        boolean complete = !behind;
+        long mergesAtCall = merges;
+        logRecords = 0;
+        return committer.submitBarrier(() -> compactLocked(data, complete, mergesAtCall));
+    }
+
+    private byte[] serialize(Collection<Task> tasks, int nextId) {
+        return binarySnapshot
+                ? ColumnarSnapshot.serialize(tasks, nextId)
+                : serializeSnapshot(tasks, nextId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // runs inside commitBatch. The tasks given to compact are written only if they held
+    // every committed change, and none was merged in since; otherwise the snapshot is
+    // rebuilt from the files, which hold this process's records too by now
+    private void compactLocked(byte[] data, boolean complete, long mergesAtCall) throws IOException {
+        StoreLock.Header header;
+        boolean stale;
+        synchronized (this) {
+            header = lockedHeader;
+            stale = !complete || behind || merges != mergesAtCall;
+        }
+        if (stale) {
+            synchronized (this) {
+                int ownNextId = nextId;
+                // records queued behind the snapshot still count towards the next one
+                int ownRecords = logRecords;
+                List<Task> tasks = read(header);
+                nextId = Math.max(Math.max(nextId, ownNextId), header.nextId);
+                logRecords = ownRecords;
+                data = serialize(tasks, nextId);
+            }
+            logger.info("Rebuilt the task snapshot from the store, another process had changed it");
+        }
+        writeSnapshot(data);
+        synchronized (this) {
+            header.generation++;
+            compacted = true;
+            if (!behind) {
+                // this process has every change, so the cut log holds nothing it needs
+                knownGeneration = header.generation;
+            }
+        }
+    }
+
+    /**
+     * Tells whether any open task is due within [from, to] without loading the store:
+     * a binary snapshot is probed through its due and status columns and the log is
+     * overlaid on the result. A pending retry counts as due at its retry time.
+     * A JSON snapshot cannot be probed cheaply, so then the answer is always true
+     * and the caller does a full load.
+     */
+    public static boolean hasOpenTasksDueBetween(String fileName, LocalDateTime from, LocalDateTime to)
+            throws IOException {
+        File jsonFile = new File(fileName);
+        File binaryFile = binarySnapshotFile(fileName);
+        if (jsonFile.length() > 0 && !isBinaryNewer(jsonFile, binaryFile)) {
+            return true;
+        }
+        Set<Integer> due = new HashSet<>();
+        if (binaryFile.exists()) {
+            ColumnarSnapshot.open(binaryFile).forEachOpenDueBetween(from, to, due::add);
+        }
+        TypeAdapter<Task> adapter = new TaskTypeAdapter();
+        new TaskLog(logFile(fileName)).scan(line -> {
+            try {
+                LogRecord record = LogRecord.parse(line, adapter);
+                if (record.task != null) {
+                    Task task = record.task;
+                    LocalDateTime at = task.getRetryAt() != null ? task.getRetryAt() : task.getDueDate();
+                    boolean inWindow = !task.isCompleted() && at != null
+                            && !at.isBefore(from) && !at.isAfter(to);
+                    if (inWindow) {
+                        due.add(task.getId());
+                    } else {
+                        due.remove(task.getId());
+                    }
+                } else if ("delete".equals(record.op)) {
+                    due.remove(record.id);
+                }
+            } catch (IOException | RuntimeException e) {
+                // a record being appended right now; the full run will see it
+            }
+        });
+        return !due.isEmpty();
+    }
+
+    // blocks until the change is durable when the policy asks callers to wait
+    public void await(CompletableFuture<Void> commit) throws IOException {
+        if (!policy.waitsForCommit()) {
+            return;
+        }
+        try {
+            commit.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    // blocks until the change has been written or rejected, whatever the policy
+    public void awaitWritten(CompletableFuture<Void> commit) throws IOException {
+        try {
+            commit.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    // waits until every change queued so far has been written
+    public void flush() throws IOException {
+        CompletableFuture<Void> done = committer.submitBarrier(() -> { });
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    public CommitPolicy getPolicy() {
+        return policy;
+    }
+
+    public CommitStats getCommitStats() {
+        return committer.getStats();
+    }
+
+    // flushes every queued change before returning
+    public void close() throws IOException {
+        committer.close();
+        log.close();
+        lock.close();
+    }
+
+    // snapshot layout: {"nextId": n, "tasks": [...]}
+    private String serializeSnapshot(Collection<Task> tasks, int nextId) {
+        StringWriter buffer = new StringWriter();
+        try {
+            JsonWriter out = gson.newJsonWriter(buffer);
+            out.beginObject();
+            out.name("nextId").value(nextId);
+            out.name("tasks").beginArray();
+            for (Task task : tasks) {
+                taskAdapter.write(out, task);
+            }
+            out.endArray();
+            out.endObject();
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.toString();
+    }
+
+    // older files hold a bare task array without the id sequence
+    private void readSnapshot(JsonReader in, Map<Integer, Task> tasks) throws IOException {
+        if (in.peek() == JsonToken.BEGIN_ARRAY) {
+            readTasks(in, tasks);
+            return;
+        }
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("nextId")) {
+                nextId = Math.max(nextId, in.nextInt());
+            } else if (name.equals("tasks")) {
+                readTasks(in, tasks);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    private void readTasks(JsonReader in, Map<Integer, Task> tasks) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            Task task = taskAdapter.read(in);
+            tasks.put(task.getId(), task);
+            nextId = Math.max(nextId, task.getId() + 1);
+        }
+        in.endArray();
+    }
+
+    // the other format's file is removed so a stale snapshot can never win on load
+    private void writeSnapshot(byte[] data) throws IOException {
+        File target = binarySnapshot ? binarySnapshotFile : snapshotFile;
+        File tmp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+            if (policy.fsyncs()) {
+                out.getChannel().force(false);
+            }
+        }
+        Files.move(tmp.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists((binarySnapshot ? snapshotFile : binarySnapshotFile).toPath());
+        log.truncate();
+    }
+
+    private static File binarySnapshotFile(String fileName) {
+        return new File(fileName.replaceFirst("\\.json$", "") + ".snap");
+    }
+
+    private static File logFile(String fileName) {
+        return new File(fileName.replaceFirst("\\.json$", "") + ".log");
+    }
+
+    private static boolean isBinaryNewer(File jsonFile, File binaryFile) {
+        return binaryFile.exists() && (!jsonFile.exists() || binaryFile.lastModified() >= jsonFile.lastModified());
+    }
+
+    // records are idempotent, so replaying a log that a snapshot already covers is harmless
+    private void apply(Map<Integer, Task> tasks, String line) {
+        try {
+            LogRecord record = LogRecord.parse(line, taskAdapter);
+            if ("put".equals(record.op) && record.task != null) {
+                tasks.put(record.task.getId(), record.task);
+                nextId = Math.max(nextId, record.task.getId() + 1);
+            } else if ("delete".equals(record.op)) {
+                tasks.remove(record.id);
+            }
+        } catch (IOException | JsonParseException | IllegalStateException | IllegalArgumentException
+                 | DateTimeException e) {
+            logger.warning("Skipping unreadable task log record: " + e.getMessage());
+        }
+    }
+
+    // one line of the log: {"op":"put","w":"...","task":{...}} or {"op":"delete","w":"...","id":n},
+    // w naming the process that wrote it; older records have none
+    private static final class LogRecord {
+        String op;
+        String writer;
+        Task task;
+        int id = -1;
+
+        static LogRecord parse(String line, TypeAdapter<Task> adapter) throws IOException {
+            LogRecord record = new LogRecord();
+            JsonReader in = new JsonReader(new StringReader(line));
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "op":
+                        record.op = in.nextString();
+                        break;
+                    case "w":
+                        record.writer = in.nextString();
+                        break;
+                    case "task":
+                        record.task = adapter.read(in);
+                        break;
+                    case "id":
+                        record.id = in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return record;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.taskscheduler.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import com.taskscheduler.Task;
+import com.taskscheduler.util.IntHashMap;
+
+/**
+ * In-memory task table: an int-keyed hash index for O(1) lookup by id plus an
+ * id-ordered array for listing. Removed rows leave a hole that is squeezed out
+ * once holes make up half of the array, so deletes stay O(log n) amortized.
+ */
+public class TaskTable {
+    private final IntHashMap<Task> byId = new IntHashMap<>();
+    private int[] orderedIds = new int[16];
+    private Task[] ordered = new Task[16];
+    private int used;
+    private int holes;
+
+    public Task get(int id) {
+        return byId.get(id);
+    }
+
+    public boolean contains(int id) {
+        return byId.containsKey(id);
+    }
+
+    // inserts a new task or replaces the one with the same id
+    public void put(Task task) {
+        int id = task.getId();
+        byId.put(id, task);
+
+        if (used == 0 || orderedIds[used - 1] < id) {
+            append(id, task);
+            return;
+        }
+        int pos = Arrays.binarySearch(orderedIds, 0, used, id);
+        if (pos >= 0) {
+            if (ordered[pos] == null) {
+                holes--;
+            }
+            ordered[pos] = task;
+        } else {
+            insertAt(-pos - 1, id, task);
+        }
+    }
+
+    public Task remove(int id) {
+        Task removed = byId.remove(id);
+        if (removed != null) {
+            int pos = Arrays.binarySearch(orderedIds, 0, used, id);
+            ordered[pos] = null;
+            if (++holes > used / 2) {
+                squeeze();
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+
+    // visits tasks in id order
+    public void forEach(Consumer<Task> action) {
+        for (int i = 0; i < used; i++) {
+            if (ordered[i] != null) {
+                action.accept(ordered[i]);
+            }
+        }
+    }
+
+    // lazy walk in id order, or reverse id order; the table must not change meanwhile
+    public Iterator<Task> iterator(boolean descending) {
+        return new Iterator<Task>() {
+            private int pos = descending ? used - 1 : 0;
+
+            @Override
+            public boolean hasNext() {
+                while (pos >= 0 && pos < used && ordered[pos] == null) {
+                    pos += descending ? -1 : 1;
+                }
+                return pos >= 0 && pos < used;
+            }
+
+            @Override
+            public Task next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Task task = ordered[pos];
+                pos += descending ? -1 : 1;
+                return task;
+            }
+        };
+    }
+
+    // copy of all tasks in id order
+    public List<Task> toList() {
+        List<Task> list = new ArrayList<>(byId.size());
+        forEach(list::add);
+        return list;
+    }
+
+    public void clear() {
+        byId.clear();
+        Arrays.fill(ordered, 0, used, null);
+        used = 0;
+        holes = 0;
+    }
+
+    private void append(int id, Task task) {
+        ensureCapacity(used + 1);
+        orderedIds[used] = id;
+        ordered[used] = task;
+        used++;
+    }
+
+    // only reached for out-of-order ids, e.g. hand-edited or legacy task files
+    private void insertAt(int pos, int id, Task task) {
+        ensureCapacity(used + 1);
+        System.arraycopy(orderedIds, pos, orderedIds, pos + 1, used - pos);
+        System.arraycopy(ordered, pos, ordered, pos + 1, used - pos);
+        orderedIds[pos] = id;
+        ordered[pos] = task;
+        used++;
+    }
+
+    private void squeeze() {
+        int j = 0;
+        for (int i = 0; i < used; i++) {
+            if (ordered[i] != null) {
+                orderedIds[j] = orderedIds[i];
+                ordered[j] = ordered[i];
+                j++;
+            }
+        }
+        Arrays.fill(ordered, j, used, null);
+        used = j;
+        holes = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ordered.length) {
+            int newLength = Math.max(capacity, ordered.length * 2);
+            orderedIds = Arrays.copyOf(orderedIds, newLength);
+            ordered = Arrays.copyOf(ordered, newLength);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.taskscheduler.store;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.taskscheduler.Attempt;
+import com.taskscheduler.Occurrence;
+import com.taskscheduler.Priority;
+import com.taskscheduler.Task;
+
+/**
+ * Streaming JSON form of a {@link Task}, written field by field instead of through
+ * reflection. Date-times are stored as epoch seconds of their wall-clock value (read
+ * as UTC, so a file never shifts when the machine's zone changes) and fields that
+ * still hold their default are left out.
+ *
+ * Older files with "yyyy-MM-dd HH:mm" date strings and every field present are
+ * still read.
+ */
+public class TaskTypeAdapter extends TypeAdapter<Task> {
+    private static final DateTimeFormatter LEGACY_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final Duration DEFAULT_REMINDER = Duration.ofHours(1);
+
+    @Override
+    public void write(JsonWriter out, Task task) throws IOException {
+        if (task == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(task.getId());
+        if (task.getTitle() != null) {
+            out.name("title").value(task.getTitle());
+        }
+        if (task.isCompleted()) {
+            out.name("completed").value(true);
+        }
+        writeDate(out, "dueDate", task.getDueDate());
+        if (!task.getTags().isEmpty()) {
+            out.name("tags").beginArray();
+            for (String tag : task.getTags()) {
+                out.value(tag);
+            }
+            out.endArray();
+        }
+        if (task.isNotified()) {
+            out.name("notified").value(true);
+        }
+        if (task.getReminderTime() != null && !task.getReminderTime().equals(DEFAULT_REMINDER)) {
+            out.name("reminderTime").value(task.getReminderTime().toMinutes());
+        }
+        if (task.isRecurring()) {
+            out.name("isRecurring").value(true);
+        }
+        writeString(out, "recurrenceType", task.getRecurrenceType());
+        if (task.getRecurrenceCount() != 0) {
+            out.name("recurrenceCount").value(task.getRecurrenceCount());
+        }
+        writeDate(out, "recurrenceEnd", task.getRecurrenceEnd());
+        if (task.getOccurrencesGenerated() != 0) {
+            out.name("occurrencesGenerated").value(task.getOccurrencesGenerated());
+        }
+        if (!task.getOccurrences().isEmpty()) {
+            out.name("occurrences").beginArray();
+            for (Occurrence occurrence : task.getOccurrences()) {
+                out.beginObject();
+                out.name("n").value(occurrence.getIndex());
+                writeDate(out, "at", occurrence.getScheduled());
+                if (occurrence.isMoved()) {
+                    writeDate(out, "due", occurrence.getDue());
+                }
+                writeDate(out, "done", occurrence.getCompletedAt());
+                if (occurrence.isSkipped()) {
+                    out.name("skipped").value(true);
+                }
+                out.endObject();
+            }
+            out.endArray();
+        }
+        writeString(out, "cronExpression", task.getCronExpression());
+        writeString(out, "command", task.getCommand());
+        writeString(out, "email", task.getEmail());
+        if (task.getPriority() != Priority.MEDIUM) {
+            out.name("priority").value(task.getPriority().name());
+        }
+        if (task.getTimeoutSeconds() != 0) {
+            out.name("timeoutSeconds").value(task.getTimeoutSeconds());
+        }
+        if (task.getMaxRetries() != 0) {
+            out.name("maxRetries").value(task.getMaxRetries());
+        }
+        writeString(out, "backoff", task.getBackoff());
+        if (task.isRetryJitter()) {
+            out.name("retryJitter").value(true);
+        }
+        writeString(out, "catchUp", task.getCatchUp());
+        if (task.getFailedAttempts() != 0) {
+            out.name("failedAttempts").value(task.getFailedAttempts());
+        }
+        writeDate(out, "retryAt", task.getRetryAt());
+        if (!task.getAttempts().isEmpty()) {
+            out.name("attempts").beginArray();
+            for (Attempt attempt : task.getAttempts()) {
+                out.beginObject();
+                writeDate(out, "at", attempt.getFinishedAt());
+                out.name("ms").value(attempt.getDurationMillis());
+                out.name("exit").value(attempt.getExitCode());
+                if (attempt.isTimedOut()) {
+                    out.name("timedOut").value(true);
+                }
+                out.endObject();
+            }
+            out.endArray();
+        }
+        if (task.hasDependencies()) {
+            out.name("dependsOn").beginArray();
+            for (int id : task.getDependsOn()) {
+                out.value(id);
+            }
+            out.endArray();
+        }
+        if (task.getBlockedBy() != 0) {
+            out.name("blockedBy").value(task.getBlockedBy());
+        }
+        if (task.getRevision() != 0) {
+            out.name("rev").value(task.getRevision());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public Task read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Task task = new Task(0, null, false, null);
+        boolean recurring = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    task.setId(in.nextInt());
+                    break;
+                case "title":
+                    task.setTitle(in.nextString());
+                    break;
+                case "completed":
+                    task.setCompleted(in.nextBoolean());
+                    break;
+                case "dueDate":
+                    task.setDueDate(readDate(in));
+                    break;
+                case "tags":
+                    task.setTags(readTags(in));
+                    break;
+                case "notified":
+                    task.setNotified(in.nextBoolean());
+                    break;
+                case "reminderTime":
+                    task.setReminderTime(Duration.ofMinutes(in.nextLong()));
+                    break;
+                case "isRecurring":
+                    recurring = in.nextBoolean();
+                    break;
+                case "recurrenceType":
+                    task.setRecurrenceType(in.nextString());
+                    break;
+                case "recurrenceCount":
+                    int count = in.nextInt();
+                    if (count > 0) {
+                        task.setRecurrenceCount(count);
+                    }
+                    break;
+                case "recurrenceEnd":
+                    task.setRecurrenceEnd(readDate(in));
+                    break;
+                case "occurrencesGenerated":
+                    task.setOccurrencesGenerated(in.nextInt());
+                    break;
+                case "occurrences":
+                    task.setOccurrences(readOccurrences(in));
+                    break;
+                case "cronExpression":
+                    task.setCronExpression(in.nextString());
+                    break;
+                case "command":
+                    task.setCommand(in.nextString());
+                    break;
+                case "email":
+                    task.setEmail(in.nextString());
+                    break;
+                case "priority":
+                    task.setPriority(readPriority(in.nextString()));
+                    break;
+                case "timeoutSeconds":
+                    task.setTimeoutSeconds(in.nextInt());
+                    break;
+                case "maxRetries":
+                    task.setMaxRetries(in.nextInt());
+                    break;
+                case "backoff":
+                    task.setBackoff(in.nextString());
+                    break;
+                case "retryJitter":
+                    task.setRetryJitter(in.nextBoolean());
+                    break;
+                case "catchUp":
+                    task.setCatchUp(in.nextString());
+                    break;
+                case "failedAttempts":
+                    task.setFailedAttempts(in.nextInt());
+                    break;
+                case "retryAt":
+                    task.setRetryAt(readDate(in));
+                    break;
+                case "attempts":
+                    task.setAttempts(readAttempts(in));
+                    break;
+                case "dependsOn":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        task.addDependency(in.nextInt());
+                    }
+                    in.endArray();
+                    break;
+                case "blockedBy":
+                    task.setBlockedBy(in.nextInt());
+                    break;
+                case "rev":
+                    task.setRevision(in.nextLong());
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        // applied last because a recurring task needs its due date set first
+        if (recurring && task.getDueDate() != null) {
+            task.setRecurring(true);
+        }
+        return task;
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeDate(JsonWriter out, String name, LocalDateTime value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value.toEpochSecond(ZoneOffset.UTC));
+        }
+    }
+
+    private static LocalDateTime readDate(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NUMBER) {
+            return LocalDateTime.ofEpochSecond(in.nextLong(), 0, ZoneOffset.UTC);
+        }
+        return LocalDateTime.parse(in.nextString(), LEGACY_DATE_FORMAT);
+    }
+
+    private static Set<String> readTags(JsonReader in) throws IOException {
+        Set<String> tags = new HashSet<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            tags.add(in.nextString());
+        }
+        in.endArray();
+        return tags;
+    }
+
+    private static List<Attempt> readAttempts(JsonReader in) throws IOException {
+        List<Attempt> attempts = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            LocalDateTime at = null;
+            long millis = 0;
+            int exitCode = 0;
+            boolean timedOut = false;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "at":
+                        at = readDate(in);
+                        break;
+                    case "ms":
+                        millis = in.nextLong();
+                        break;
+                    case "exit":
+                        exitCode = in.nextInt();
+                        break;
+                    case "timedOut":
+                        timedOut = in.nextBoolean();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            attempts.add(new Attempt(at, millis, exitCode, timedOut));
+        }
+        in.endArray();
+        return attempts;
+    }
+
+    private static List<Occurrence> readOccurrences(JsonReader in) throws IOException {
+        List<Occurrence> occurrences = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            int index = 0;
+            LocalDateTime scheduled = null;
+            LocalDateTime due = null;
+            LocalDateTime done = null;
+            boolean skipped = false;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "n":
+                        index = in.nextInt();
+                        break;
+                    case "at":
+                        scheduled = readDate(in);
+                        break;
+                    case "due":
+                        due = readDate(in);
+                        break;
+                    case "done":
+                        done = readDate(in);
+                        break;
+                    case "skipped":
+                        skipped = in.nextBoolean();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            occurrences.add(new Occurrence(index, scheduled, due, done, skipped));
+        }
+        in.endArray();
+        return occurrences;
+    }
+
+    private static Priority readPriority(String value) {
+        try {
+            return Priority.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            return Priority.fromString(value);
+        }
+    }
+}
@@ -3,7 +3,12 @@ package com.taskscheduler.ui;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntFunction;
+
+import com.taskscheduler.Occurrence;
+import com.taskscheduler.store.RunHistory;
 
 // Manages UI elements and display formatting
 public class UIManager {
@@ -57,6 +62,147 @@ public class UIManager {
         displayTaskSummary(tasks);
     }
     
+    // runs newest first; title may be null when the task is not known here
+    public static void displayRunHistory(int taskId, String title, List<RunHistory.Run> runs) {
+        String heading = "Runs of task " + taskId + (title != null ? ": " + truncateText(title, 30) : "");
+        if (runs.isEmpty()) {
+            System.out.println(Banner.createSubHeader(heading, Icons.INFO));
+            System.out.println(Colors.warning("No recorded runs yet."));
+            return;
+        }
+        System.out.println(Banner.createSubHeader(heading, Icons.CLOCK));
+        Table table = new Table()
+            .setHeaders("#", "Started", "Late by", "Took", "Result", "Attempt", "Output")
+            .setBorderColor(Colors.CYAN)
+            .setHeaderColor(Colors.BLUE_BOLD)
+            .setDataColor(Colors.WHITE);
+        int number = 0;
+        for (RunHistory.Run run : runs) {
+            String outcome = run.isSuccess() ? Colors.success(run.getOutcome()) : Colors.error(run.getOutcome());
+            table.addRow(
+                String.valueOf(++number),
+                RunHistory.formatTime(run.getStartedAt()),
+                formatMillis(run.getLagMillis()),
+                formatMillis(run.getDurationMillis()),
+                outcome,
+                run.getAttempt() == 0 ? "-" : "retry " + run.getAttempt(),
+                formatBytes(run.getOutputBytes())
+            );
+        }
+        System.out.println(table.render());
+        System.out.println(Colors.DIM + "Show a run's output with: view " + taskId + " output <#>" + Colors.RESET);
+    }
+
+    // the latest done occurrences of a series, then the upcoming ones
+    public static void displayOccurrences(com.taskscheduler.Task task, List<Occurrence> upcoming) {
+        String heading = "Occurrences of task " + task.getId() + ": " + truncateText(task.getTitle(), 30);
+        System.out.println(Banner.createSubHeader(heading, Icons.CLOCK));
+        Table table = new Table()
+            .setHeaders("#", "Due", "Status")
+            .setBorderColor(Colors.CYAN)
+            .setHeaderColor(Colors.BLUE_BOLD)
+            .setDataColor(Colors.WHITE);
+        List<Occurrence> past = new ArrayList<>();
+        for (Occurrence occurrence : task.getOccurrences()) {
+            if (occurrence.isSkipped() || occurrence.getCompletedAt() != null) {
+                past.add(occurrence);
+            }
+        }
+        for (Occurrence occurrence : past.subList(Math.max(0, past.size() - 3), past.size())) {
+            table.addRow(String.valueOf(occurrence.getIndex() + 1), occurrence.getDue().format(DATE_FORMATTER),
+                occurrence.isSkipped() ? Colors.DIM + "skipped" + Colors.RESET
+                    : Colors.success("done " + occurrence.getCompletedAt().format(DATE_FORMATTER)));
+        }
+        boolean first = true;
+        for (Occurrence occurrence : upcoming) {
+            String status = first ? Colors.warning("pending") : "upcoming";
+            if (occurrence.isMoved()) {
+                status += " (moved from " + occurrence.getScheduled().format(DATE_FORMATTER) + ")";
+            }
+            table.addRow(String.valueOf(occurrence.getIndex() + 1), occurrence.getDue().format(DATE_FORMATTER), status);
+            first = false;
+        }
+        System.out.println(table.render());
+        String limit = task.getRecurrenceCount() > 0 ? task.getRecurrenceCount() + " occurrences" : null;
+        if (task.getRecurrenceEnd() != null) {
+            limit = (limit != null ? limit + ", " : "") + "until " + task.getRecurrenceEnd().format(DATE_FORMATTER);
+        }
+        System.out.println(Colors.DIM + "Repeats " + (task.getCronExpression() != null ? "on \"" + task.getCronExpression() + "\""
+            : task.getRecurrenceType()) + (limit != null ? " (" + limit + ")" : "") + "; skip one with: skip "
+            + task.getId() + " <#>" + Colors.RESET);
+    }
+
+    // slowest first; titles is null, or gives null, where task titles are not known
+    public static void displayRunStats(String heading, List<RunHistory.Summary> summaries, IntFunction<String> titles) {
+        if (summaries.isEmpty()) {
+            System.out.println(Banner.createSubHeader(heading, Icons.INFO));
+            System.out.println(Colors.warning("No recorded runs yet."));
+            return;
+        }
+        System.out.println(Banner.createSubHeader(heading, Icons.CLOCK));
+        Table table = new Table()
+            .setHeaders("ID", "Task", "Runs", "Failed", "Avg time", "Last 10", "Max time", "Late avg / max", "Last run")
+            .setBorderColor(Colors.CYAN)
+            .setHeaderColor(Colors.BLUE_BOLD)
+            .setDataColor(Colors.WHITE);
+        for (RunHistory.Summary summary : summaries) {
+            String title = titles != null ? titles.apply(summary.getTaskId()) : null;
+            String failed = summary.getFailures() == 0 ? "0"
+                    : Colors.error(String.valueOf(summary.getFailures()))
+                    + (summary.getTimeouts() > 0 ? " (" + summary.getTimeouts() + " timed out)" : "");
+            table.addRow(
+                String.valueOf(summary.getTaskId()),
+                title != null ? truncateText(title, 25) : Colors.DIM + "-" + Colors.RESET,
+                String.valueOf(summary.getRuns()),
+                failed,
+                formatMillis(summary.getAverageDuration()),
+                formatTrend(summary.getRecentAverageDuration(), summary.getAverageDuration()),
+                formatMillis(summary.getMaxDuration()),
+                formatMillis(summary.getAverageLag()) + " / " + formatMillis(summary.getMaxLag()),
+                RunHistory.formatTime(summary.getLastEnded())
+            );
+        }
+        System.out.println(table.render());
+    }
+
+    // e.g. "14.2 s (+35%)": recent runs against the average, highlighted when 20% slower
+    private static String formatTrend(long recent, long average) {
+        if (recent < 0) {
+            return "-";
+        }
+        if (average == 0) {
+            return formatMillis(recent);
+        }
+        long change = Math.round((recent - average) * 100.0 / average);
+        String text = formatMillis(recent) + String.format(" (%+d%%)", change);
+        return change >= 20 ? Colors.warning(text) : text;
+    }
+
+    // e.g. "350 ms", "14.2 s", "3m 05s"
+    private static String formatMillis(long millis) {
+        if (millis < 1000) {
+            return millis + " ms";
+        }
+        if (millis < 60_000) {
+            return String.format("%.1f s", millis / 1000.0);
+        }
+        long seconds = millis / 1000;
+        if (seconds < 3600) {
+            return String.format("%dm %02ds", seconds / 60, seconds % 60);
+        }
+        return String.format("%dh %02dm", seconds / 3600, seconds / 60 % 60);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+
     public static void displayTaskDetails(com.taskscheduler.Task task) {
         System.out.println(Banner.createSubHeader("Task Details", Icons.VIEW));
         
@@ -80,6 +226,10 @@ public class UIManager {
         if (task.getCommand() != null && !task.getCommand().isEmpty()) {
             details.append(Colors.BLUE_BOLD).append("Command: ").append(Colors.RESET)
                    .append(Colors.CYAN).append(task.getCommand()).append(Colors.RESET).append("\n");
+            if (task.getCatchUp() != null) {
+                details.append(Colors.BLUE_BOLD).append("Catch-up: ").append(Colors.RESET)
+                       .append(task.getCatchUp()).append("\n");
+            }
         }
         
         if (!task.getTags().isEmpty()) {
@@ -89,7 +239,17 @@ public class UIManager {
         
         if (task.isRecurring()) {
             details.append(Colors.BLUE_BOLD).append("Recurring: ").append(Colors.RESET)
-                   .append(Colors.PURPLE).append(task.getRecurrenceType()).append(Colors.RESET).append("\n");
+                   .append(Colors.PURPLE).append(task.getRecurrenceType()).append(Colors.RESET)
+                   .append(", occurrence ").append(task.getOccurrencesGenerated() + 1)
+                   .append(task.getRecurrenceCount() > 0 ? " of " + task.getRecurrenceCount() : "").append("\n");
+            List<Occurrence> upcoming = task.upcomingOccurrences(4);
+            if (upcoming.size() > 1) {
+                details.append(Colors.BLUE_BOLD).append("Then: ").append(Colors.RESET);
+                for (int i = 1; i < upcoming.size(); i++) {
+                    details.append(i > 1 ? ", " : "").append(upcoming.get(i).getDue().format(DATE_FORMATTER));
+                }
+                details.append("\n");
+            }
         }
         
         System.out.println(Banner.createBox(details.toString().trim(), Colors.CYAN));
@@ -225,12 +385,25 @@ public class UIManager {
         helpTable.addRow("list", "Show all tasks", "list");
         helpTable.addRow("list upcoming", "Show upcoming tasks", "list upcoming");
         helpTable.addRow("list overdue", "Show overdue tasks", "list overdue");
+        helpTable.addRow("list where <query>", "Filter, sort and limit tasks", "list where priority>=high and tag:work and due<3d order by due limit 50");
         helpTable.addRow("complete <id>", "Mark task as completed", "complete 1");
         helpTable.addRow("delete <id>", "Delete a task", "delete 2");
         helpTable.addRow("due <id> <date>", "Set task due date", "due 3 2025-06-30 14:00");
+        helpTable.addRow("occurrences <id> [n]", "Next occurrences of a recurring task", "occurrences 3 20");
+        helpTable.addRow("skip <id> [n]", "Skip the next (or n-th) occurrence", "skip 3 2");
         helpTable.addRow("tag <id> <tags...>", "Add tags to a task", "tag 3 work important");
         helpTable.addRow("untag <id> <tags...>", "Remove tags from a task", "untag 3 important");
         helpTable.addRow("reminder <id> <time>", "Set reminder for a task", "reminder 3 30min");
+        helpTable.addRow("pool", "Show running and queued commands", "pool");
+        helpTable.addRow("run <id>", "Run a task's command now", "run 3");
+        helpTable.addRow("cancel <id>", "Kill a task's running command", "cancel 3");
+        helpTable.addRow("tail <id>", "Follow a running command's output", "tail 3");
+        helpTable.addRow("view <id> output [#]", "Output of a task's latest (or #-th) run", "view 3 output 2");
+        helpTable.addRow("history <id> [n]", "Last runs of a task's command", "history 3 50");
+        helpTable.addRow("stats [window]", "Run times, failures and lag per task", "stats 24h");
+        helpTable.addRow("after <id> <ids|none>", "Run once other tasks succeed", "after 5 3,4");
+        helpTable.addRow("limit <n>", "Max commands running at once", "limit 4");
+        helpTable.addRow("limit tag <tag> <n|off>", "Max running tasks with a tag", "limit tag backup 1");
         helpTable.addRow("clear/refresh/cls", "Clear the screen", "clear");
         helpTable.addRow("email-notification", "Set email for notifications", "email-notification user@example.com");
         helpTable.addRow("suggestions", "Toggle auto suggestions", "suggestions");
@@ -246,6 +419,10 @@ public class UIManager {
         System.out.println(Colors.WHITE + "  • Use natural language: " + Colors.YELLOW + "\"remind me to call John tomorrow at 3pm and email me\"" + Colors.RESET);
         System.out.println(Colors.WHITE + "  • Add email notifications: " + Colors.YELLOW + "\"--notify-email\"" + Colors.RESET);
         System.out.println(Colors.WHITE + "  • Set custom commands: " + Colors.YELLOW + "\"--command 'echo Task completed'\"" + Colors.RESET);
+        System.out.println(Colors.WHITE + "  • Limit how long a command may run: " + Colors.YELLOW + "\"--timeout 10m\"" + Colors.RESET);
+        System.out.println(Colors.WHITE + "  • Chain tasks into a pipeline: " + Colors.YELLOW + "\"--after 3,4\"" + Colors.WHITE + " instead of a time" + Colors.RESET);
+        System.out.println(Colors.WHITE + "  • Retry a failing command: " + Colors.YELLOW + "\"--retry 5 --backoff exp:10s..10m --jitter\"" + Colors.RESET);
+        System.out.println(Colors.WHITE + "  • Replay every run missed while stopped: " + Colors.YELLOW + "\"--catch-up fire-all\"" + Colors.RESET);
         System.out.println();
     }
 
@@ -0,0 +1,162 @@
+package com.taskscheduler.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.taskscheduler.Attempt;
+import com.taskscheduler.LocalDateTimeAdapter;
+import com.taskscheduler.Priority;
+import com.taskscheduler.Task;
+import com.taskscheduler.store.ColumnarSnapshot;
+import com.taskscheduler.store.TaskTypeAdapter;
+
+/**
+ * Compares the task file formats on the same generated tasks: reflective Gson with
+ * pretty printing (the format before TaskTypeAdapter), TaskTypeAdapter pretty and
+ * compact, and the binary ColumnarSnapshot. Each format is saved and loaded in memory
+ * (the snapshot through a temporary file, since it is read by mapping one), a few
+ * rounds to warm up and then the best of the measured rounds is reported.
+ *
+ *   java -cp target/classes:target/test-classes:... com.taskscheduler.bench.SerializerBenchmark [tasks] [rounds]
+ */
+public class SerializerBenchmark {
+    private static final Type TASK_LIST = new TypeToken<List<Task>>() {}.getType();
+    private static final int WARMUP_ROUNDS = 3;
+
+    private interface Format {
+        byte[] save(List<Task> tasks) throws IOException;
+
+        List<Task> load(byte[] data) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<Task> tasks = generate(count);
+
+        Gson reflective = new GsonBuilder()
+                .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+                .registerTypeAdapter(Duration.class, new DurationAdapter())
+                .excludeFieldsWithoutExposeAnnotation()
+                .setPrettyPrinting()
+                .create();
+        Gson pretty = new GsonBuilder().registerTypeAdapter(Task.class, new TaskTypeAdapter()).setPrettyPrinting().create();
+        Gson compact = new GsonBuilder().registerTypeAdapter(Task.class, new TaskTypeAdapter()).create();
+
+        System.out.printf("%d tasks, best of %d rounds%n", count, rounds);
+        System.out.printf("%-22s %10s %10s %10s%n", "format", "save ms", "load ms", "MB");
+        run("reflective + pretty", json(reflective), tasks, rounds);
+        run("adapter + pretty", json(pretty), tasks, rounds);
+        run("adapter + compact", json(compact), tasks, rounds);
+        run("columnar snapshot", snapshot(), tasks, rounds);
+    }
+
+    private static void run(String name, Format format, List<Task> tasks, int rounds) throws IOException {
+        long bestSave = Long.MAX_VALUE;
+        long bestLoad = Long.MAX_VALUE;
+        byte[] data = null;
+        for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+            long started = System.nanoTime();
+            data = format.save(tasks);
+            long saved = System.nanoTime();
+            List<Task> loaded = format.load(data);
+            long done = System.nanoTime();
+            if (loaded.size() != tasks.size()) {
+                throw new IllegalStateException(name + " loaded " + loaded.size() + " of " + tasks.size() + " tasks");
+            }
+            if (round >= WARMUP_ROUNDS) {
+                bestSave = Math.min(bestSave, saved - started);
+                bestLoad = Math.min(bestLoad, done - saved);
+            }
+        }
+        System.out.printf("%-22s %10d %10d %10.1f%n", name, bestSave / 1_000_000, bestLoad / 1_000_000,
+                data.length / 1e6);
+    }
+
+    private static Format json(Gson gson) {
+        return new Format() {
+            public byte[] save(List<Task> tasks) {
+                return gson.toJson(tasks, TASK_LIST).getBytes(StandardCharsets.UTF_8);
+            }
+
+            public List<Task> load(byte[] data) {
+                return gson.fromJson(new String(data, StandardCharsets.UTF_8), TASK_LIST);
+            }
+        };
+    }
+
+    private static Format snapshot() throws IOException {
+        File file = File.createTempFile("tasks", ".snap");
+        file.deleteOnExit();
+        return new Format() {
+            public byte[] save(List<Task> tasks) {
+                return ColumnarSnapshot.serialize(tasks, tasks.size() + 1);
+            }
+
+            public List<Task> load(byte[] data) throws IOException {
+                Files.write(file.toPath(), data);
+                return ColumnarSnapshot.open(file).readTasks();
+            }
+        };
+    }
+
+    // a mix of one-off and recurring tasks with tags, commands and some run history
+    private static List<Task> generate(int count) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        Priority[] priorities = Priority.values();
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Task task = new Task(i, "Task number " + i, i % 5 == 0, now.plusMinutes(i * 7L % 100_000));
+            task.addTag(i % 2 == 0 ? "work" : "home");
+            task.addTag("tag" + i % 50);
+            task.setPriority(priorities[i % priorities.length]);
+            if (i % 3 == 0) {
+                task.setCommand("backup.sh --target /data/" + i);
+                task.recordAttempt(new Attempt(now.minusHours(1), 1200 + i % 500, i % 7 == 0 ? 1 : 0, false));
+            }
+            if (i % 4 == 0) {
+                task.setRecurring(true);
+                task.setRecurrenceType("daily");
+            }
+            task.setRevision(i);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    // how Duration was stored before TaskTypeAdapter: as whole minutes
+    private static class DurationAdapter extends TypeAdapter<Duration> {
+        @Override
+        public void write(JsonWriter out, Duration value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.value(value.toMinutes());
+        }
+
+        @Override
+        public Duration read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return Duration.ofMinutes(in.nextLong());
+        }
+    }
+}
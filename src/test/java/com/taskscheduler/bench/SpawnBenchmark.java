@@ -0,0 +1,58 @@
+package com.taskscheduler.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.taskscheduler.ConfigManager;
+import com.taskscheduler.Task;
+import com.taskscheduler.TaskJob;
+import com.taskscheduler.TaskManager;
+
+/**
+ * Measures how many commands per second the execution path sustains: every run goes
+ * through TaskJob.run, the same path as scheduled runs and the run command, so it
+ * includes admission, the process spawn, the output spool, the run history record
+ * and the task's own commit.
+ *
+ * Run it from an empty directory, it creates its own tasks.json and run history there:
+ *   java -cp target/classes:target/test-classes:... com.taskscheduler.bench.SpawnBenchmark [runs] [command]
+ */
+public class SpawnBenchmark {
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String command = args.length > 1 ? args[1] : "true";
+        TaskManager taskManager = TaskManager.getInstance();
+
+        // the first runs warm up the JIT and the pools and are not counted
+        measure(taskManager, command, Math.max(1, runs / 10));
+        double perSecond = measure(taskManager, command, runs);
+        System.out.printf("%d runs of \"%s\", %d at a time: %.0f spawns/s%n",
+                runs, command, ConfigManager.getMaxConcurrentTasks(), perSecond);
+        taskManager.close();
+        System.exit(0);
+    }
+
+    private static double measure(TaskManager taskManager, String command, int runs) {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            Task task = new Task(0, "spawn " + i, false, null);
+            task.setCommand(command);
+            taskManager.addTask(task);
+            tasks.add(task);
+        }
+        long started = System.nanoTime();
+        List<CompletableFuture<Void>> finished = new ArrayList<>();
+        for (Task task : tasks) {
+            finished.add(TaskJob.run(task.getId(), System.currentTimeMillis()));
+        }
+        CompletableFuture.allOf(finished.toArray(new CompletableFuture<?>[0])).join();
+        long elapsed = System.nanoTime() - started;
+        for (Task task : tasks) {
+            if (!task.isCompleted()) {
+                throw new IllegalStateException("Task " + task.getId() + " did not finish");
+            }
+        }
+        return runs * 1e9 / elapsed;
+    }
+}
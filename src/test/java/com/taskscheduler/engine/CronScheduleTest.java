@@ -0,0 +1,141 @@
+package com.taskscheduler.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+
+public class CronScheduleTest {
+    private static final ZoneId UTC = ZoneOffset.UTC;
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    private static ZonedDateTime next(String expression, ZoneId zone, LocalDateTime after) {
+        long fire = CronSchedule.of(expression, zone).nextAfter(after.atZone(zone).toInstant().toEpochMilli());
+        return fire < 0 ? null : ZonedDateTime.ofInstant(Instant.ofEpochMilli(fire), zone);
+    }
+
+    private static LocalDateTime nextLocal(String expression, LocalDateTime after) {
+        ZonedDateTime fire = next(expression, UTC, after);
+        return fire == null ? null : fire.toLocalDateTime();
+    }
+
+    @Test
+    public void nextIsStrictlyAfterTheGivenTime() {
+        LocalDateTime noon = LocalDateTime.of(2026, 10, 17, 12, 0);
+        assertEquals(LocalDateTime.of(2026, 10, 18, 12, 0), nextLocal("0 0 12 * * ?", noon));
+        assertEquals(noon, nextLocal("0 0 12 * * ?", noon.minusSeconds(1)));
+    }
+
+    @Test
+    public void dayOfWeekWithAnyDayOfMonth() {
+        // 2026-10-17 is a Saturday; 2 is Monday, 1 is Sunday
+        LocalDateTime saturday = LocalDateTime.of(2026, 10, 17, 12, 0);
+        assertEquals(LocalDateTime.of(2026, 10, 19, 9, 0), nextLocal("0 0 9 ? * MON", saturday));
+        assertEquals(LocalDateTime.of(2026, 10, 19, 9, 0), nextLocal("0 0 9 ? * 2", saturday));
+        assertEquals(LocalDateTime.of(2026, 10, 18, 9, 0), nextLocal("0 0 9 ? * 1", saturday));
+        assertEquals(LocalDateTime.of(2026, 10, 23, 9, 0), nextLocal("0 0 9 ? * FRI", saturday));
+    }
+
+    @Test
+    public void dayOfMonthWithAnyDayOfWeek() {
+        LocalDateTime from = LocalDateTime.of(2026, 10, 17, 12, 0);
+        assertEquals(LocalDateTime.of(2026, 11, 15, 0, 0), nextLocal("0 0 0 15 * ?", from));
+        // months without a 31st are skipped
+        assertEquals(LocalDateTime.of(2026, 12, 31, 0, 0), nextLocal("0 0 0 31 * ?", LocalDateTime.of(2026, 10, 31, 1, 0)));
+    }
+
+    @Test
+    public void bothDayFieldsRestrictedIsRejected() {
+        for (String expression : new String[] {"0 0 12 15 * MON", "0 0 12 1-5 * 2-6"}) {
+            try {
+                CronSchedule.of(expression, UTC);
+                fail("accepted " + expression);
+            } catch (IllegalArgumentException expected) {
+                // as Quartz does
+            }
+        }
+    }
+
+    @Test
+    public void invalidFieldsAreRejected() {
+        for (String expression : new String[] {"0 0 25 * * ?", "0 60 * * * ?", "0 0 0 0 * ?", "0 0 0 ? * 8", "0 0 0 * *"}) {
+            try {
+                CronSchedule.of(expression, UTC);
+                fail("accepted " + expression);
+            } catch (IllegalArgumentException expected) {
+                // out of range or a field missing
+            }
+        }
+    }
+
+    @Test
+    public void lastDayOfMonth() {
+        assertEquals(LocalDateTime.of(2026, 10, 31, 18, 0),
+                nextLocal("0 0 18 L * ?", LocalDateTime.of(2026, 10, 17, 0, 0)));
+        assertEquals(LocalDateTime.of(2026, 2, 28, 18, 0),
+                nextLocal("0 0 18 L * ?", LocalDateTime.of(2026, 2, 1, 0, 0)));
+        assertEquals(LocalDateTime.of(2028, 2, 29, 18, 0),
+                nextLocal("0 0 18 L * ?", LocalDateTime.of(2028, 2, 1, 0, 0)));
+    }
+
+    @Test
+    public void leapDayIsFoundYearsAhead() {
+        assertEquals(LocalDateTime.of(2028, 2, 29, 0, 0),
+                nextLocal("0 0 0 29 2 ?", LocalDateTime.of(2026, 10, 17, 0, 0)));
+    }
+
+    @Test
+    public void expressionThatEndsStopsFiring() {
+        assertEquals(LocalDateTime.of(2027, 1, 1, 0, 0), nextLocal("0 0 0 1 1 ? 2027", LocalDateTime.of(2026, 10, 17, 0, 0)));
+        assertEquals(null, nextLocal("0 0 0 1 1 ? 2027", LocalDateTime.of(2027, 1, 1, 0, 0)));
+
+        long[] times = new long[5];
+        long after = LocalDateTime.of(2026, 10, 17, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+        assertEquals(1, CronSchedule.of("0 0 0 1 1 ? 2027", UTC).nextN(after, times));
+    }
+
+    @Test
+    public void stepsAndLists() {
+        LocalDateTime from = LocalDateTime.of(2026, 10, 17, 10, 7);
+        assertEquals(LocalDateTime.of(2026, 10, 17, 10, 15), nextLocal("0 0/15 * * * ?", from));
+        assertEquals(LocalDateTime.of(2026, 10, 17, 10, 20), nextLocal("0 5,20,40 * * * ?", from));
+        assertEquals(LocalDateTime.of(2026, 10, 19, 9, 0), nextLocal("0 0 9-17/4 ? * MON-FRI", from.plusHours(8)));
+    }
+
+    @Test
+    public void timeSkippedBySpringForwardFiresAsLateAsTheGapIsLong() {
+        // 2026-03-29 02:00 Berlin jumps to 03:00
+        ZonedDateTime fire = next("0 30 2 * * ?", BERLIN, LocalDateTime.of(2026, 3, 29, 0, 0));
+        assertEquals(LocalDateTime.of(2026, 3, 29, 3, 30), fire.toLocalDateTime());
+        assertEquals(LocalDateTime.of(2026, 3, 30, 2, 30), next("0 30 2 * * ?", BERLIN, fire.toLocalDateTime()).toLocalDateTime());
+    }
+
+    @Test
+    public void timeRepeatedByFallBackFiresOnceAtTheEarlierOffset() {
+        // 2026-10-25 03:00 Berlin goes back to 02:00, so 02:30 happens twice
+        ZonedDateTime fire = next("0 30 2 * * ?", BERLIN, LocalDateTime.of(2026, 10, 25, 0, 0));
+        assertEquals(LocalDateTime.of(2026, 10, 25, 2, 30), fire.toLocalDateTime());
+        assertEquals(ZoneOffset.ofHours(2), fire.getOffset());
+
+        long second = CronSchedule.of("0 30 2 * * ?", BERLIN).nextAfter(fire.toInstant().toEpochMilli());
+        assertEquals(LocalDateTime.of(2026, 10, 26, 2, 30),
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(second), BERLIN).toLocalDateTime());
+    }
+
+    @Test
+    public void hourlyScheduleAcrossFallBackSkipsTheRepeatedHour() {
+        // 02:00 comes twice; only the first one fires, so there are two real hours to 03:00
+        long after = LocalDateTime.of(2026, 10, 25, 0, 30).atZone(BERLIN).toInstant().toEpochMilli();
+        long[] times = new long[4];
+        assertEquals(4, CronSchedule.of("0 0 * * * ?", BERLIN).nextN(after, times));
+        assertEquals(3_600_000L, times[1] - times[0]);
+        assertEquals(7_200_000L, times[2] - times[1]);
+        assertEquals(3_600_000L, times[3] - times[2]);
+    }
+}
@@ -0,0 +1,166 @@
+package com.taskscheduler.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.taskscheduler.Priority;
+import com.taskscheduler.Task;
+
+public class TimingWheelEngineTest {
+    // a fired task: its id and the deadline it was scheduled for
+    private static final class Fire {
+        final int taskId;
+        final long scheduledAt;
+        final long firedAt = System.currentTimeMillis();
+
+        Fire(int taskId, long scheduledAt) {
+            this.taskId = taskId;
+            this.scheduledAt = scheduledAt;
+        }
+    }
+
+    private final BlockingQueue<Fire> fired = new LinkedBlockingQueue<>();
+    private TimingWheelEngine engine;
+
+    @Before
+    public void setUp() {
+        // one worker, so tasks due together start in the order they were dispatched
+        engine = new TimingWheelEngine(1, (taskId, scheduledAt) -> fired.add(new Fire(taskId, scheduledAt)));
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    // a task due at the given epoch millis
+    private static Task taskAt(int id, long millis) {
+        LocalDateTime due = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        return new Task(id, "Task " + id, false, due);
+    }
+
+    private Fire next(long timeoutMillis) throws InterruptedException {
+        return fired.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void taskInTheFinestWheelFiresAtItsMillisecond() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30;
+        engine.schedule(taskAt(1, deadline));
+        Fire fire = next(2000);
+        assertNotNull(fire);
+        assertEquals(1, fire.taskId);
+        assertEquals(deadline, fire.scheduledAt);
+        assertTrue(fire.firedAt >= deadline);
+    }
+
+    @Test
+    public void taskCascadesDownFromCoarserWheels() throws InterruptedException {
+        // past the 64 ms wheel and into the 4 s one; it moves down once its 64 ms slot comes due
+        long deadline = System.currentTimeMillis() + 1500;
+        engine.schedule(taskAt(1, deadline));
+        assertNull(next(1000));
+        assertTrue(engine.isScheduled(1));
+        Fire fire = next(3000);
+        assertNotNull(fire);
+        assertEquals(deadline, fire.scheduledAt);
+        assertTrue(fire.firedAt >= deadline);
+        assertFalse(engine.isScheduled(1));
+        assertEquals(0, engine.size());
+    }
+
+    @Test
+    public void tasksInDifferentWheelsFireInDeadlineOrder() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        engine.schedule(taskAt(3, now + 700));
+        engine.schedule(taskAt(1, now + 40));
+        engine.schedule(taskAt(2, now + 200));
+        assertEquals(1, next(3000).taskId);
+        assertEquals(2, next(3000).taskId);
+        assertEquals(3, next(3000).taskId);
+    }
+
+    @Test
+    public void tasksDueTogetherStartHighestPriorityFirst() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 300;
+        Task low = taskAt(1, deadline);
+        low.setPriority(Priority.LOW);
+        Task critical = taskAt(2, deadline);
+        critical.setPriority(Priority.CRITICAL);
+        engine.schedule(low);
+        engine.schedule(critical);
+        assertEquals(2, next(3000).taskId);
+        assertEquals(1, next(3000).taskId);
+    }
+
+    @Test
+    public void cancelledTaskNeverFires() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        engine.schedule(taskAt(1, now + 500));
+        engine.schedule(taskAt(2, now + 550));
+        engine.cancel(1);
+        assertFalse(engine.isScheduled(1));
+        assertEquals(1, engine.size());
+        assertEquals(2, next(3000).taskId);
+        assertNull(next(300));
+    }
+
+    @Test
+    public void schedulingAgainMovesTheTask() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        engine.schedule(taskAt(1, now + 2000));
+        engine.schedule(taskAt(1, now + 300));
+        assertEquals(1, engine.size());
+        Fire fire = next(3000);
+        assertEquals(now + 300, fire.scheduledAt);
+        assertNull(next(2500));
+    }
+
+    @Test
+    public void retryIsKeptApartFromTheNextRunAndCancelledWithIt() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        Task task = taskAt(1, now + 5000);
+        engine.schedule(task);
+        engine.scheduleRetry(task, now + 200);
+        assertEquals(2, engine.size());
+        Fire retry = next(3000);
+        assertEquals(now + 200, retry.scheduledAt);
+        // the next run is still there
+        assertTrue(engine.isScheduled(1));
+        engine.cancel(1);
+        assertEquals(0, engine.size());
+    }
+
+    @Test
+    public void taskAlreadyDueFiresAtOnce() throws InterruptedException {
+        long deadline = System.currentTimeMillis() - 60_000;
+        engine.schedule(taskAt(1, deadline));
+        Fire fire = next(1000);
+        assertNotNull(fire);
+        assertEquals(deadline, fire.scheduledAt);
+    }
+
+    @Test
+    public void clearDropsEverything() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        engine.schedule(taskAt(1, now + 500));
+        engine.schedule(taskAt(2, now + 3000));
+        engine.clear();
+        assertEquals(0, engine.size());
+        assertNull(next(1000));
+    }
+}
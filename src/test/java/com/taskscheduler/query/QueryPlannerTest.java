@@ -0,0 +1,135 @@
+package com.taskscheduler.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.taskscheduler.Priority;
+import com.taskscheduler.Task;
+import com.taskscheduler.store.TaskIndexes;
+import com.taskscheduler.store.TaskTable;
+
+public class QueryPlannerTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 10, 17, 12, 0);
+    private static final LocalDateTime DAY1 = LocalDateTime.of(2026, 10, 1, 0, 0);
+
+    private final TaskTable tasks = new TaskTable();
+    private final TaskIndexes indexes = new TaskIndexes();
+    private QueryPlanner planner;
+
+    // task n is due at midnight on October n, 2026; every third one is tagged work,
+    // every fifth one is done
+    @Before
+    public void setUp() {
+        for (int id = 1; id <= 30; id++) {
+            Task task = new Task(id, "Task " + id, id % 5 == 0, DAY1.plusDays(id - 1));
+            if (id % 3 == 0) {
+                task.addTag("work");
+            }
+            task.setPriority(id == 7 ? Priority.CRITICAL : Priority.MEDIUM);
+            tasks.put(task);
+            indexes.update(task);
+        }
+        planner = new QueryPlanner(tasks, indexes);
+    }
+
+    private QueryPlanner.Plan plan(String query) {
+        return planner.plan(TaskQuery.parse(query, NOW));
+    }
+
+    private static List<Integer> ids(List<Task> result) {
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : result) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+
+    private List<Integer> run(String query) {
+        return ids(plan(query).execute());
+    }
+
+    @Test
+    public void dueBoundsAreMergedIntoTheTightestRange() {
+        QueryPlanner.Plan plan = plan("where due>=2026-10-05 and due<2026-10-12 and due>2026-10-07 and due<=2026-10-20");
+        assertEquals("due index (2026-10-07T00:00, 2026-10-12T00:00) (~3 rows, sorted)", plan.toString());
+        assertEquals(Arrays.asList(8, 9, 11), ids(plan.execute()));
+    }
+
+    @Test
+    public void exclusiveBoundWinsOverInclusiveOnTheSameTime() {
+        assertTrue(plan("where due>=2026-10-05 and due>2026-10-05 and due<=2026-10-08 and due<2026-10-08")
+                .toString().startsWith("due index (2026-10-05T00:00, 2026-10-08T00:00)"));
+        assertEquals(Arrays.asList(6, 7), run("where due>=2026-10-05 and due>2026-10-05 and due<=2026-10-08 and due<2026-10-08"));
+        // the same bounds in the other order
+        assertEquals(Arrays.asList(6, 7), run("where due<2026-10-08 and due<=2026-10-08 and due>2026-10-05 and due>=2026-10-05"));
+    }
+
+    @Test
+    public void equalityIsAClosedRangeOfOneTime() {
+        assertTrue(plan("where due=2026-10-04").toString().startsWith("due index [2026-10-04T00:00, 2026-10-04T00:00]"));
+        assertEquals(Arrays.asList(4), run("where due=2026-10-04"));
+        // done tasks are not in the due index
+        assertEquals(Arrays.asList(), run("where due=2026-10-05"));
+    }
+
+    @Test
+    public void disjointBoundsFindNothing() {
+        QueryPlanner.Plan plan = plan("where due>2026-10-20 and due<2026-10-10");
+        assertTrue(plan.toString(), plan.toString().contains("~0 rows"));
+        assertEquals(Arrays.asList(), ids(plan.execute()));
+    }
+
+    @Test
+    public void overdueIsAnExclusiveUpperBoundAtNow() {
+        // October 17 at midnight is before noon on the 17th, so it is overdue
+        QueryPlanner.Plan plan = plan("where status:overdue and due>=2026-10-14");
+        assertTrue(plan.toString(), plan.toString().startsWith("due index [2026-10-14T00:00, 2026-10-17T12:00)"));
+        assertEquals(Arrays.asList(14, 16, 17), ids(plan.execute()));
+        // a later due bound does not widen it
+        assertEquals(Arrays.asList(14, 16, 17), run("where status:overdue and due>=2026-10-14 and due<2026-10-25"));
+    }
+
+    @Test
+    public void rangeInOrderStreamsAndStopsAtTheLimit() {
+        QueryPlanner.Plan plan = plan("where due>=2026-10-10 order by due limit 3");
+        assertTrue(plan.isStreaming());
+        assertEquals(Arrays.asList(11, 12, 13), ids(plan.execute()));
+        assertEquals(Arrays.asList(29, 28, 27), run("where due>=2026-10-10 order by due desc limit 3"));
+    }
+
+    @Test
+    public void rangeInAnotherOrderIsSortedWithinTheLimit() {
+        QueryPlanner.Plan plan = plan("where due>=2026-10-10 and due<2026-10-20 order by title desc limit 2");
+        assertFalse(plan.isStreaming());
+        assertEquals(Arrays.asList(19, 18), ids(plan.execute()));
+    }
+
+    @Test
+    public void smallerIndexDrivesTheScan() {
+        // one critical task against a wide due range
+        QueryPlanner.Plan plan = plan("where priority>=critical and due>=2026-10-01");
+        assertTrue(plan.toString(), plan.toString().startsWith("priority index critical"));
+        assertEquals(Arrays.asList(7), ids(plan.execute()));
+
+        // a narrow due range against ten work tasks
+        plan = plan("where tag:work and due>=2026-10-11 and due<=2026-10-13");
+        assertTrue(plan.toString(), plan.toString().startsWith("due index"));
+        assertEquals(Arrays.asList(12), ids(plan.execute()));
+    }
+
+    @Test
+    public void rangeUnderOrIsNotUsedForTheScan() {
+        QueryPlanner.Plan plan = plan("where due<2026-10-03 or due>2026-10-28");
+        assertTrue(plan.toString(), plan.toString().startsWith("full scan"));
+        assertEquals(Arrays.asList(1, 2, 29), ids(plan.execute()));
+    }
+}
@@ -0,0 +1,200 @@
+package com.taskscheduler.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RunHistoryTest {
+    private static final long T0 = 1_790_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private RunHistory history;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), RunHistory.FILE_NAME);
+        history = new RunHistory(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        history.close();
+    }
+
+    // a run of the task that ended at T0 + end seconds after taking the given seconds
+    private static RunHistory.Run run(int taskId, long end, long seconds, int exitCode) {
+        long endedAt = T0 + end * 1000;
+        long startedAt = endedAt - seconds * 1000;
+        return new RunHistory.Run(taskId, 0, startedAt, startedAt, endedAt, exitCode, 10, null, 0);
+    }
+
+    private static List<Long> ends(List<RunHistory.Run> runs) {
+        List<Long> ends = new ArrayList<>();
+        for (RunHistory.Run run : runs) {
+            ends.add((run.getEndedAt() - T0) / 1000);
+        }
+        return ends;
+    }
+
+    private static RunHistory.Summary summaryOf(List<RunHistory.Summary> summaries, int taskId) {
+        for (RunHistory.Summary summary : summaries) {
+            if (summary.getTaskId() == taskId) {
+                return summary;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void missingFileHasNoRuns() throws IOException {
+        assertEquals(0, history.size());
+        assertEquals(0, history.recent(1, 10).size());
+        assertEquals(0, history.summarize(0).size());
+    }
+
+    @Test
+    public void recentReadsOnlyTheTasksOwnRunsNewestFirst() throws IOException {
+        for (int i = 1; i <= 6; i++) {
+            history.append(run(i % 2 == 0 ? 2 : 1, i, 1, 0));
+        }
+        assertEquals(List.of(6L, 4L, 2L), ends(history.recent(2, 10)));
+        assertEquals(List.of(5L, 3L), ends(history.recent(1, 2)));
+        assertEquals(0, history.recent(3, 10).size());
+    }
+
+    @Test
+    public void runFieldsSurviveTheRecord() throws IOException {
+        OutputStore.Location output = new OutputStore.Location(3, 4096, 120, true);
+        history.append(new RunHistory.Run(7, 2, T0, T0 + 1500, T0 + 4000, 0, 999, output, RunHistory.TIMED_OUT));
+        RunHistory.Run run = history.recent(7, 1).get(0);
+        assertEquals(2, run.getAttempt());
+        assertEquals(1500, run.getLagMillis());
+        assertEquals(2500, run.getDurationMillis());
+        assertEquals(999, run.getOutputBytes());
+        assertEquals("timed out", run.getOutcome());
+        assertEquals(3, run.getOutput().getSegment());
+        assertEquals(4096, run.getOutput().getOffset());
+        assertEquals(120, run.getOutput().getLength());
+        assertTrue(run.getOutput().isCompressed());
+    }
+
+    @Test
+    public void readerCatchesUpOnRunsAnotherWriterAppended() throws IOException {
+        history.append(run(1, 1, 1, 0));
+        assertEquals(1, history.size());
+
+        RunHistory other = new RunHistory(file);
+        try {
+            other.append(run(1, 2, 1, 0));
+            other.append(run(2, 3, 1, 0));
+        } finally {
+            other.close();
+        }
+        assertEquals(3, history.size());
+        assertEquals(List.of(2L, 1L), ends(history.recent(1, 10)));
+        assertEquals(1, summaryOf(history.summarize(0), 2).getRuns());
+    }
+
+    @Test
+    public void allTimeSummaryIsSlowestFirst() throws IOException {
+        history.append(run(1, 1, 2, 0));
+        history.append(run(1, 2, 4, 1));
+        history.append(run(2, 3, 10, 0));
+        List<RunHistory.Summary> summaries = history.summarize(0);
+        assertEquals(2, summaries.get(0).getTaskId());
+
+        RunHistory.Summary first = summaryOf(summaries, 1);
+        assertEquals(2, first.getRuns());
+        assertEquals(1, first.getFailures());
+        assertEquals(3000, first.getAverageDuration());
+        assertEquals(4000, first.getMaxDuration());
+        assertEquals(3000, first.getRecentAverageDuration());
+        assertEquals(T0 + 2000, first.getLastEnded());
+    }
+
+    @Test
+    public void recentAverageCoversTheLastTenRuns() throws IOException {
+        for (int i = 1; i <= 20; i++) {
+            history.append(run(1, i, i <= 10 ? 1 : 3, 0));
+        }
+        RunHistory.Summary summary = history.summarize(0).get(0);
+        assertEquals(2000, summary.getAverageDuration());
+        assertEquals(3000, summary.getRecentAverageDuration());
+    }
+
+    @Test
+    public void windowedSummaryMatchesAFullCountAcrossTimeBlocks() throws IOException {
+        // three tasks taking turns, one run ending every second; more than two blocks of 1024 records
+        int count = 2500;
+        for (int i = 0; i < count; i++) {
+            history.append(run(i % 3 + 1, i, 1, i % 7 == 0 ? 1 : 0));
+        }
+        // block starts, the seconds either side of them, the first and the last run
+        long[] windows = {0, 1, 1023, 1024, 1025, 2047, 2048, 2049, 2400, count - 1};
+        for (long since : windows) {
+            List<RunHistory.Summary> summaries = history.summarize(T0 + since * 1000);
+            for (int taskId = 1; taskId <= 3; taskId++) {
+                long runs = 0;
+                long failures = 0;
+                for (int i = (int) since; i < count; i++) {
+                    if (i % 3 + 1 == taskId) {
+                        runs++;
+                        if (i % 7 == 0) {
+                            failures++;
+                        }
+                    }
+                }
+                RunHistory.Summary summary = summaryOf(summaries, taskId);
+                if (runs == 0) {
+                    assertNull("since " + since, summary);
+                } else {
+                    assertEquals("since " + since, runs, summary.getRuns());
+                    assertEquals("since " + since, failures, summary.getFailures());
+                }
+            }
+        }
+        assertEquals(0, history.summarize(T0 + count * 1000L).size());
+    }
+
+    @Test
+    public void tornLastRecordIsCutOffBeforeTheNextAppend() throws IOException {
+        history.append(run(1, 1, 1, 0));
+        history.append(run(1, 2, 1, 0));
+        history.close();
+        long complete = file.length();
+        // a writer that died halfway through its record
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(complete);
+            raw.write(new byte[20]);
+        }
+
+        RunHistory reader = new RunHistory(file);
+        try {
+            // readers see the complete records only and leave the file alone
+            assertEquals(2, reader.size());
+            assertEquals(complete + 20, file.length());
+        } finally {
+            reader.close();
+        }
+
+        history = new RunHistory(file);
+        history.append(run(1, 3, 1, 0));
+        assertEquals(complete + 64, file.length());
+        assertEquals(List.of(3L, 2L, 1L), ends(history.recent(1, 10)));
+    }
+}
@@ -0,0 +1,155 @@
+package com.taskscheduler.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScanWatermarkTest {
+    private static final long OWN_PID = ProcessHandle.current().pid();
+    private static final LocalDateTime NINE = LocalDateTime.of(2026, 10, 17, 9, 0);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), ScanWatermark.FILE_NAME);
+    }
+
+    private void writeRaw(String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String readRaw() throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    // the pid of a process that has already exited
+    private static long deadPid() throws Exception {
+        Process process = new ProcessBuilder("true").start();
+        process.waitFor();
+        return process.pid();
+    }
+
+    // the pid of a live process other than this one
+    private static long livePid() {
+        return ProcessHandle.current().parent().get().pid();
+    }
+
+    @Test
+    public void missingFileReadsAsNoCheckYet() throws IOException {
+        ScanWatermark state = ScanWatermark.read(file);
+        assertNull(state.getWatermark());
+        assertFalse(state.hasOrphanedClaims());
+        assertFalse(state.hasBehind());
+    }
+
+    @Test
+    public void updateIsWrittenBack() throws IOException {
+        ScanWatermark.update(file, state -> {
+            state.advanceTo(NINE);
+            state.claim(12);
+            state.markBehind(15);
+            return null;
+        });
+        assertEquals("watermark " + NINE + "\nclaim 12 " + OWN_PID + "\nbehind 15\n", readRaw());
+
+        ScanWatermark state = ScanWatermark.read(file);
+        assertEquals(NINE, state.getWatermark());
+        assertTrue(state.hasBehind());
+    }
+
+    @Test
+    public void watermarkNeverMovesBack() throws IOException {
+        ScanWatermark.update(file, state -> {
+            state.advanceTo(NINE);
+            state.advanceTo(NINE.minusHours(1));
+            return null;
+        });
+        assertEquals(NINE, ScanWatermark.read(file).getWatermark());
+    }
+
+    @Test
+    public void ownClaimIsNotClaimedByAnotherCheck() throws IOException {
+        ScanWatermark.update(file, state -> {
+            state.claim(12);
+            return null;
+        });
+        ScanWatermark state = ScanWatermark.read(file);
+        assertFalse(state.isClaimed(12));
+        assertFalse(state.hasOrphanedClaims());
+    }
+
+    @Test
+    public void releaseGivesBackOnlyOwnClaims() throws IOException {
+        long other = livePid();
+        writeRaw("claim 12 " + OWN_PID + "\nclaim 13 " + other + "\n");
+        ScanWatermark.update(file, state -> {
+            state.release(12);
+            state.release(13);
+            return null;
+        });
+        assertEquals("claim 13 " + other + "\n", readRaw());
+    }
+
+    @Test
+    public void claimOfAnotherLiveCheckIsHeld() throws IOException {
+        writeRaw("claim 13 " + livePid() + "\n");
+        ScanWatermark state = ScanWatermark.read(file);
+        assertTrue(state.isClaimed(13));
+        assertFalse(state.hasOrphanedClaims());
+        assertEquals(Collections.emptyList(), state.takeOrphanedClaims());
+    }
+
+    @Test
+    public void claimsOfAGoneProcessAreOrphaned() throws Exception {
+        long dead = deadPid();
+        long other = livePid();
+        writeRaw("watermark " + NINE + "\nclaim 12 " + dead + "\nclaim 13 " + other + "\nclaim 14 " + dead + "\n");
+        ScanWatermark state = ScanWatermark.read(file);
+        assertFalse(state.isClaimed(12));
+        assertTrue(state.hasOrphanedClaims());
+
+        assertEquals(Arrays.asList(12, 14), ScanWatermark.update(file, ScanWatermark::takeOrphanedClaims));
+        assertEquals("watermark " + NINE + "\nclaim 13 " + other + "\n", readRaw());
+        assertFalse(ScanWatermark.read(file).hasOrphanedClaims());
+    }
+
+    @Test
+    public void behindMarkersAreTakenOnce() throws IOException {
+        ScanWatermark.update(file, state -> {
+            state.markBehind(15);
+            state.markBehind(3);
+            state.markBehind(15);
+            return null;
+        });
+        assertEquals(Arrays.asList(3, 15), ScanWatermark.update(file, ScanWatermark::takeBehind));
+        assertEquals(Collections.emptyList(), ScanWatermark.update(file, ScanWatermark::takeBehind));
+        assertFalse(ScanWatermark.read(file).hasBehind());
+    }
+
+    @Test
+    public void malformedLinesAreIgnored() throws IOException {
+        writeRaw("watermark yesterday\nclaim x 1\nbehind\nsomething else\nbehind 7\n");
+        ScanWatermark state = ScanWatermark.read(file);
+        assertNull(state.getWatermark());
+        assertFalse(state.hasOrphanedClaims());
+        assertEquals(Arrays.asList(7), state.takeBehind());
+    }
+}
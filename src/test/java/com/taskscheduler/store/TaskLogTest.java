@@ -0,0 +1,134 @@
+package com.taskscheduler.store;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TaskLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private TaskLog log;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "tasks.log");
+        log = new TaskLog(file);
+    }
+
+    private void writeRaw(String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String readRaw() throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> records = new ArrayList<>();
+        log.replay(records::add);
+        return records;
+    }
+
+    @Test
+    public void recordsReachTheFileOnSync() throws IOException {
+        log.write("{\"a\":1}");
+        log.write("{\"a\":2}");
+        log.sync(false);
+        log.close();
+        assertEquals("{\"a\":1}\n{\"a\":2}\n", readRaw());
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}"), replay());
+        assertEquals(2, log.getRecordCount());
+    }
+
+    @Test
+    public void missingFileReplaysNothing() throws IOException {
+        assertEquals(0, replay().size());
+        assertEquals(0, log.scanFrom(0, record -> { }));
+    }
+
+    @Test
+    public void tornLastRecordIsDroppedAndCutOff() throws IOException {
+        writeRaw("{\"a\":1}\n{\"a\":2}\n{\"a\":");
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}"), replay());
+        assertEquals("{\"a\":1}\n{\"a\":2}\n", readRaw());
+
+        // the next append starts on a clean line
+        log.write("{\"a\":3}");
+        log.sync(false);
+        log.close();
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}", "{\"a\":3}"), replay());
+    }
+
+    @Test
+    public void fileHoldingOnlyATornRecordIsEmptied() throws IOException {
+        writeRaw("{\"op\":\"put\",\"task\":{\"id\":");
+        assertEquals(0, replay().size());
+        assertEquals("", readRaw());
+    }
+
+    @Test
+    public void blankLinesAreSkipped() throws IOException {
+        writeRaw("{\"a\":1}\n\n{\"a\":2}\n");
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}"), replay());
+        assertEquals(2, log.getRecordCount());
+    }
+
+    @Test
+    public void scanLeavesATornRecordInPlace() throws IOException {
+        // another process may still be writing it
+        writeRaw("{\"a\":1}\n{\"a\":");
+        List<String> records = new ArrayList<>();
+        log.scan(records::add);
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":"), records);
+        assertEquals("{\"a\":1}\n{\"a\":", readRaw());
+    }
+
+    @Test
+    public void scanFromStopsBeforeAnIncompleteRecord() throws IOException {
+        writeRaw("{\"a\":1}\n{\"a\":2}\n{\"a\":");
+        List<String> records = new ArrayList<>();
+        long offset = log.scanFrom(0, records::add);
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}"), records);
+        assertEquals("{\"a\":1}\n{\"a\":2}\n".length(), offset);
+
+        // once the record is finished the next scan picks it up from where the last one stopped
+        writeRaw("{\"a\":1}\n{\"a\":2}\n{\"a\":3}\n");
+        records.clear();
+        assertEquals(file.length(), log.scanFrom(offset, records::add));
+        assertEquals(Arrays.asList("{\"a\":3}"), records);
+    }
+
+    @Test
+    public void scanFromTheEndFindsNothing() throws IOException {
+        writeRaw("{\"a\":1}\n");
+        List<String> records = new ArrayList<>();
+        assertEquals(file.length(), log.scanFrom(file.length(), records::add));
+        assertEquals(0, records.size());
+    }
+
+    @Test
+    public void truncateDropsEveryRecord() throws IOException {
+        log.write("{\"a\":1}");
+        log.sync(false);
+        log.truncate();
+        assertEquals(0, file.length());
+        assertEquals(0, log.getRecordCount());
+        log.write("{\"a\":2}");
+        log.sync(false);
+        log.close();
+        assertEquals(Arrays.asList("{\"a\":2}"), replay());
+    }
+}
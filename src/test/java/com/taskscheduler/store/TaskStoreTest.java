@@ -0,0 +1,202 @@
+package com.taskscheduler.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.taskscheduler.Task;
+
+public class TaskStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Gson gson = new GsonBuilder().registerTypeAdapter(Task.class, new TaskTypeAdapter()).create();
+    private String fileName;
+    // two stores on the same files stand in for two processes; each writes with its own writer id
+    private TaskStore first;
+    private TaskStore second;
+
+    @Before
+    public void setUp() throws IOException {
+        fileName = new File(folder.getRoot(), "tasks.json").getPath();
+        TaskStore setup = open();
+        setup.load();
+        for (int i = 0; i < 2; i++) {
+            setup.awaitWritten(setup.put(new Task(setup.allocateId(), "Task", false, null)));
+        }
+        setup.close();
+        first = open();
+        second = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        first.close();
+        second.close();
+    }
+
+    private TaskStore open() {
+        return new TaskStore(fileName, gson, CommitPolicy.parse("sync"), false);
+    }
+
+    // the tasks as a process starting now would load them
+    private Map<Integer, Task> stored() throws IOException {
+        TaskStore store = open();
+        try {
+            return byId(store.load());
+        } finally {
+            store.close();
+        }
+    }
+
+    private static Map<Integer, Task> byId(Iterable<Task> tasks) {
+        Map<Integer, Task> byId = new TreeMap<>();
+        for (Task task : tasks) {
+            byId.put(task.getId(), task);
+        }
+        return byId;
+    }
+
+    // what the store's refresh hands over, applied to a copy of its tasks
+    private static boolean refresh(TaskStore store, Map<Integer, Task> tasks) throws IOException {
+        return store.refresh(new TaskStore.Listener() {
+            @Override
+            public void reset() {
+                tasks.clear();
+            }
+
+            @Override
+            public void put(Task task) {
+                tasks.put(task.getId(), task);
+            }
+
+            @Override
+            public void delete(int id) {
+                tasks.remove(id);
+            }
+        });
+    }
+
+    private static void assertRejected(TaskStore store, CompletableFuture<Void> commit, int id) throws IOException {
+        try {
+            store.awaitWritten(commit);
+            fail("change to task " + id + " was saved");
+        } catch (StoreConflictException e) {
+            assertEquals(id, e.getTaskId());
+        }
+    }
+
+    @Test
+    public void changeFromAStaleRevisionIsRejected() throws IOException {
+        Map<Integer, Task> mine = byId(first.load());
+        Map<Integer, Task> theirs = byId(second.load());
+
+        theirs.get(1).setTitle("theirs");
+        second.awaitWritten(second.put(theirs.get(1)));
+
+        mine.get(1).setTitle("mine");
+        assertRejected(first, first.put(mine.get(1)), 1);
+
+        // the other process's change is what the store keeps
+        assertTrue(refresh(first, mine));
+        assertEquals("theirs", mine.get(1).getTitle());
+
+        // made again from the refreshed copy it goes through
+        mine.get(1).setTitle("mine");
+        first.awaitWritten(first.put(mine.get(1)));
+        assertTrue(refresh(second, theirs));
+        assertEquals("mine", theirs.get(1).getTitle());
+    }
+
+    @Test
+    public void changesToDifferentTasksDoNotConflict() throws IOException {
+        Map<Integer, Task> mine = byId(first.load());
+        Map<Integer, Task> theirs = byId(second.load());
+
+        theirs.get(1).setTitle("theirs");
+        second.awaitWritten(second.put(theirs.get(1)));
+        mine.get(2).setTitle("mine");
+        first.awaitWritten(first.put(mine.get(2)));
+
+        Map<Integer, Task> stored = stored();
+        assertEquals("theirs", stored.get(1).getTitle());
+        assertEquals("mine", stored.get(2).getTitle());
+    }
+
+    @Test
+    public void ownChangesInARowDoNotConflict() throws IOException {
+        Map<Integer, Task> mine = byId(first.load());
+        second.load();
+        for (int i = 0; i < 3; i++) {
+            mine.get(1).setTitle("mine " + i);
+            first.awaitWritten(first.put(mine.get(1)));
+        }
+        // nor does a change from the other process that has seen them
+        Map<Integer, Task> theirs = byId(second.load());
+        assertEquals("mine 2", theirs.get(1).getTitle());
+        theirs.get(1).setTitle("theirs");
+        second.awaitWritten(second.put(theirs.get(1)));
+    }
+
+    @Test
+    public void staleDeleteIsRejected() throws IOException {
+        Map<Integer, Task> mine = byId(first.load());
+        Map<Integer, Task> theirs = byId(second.load());
+
+        theirs.get(1).setTitle("theirs");
+        second.awaitWritten(second.put(theirs.get(1)));
+
+        assertRejected(first, first.delete(1, mine.get(1).getRevision()), 1);
+        refresh(first, mine);
+        first.awaitWritten(first.delete(1, mine.get(1).getRevision()));
+        assertFalse(stored().containsKey(1));
+    }
+
+    @Test
+    public void changeToATaskDeletedElsewhereIsRejected() throws IOException {
+        Map<Integer, Task> mine = byId(first.load());
+        Map<Integer, Task> theirs = byId(second.load());
+
+        second.awaitWritten(second.delete(2, theirs.get(2).getRevision()));
+
+        mine.get(2).setTitle("mine");
+        assertRejected(first, first.put(mine.get(2)), 2);
+        refresh(first, mine);
+        assertFalse(mine.containsKey(2));
+    }
+
+    @Test
+    public void rejectedChangeLeavesTheRestOfTheBatch() throws IOException {
+        Map<Integer, Task> mine = byId(first.load());
+        Map<Integer, Task> theirs = byId(second.load());
+
+        theirs.get(1).setTitle("theirs");
+        second.awaitWritten(second.put(theirs.get(1)));
+
+        mine.get(1).setTitle("mine");
+        mine.get(2).setTitle("mine");
+        CompletableFuture<Void> stale = first.put(mine.get(1));
+        CompletableFuture<Void> fresh = first.put(mine.get(2));
+        assertRejected(first, stale, 1);
+        first.awaitWritten(fresh);
+
+        Map<Integer, Task> stored = stored();
+        assertEquals("theirs", stored.get(1).getTitle());
+        assertEquals("mine", stored.get(2).getTitle());
+    }
+}
@@ -0,0 +1,130 @@
+package com.taskscheduler.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntHashMapTest {
+    // a map of this expected size has 16 slots and grows at its tenth entry
+    private static final int EXPECTED = 8;
+    private static final int MASK = 15;
+
+    // the slot a key hashes to in a map of 16 slots, as IntHashMap computes it
+    private static int home(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & MASK;
+    }
+
+    // the first n keys from 1 up that hash to the given slot
+    private static List<Integer> keysAt(int slot, int n) {
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 1; keys.size() < n; key++) {
+            if (home(key) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    public void putGetAndReplace() {
+        IntHashMap<String> map = new IntHashMap<>();
+        assertNull(map.put(7, "a"));
+        assertEquals("a", map.put(7, "b"));
+        assertEquals("b", map.get(7));
+        assertEquals(1, map.size());
+        assertNull(map.get(8));
+    }
+
+    @Test
+    public void removeInsideACollisionClusterKeepsTheRestReachable() {
+        IntHashMap<String> map = new IntHashMap<>(EXPECTED);
+        List<Integer> keys = keysAt(3, 4);
+        for (int key : keys) {
+            map.put(key, "v" + key);
+        }
+        // the second of four keys probing from slot 3; the two after it move back
+        assertEquals("v" + keys.get(1), map.remove(keys.get(1)));
+        assertNull(map.get(keys.get(1)));
+        for (int key : new int[] {keys.get(0), keys.get(2), keys.get(3)}) {
+            assertEquals("v" + key, map.get(key));
+        }
+        assertEquals(3, map.size());
+
+        // the freed slot is reused and nothing is found twice
+        map.put(keys.get(1), "again");
+        assertEquals("again", map.get(keys.get(1)));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    public void entryAtItsHomeSlotStaysWhileOneBehindItMovesBack() {
+        IntHashMap<String> map = new IntHashMap<>(EXPECTED);
+        List<Integer> atThree = keysAt(3, 2);
+        int atFour = keysAt(4, 1).get(0);
+        // slot 3, slot 4 (its home), then slot 5 for the second key hashing to 3
+        map.put(atThree.get(0), "a");
+        map.put(atFour, "b");
+        map.put(atThree.get(1), "c");
+        map.remove(atThree.get(0));
+        assertEquals("b", map.get(atFour));
+        assertEquals("c", map.get(atThree.get(1)));
+        // the key that moved back to slot 3 is still found once slot 4 is freed too
+        map.remove(atFour);
+        assertEquals("c", map.get(atThree.get(1)));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void clusterWrapsAroundTheEndOfTheTable() {
+        IntHashMap<String> map = new IntHashMap<>(EXPECTED);
+        // slots 15, 0 and 1
+        List<Integer> keys = keysAt(MASK, 3);
+        for (int key : keys) {
+            map.put(key, "v" + key);
+        }
+        map.remove(keys.get(0));
+        assertEquals("v" + keys.get(1), map.get(keys.get(1)));
+        assertEquals("v" + keys.get(2), map.get(keys.get(2)));
+        map.remove(keys.get(1));
+        assertEquals("v" + keys.get(2), map.get(keys.get(2)));
+        assertNull(map.remove(keys.get(0)));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void randomOperationsMatchHashMap() {
+        IntHashMap<Integer> map = new IntHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50_000; i++) {
+            int key = random.nextInt(500) - 100;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = -100; key < 400; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        List<Integer> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        assertEquals(expected.size(), values.size());
+        assertTrue(values.containsAll(expected.values()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullValueIsRejected() {
+        new IntHashMap<String>().put(1, null);
+    }
+}